@@ -27,170 +27,330 @@ import org.picketlink.http.HttpMethod;
 import org.picketlink.internal.el.ELProcessor;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
+ * <p>Resolves the {@link PathConfiguration} for a request.</p>
+ *
+ * <p>The configured URIs are compiled once into lookup tables, so resolving a path does not depend on the number of
+ * configured URIs. When more than one URI matches a path, the most specific one is selected:</p>
+ *
+ * <ul>
+ *     <li>An URI equal to the path.</li>
+ *     <li>The prefix URI (eg.: <code>/admin/*</code>) or URI template (eg.: <code>/user/{identity.account.id}</code>)
+ *     with the longest prefix matching the path. Given the same prefix, URI templates are preferred.</li>
+ *     <li>The suffix URI (eg.: <code>/*.jsf</code>) with the longest suffix matching the path.</li>
+ *     <li>The <code>/*</code> URI.</li>
+ * </ul>
+ *
+ * <p>If an URI is defined more than once for the same lookup key, the last definition is used. The resolution of
+ * recently requested paths is cached.</p>
+ *
  * @author Pedro Igor
  */
 public class PathMatcher {
 
     private static final String ANY_RESOURCE_PATTERN = "/*";
-    private final Map<String, List<PathConfiguration>> uriConfiguration;
-    private final ELProcessor elProcessor;
 
-    public PathMatcher(Map<String, List<PathConfiguration>> uriConfiguration, ELProcessor elProcessor) {
-        this.uriConfiguration = uriConfiguration;
-        this.elProcessor = elProcessor;
-    }
+    /**
+     * <p>Max number of requested paths whose resolution is cached.</p>
+     */
+    private static final int MAX_RESOLVED_PATHS = 1024;
 
-    public PathConfiguration matches(HttpServletRequest request) {
-        String requestedUri = request.getRequestURI();
-        int contextPathIndex = requestedUri.indexOf(request.getContextPath());
+    private static final Candidates NO_CANDIDATES = new Candidates(Collections.<PathConfiguration>emptyList());
 
-        if (contextPathIndex != -1) {
-            requestedUri = requestedUri.substring(contextPathIndex + request.getContextPath().length());
-        }
+    private final Map<String, Candidates> exactPaths = new HashMap<String, Candidates>();
+    private final PrefixNode prefixPaths = new PrefixNode();
+    private final Map<String, Candidates> suffixPaths = new HashMap<String, Candidates>();
+    private final int[] suffixLengths;
+    private final Candidates defaultPath;
+    private final ConcurrentMap<String, Candidates> resolvedPaths = new ConcurrentHashMap<String, Candidates>();
 
-        List<PathConfiguration> configurations = null;
-        String actualConfig = null;
+    public PathMatcher(Map<String, List<PathConfiguration>> uriConfiguration, ELProcessor elProcessor) {
+        Set<Integer> suffixLengths = new TreeSet<Integer>(Collections.reverseOrder());
+        Candidates defaultPath = null;
 
-        for (Map.Entry<String, List<PathConfiguration>> entry : this.uriConfiguration.entrySet()) {
+        for (Map.Entry<String, List<PathConfiguration>> entry : uriConfiguration.entrySet()) {
             String protectedUri = entry.getKey();
-            String selectedUri = null;
+            Candidates candidates = new Candidates(entry.getValue());
 
-            if (protectedUri.equals(ANY_RESOURCE_PATTERN) && actualConfig == null) {
-                configurations = this.uriConfiguration.get(entry.getKey());
-                selectedUri = protectedUri;
+            if (protectedUri.equals(ANY_RESOURCE_PATTERN)) {
+                defaultPath = candidates;
             }
 
+            this.exactPaths.put(protectedUri, candidates);
+
             int suffixIndex = protectedUri.indexOf(ANY_RESOURCE_PATTERN + ".");
 
             if (suffixIndex != -1) {
                 String protectedSuffix = protectedUri.substring(suffixIndex + ANY_RESOURCE_PATTERN.length());
 
-                if (requestedUri.endsWith(protectedSuffix)) {
-                    configurations = this.uriConfiguration.get(entry.getKey());
-                    selectedUri = protectedUri;
-                }
-            }
-
-            if (protectedUri.equals(requestedUri)) {
-                configurations = this.uriConfiguration.get(entry.getKey());
-                selectedUri = protectedUri;
+                this.suffixPaths.put(protectedSuffix, candidates);
+                suffixLengths.add(protectedSuffix.length());
             }
 
             if (protectedUri.endsWith(ANY_RESOURCE_PATTERN)) {
                 String formattedPattern = removeWildCardsFromUri(protectedUri);
 
-                if (!formattedPattern.equals("/") && requestedUri.startsWith(formattedPattern)) {
-                    configurations = this.uriConfiguration.get(entry.getKey());
-                    selectedUri = protectedUri;
-                }
-
-                if (!formattedPattern.equals("/") && formattedPattern.endsWith("/") && formattedPattern.substring(0, formattedPattern.length() - 1).equals(requestedUri)) {
-                    configurations = this.uriConfiguration.get(entry.getKey());
-                    selectedUri = protectedUri;
+                if (!formattedPattern.equals("/")) {
+                    this.prefixPaths.add(formattedPattern).wildcard = candidates;
                 }
             }
 
             int startRegex = protectedUri.indexOf('{');
 
             if (startRegex != -1) {
-                String prefix = protectedUri.substring(0, startRegex);
+                this.prefixPaths.add(protectedUri.substring(0, startRegex)).template = candidates;
+            }
+        }
 
-                if (requestedUri.startsWith(prefix)) {
-                    configurations = this.uriConfiguration.get(entry.getKey());
-                    selectedUri = protectedUri;
-                }
+        this.suffixLengths = new int[suffixLengths.size()];
+
+        int i = 0;
+
+        for (Integer suffixLength : suffixLengths) {
+            this.suffixLengths[i++] = suffixLength;
+        }
+
+        this.defaultPath = defaultPath;
+    }
+
+    public PathConfiguration matches(HttpServletRequest request) {
+        String requestedUri = request.getRequestURI();
+        int contextPathIndex = requestedUri.indexOf(request.getContextPath());
+
+        if (contextPathIndex != -1) {
+            requestedUri = requestedUri.substring(contextPathIndex + request.getContextPath().length());
+        }
+
+        Candidates candidates = this.resolvedPaths.get(requestedUri);
+
+        if (candidates == null) {
+            candidates = resolve(requestedUri);
+
+            if (this.resolvedPaths.size() >= MAX_RESOLVED_PATHS) {
+                this.resolvedPaths.clear();
             }
 
-            if (selectedUri != null) {
-                configurations = this.uriConfiguration.get(entry.getKey());
-                selectedUri = protectedUri;
+            this.resolvedPaths.put(requestedUri, candidates);
+        }
+
+        return candidates.select(request);
+    }
+
+    private Candidates resolve(String requestedUri) {
+        Candidates candidates = this.exactPaths.get(requestedUri);
+
+        if (candidates == null) {
+            candidates = this.prefixPaths.findLongestPrefix(requestedUri);
+        }
+
+        if (candidates == null) {
+            candidates = findLongestSuffix(requestedUri);
+        }
+
+        if (candidates == null) {
+            candidates = this.defaultPath;
+        }
+
+        if (candidates == null) {
+            candidates = NO_CANDIDATES;
+        }
+
+        return candidates;
+    }
+
+    private Candidates findLongestSuffix(String requestedUri) {
+        for (int suffixLength : this.suffixLengths) {
+            if (suffixLength <= requestedUri.length()) {
+                Candidates candidates = this.suffixPaths.get(requestedUri.substring(requestedUri.length() - suffixLength));
+
+                if (candidates != null) {
+                    return candidates;
+                }
             }
+        }
 
-            if (selectedUri != null) {
-                if (actualConfig == null) {
-                    actualConfig = entry.getKey();
-                } else {
-                    if (actualConfig.equals(ANY_RESOURCE_PATTERN)) {
-                        actualConfig = entry.getKey();
-                    }
+        return null;
+    }
+
+    private String removeWildCardsFromUri(String protectedUri) {
+        return protectedUri.replaceAll("/[*]", "/");
+    }
+
+    /**
+     * <p>The configurations defined for the same URI, from which one is selected based on the method and headers of
+     * the request.</p>
+     */
+    private static class Candidates {
 
-                    if (protectedUri.startsWith(removeWildCardsFromUri(actualConfig))) {
-                        actualConfig = entry.getKey();
+        private final List<PathConfiguration> configurations;
+        private final List<Map<String, List<String>>> inboundHeaders;
+
+        Candidates(List<PathConfiguration> configurations) {
+            this.configurations = configurations;
+            this.inboundHeaders = new ArrayList<Map<String, List<String>>>(configurations.size());
+
+            for (PathConfiguration pathConfiguration : configurations) {
+                InboundHeaderConfiguration headerConfiguration = pathConfiguration.getInboundHeaderConfiguration();
+                Map<String, List<String>> headers = null;
+
+                if (headerConfiguration != null) {
+                    headers = new LinkedHashMap<String, List<String>>();
+
+                    for (Map.Entry<String, String[]> header : headerConfiguration.getHeaders().entrySet()) {
+                        headers.put(header.getKey(), Arrays.asList(header.getValue()));
                     }
                 }
+
+                this.inboundHeaders.add(headers);
             }
         }
 
-        if (configurations != null) {
-            if (configurations.size() == 1) {
-                return configurations.get(0);
+        PathConfiguration select(HttpServletRequest request) {
+            if (this.configurations.isEmpty()) {
+                return null;
             }
 
+            if (this.configurations.size() == 1) {
+                return this.configurations.get(0);
+            }
+
+            HttpMethod method = HttpMethod.valueOf(request.getMethod().toUpperCase());
             int configIndex = -1;
             int lastMatchCount = 0;
 
-            for (int i = 0; i < configurations.size(); i++) {
-                PathConfiguration pathConfiguration = configurations.get(i);
-                InboundHeaderConfiguration headerConfiguration = pathConfiguration.getInboundHeaderConfiguration();
-                Set<HttpMethod> methods = pathConfiguration.getMethods();
+            for (int i = 0; i < this.configurations.size(); i++) {
+                PathConfiguration pathConfiguration = this.configurations.get(i);
+                Map<String, List<String>> inboundHeaders = this.inboundHeaders.get(i);
 
-                if (!methods.contains(HttpMethod.valueOf(request.getMethod().toUpperCase()))) {
+                if (!pathConfiguration.getMethods().contains(method)) {
                     continue;
                 }
 
-                if (headerConfiguration == null) {
+                if (inboundHeaders == null) {
                     if (configIndex == -1) {
                         configIndex = i;
                     }
+                } else if (inboundHeaders.isEmpty()) {
+                    configIndex = i;
                 } else {
-                    Map<String, String[]> inboundHeaders = headerConfiguration.getHeaders();
-
-                    if (inboundHeaders.isEmpty()) {
-                        configIndex = i;
-                    } else {
-                        for (String inboundHeaderName : inboundHeaders.keySet()) {
-                            Enumeration<String> requestHeaderValues = request.getHeaders(inboundHeaderName);
+                    for (Map.Entry<String, List<String>> inboundHeader : inboundHeaders.entrySet()) {
+                        Enumeration<String> requestHeaderValues = request.getHeaders(inboundHeader.getKey());
 
-                            if (requestHeaderValues == null) {
-                                break;
-                            }
-
-                            List<String> inboundHeaderValues = Arrays.asList(inboundHeaders.get(inboundHeaderName));
-                            int matchCount = 0;
+                        if (requestHeaderValues == null) {
+                            break;
+                        }
 
-                            while (requestHeaderValues.hasMoreElements()) {
-                                String requestHeaderValue = requestHeaderValues.nextElement();
+                        List<String> inboundHeaderValues = inboundHeader.getValue();
+                        int matchCount = 0;
 
-                                if (inboundHeaderValues.contains(requestHeaderValue)) {
-                                    matchCount++;
-                                }
+                        while (requestHeaderValues.hasMoreElements()) {
+                            if (inboundHeaderValues.contains(requestHeaderValues.nextElement())) {
+                                matchCount++;
                             }
+                        }
 
-                            if (matchCount > lastMatchCount) {
-                                lastMatchCount = matchCount;
-                                configIndex = i;
-                            }
+                        if (matchCount > lastMatchCount) {
+                            lastMatchCount = matchCount;
+                            configIndex = i;
                         }
                     }
                 }
             }
 
             if (configIndex >= 0) {
-                return configurations.get(configIndex);
+                return this.configurations.get(configIndex);
             }
-        }
 
-        return null;
+            return null;
+        }
     }
 
-    private String removeWildCardsFromUri(String protectedUri) {
-        return protectedUri.replaceAll("/[*]", "/");
+    /**
+     * <p>A node of the trie holding the prefix URIs and URI templates, keyed by their literal prefix.</p>
+     */
+    private static class PrefixNode {
+
+        private char[] keys = new char[0];
+        private PrefixNode[] children = new PrefixNode[0];
+        private Candidates wildcard;
+        private Candidates template;
+
+        PrefixNode add(String prefix) {
+            PrefixNode node = this;
+
+            for (int i = 0; i < prefix.length(); i++) {
+                char key = prefix.charAt(i);
+                PrefixNode child = node.getChild(key);
+
+                if (child == null) {
+                    child = new PrefixNode();
+
+                    int index = -(Arrays.binarySearch(node.keys, key) + 1);
+                    char[] keys = new char[node.keys.length + 1];
+                    PrefixNode[] children = new PrefixNode[node.children.length + 1];
+
+                    System.arraycopy(node.keys, 0, keys, 0, index);
+                    System.arraycopy(node.children, 0, children, 0, index);
+                    keys[index] = key;
+                    children[index] = child;
+                    System.arraycopy(node.keys, index, keys, index + 1, node.keys.length - index);
+                    System.arraycopy(node.children, index, children, index + 1, node.children.length - index);
+
+                    node.keys = keys;
+                    node.children = children;
+                }
+
+                node = child;
+            }
+
+            return node;
+        }
+
+        Candidates findLongestPrefix(String path) {
+            Candidates longest = getCandidates();
+            PrefixNode node = this;
+
+            for (int i = 0; i < path.length() && node != null; i++) {
+                node = node.getChild(path.charAt(i));
+
+                if (node != null && node.getCandidates() != null) {
+                    longest = node.getCandidates();
+                }
+            }
+
+            if (node != null) {
+                // a prefix URI also matches its base path, eg.: /admin/* matches /admin
+                PrefixNode slash = node.getChild('/');
+
+                if (slash != null && slash.wildcard != null) {
+                    longest = slash.wildcard;
+                }
+            }
+
+            return longest;
+        }
+
+        private Candidates getCandidates() {
+            return this.template != null ? this.template : this.wildcard;
+        }
+
+        private PrefixNode getChild(char key) {
+            int index = Arrays.binarySearch(this.keys, key);
+
+            return index >= 0 ? this.children[index] : null;
+        }
     }
 }
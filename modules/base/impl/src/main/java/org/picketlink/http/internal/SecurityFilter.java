@@ -567,12 +567,34 @@ public class SecurityFilter implements Filter {
                         }
 
                         this.pathAuthorizers.put(pathConfiguration, pathAuthorizers);
+
+                        parseAuthorizationExpressions(pathConfiguration);
                     }
                 }
             }
         }
     }
 
+    /**
+     * <p>Parses the expressions used by {@link ExpressionPathAuthorizer}, so they are cached by the {@link ELProcessor}
+     * and invalid expressions are reported during initialization.</p>
+     *
+     * @param pathConfiguration
+     */
+    private void parseAuthorizationExpressions(PathConfiguration pathConfiguration) {
+        String[] expressions = pathConfiguration.getAuthorizationConfiguration().getExpressions();
+
+        if (expressions != null) {
+            for (String expression : expressions) {
+                try {
+                    this.elProcessor.parse(expression);
+                } catch (Exception e) {
+                    throw new HttpSecurityConfigurationException("Invalid authorization expression [" + expression + "] for path [" + pathConfiguration.getUri() + "].", e);
+                }
+            }
+        }
+    }
+
     private Set<Class<? extends PathAuthorizer>> getDefaultPathAuthorizers() {
         Set<Class<? extends PathAuthorizer>> defaultAuthorizers = new HashSet<Class<? extends PathAuthorizer>>();
 
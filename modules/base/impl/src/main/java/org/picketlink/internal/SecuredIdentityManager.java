@@ -30,6 +30,7 @@ import org.picketlink.idm.query.IdentityQueryBuilder;
 import javax.enterprise.inject.Typed;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletionStage;
 
 /**
  * Decorator for IdentityManager that provides secured identity management operations
@@ -77,6 +78,11 @@ public class SecuredIdentityManager implements IdentityManager {
         decorated.validateCredentials(credentials);
     }
 
+    @Override
+    public <T extends Credentials> CompletionStage<T> validateCredentialsAsync(T credentials) {
+        return decorated.validateCredentialsAsync(credentials);
+    }
+
     @Override
     public void updateCredential(Account account, Object credential) {
         decorated.updateCredential(account, credential);
@@ -47,6 +47,10 @@ class ELEvaluationContext {
         return evaluationContext.get();
     }
 
+    /**
+     * <p>Removes the context bound to the current thread, so that no reference is kept by pooled threads once the
+     * evaluation is finished.</p>
+     */
     static void release() {
         evaluationContext.remove();
     }
@@ -30,6 +30,7 @@ import javax.el.ArrayELResolver;
 import javax.el.BeanELResolver;
 import javax.el.CompositeELResolver;
 import javax.el.ELContext;
+import javax.el.ELException;
 import javax.el.ELResolver;
 import javax.el.ExpressionFactory;
 import javax.el.FunctionMapper;
@@ -42,15 +43,36 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Instance;
 import javax.enterprise.inject.spi.BeanManager;
 import javax.inject.Inject;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * <p>Provides EL processing.</p>
  *
+ * <p>Expressions are parsed only once and the resulting {@link ValueExpression} is cached by expression text and shared
+ * by all threads. Only the {@link ELContext} is created for each evaluation.</p>
+ *
  * @author Pedro Igor
  */
 @ApplicationScoped
 public class ELProcessor {
 
+    /**
+     * <p>Max number of parsed expressions kept in cache. Expressions are usually defined by configuration, this is just
+     * a safeguard against expressions built at runtime.</p>
+     */
+    private static final int MAX_CACHED_EXPRESSIONS = 1024;
+
+    /**
+     * <p>Number of expressions removed from the cache when it is full. Only part of the cache is evicted, so expressions
+     * defined by configuration do not need to be parsed again all at once.</p>
+     */
+    private static final int EVICTED_EXPRESSIONS = MAX_CACHED_EXPRESSIONS / 4;
+
+    private final ConcurrentMap<String, ValueExpression> valueExpressions = new ConcurrentHashMap<String, ValueExpression>();
+    private final FunctionMapper functionMapper = new PicketLinkFunctionMapper();
+
     private ExpressionFactory expressionFactory;
     private CompositeELResolver elResolver;
 
@@ -70,9 +92,8 @@ public class ELProcessor {
     private Instance<RelationshipManager> relationshipManagerInstance;
 
     public <R> R eval(String expression) {
-        PicketLinkELContext context = new PicketLinkELContext(this.elResolver);
-        ValueExpression valueExpression = this.expressionFactory.createValueExpression(context, expression, Object.class);
-
+        ValueExpression valueExpression = parse(expression);
+        PicketLinkELContext context = new PicketLinkELContext(this.elResolver, this.functionMapper);
         R value;
 
         try {
@@ -85,6 +106,46 @@ public class ELProcessor {
         return value;
     }
 
+    /**
+     * <p>Parses the given expression, or returns the one already parsed from the cache.</p>
+     *
+     * @param expression The expression to parse.
+     *
+     * @return The parsed expression.
+     *
+     * @throws ELException If the expression is not valid.
+     */
+    public ValueExpression parse(String expression) throws ELException {
+        ValueExpression valueExpression = this.valueExpressions.get(expression);
+
+        if (valueExpression == null) {
+            PicketLinkELContext context = new PicketLinkELContext(this.elResolver, this.functionMapper);
+
+            valueExpression = this.expressionFactory.createValueExpression(context, expression, Object.class);
+
+            if (this.valueExpressions.size() >= MAX_CACHED_EXPRESSIONS) {
+                evictExpressions();
+            }
+
+            ValueExpression existing = this.valueExpressions.putIfAbsent(expression, valueExpression);
+
+            if (existing != null) {
+                valueExpression = existing;
+            }
+        }
+
+        return valueExpression;
+    }
+
+    private void evictExpressions() {
+        Iterator<String> iterator = this.valueExpressions.keySet().iterator();
+
+        for (int i = 0; i < EVICTED_EXPRESSIONS && iterator.hasNext(); i++) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
     @Inject
     private void initialize() {
         this.expressionFactory = this.beanManager.wrapExpressionFactory(ExpressionFactory.newInstance());
@@ -109,12 +170,14 @@ public class ELProcessor {
         ELEvaluationContext.release();
     }
 
-    private class PicketLinkELContext extends ELContext {
+    private static class PicketLinkELContext extends ELContext {
 
         private final ELResolver elResolver;
+        private final FunctionMapper functionMapper;
 
-        public PicketLinkELContext(ELResolver elResolver) {
+        public PicketLinkELContext(ELResolver elResolver, FunctionMapper functionMapper) {
             this.elResolver = elResolver;
+            this.functionMapper = functionMapper;
         }
 
         @Override
@@ -124,7 +187,7 @@ public class ELProcessor {
 
         @Override
         public FunctionMapper getFunctionMapper() {
-            return new PicketLinkFunctionMapper();
+            return this.functionMapper;
         }
 
         @Override
@@ -33,6 +33,7 @@ import org.picketlink.idm.permission.acl.spi.PermissionHandler;
 import org.picketlink.internal.CDIEventBridge;
 import org.picketlink.internal.SecuredIdentityManager;
 
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.context.RequestScoped;
 import javax.enterprise.inject.Instance;
@@ -55,6 +56,9 @@ import static org.picketlink.log.BaseLog.ROOT_LOGGER;
  * against the stored state, create default partitions, etc. If no partition was created during the initialization a default
  * partition is always created if any of the provided configuration supports that. </p>
  *
+ * <p>When this bean is destroyed the embedded {@link PartitionManager} is closed, releasing the threads and connections
+ * held by its stores. Partition managers provided by the application are not closed.</p>
+ *
  * @author Shane Bryzak
  * @author Pedro Igor
  */
@@ -79,6 +83,7 @@ public class IdentityManagementProducer {
     private CDIEventBridge eventBridge;
 
     private PartitionManager partitionManager;
+    private boolean embeddedPartitionManager;
 
     @Inject
     public void init() {
@@ -97,6 +102,18 @@ public class IdentityManagementProducer {
             }
         } else {
             this.partitionManager = createEmbeddedPartitionManager();
+            this.embeddedPartitionManager = true;
+        }
+    }
+
+    @PreDestroy
+    public void dispose() {
+        if (this.embeddedPartitionManager) {
+            if (ROOT_LOGGER.isDebugEnabled()) {
+                ROOT_LOGGER.debugf("Closing PartitionManager.");
+            }
+
+            ((DefaultPartitionManager) this.partitionManager).close();
         }
     }
 
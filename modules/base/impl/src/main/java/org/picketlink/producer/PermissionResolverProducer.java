@@ -23,10 +23,14 @@ import java.util.Iterator;
 import java.util.List;
 
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.Reception;
 import javax.enterprise.inject.Instance;
 import javax.enterprise.inject.Produces;
 import javax.inject.Inject;
 
+import org.picketlink.idm.event.AbstractBaseEvent;
+import org.picketlink.idm.permission.acl.spi.PersistentPermissionVoter;
 import org.picketlink.idm.permission.spi.PermissionResolver;
 import org.picketlink.idm.permission.spi.PermissionVoter;
 
@@ -40,6 +44,8 @@ public class PermissionResolverProducer {
 
     private PermissionResolver resolver;
 
+    private List<PermissionVoter> voters;
+
     @Inject
     public void init(Instance<PermissionVoter> votersInstance) {
         List<PermissionVoter> voters = new ArrayList<PermissionVoter>();
@@ -51,9 +57,23 @@ public class PermissionResolverProducer {
             }
         }
 
+        this.voters = voters;
         resolver = new PermissionResolver(voters);
     }
 
+    /**
+     * <p>Passes the events raised by PicketLink IDM to the voters caching permission decisions, so decisions affected by
+     * a change are invalidated.</p>
+     *
+     * @param event
+     */
+    public void onIdentityEvent(@Observes(notifyObserver = Reception.IF_EXISTS) AbstractBaseEvent event) {
+        for (PermissionVoter voter : this.voters) {
+            if (PersistentPermissionVoter.class.isInstance(voter)) {
+                ((PersistentPermissionVoter) voter).onEvent(event);
+            }
+        }
+    }
 
     @Produces
     public PermissionResolver createPermissionResolver() {
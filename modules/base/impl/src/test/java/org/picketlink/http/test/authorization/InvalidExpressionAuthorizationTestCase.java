@@ -0,0 +1,76 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.http.test.authorization;
+
+import org.junit.Test;
+import org.picketlink.config.SecurityConfigurationBuilder;
+import org.picketlink.config.http.HttpSecurityConfigurationException;
+import org.picketlink.event.SecurityConfigurationEvent;
+import org.picketlink.http.test.AbstractSecurityFilterTestCase;
+import org.picketlink.http.test.SecurityInitializer;
+import org.picketlink.test.weld.Deployment;
+
+import javax.enterprise.event.Observes;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Pedro Igor
+ */
+@Deployment(
+    beans = {
+        InvalidExpressionAuthorizationTestCase.SecurityConfiguration.class, SecurityInitializer.class
+    },
+    excludeBeansFromPackage = "org.picketlink.http.test"
+)
+public class InvalidExpressionAuthorizationTestCase extends AbstractSecurityFilterTestCase {
+
+    private HttpSecurityConfigurationException initializationException;
+
+    @Override
+    public void onBefore() throws Exception {
+        try {
+            super.onBefore();
+        } catch (HttpSecurityConfigurationException e) {
+            this.initializationException = e;
+        }
+    }
+
+    @Test
+    public void testFailInitializationWithInvalidExpression() throws Exception {
+        assertNotNull(this.initializationException);
+        assertTrue(this.initializationException.getMessage().contains("#{identity.account.loginName == }"));
+    }
+
+    public static class SecurityConfiguration {
+        public void configureHttpSecurity(@Observes SecurityConfigurationEvent event) {
+            SecurityConfigurationBuilder builder = event.getBuilder();
+
+            builder
+                .http()
+                    .forPath("/invalidExpression")
+                        .authorizeWith()
+                            .expression("#{identity.account.loginName == }");
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.http.test.path;
+
+import org.junit.Test;
+import org.picketlink.config.SecurityConfigurationBuilder;
+import org.picketlink.event.SecurityConfigurationEvent;
+import org.picketlink.http.test.AbstractSecurityFilterTestCase;
+import org.picketlink.http.test.SecurityInitializer;
+import org.picketlink.test.weld.Deployment;
+
+import javax.enterprise.event.Observes;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static javax.servlet.http.HttpServletResponse.SC_UNAUTHORIZED;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p>Tests that the most specific path is selected when more than one path matches a request, regardless of the order
+ * in which paths are defined.</p>
+ */
+@Deployment(
+    beans = {
+        PathSpecificityTestCase.SecurityConfiguration.class, SecurityInitializer.class
+    },
+    excludeBeansFromPackage = "org.picketlink.http.test"
+)
+public class PathSpecificityTestCase extends AbstractSecurityFilterTestCase {
+
+    @Test
+    public void testLongestPrefixPath() throws Exception {
+        assertChallenged("/admin/users/list", "Users Realm");
+    }
+
+    @Test
+    public void testPrefixPathBaseUri() throws Exception {
+        assertChallenged("/admin/users", "Users Realm");
+    }
+
+    @Test
+    public void testShorterPrefixPath() throws Exception {
+        assertChallenged("/admin/settings", "Admin Realm");
+    }
+
+    @Test
+    public void testExactPath() throws Exception {
+        assertChallenged("/admin/users/report", "Report Realm");
+    }
+
+    @Test
+    public void testPrefixPathBeforeSuffixPath() throws Exception {
+        when(this.request.getServletPath()).thenReturn("/public/page.jsf");
+
+        this.securityFilter.doFilter(this.request, this.response, this.filterChain);
+
+        verify(this.filterChain, times(1)).doFilter(any(HttpServletRequest.class), any(HttpServletResponse.class));
+    }
+
+    @Test
+    public void testSuffixPath() throws Exception {
+        assertChallenged("/page.jsf", "JSF Realm");
+    }
+
+    @Test
+    public void testDefaultPath() throws Exception {
+        assertChallenged("/other", "Default Realm");
+    }
+
+    private void assertChallenged(String path, String realmName) throws Exception {
+        when(this.request.getServletPath()).thenReturn(path);
+
+        this.securityFilter.doFilter(this.request, this.response, this.filterChain);
+
+        verify(this.response, times(1)).setHeader("WWW-Authenticate", "Basic realm=\"" + realmName + "\"");
+        verify(this.filterChain, times(0)).doFilter(any(HttpServletRequest.class), any(HttpServletResponse.class));
+    }
+
+    public static class SecurityConfiguration {
+        public void configureHttpSecurity(@Observes SecurityConfigurationEvent event) {
+            SecurityConfigurationBuilder builder = event.getBuilder();
+
+            builder
+                .http()
+                    .forPath("/*")
+                        .authenticateWith()
+                            .basic()
+                                .realmName("Default Realm")
+                    .forPath("/admin/users/report")
+                        .authenticateWith()
+                            .basic()
+                                .realmName("Report Realm")
+                    .forPath("/admin/users/*")
+                        .authenticateWith()
+                            .basic()
+                                .realmName("Users Realm")
+                    .forPath("/admin/*")
+                        .authenticateWith()
+                            .basic()
+                                .realmName("Admin Realm")
+                    .forPath("/public/*")
+                        .unprotected()
+                    .forPath("/*.jsf")
+                        .authenticateWith()
+                            .basic()
+                                .realmName("JSF Realm");
+        }
+    }
+}
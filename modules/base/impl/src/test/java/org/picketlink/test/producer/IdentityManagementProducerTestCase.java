@@ -0,0 +1,78 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.producer;
+
+import org.jboss.weld.environment.se.WeldContainer;
+import org.junit.Test;
+import org.picketlink.event.IdentityConfigurationEvent;
+import org.picketlink.idm.PartitionManager;
+import org.picketlink.idm.credential.handler.PasswordHashingExecutor;
+import org.picketlink.idm.internal.DefaultPartitionManager;
+import org.picketlink.idm.model.basic.Realm;
+import org.picketlink.test.weld.WeldTest;
+
+import javax.enterprise.event.Observes;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Checks that the resources held by the embedded {@link PartitionManager} are released when the container is shut
+ * down.</p>
+ */
+public class IdentityManagementProducerTestCase {
+
+    @Test
+    public void testCloseEmbeddedPartitionManagerOnShutdown() throws Exception {
+        WeldTest weld = new WeldTest()
+            .excludeBeansFromPackage("org.picketlink.http.test")
+            .addClass(IdentityConfiguration.class);
+
+        WeldContainer container = weld.initialize();
+
+        DefaultPartitionManager partitionManager = (DefaultPartitionManager) container.instance()
+            .select(PartitionManager.class).get();
+        Realm defaultRealm = partitionManager.getPartition(Realm.class, Realm.DEFAULT_REALM);
+        PasswordHashingExecutor hashingExecutor = partitionManager.getPasswordHashingExecutor(defaultRealm);
+
+        assertNotNull(hashingExecutor);
+        assertFalse(hashingExecutor.isShutdown());
+
+        weld.shutdown();
+
+        assertTrue(hashingExecutor.isShutdown());
+    }
+
+    public static class IdentityConfiguration {
+        public void configureIdentityManagement(@Observes IdentityConfigurationEvent event) {
+            event.getConfig()
+                .named("default")
+                    .hashing()
+                        .parallelism(1)
+                    .stores()
+                        .file()
+                            .preserveState(false)
+                            .supportAllFeatures();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * <p>Runs the PicketLink benchmarks. All JMH command line options are supported, for instance a regular expression
+ * selecting the benchmarks to run.</p>
+ *
+ * <p>Unless specified otherwise, results are written in JSON format to
+ * <code>target/benchmarks/picketlink-benchmarks-&lt;version&gt;.json</code>, so they can be compared between
+ * releases.</p>
+ */
+public class BenchmarkRunner {
+
+    private static final String RESULTS_DIRECTORY = "target/benchmarks";
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLineOptions);
+
+        if (!commandLineOptions.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+
+        if (!commandLineOptions.getResult().hasValue()) {
+            File resultsDirectory = new File(RESULTS_DIRECTORY);
+
+            if (!resultsDirectory.exists() && !resultsDirectory.mkdirs()) {
+                throw new IllegalStateException("Could not create results directory [" + resultsDirectory.getPath() + "].");
+            }
+
+            options.result(new File(resultsDirectory, "picketlink-benchmarks-" + getVersion() + ".json").getPath());
+        }
+
+        new Runner(options.build()).run();
+    }
+
+    private static String getVersion() {
+        String version = BenchmarkRunner.class.getPackage().getImplementationVersion();
+
+        if (version == null) {
+            return "SNAPSHOT";
+        }
+
+        return version;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.benchmarks.http;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.picketlink.config.HttpSecurityBuilder;
+import org.picketlink.config.SecurityConfigurationBuilder;
+import org.picketlink.config.http.PathConfiguration;
+import org.picketlink.http.internal.PathMatcher;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the resolution of the path configuration for a request, performed by the security filter for every
+ * request. The filter itself depends on a CDI container, so the benchmark exercises the {@link PathMatcher} used by
+ * the filter, configured with a mix of exact, prefix, suffix and grouped paths.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PathMatcherBenchmark {
+
+    private static final String CONTEXT_PATH = "/app";
+
+    @Param({"/app/login.html", "/app/admin/users/list", "/app/resources/style.css", "/app/public/index.html"})
+    private String requestURI;
+
+    @Param({"50"})
+    private int pathCount;
+
+    private PathMatcher pathMatcher;
+    private HttpServletRequest request;
+
+    @Setup
+    public void setup() {
+        HttpSecurityBuilder builder = new SecurityConfigurationBuilder().http();
+
+        builder
+            .forPath("/login.html")
+                .unprotected()
+            .forPath("/resources/*.css")
+                .unprotected()
+            .forPath("/admin/*")
+                .authenticateWith()
+                    .form()
+                        .loginPage("/login.html")
+                        .errorPage("/error.html")
+                .authorizeWith()
+                    .role("Administrator")
+            .forPath("/*")
+                .authenticateWith()
+                    .basic();
+
+        for (int i = 0; i < this.pathCount; i++) {
+            builder
+                .forPath("/module" + i + "/*")
+                    .authenticateWith()
+                        .basic()
+                    .authorizeWith()
+                        .role("Role " + i);
+        }
+
+        this.pathMatcher = new PathMatcher(builder.build().getHttpSecurityConfiguration().getPaths(), null);
+        this.request = createRequest(this.requestURI);
+    }
+
+    @Benchmark
+    public PathConfiguration matches() {
+        return this.pathMatcher.matches(this.request);
+    }
+
+    private static HttpServletRequest createRequest(final String requestURI) {
+        return (HttpServletRequest) Proxy.newProxyInstance(PathMatcherBenchmark.class.getClassLoader(),
+            new Class<?>[] {HttpServletRequest.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    String name = method.getName();
+
+                    if ("getRequestURI".equals(name)) {
+                        return requestURI;
+                    } else if ("getContextPath".equals(name)) {
+                        return CONTEXT_PATH;
+                    } else if ("getServletPath".equals(name)) {
+                        return requestURI.substring(CONTEXT_PATH.length());
+                    } else if ("getMethod".equals(name)) {
+                        return "GET";
+                    } else if ("getHeaders".equals(name) || "getHeaderNames".equals(name)) {
+                        return Collections.enumeration(Collections.<String>emptyList());
+                    }
+
+                    return null;
+                }
+            });
+    }
+}
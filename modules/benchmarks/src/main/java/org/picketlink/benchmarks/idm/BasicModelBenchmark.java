@@ -0,0 +1,106 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.benchmarks.idm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.picketlink.benchmarks.idm.IdentityStoreFixture.StoreType;
+import org.picketlink.idm.IdentityManager;
+import org.picketlink.idm.PartitionManager;
+import org.picketlink.idm.RelationshipManager;
+import org.picketlink.idm.model.basic.BasicModel;
+import org.picketlink.idm.model.basic.Role;
+import org.picketlink.idm.model.basic.User;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the role checks performed through {@link BasicModel}, usually once per request by authorization
+ * expressions.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BasicModelBenchmark {
+
+    @Param({"FILE", "JPA", "LDAP"})
+    private StoreType storeType;
+
+    @Param({"10"})
+    private int roleCount;
+
+    private IdentityStoreFixture fixture;
+    private RelationshipManager relationshipManager;
+    private User user;
+    private Role grantedRole;
+    private Role notGrantedRole;
+
+    @Setup
+    public void setup() {
+        this.fixture = new IdentityStoreFixture(this.storeType);
+
+        PartitionManager partitionManager = this.fixture.getPartitionManager();
+        IdentityManager identityManager = partitionManager.createIdentityManager();
+
+        this.relationshipManager = partitionManager.createRelationshipManager();
+        this.user = new User("john");
+
+        identityManager.add(this.user);
+
+        for (int i = 0; i < this.roleCount; i++) {
+            Role role = new Role("role" + i);
+
+            identityManager.add(role);
+
+            if (i % 2 == 0) {
+                BasicModel.grantRole(this.relationshipManager, this.user, role);
+                this.grantedRole = role;
+            } else {
+                this.notGrantedRole = role;
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.fixture.close();
+    }
+
+    @Benchmark
+    public boolean hasGrantedRole() {
+        return BasicModel.hasRole(this.relationshipManager, this.user, this.grantedRole);
+    }
+
+    @Benchmark
+    public boolean hasNotGrantedRole() {
+        return BasicModel.hasRole(this.relationshipManager, this.user, this.notGrantedRole);
+    }
+}
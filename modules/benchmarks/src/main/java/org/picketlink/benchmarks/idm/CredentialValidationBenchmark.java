@@ -0,0 +1,126 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.benchmarks.idm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.picketlink.idm.IdentityManager;
+import org.picketlink.idm.PartitionManager;
+import org.picketlink.idm.config.IdentityConfigurationBuilder;
+import org.picketlink.idm.credential.Credentials;
+import org.picketlink.idm.credential.Password;
+import org.picketlink.idm.credential.UsernamePasswordCredentials;
+import org.picketlink.idm.credential.encoder.BCryptPasswordEncoder;
+import org.picketlink.idm.credential.encoder.PBKDF2PasswordEncoder;
+import org.picketlink.idm.credential.encoder.PasswordEncoder;
+import org.picketlink.idm.credential.encoder.SHAPasswordEncoder;
+import org.picketlink.idm.credential.handler.PasswordCredentialHandler;
+import org.picketlink.idm.internal.DefaultPartitionManager;
+import org.picketlink.idm.model.basic.Realm;
+import org.picketlink.idm.model.basic.User;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the validation of username/password credentials for each of the {@link PasswordEncoder} provided by
+ * PicketLink. The file store is used, so results are dominated by the cost of encoding the password.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CredentialValidationBenchmark {
+
+    public enum EncoderType {
+        SHA, PBKDF2, BCRYPT
+    }
+
+    private static final String LOGIN_NAME = "john";
+    private static final String PASSWORD = "benchmark-password";
+
+    @Param({"SHA", "PBKDF2", "BCRYPT"})
+    private EncoderType encoderType;
+
+    private IdentityManager identityManager;
+
+    @Setup
+    public void setup() {
+        IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
+
+        builder
+            .named("benchmarks")
+                .stores()
+                    .file()
+                        .preserveState(false)
+                        .setCredentialHandlerProperty(PasswordCredentialHandler.PASSWORD_ENCODER, createPasswordEncoder())
+                        .supportAllFeatures();
+
+        PartitionManager partitionManager = new DefaultPartitionManager(builder.buildAll());
+
+        partitionManager.add(new Realm(Realm.DEFAULT_REALM));
+
+        this.identityManager = partitionManager.createIdentityManager();
+
+        User user = new User(LOGIN_NAME);
+
+        this.identityManager.add(user);
+        this.identityManager.updateCredential(user, new Password(PASSWORD));
+    }
+
+    @Benchmark
+    public Credentials.Status validValidation() {
+        return validate(PASSWORD);
+    }
+
+    @Benchmark
+    public Credentials.Status invalidValidation() {
+        return validate("wrong-password");
+    }
+
+    private Credentials.Status validate(String password) {
+        UsernamePasswordCredentials credentials = new UsernamePasswordCredentials(LOGIN_NAME, new Password(password));
+
+        this.identityManager.validateCredentials(credentials);
+
+        return credentials.getStatus();
+    }
+
+    private PasswordEncoder createPasswordEncoder() {
+        switch (this.encoderType) {
+            case SHA:
+                return new SHAPasswordEncoder(512);
+            case PBKDF2:
+                return new PBKDF2PasswordEncoder("benchmark-salt".getBytes(), 1000, 128);
+            case BCRYPT:
+                return new BCryptPasswordEncoder(10);
+            default:
+                throw new IllegalArgumentException("Unsupported encoder [" + this.encoderType + "].");
+        }
+    }
+}
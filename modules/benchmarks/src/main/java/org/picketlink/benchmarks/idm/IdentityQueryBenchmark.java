@@ -0,0 +1,101 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.benchmarks.idm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.picketlink.benchmarks.idm.IdentityStoreFixture.StoreType;
+import org.picketlink.idm.IdentityManager;
+import org.picketlink.idm.model.basic.User;
+import org.picketlink.idm.query.IdentityQuery;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the lookup of users by login name, the query performed by most authentication flows.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class IdentityQueryBenchmark {
+
+    @Param({"FILE", "JPA", "JDBC", "LDAP"})
+    private StoreType storeType;
+
+    @Param({"1000"})
+    private int userCount;
+
+    private IdentityStoreFixture fixture;
+    private IdentityManager identityManager;
+    private int next;
+
+    @Setup
+    public void setup() {
+        this.fixture = new IdentityStoreFixture(this.storeType);
+        this.identityManager = this.fixture.getPartitionManager().createIdentityManager();
+
+        for (int i = 0; i < this.userCount; i++) {
+            User user = new User(loginName(i));
+
+            user.setEmail(loginName(i) + "@picketlink.org");
+
+            this.fixture.addUser(user);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.fixture.close();
+    }
+
+    @Benchmark
+    public List<User> queryUserByLoginName() {
+        IdentityQuery<User> query = this.identityManager.createIdentityQuery(User.class);
+
+        query.setParameter(User.LOGIN_NAME, loginName(nextIndex()));
+
+        return query.getResultList();
+    }
+
+    private int nextIndex() {
+        // the index is not shared between threads, benchmarks run with a single thread
+        int index = this.next;
+
+        this.next = (index + 1) % this.userCount;
+
+        return index;
+    }
+
+    static String loginName(int index) {
+        return "user" + index;
+    }
+}
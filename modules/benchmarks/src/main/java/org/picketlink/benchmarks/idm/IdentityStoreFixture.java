@@ -0,0 +1,352 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.benchmarks.idm;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.picketbox.test.ldap.AbstractLDAPTest;
+import org.picketlink.idm.PartitionManager;
+import org.picketlink.idm.config.IdentityConfigurationBuilder;
+import org.picketlink.idm.config.IdentityStoresConfigurationBuilder;
+import org.picketlink.idm.internal.DefaultPartitionManager;
+import org.picketlink.idm.jpa.internal.JPAIdentityStore;
+import org.picketlink.idm.jpa.model.sample.simple.AccountTypeEntity;
+import org.picketlink.idm.jpa.model.sample.simple.AttributeTypeEntity;
+import org.picketlink.idm.jpa.model.sample.simple.GroupTypeEntity;
+import org.picketlink.idm.jpa.model.sample.simple.IdentityTypeEntity;
+import org.picketlink.idm.jpa.model.sample.simple.PartitionTypeEntity;
+import org.picketlink.idm.jpa.model.sample.simple.PasswordCredentialTypeEntity;
+import org.picketlink.idm.jpa.model.sample.simple.RelationshipIdentityTypeEntity;
+import org.picketlink.idm.jpa.model.sample.simple.RelationshipTypeEntity;
+import org.picketlink.idm.jpa.model.sample.simple.RoleTypeEntity;
+import org.picketlink.idm.model.basic.Agent;
+import org.picketlink.idm.model.basic.Grant;
+import org.picketlink.idm.model.basic.Group;
+import org.picketlink.idm.model.basic.GroupMembership;
+import org.picketlink.idm.model.basic.Realm;
+import org.picketlink.idm.model.basic.Role;
+import org.picketlink.idm.model.basic.User;
+import org.picketlink.idm.spi.ContextInitializer;
+import org.picketlink.idm.spi.IdentityContext;
+import org.picketlink.idm.spi.IdentityStore;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.UUID;
+
+import static org.picketlink.common.constants.LDAPConstants.CN;
+import static org.picketlink.common.constants.LDAPConstants.CREATE_TIMESTAMP;
+import static org.picketlink.common.constants.LDAPConstants.EMAIL;
+import static org.picketlink.common.constants.LDAPConstants.GROUP_OF_NAMES;
+import static org.picketlink.common.constants.LDAPConstants.SN;
+import static org.picketlink.common.constants.LDAPConstants.UID;
+
+/**
+ * <p>Creates a {@link PartitionManager} backed by one of the identity stores provided by PicketLink, including the
+ * resources needed by the store: an in-memory database for the JPA and JDBC stores and an embedded LDAP server for the
+ * LDAP store.</p>
+ *
+ * <p>Fixtures must be closed once the benchmark finishes, in order to release these resources.</p>
+ */
+public class IdentityStoreFixture {
+
+    public enum StoreType {
+        FILE, JPA, JDBC, LDAP
+    }
+
+    private static final String CONFIGURATION_NAME = "benchmarks";
+
+    /**
+     * <p>The JDBC store always reports this name as the configuration of the partitions it stores.</p>
+     */
+    private static final String JDBC_CONFIGURATION_NAME = "SIMPLE_JDBC_STORE_CONFIG";
+    private static final String PERSISTENCE_UNIT = "picketlink-benchmarks-pu";
+    private static final String LDAP_BASE_DN = "dc=jboss,dc=org";
+
+    private final StoreType storeType;
+    private final PartitionManager partitionManager;
+
+    private EntityManagerFactory entityManagerFactory;
+    private EntityManager entityManager;
+    private Connection jdbcConnection;
+    private EmbeddedLDAPServer ldapServer;
+
+    public IdentityStoreFixture(StoreType storeType) {
+        this(storeType, new IdentityConfigurationBuilder());
+    }
+
+    /**
+     * <p>Creates a fixture using the given builder, which may already hold store-independent configuration, for
+     * instance cache settings.</p>
+     *
+     * @param storeType
+     * @param builder
+     */
+    public IdentityStoreFixture(StoreType storeType, IdentityConfigurationBuilder builder) {
+        this.storeType = storeType;
+
+        try {
+            String configurationName = CONFIGURATION_NAME;
+
+            if (StoreType.JDBC.equals(storeType)) {
+                configurationName = JDBC_CONFIGURATION_NAME;
+            }
+
+            configureStore(builder.named(configurationName).stores());
+            this.partitionManager = new DefaultPartitionManager(builder.buildAll());
+
+            if (this.partitionManager.getPartition(Realm.class, Realm.DEFAULT_REALM) == null) {
+                this.partitionManager.add(new Realm(Realm.DEFAULT_REALM));
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public StoreType getStoreType() {
+        return this.storeType;
+    }
+
+    public PartitionManager getPartitionManager() {
+        return this.partitionManager;
+    }
+
+    /**
+     * <p>Adds a user to the default realm. The JDBC store does not support the queries performed by the
+     * {@link org.picketlink.idm.IdentityManager} to check the uniqueness of new users, so they are inserted directly
+     * into the database.</p>
+     *
+     * @param user
+     */
+    public void addUser(User user) {
+        if (!StoreType.JDBC.equals(this.storeType)) {
+            this.partitionManager.createIdentityManager().add(user);
+            return;
+        }
+
+        try {
+            PreparedStatement statement = this.jdbcConnection.prepareStatement(
+                "insert into User(id,loginName,email,enabled,createdDate,partitionID) values (?,?,?,?,?,?)");
+
+            try {
+                user.setId(UUID.randomUUID().toString());
+                user.setPartition(this.partitionManager.getPartition(Realm.class, Realm.DEFAULT_REALM));
+
+                statement.setString(1, user.getId());
+                statement.setString(2, user.getLoginName());
+                statement.setString(3, user.getEmail());
+                statement.setString(4, "y");
+                statement.setTimestamp(5, new Timestamp(System.currentTimeMillis()));
+                statement.setString(6, user.getPartition().getId());
+                statement.executeUpdate();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Could not add user [" + user.getLoginName() + "].", e);
+        }
+    }
+
+    public void close() {
+        if (this.entityManager != null) {
+            if (this.entityManager.getTransaction().isActive()) {
+                this.entityManager.getTransaction().rollback();
+            }
+
+            this.entityManager.close();
+            this.entityManagerFactory.close();
+            this.entityManager = null;
+        }
+
+        if (this.jdbcConnection != null) {
+            try {
+                // closing the last connection drops the in-memory database
+                this.jdbcConnection.close();
+            } catch (SQLException ignore) {
+            }
+
+            this.jdbcConnection = null;
+        }
+
+        if (this.ldapServer != null) {
+            try {
+                this.ldapServer.tearDown();
+            } catch (Exception e) {
+                throw new RuntimeException("Could not stop embedded LDAP server.", e);
+            }
+
+            this.ldapServer = null;
+        }
+    }
+
+    private void configureStore(IdentityStoresConfigurationBuilder stores) {
+        switch (this.storeType) {
+            case FILE:
+                stores.file().preserveState(false).supportAllFeatures();
+                break;
+            case JPA:
+                configureJPAStore(stores);
+                break;
+            case JDBC:
+                configureJDBCStore(stores);
+                break;
+            case LDAP:
+                configureLDAPStore(stores);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported store type [" + this.storeType + "].");
+        }
+    }
+
+    private void configureJPAStore(IdentityStoresConfigurationBuilder stores) {
+        this.entityManagerFactory = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT);
+        this.entityManager = this.entityManagerFactory.createEntityManager();
+        this.entityManager.getTransaction().begin();
+
+        stores
+            .jpa()
+                .mappedEntity(
+                    PartitionTypeEntity.class,
+                    AccountTypeEntity.class,
+                    RoleTypeEntity.class,
+                    GroupTypeEntity.class,
+                    IdentityTypeEntity.class,
+                    RelationshipTypeEntity.class,
+                    RelationshipIdentityTypeEntity.class,
+                    PasswordCredentialTypeEntity.class,
+                    AttributeTypeEntity.class)
+                .supportGlobalRelationship(org.picketlink.idm.model.Relationship.class)
+                .addContextInitializer(new ContextInitializer() {
+                    @Override
+                    public void initContextForStore(IdentityContext context, IdentityStore<?> store) {
+                        if (store instanceof JPAIdentityStore) {
+                            context.setParameter(JPAIdentityStore.INVOCATION_CTX_ENTITY_MANAGER, entityManager);
+                        }
+                    }
+                })
+                .supportAllFeatures();
+    }
+
+    private void configureJDBCStore(IdentityStoresConfigurationBuilder stores) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+
+        dataSource.setURL("jdbc:h2:mem:picketlink-benchmarks-jdbc");
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+
+        try {
+            // keeps the in-memory database alive until the fixture is closed
+            this.jdbcConnection = dataSource.getConnection();
+            createJDBCTables(this.jdbcConnection);
+        } catch (SQLException e) {
+            throw new RuntimeException("Could not create JDBC store tables.", e);
+        }
+
+        stores
+            .jdbc()
+                .setDataSource(dataSource)
+                .supportType(User.class)
+                .supportType(Role.class)
+                .supportAllFeatures();
+    }
+
+    private void createJDBCTables(Connection connection) throws SQLException {
+        Statement statement = connection.createStatement();
+
+        try {
+            statement.executeUpdate("create table User(id varchar,firstName varchar,lastName varchar,"
+                + "email varchar,loginName varchar,enabled varchar,createdDate timestamp,expirationDate timestamp,"
+                + "partitionID varchar)");
+            statement.executeUpdate("create table Role(id varchar,name varchar,"
+                + "enabled varchar,createdDate timestamp,expirationDate timestamp,partitionID varchar)");
+            statement.executeUpdate("create table Groups(id varchar,name varchar,"
+                + "enabled varchar,createdDate timestamp,expirationDate timestamp,parentGroup varchar,"
+                + "path varchar,partitionID varchar)");
+            statement.executeUpdate("create table Partition(id varchar,name varchar,"
+                + "typeName varchar,configurationName varchar)");
+            statement.executeUpdate("create table Attributes(owner varchar,name varchar,"
+                + "value varchar,attributeType varchar)");
+            statement.executeUpdate("create table Relationship(id varchar,relBegin varchar,"
+                + "relEnd varchar,type varchar,enabled varchar)");
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void configureLDAPStore(IdentityStoresConfigurationBuilder stores) {
+        this.ldapServer = new EmbeddedLDAPServer();
+
+        try {
+            this.ldapServer.setup();
+            this.ldapServer.importLDIF("ldap/benchmark.ldif");
+        } catch (Exception e) {
+            throw new RuntimeException("Could not start embedded LDAP server.", e);
+        }
+
+        stores
+            .ldap()
+                .baseDN(LDAP_BASE_DN)
+                .bindDN("uid=admin,ou=system")
+                .bindCredential("secret")
+                .url("ldap://localhost:10389")
+                .supportAllFeatures()
+                .mapping(Agent.class)
+                    .baseDN("ou=Agent," + LDAP_BASE_DN)
+                    .objectClasses("account")
+                    .attribute("loginName", UID, true)
+                    .readOnlyAttribute("createdDate", CREATE_TIMESTAMP)
+                .mapping(User.class)
+                    .baseDN("ou=People," + LDAP_BASE_DN)
+                    .objectClasses("inetOrgPerson", "organizationalPerson")
+                    .attribute("loginName", UID, true)
+                    .attribute("firstName", CN)
+                    .attribute("lastName", SN)
+                    .attribute("email", EMAIL)
+                    .readOnlyAttribute("createdDate", CREATE_TIMESTAMP)
+                .mapping(Role.class)
+                    .baseDN("ou=Roles," + LDAP_BASE_DN)
+                    .objectClasses(GROUP_OF_NAMES)
+                    .attribute("name", CN, true)
+                    .readOnlyAttribute("createdDate", CREATE_TIMESTAMP)
+                .mapping(Group.class)
+                    .baseDN("ou=Groups," + LDAP_BASE_DN)
+                    .objectClasses(GROUP_OF_NAMES)
+                    .attribute("name", CN, true)
+                    .readOnlyAttribute("createdDate", CREATE_TIMESTAMP)
+                .mapping(Grant.class)
+                    .forMapping(Role.class)
+                    .attribute("assignee", "member")
+                .mapping(GroupMembership.class)
+                    .forMapping(Group.class)
+                    .attribute("member", "member");
+    }
+
+    private static class EmbeddedLDAPServer extends AbstractLDAPTest {
+
+        @Override
+        protected void importLDIF(String fileName) throws Exception {
+            super.importLDIF(fileName);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.benchmarks.saml;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.picketlink.common.util.DocumentUtil;
+import org.picketlink.identity.federation.core.util.XMLSignatureUtil;
+import org.w3c.dom.Document;
+
+import javax.xml.crypto.dsig.DigestMethod;
+import javax.xml.crypto.dsig.SignatureMethod;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the signature and the validation of the signature of SAML v2 messages, using a RSA key.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class XMLSignatureBenchmark {
+
+    private KeyPair keyPair;
+    private Document unsignedDocument;
+    private Document signedDocument;
+
+    @Setup
+    public void setup() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream("keystore/sts_keystore.jks");
+
+        try {
+            keyStore.load(inputStream, "testpass".toCharArray());
+        } finally {
+            inputStream.close();
+        }
+
+        PrivateKey privateKey = (PrivateKey) keyStore.getKey("sts", "keypass".toCharArray());
+
+        this.keyPair = new KeyPair(keyStore.getCertificate("sts").getPublicKey(), privateKey);
+
+        byte[] content = SAMLParserBenchmark.readResource("saml/saml2-authnrequest.xml");
+
+        this.unsignedDocument = DocumentUtil.getDocument(new ByteArrayInputStream(content));
+        this.signedDocument = sign((Document) this.unsignedDocument.cloneNode(true));
+
+        if (!validate()) {
+            throw new IllegalStateException("Signed document could not be validated.");
+        }
+    }
+
+    @Benchmark
+    public Document signature() throws Exception {
+        // signing changes the document, every invocation signs a fresh copy
+        return sign((Document) this.unsignedDocument.cloneNode(true));
+    }
+
+    @Benchmark
+    public boolean validate() throws Exception {
+        return XMLSignatureUtil.validate(this.signedDocument, this.keyPair.getPublic());
+    }
+
+    private Document sign(Document document) throws Exception {
+        return XMLSignatureUtil.sign(document, this.keyPair, DigestMethod.SHA1, SignatureMethod.RSA_SHA1, "");
+    }
+}
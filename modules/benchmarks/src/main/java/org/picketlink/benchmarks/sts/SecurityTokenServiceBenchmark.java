@@ -0,0 +1,188 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.benchmarks.sts;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.picketlink.common.constants.WSTrustConstants;
+import org.picketlink.common.exceptions.ConfigurationException;
+import org.picketlink.common.util.DocumentUtil;
+import org.picketlink.config.federation.STSType;
+import org.picketlink.config.federation.parsers.STSConfigParser;
+import org.picketlink.identity.federation.core.parsers.wst.WSTrustParser;
+import org.picketlink.identity.federation.core.util.SOAPUtil;
+import org.picketlink.identity.federation.core.wstrust.PicketLinkSTS;
+import org.picketlink.identity.federation.core.wstrust.PicketLinkSTSConfiguration;
+import org.picketlink.identity.federation.core.wstrust.STSConfiguration;
+import org.picketlink.identity.federation.core.wstrust.plugins.saml.SAMLUtil;
+import org.picketlink.identity.federation.core.wstrust.wrappers.RequestSecurityToken;
+import org.picketlink.identity.federation.core.wstrust.wrappers.RequestSecurityTokenResponseCollection;
+import org.picketlink.identity.federation.core.wstrust.writers.WSTrustRequestWriter;
+import org.picketlink.identity.federation.ws.trust.ValidateTargetType;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.soap.SOAPMessage;
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.ws.EndpointReference;
+import javax.xml.ws.WebServiceContext;
+import javax.xml.ws.handler.MessageContext;
+import java.io.InputStream;
+import java.net.URI;
+import java.security.Principal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the issuing and the validation of SAML v2 assertions by the {@link PicketLinkSTS}, including the
+ * processing of the SOAP messages carrying the WS-Trust requests and responses.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SecurityTokenServiceBenchmark {
+
+    private BenchmarkSTS tokenService;
+    private Source issueRequest;
+    private Source validateRequest;
+
+    @Setup
+    public void setup() throws Exception {
+        this.tokenService = new BenchmarkSTS();
+        this.issueRequest = createSource(createRequest(WSTrustConstants.ISSUE_REQUEST, SAMLUtil.SAML2_TOKEN_TYPE));
+
+        Document issueResponse = this.tokenService.invoke(this.issueRequest);
+        RequestSecurityTokenResponseCollection responses = (RequestSecurityTokenResponseCollection) new WSTrustParser()
+            .parse(DocumentUtil.getNodeAsStream(issueResponse));
+        Element assertion = (Element) responses.getRequestSecurityTokenResponses().get(0).getRequestedSecurityToken()
+            .getAny().get(0);
+        RequestSecurityToken validateRequest = createRequest(WSTrustConstants.VALIDATE_REQUEST,
+            WSTrustConstants.STATUS_TYPE);
+        ValidateTargetType validateTarget = new ValidateTargetType();
+
+        validateTarget.add(assertion);
+        validateRequest.setValidateTarget(validateTarget);
+
+        this.validateRequest = createSource(validateRequest);
+    }
+
+    @Benchmark
+    public Document issue() throws Exception {
+        return this.tokenService.invoke(this.issueRequest);
+    }
+
+    @Benchmark
+    public Document validate() throws Exception {
+        return this.tokenService.invoke(this.validateRequest);
+    }
+
+    private RequestSecurityToken createRequest(String requestType, String tokenType) {
+        RequestSecurityToken request = new RequestSecurityToken();
+
+        request.setContext("benchmark");
+        request.setRequestType(URI.create(requestType));
+        request.setTokenType(URI.create(tokenType));
+
+        return request;
+    }
+
+    private Source createSource(RequestSecurityToken request) throws Exception {
+        DOMResult result = new DOMResult(DocumentUtil.createDocument());
+
+        new WSTrustRequestWriter(result).write(request);
+
+        return new DOMSource(result.getNode());
+    }
+
+    /**
+     * <p>Exposes the {@link PicketLinkSTS} outside of a web service container, using the configuration from
+     * <code>sts/picketlink-sts.xml</code>.</p>
+     */
+    private static class BenchmarkSTS extends PicketLinkSTS {
+
+        BenchmarkSTS() {
+            this.context = new BenchmarkContext();
+        }
+
+        Document invoke(Source request) throws Exception {
+            SOAPMessage message = SOAPUtil.create();
+
+            SOAPUtil.addData(request, message);
+
+            return SOAPUtil.getSOAPData(invoke(message));
+        }
+
+        @Override
+        protected STSConfiguration getConfiguration() throws ConfigurationException {
+            InputStream stream = getClass().getClassLoader().getResourceAsStream("sts/picketlink-sts.xml");
+
+            try {
+                return new PicketLinkSTSConfiguration((STSType) new STSConfigParser().parse(stream));
+            } catch (Exception e) {
+                throw new ConfigurationException(e);
+            }
+        }
+    }
+
+    private static class BenchmarkContext implements WebServiceContext {
+
+        private final Principal principal = new Principal() {
+            @Override
+            public String getName() {
+                return "jduke";
+            }
+        };
+
+        @Override
+        public MessageContext getMessageContext() {
+            return null;
+        }
+
+        @Override
+        public Principal getUserPrincipal() {
+            return this.principal;
+        }
+
+        @Override
+        public boolean isUserInRole(String role) {
+            return false;
+        }
+
+        @Override
+        public EndpointReference getEndpointReference(Element... referenceParameters) {
+            return null;
+        }
+
+        @Override
+        public <T extends EndpointReference> T getEndpointReference(Class<T> clazz, Element... referenceParameters) {
+            return null;
+        }
+    }
+}
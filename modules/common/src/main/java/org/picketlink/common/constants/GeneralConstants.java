@@ -44,12 +44,30 @@ public interface GeneralConstants {
 
     String ATTIBUTE_MANAGER = "ATTRIBUTE_MANAGER";
 
+    String AUDIT_ASYNC = "picketlink.audit.async";
+
+    String AUDIT_BATCH_SIZE = "picketlink.audit.batch.size";
+
     String AUDIT_ENABLE = "picketlink.audit.enable";
 
+    String AUDIT_FILE = "picketlink.audit.file";
+
+    String AUDIT_FILE_MAX_BACKUPS = "picketlink.audit.file.max.backups";
+
+    String AUDIT_FILE_MAX_SIZE = "picketlink.audit.file.max.size";
+
     String AUDIT_HELPER = "org.picketlink.federation.saml.AUDIT_HELPER";
 
+    String AUDIT_OVERFLOW_POLICY = "picketlink.audit.overflow.policy";
+
+    String AUDIT_QUEUE_CAPACITY = "picketlink.audit.queue.capacity";
+
+    String AUDIT_SAMPLE_RATE = "picketlink.audit.sample.rate";
+
     String AUDIT_SECURITY_DOMAIN = "picketlink.audit.securitydomain";
 
+    String AUDIT_SINK = "picketlink.audit.sink";
+
     String CHARACTER_ENCODING = "org.picketlink.federation.saml.CHARACTER_ENCODING";
 
     String CONFIGURATION = "CONFIGURATION";
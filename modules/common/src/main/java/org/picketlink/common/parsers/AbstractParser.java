@@ -23,6 +23,8 @@ import org.picketlink.common.constants.GeneralConstants;
 import org.picketlink.common.exceptions.ParsingException;
 import org.picketlink.common.util.StaxParserUtil;
 import org.picketlink.common.util.SystemPropertiesUtil;
+import org.picketlink.common.util.XMLFactoryUtil;
+import org.w3c.dom.Node;
 
 import javax.xml.stream.EventFilter;
 import javax.xml.stream.XMLEventReader;
@@ -79,12 +81,38 @@ public abstract class AbstractParser implements ParserNamespaceSupport {
         if (configStream == null)
             throw logger.nullArgumentError("InputStream");
 
-        XMLInputFactory xmlInputFactory = getXMLInputFactory();
+        return parse(filterWhitespace(StaxParserUtil.getXMLEventReader(configStream)));
+    }
+
+    /**
+     * Parse an already parsed DOM {@code Document} or {@code Element} for payload, without serializing it first. The
+     * node is not modified, so it can still be used afterwards, for instance to validate signatures.
+     *
+     * @param node
+     *
+     * @return
+     *
+     * @throws {@link IllegalArgumentException} when the node is null
+     */
+    public Object parse(Node node) throws ParsingException {
+        if (node == null)
+            throw logger.nullArgumentError("Node");
 
-        XMLEventReader xmlEventReader = StaxParserUtil.getXMLEventReader(configStream);
+        return parse(filterWhitespace(StaxParserUtil.getXMLEventReader(node)));
+    }
 
+    /**
+     * Filter out the events other than elements and non whitespace characters
+     *
+     * @param xmlEventReader
+     *
+     * @return
+     *
+     * @throws ParsingException
+     */
+    private XMLEventReader filterWhitespace(XMLEventReader xmlEventReader) throws ParsingException {
         try {
-            xmlEventReader = xmlInputFactory.createFilteredReader(xmlEventReader, new EventFilter() {
+            return XMLFactoryUtil.getXMLInputFactory().createFilteredReader(xmlEventReader, new EventFilter() {
                 public boolean accept(XMLEvent xmlEvent) {
                     // We are going to disregard characters that are new line and whitespace
                     if (xmlEvent.isCharacters()) {
@@ -104,8 +132,6 @@ public abstract class AbstractParser implements ParserNamespaceSupport {
         } catch (XMLStreamException e) {
             throw logger.parserException(e);
         }
-
-        return parse(xmlEventReader);
     }
 
     private ClassLoader getTCCL() {
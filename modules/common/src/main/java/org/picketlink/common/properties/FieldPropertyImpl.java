@@ -25,18 +25,19 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Member;
 import java.lang.reflect.Type;
 
-import static org.picketlink.common.reflection.Reflections.getFieldValue;
-import static org.picketlink.common.reflection.Reflections.setFieldValue;
-
 /**
  * A bean property based on the value contained in a field
  */
 class FieldPropertyImpl<V> implements FieldProperty<V> {
 
     private final Field field;
+    private final PropertyAccessor reader;
+    private final PropertyAccessor writer;
 
     FieldPropertyImpl(Field field) {
         this.field = field;
+        this.reader = PropertyAccessor.forField(field, false);
+        this.writer = PropertyAccessor.forField(field, true);
     }
 
     @Override
@@ -67,14 +68,18 @@ class FieldPropertyImpl<V> implements FieldProperty<V> {
 
     @Override
     public V getValue(Object instance) {
-        setAccessible();
-        return getFieldValue(field, instance, getJavaClass());
+        if (!field.isAccessible()) {
+            setAccessible();
+        }
+        return Reflections.cast(reader.get(instance));
     }
 
     @Override
     public void setValue(Object instance, V value) {
-        setAccessible();
-        setFieldValue(true, field, instance, value);
+        if (!field.isAccessible()) {
+            setAccessible();
+        }
+        writer.set(instance, value);
     }
 
     @Override
@@ -90,6 +95,8 @@ class FieldPropertyImpl<V> implements FieldProperty<V> {
     @Override
     public void setAccessible() {
         Reflections.setAccessible(field);
+        reader.reset();
+        writer.reset();
     }
 
     @Override
@@ -43,6 +43,8 @@ class MethodPropertyImpl<V> implements MethodProperty<V> {
     private final Method getterMethod;
     private final String propertyName;
     private final Method setterMethod;
+    private final PropertyAccessor getterAccessor;
+    private final PropertyAccessor setterAccessor;
 
     public MethodPropertyImpl(Method method) {
         final String accessorMethodPrefix;
@@ -90,6 +92,8 @@ class MethodPropertyImpl<V> implements MethodProperty<V> {
         this.propertyName = Introspector.decapitalize(propertyNameInAccessorMethod);
         this.getterMethod = getGetterMethod(method.getDeclaringClass(), propertyName);
         this.setterMethod = getSetterMethod(method.getDeclaringClass(), propertyName);
+        this.getterAccessor = PropertyAccessor.forGetter(this.getterMethod);
+        this.setterAccessor = this.setterMethod != null ? PropertyAccessor.forSetter(this.setterMethod) : null;
     }
 
     @Override
@@ -125,7 +129,7 @@ class MethodPropertyImpl<V> implements MethodProperty<V> {
                     this.setterMethod.getDeclaringClass() + "." + propertyName +
                     " cannot be read, as there is no getter method.");
         }
-        return Reflections.cast(invokeMethod(getterMethod, instance));
+        return Reflections.cast(getterAccessor.get(instance));
     }
 
     @Override
@@ -147,7 +151,7 @@ class MethodPropertyImpl<V> implements MethodProperty<V> {
                     this.getterMethod.getDeclaringClass() + "." + propertyName +
                     " is read only, as there is no setter method.");
         }
-        invokeMethod(setterMethod, instance, value);
+        setterAccessor.set(instance, value);
     }
 
     private static Method getSetterMethod(Class<?> clazz, String name) {
@@ -196,9 +200,11 @@ class MethodPropertyImpl<V> implements MethodProperty<V> {
     public void setAccessible() {
         if (setterMethod != null) {
             Reflections.setAccessible(setterMethod);
+            setterAccessor.reset();
         }
         if (getterMethod != null) {
             Reflections.setAccessible(getterMethod);
+            getterAccessor.reset();
         }
     }
 
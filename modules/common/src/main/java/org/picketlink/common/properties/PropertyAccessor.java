@@ -0,0 +1,241 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.picketlink.common.properties;
+
+import org.picketlink.common.reflection.Reflections;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * <p>Reads or writes the value of a property using a {@link MethodHandle}, which is resolved the first time the
+ * property is accessed.</p>
+ *
+ * <p>Calls that would fail a reflective access, such as a null or incompatible instance or value, are delegated to
+ * {@link Reflections}, so the exceptions thrown are the same as when accessing the member using reflection. The same
+ * applies if no handle can be created for the member, for instance when it is not accessible. Errors thrown by the
+ * member are rethrown unchanged, any other exception is wrapped by a {@link RuntimeException}.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+class PropertyAccessor {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Member member;
+    private final boolean write;
+    private final Class<?> valueType;
+
+    private volatile MethodHandle handle;
+    private volatile boolean reflective;
+
+    private PropertyAccessor(Member member, boolean write, Class<?> valueType) {
+        this.member = member;
+        this.write = write;
+        this.valueType = valueType;
+    }
+
+    static PropertyAccessor forGetter(Method method) {
+        return new PropertyAccessor(method, false, method.getReturnType());
+    }
+
+    static PropertyAccessor forSetter(Method method) {
+        return new PropertyAccessor(method, true, method.getParameterTypes()[0]);
+    }
+
+    static PropertyAccessor forField(Field field, boolean write) {
+        return new PropertyAccessor(field, write, field.getType());
+    }
+
+    Object get(Object instance) {
+        MethodHandle handle = getHandle();
+
+        if (handle == null || !isValidInstance(instance)) {
+            return getReflectively(instance);
+        }
+
+        try {
+            return handle.invokeExact(instance);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw wrap(t, instance);
+        }
+    }
+
+    void set(Object instance, Object value) {
+        MethodHandle handle = getHandle();
+
+        if (handle == null || !isValidInstance(instance) || !isValidValue(value)) {
+            setReflectively(instance, value);
+            return;
+        }
+
+        try {
+            handle.invokeExact(instance, value);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw wrap(t, instance, value);
+        }
+    }
+
+    /**
+     * <p>Discards the handle, so a new one is resolved on the next access. Must be called when the accessibility of
+     * the member changes.</p>
+     */
+    void reset() {
+        this.handle = null;
+        this.reflective = false;
+    }
+
+    private MethodHandle getHandle() {
+        MethodHandle handle = this.handle;
+
+        if (handle == null && !this.reflective) {
+            handle = createHandle();
+
+            if (handle == null) {
+                this.reflective = true;
+            } else {
+                this.handle = handle;
+            }
+        }
+
+        return handle;
+    }
+
+    private MethodHandle createHandle() {
+        if (Modifier.isStatic(this.member.getModifiers())) {
+            return null;
+        }
+
+        try {
+            MethodHandles.Lookup lookup;
+
+            // accessible members can be resolved by any lookup, otherwise only public members are resolved
+            if (((AccessibleObject) this.member).isAccessible()) {
+                lookup = MethodHandles.lookup();
+            } else {
+                lookup = MethodHandles.publicLookup();
+            }
+
+            MethodHandle handle;
+
+            if (this.member instanceof Method) {
+                handle = lookup.unreflect((Method) this.member);
+            } else if (this.write) {
+                handle = lookup.unreflectSetter((Field) this.member);
+            } else {
+                handle = lookup.unreflectGetter((Field) this.member);
+            }
+
+            return handle.asType(this.write ? SETTER_TYPE : GETTER_TYPE);
+        } catch (IllegalAccessException e) {
+            return null;
+        } catch (SecurityException e) {
+            return null;
+        }
+    }
+
+    private boolean isValidInstance(Object instance) {
+        return this.member.getDeclaringClass().isInstance(instance);
+    }
+
+    private boolean isValidValue(Object value) {
+        if (value == null) {
+            return !this.valueType.isPrimitive();
+        }
+
+        if (this.valueType.isPrimitive()) {
+            // widening conversions are left to reflection
+            return getWrapperType(this.valueType).equals(value.getClass());
+        }
+
+        return this.valueType.isInstance(value);
+    }
+
+    private Object getReflectively(Object instance) {
+        if (this.member instanceof Method) {
+            return Reflections.invokeMethod((Method) this.member, instance);
+        }
+
+        return Reflections.getFieldValue((Field) this.member, instance);
+    }
+
+    private void setReflectively(Object instance, Object value) {
+        if (this.member instanceof Method) {
+            Reflections.invokeMethod((Method) this.member, instance, value);
+        } else {
+            Reflections.setFieldValue((Field) this.member, instance, value);
+        }
+    }
+
+    private RuntimeException wrap(Throwable t, Object instance, Object... args) {
+        StringBuilder message = new StringBuilder();
+
+        if (this.member instanceof Method) {
+            message.append(String.format("Exception invoking method [%s] on object [%s], using arguments [",
+                    this.member.getName(), instance));
+
+            for (int i = 0; i < args.length; i++) {
+                message.append(i > 0 ? "," : "").append(args[i]);
+            }
+
+            message.append("]");
+        } else if (this.write) {
+            message.append(String.format("Exception setting [%s] field on object [%s] to value [%s]",
+                    this.member.getName(), instance, args[0]));
+        } else {
+            message.append(String.format("Exception reading [%s] field from object [%s].", this.member.getName(),
+                    instance));
+        }
+
+        return new RuntimeException(message.toString(), t);
+    }
+
+    private static Class<?> getWrapperType(Class<?> primitiveType) {
+        if (primitiveType == boolean.class) {
+            return Boolean.class;
+        } else if (primitiveType == byte.class) {
+            return Byte.class;
+        } else if (primitiveType == char.class) {
+            return Character.class;
+        } else if (primitiveType == short.class) {
+            return Short.class;
+        } else if (primitiveType == int.class) {
+            return Integer.class;
+        } else if (primitiveType == long.class) {
+            return Long.class;
+        } else if (primitiveType == float.class) {
+            return Float.class;
+        } else if (primitiveType == double.class) {
+            return Double.class;
+        }
+
+        return Void.class;
+    }
+}
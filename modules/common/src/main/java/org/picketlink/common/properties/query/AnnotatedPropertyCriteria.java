@@ -42,4 +42,8 @@ public class AnnotatedPropertyCriteria implements PropertyCriteria {
         return m.isAnnotationPresent(annotationClass);
     }
 
+    Class<? extends Annotation> getAnnotationClass() {
+        return annotationClass;
+    }
+
 }
@@ -55,4 +55,8 @@ public class NamedPropertyCriteria implements PropertyCriteria {
         }
         return false;
     }
+
+    String[] getPropertyNames() {
+        return propertyNames;
+    }
 }
@@ -23,13 +23,18 @@ import org.picketlink.common.properties.MethodProperty;
 import org.picketlink.common.properties.Properties;
 import org.picketlink.common.properties.Property;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * <p> Queries a target class for properties that match certain criteria. A property may either be a private or public
@@ -37,12 +42,25 @@ import java.util.Map;
  * or inherited from any of its superclasses. For properties that are exposed via a method, the property must be a
  * JavaBean style property, i.e. it must provide both an accessor and mutator method according to the JavaBean
  * specification. </p> <p/> <p> This class is not thread-safe, however the result returned by the getResultList() method
- * is. </p>
+ * is. </p> <p/> <p> Results of queries using only the {@link TypedPropertyCriteria}, {@link NamedPropertyCriteria} and
+ * {@link AnnotatedPropertyCriteria} criteria are cached and shared by all queries with the same target class and
+ * criteria. Results are associated with the target class using a {@link ClassValue} and classes referenced by the
+ * criteria are weakly referenced, so the cache does not prevent classes from being unloaded. Queries using any other
+ * criteria are always run. </p>
  *
  * @see PropertyQueries
  * @see PropertyCriteria
  */
 public class PropertyQuery<V> {
+
+    private static final ClassValue<ConcurrentMap<ResultKey, List<?>>> CACHED_RESULTS =
+            new ClassValue<ConcurrentMap<ResultKey, List<?>>>() {
+                @Override
+                protected ConcurrentMap<ResultKey, List<?>> computeValue(Class<?> type) {
+                    return new ConcurrentHashMap<ResultKey, List<?>>();
+                }
+            };
+
     private final Class<?> targetClass;
     private final List<PropertyCriteria> criteria;
 
@@ -154,7 +172,33 @@ public class PropertyQuery<V> {
      *
      * @return the results, or an empty list if there are no results
      */
+    @SuppressWarnings("unchecked")
     private List<Property<V>> getResultList(boolean writable) {
+        ResultKey key = createResultKey(writable);
+
+        if (key == null) {
+            return runQuery(writable);
+        }
+
+        ConcurrentMap<ResultKey, List<?>> cachedResults = CACHED_RESULTS.get(targetClass);
+        List<Property<V>> results = (List<Property<V>>) cachedResults.get(key);
+
+        if (results == null) {
+            results = runQuery(writable);
+
+            removeStaleResults(cachedResults);
+
+            List<Property<V>> existing = (List<Property<V>>) cachedResults.putIfAbsent(key, results);
+
+            if (existing != null) {
+                results = existing;
+            }
+        }
+
+        return results;
+    }
+
+    private List<Property<V>> runQuery(boolean writable) {
         Map<String, PropertyAdapter<V>> adapters = new HashMap<String, PropertyAdapter<V>>();
 
         // First check public accessor methods (we ignore private methods)
@@ -215,4 +259,116 @@ public class PropertyQuery<V> {
         return Collections.unmodifiableList(new ArrayList<Property<V>>(adapters.values()));
     }
 
+    /**
+     * Creates the key identifying the results of this query, or null if the results can not be cached.
+     */
+    private ResultKey createResultKey(boolean writable) {
+        List<Object> components = new ArrayList<Object>(criteria.size() * 2);
+
+        for (PropertyCriteria c : criteria) {
+            if (c.getClass().equals(AnnotatedPropertyCriteria.class)) {
+                components.add(new ClassReference(((AnnotatedPropertyCriteria) c).getAnnotationClass()));
+            } else if (c.getClass().equals(TypedPropertyCriteria.class)) {
+                TypedPropertyCriteria typedCriteria = (TypedPropertyCriteria) c;
+
+                components.add(new ClassReference(typedCriteria.getPropertyClass()));
+                components.add(typedCriteria.getMatchOption());
+            } else if (c.getClass().equals(NamedPropertyCriteria.class)) {
+                components.add(Arrays.asList(((NamedPropertyCriteria) c).getPropertyNames().clone()));
+            } else {
+                return null;
+            }
+        }
+
+        return new ResultKey(components, writable);
+    }
+
+    private static void removeStaleResults(ConcurrentMap<ResultKey, List<?>> cachedResults) {
+        Iterator<ResultKey> iterator = cachedResults.keySet().iterator();
+
+        while (iterator.hasNext()) {
+            if (iterator.next().isStale()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Identifies the results of a query by its criteria.
+     */
+    private static class ResultKey {
+
+        private final List<Object> components;
+        private final boolean writable;
+        private final int hashCode;
+
+        ResultKey(List<Object> components, boolean writable) {
+            this.components = components;
+            this.writable = writable;
+            this.hashCode = 31 * components.hashCode() + (writable ? 1 : 0);
+        }
+
+        boolean isStale() {
+            for (Object component : components) {
+                if (component instanceof ClassReference && ((ClassReference) component).get() == null) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof ResultKey)) {
+                return false;
+            }
+
+            ResultKey other = (ResultKey) obj;
+
+            return writable == other.writable && components.equals(other.components);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * A weak reference to a class, equal to any other reference to the same class.
+     */
+    private static class ClassReference extends WeakReference<Class<?>> {
+
+        private final int hashCode;
+
+        ClassReference(Class<?> type) {
+            super(type);
+            this.hashCode = System.identityHashCode(type);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof ClassReference)) {
+                return false;
+            }
+
+            Class<?> type = get();
+
+            return type != null && type == ((ClassReference) obj).get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
 }
@@ -62,6 +62,14 @@ public class TypedPropertyCriteria implements PropertyCriteria {
         return match(m.getReturnType());
     }
 
+    Class<?> getPropertyClass() {
+        return propertyClass;
+    }
+
+    MatchOption getMatchOption() {
+        return matchOption;
+    }
+
     private boolean match(Class<?> type) {
         if (propertyClass.equals(type)) {
             return true;
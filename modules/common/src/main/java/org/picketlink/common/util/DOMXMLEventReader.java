@@ -0,0 +1,357 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.common.util;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.XMLEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * <p>An {@link XMLEventReader} that reads the events from a DOM tree, so an already parsed document can be handed to
+ * the StAX parsers without serializing it first.</p>
+ *
+ * <p>Only elements and text are reported: adjacent text and CDATA nodes are reported as a single characters
+ * event, while comments and processing instructions are skipped. Namespace declarations are reported as
+ * {@link Namespace} events of the element declaring them. If the tree is rooted at an element other than the document
+ * element, the namespaces declared by its ancestors are reported on the root element.</p>
+ *
+ * <p>The DOM tree must be namespace aware and must not be modified while it is being read. Events have no meaningful
+ * location.</p>
+ */
+class DOMXMLEventReader implements XMLEventReader {
+
+    private final XMLEventFactory eventFactory;
+    private final Element rootElement;
+
+    /**
+     * <p>The node to visit next, or null once the root element was left.</p>
+     */
+    private Node node;
+    private boolean leaving;
+    private boolean started;
+    private boolean ended;
+    private XMLEvent peeked;
+
+    DOMXMLEventReader(Node root) {
+        if (root instanceof Document) {
+            this.rootElement = ((Document) root).getDocumentElement();
+        } else if (root instanceof Element) {
+            this.rootElement = (Element) root;
+        } else {
+            throw new IllegalArgumentException("Unsupported node type [" + root.getNodeType() + "].");
+        }
+
+        this.eventFactory = XMLFactoryUtil.getXMLEventFactory();
+        this.node = this.rootElement;
+    }
+
+    public XMLEvent nextEvent() throws XMLStreamException {
+        XMLEvent event = peek();
+
+        if (event == null) {
+            throw new NoSuchElementException();
+        }
+
+        this.peeked = null;
+
+        return event;
+    }
+
+    public boolean hasNext() {
+        return this.peeked != null || !this.ended;
+    }
+
+    public XMLEvent peek() throws XMLStreamException {
+        if (this.peeked == null && !this.ended) {
+            this.peeked = readEvent();
+        }
+
+        return this.peeked;
+    }
+
+    public Object next() {
+        try {
+            return nextEvent();
+        } catch (XMLStreamException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public String getElementText() throws XMLStreamException {
+        StringBuilder builder = new StringBuilder();
+
+        while (true) {
+            XMLEvent event = nextEvent();
+
+            if (event.isEndElement()) {
+                return builder.toString();
+            }
+
+            if (!event.isCharacters()) {
+                throw new XMLStreamException("Element text expected, found event of type [" + event.getEventType()
+                        + "].", event.getLocation());
+            }
+
+            builder.append(event.asCharacters().getData());
+        }
+    }
+
+    public XMLEvent nextTag() throws XMLStreamException {
+        while (true) {
+            XMLEvent event = nextEvent();
+
+            if (event.isStartElement() || event.isEndElement()) {
+                return event;
+            }
+
+            if (!event.isCharacters() || !event.asCharacters().isWhiteSpace()) {
+                throw new XMLStreamException("Start or end element expected, found event of type ["
+                        + event.getEventType() + "].", event.getLocation());
+            }
+        }
+    }
+
+    public Object getProperty(String name) {
+        return null;
+    }
+
+    public void close() {
+        this.peeked = null;
+        this.node = null;
+        this.ended = true;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private XMLEvent readEvent() {
+        if (!this.started) {
+            this.started = true;
+            return this.eventFactory.createStartDocument();
+        }
+
+        while (this.node != null) {
+            Node current = this.node;
+
+            if (this.leaving) {
+                moveAfter(current);
+                return createEndElement((Element) current);
+            }
+
+            switch (current.getNodeType()) {
+                case Node.ELEMENT_NODE:
+                    if (current.getFirstChild() != null) {
+                        this.node = current.getFirstChild();
+                    } else {
+                        this.leaving = true;
+                    }
+
+                    return createStartElement((Element) current);
+                case Node.TEXT_NODE:
+                case Node.CDATA_SECTION_NODE:
+                    StringBuilder text = new StringBuilder(current.getNodeValue());
+                    Node sibling = current.getNextSibling();
+
+                    while (sibling != null && isText(sibling)) {
+                        text.append(sibling.getNodeValue());
+                        current = sibling;
+                        sibling = current.getNextSibling();
+                    }
+
+                    moveAfter(current);
+
+                    return this.eventFactory.createCharacters(text.toString());
+                default:
+                    moveAfter(current);
+            }
+        }
+
+        this.ended = true;
+
+        return this.eventFactory.createEndDocument();
+    }
+
+    /**
+     * <p>Moves to the node following the given one once all its descendants were visited.</p>
+     */
+    private void moveAfter(Node current) {
+        if (current == this.rootElement) {
+            this.node = null;
+        } else if (current.getNextSibling() != null) {
+            this.node = current.getNextSibling();
+            this.leaving = false;
+        } else {
+            this.node = current.getParentNode();
+            this.leaving = true;
+        }
+    }
+
+    private XMLEvent createStartElement(Element element) {
+        List<Attribute> attributes = new ArrayList<Attribute>();
+        List<Namespace> namespaces = new ArrayList<Namespace>();
+        Set<String> declaredPrefixes = new HashSet<String>();
+
+        addAttributes(element, attributes, namespaces, declaredPrefixes);
+
+        if (element == this.rootElement) {
+            Node ancestor = element.getParentNode();
+
+            while (ancestor instanceof Element) {
+                addAttributes((Element) ancestor, null, namespaces, declaredPrefixes);
+                ancestor = ancestor.getParentNode();
+            }
+        }
+
+        return this.eventFactory.createStartElement(getPrefix(element), getNamespaceURI(element), getLocalName(element),
+                attributes.iterator(), namespaces.iterator(), new ElementNamespaceContext(element));
+    }
+
+    private XMLEvent createEndElement(Element element) {
+        return this.eventFactory.createEndElement(getPrefix(element), getNamespaceURI(element), getLocalName(element));
+    }
+
+    /**
+     * <p>Adds the attributes and the namespace declarations of the given element. Namespace declarations whose prefix
+     * was already declared are ignored, and attributes are ignored if no list is given.</p>
+     */
+    private void addAttributes(Element element, List<Attribute> attributes, List<Namespace> namespaces,
+                               Set<String> declaredPrefixes) {
+        NamedNodeMap attributeNodes = element.getAttributes();
+
+        for (int i = 0; i < attributeNodes.getLength(); i++) {
+            Attr attribute = (Attr) attributeNodes.item(i);
+
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI())) {
+                String prefix = getLocalName(attribute);
+
+                if (XMLConstants.XMLNS_ATTRIBUTE.equals(prefix)) {
+                    prefix = XMLConstants.DEFAULT_NS_PREFIX;
+                }
+
+                if (declaredPrefixes.add(prefix)) {
+                    if (prefix.length() == 0) {
+                        namespaces.add(this.eventFactory.createNamespace(attribute.getValue()));
+                    } else {
+                        namespaces.add(this.eventFactory.createNamespace(prefix, attribute.getValue()));
+                    }
+                }
+            } else if (attributes != null) {
+                attributes.add(this.eventFactory.createAttribute(getPrefix(attribute), getNamespaceURI(attribute),
+                        getLocalName(attribute), attribute.getValue()));
+            }
+        }
+    }
+
+    private static boolean isText(Node node) {
+        return node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE;
+    }
+
+    private static String getPrefix(Node node) {
+        String prefix = node.getPrefix();
+        return prefix != null ? prefix : XMLConstants.DEFAULT_NS_PREFIX;
+    }
+
+    private static String getNamespaceURI(Node node) {
+        String namespaceURI = node.getNamespaceURI();
+        return namespaceURI != null ? namespaceURI : XMLConstants.NULL_NS_URI;
+    }
+
+    private static String getLocalName(Node node) {
+        String localName = node.getLocalName();
+        return localName != null ? localName : node.getNodeName();
+    }
+
+    /**
+     * <p>Resolves the namespaces in scope of an element.</p>
+     */
+    private static class ElementNamespaceContext implements NamespaceContext {
+
+        private final Element element;
+
+        ElementNamespaceContext(Element element) {
+            this.element = element;
+        }
+
+        public String getNamespaceURI(String prefix) {
+            if (prefix == null) {
+                throw new IllegalArgumentException("prefix must not be null");
+            }
+
+            if (XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+                return XMLConstants.XML_NS_URI;
+            }
+
+            if (XMLConstants.XMLNS_ATTRIBUTE.equals(prefix)) {
+                return XMLConstants.XMLNS_ATTRIBUTE_NS_URI;
+            }
+
+            String namespaceURI = this.element.lookupNamespaceURI(prefix.length() == 0 ? null : prefix);
+
+            return namespaceURI != null ? namespaceURI : XMLConstants.NULL_NS_URI;
+        }
+
+        public String getPrefix(String namespaceURI) {
+            if (namespaceURI == null) {
+                throw new IllegalArgumentException("namespaceURI must not be null");
+            }
+
+            if (XMLConstants.XML_NS_URI.equals(namespaceURI)) {
+                return XMLConstants.XML_NS_PREFIX;
+            }
+
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(namespaceURI)) {
+                return XMLConstants.XMLNS_ATTRIBUTE;
+            }
+
+            if (namespaceURI.equals(this.element.lookupNamespaceURI(null))) {
+                return XMLConstants.DEFAULT_NS_PREFIX;
+            }
+
+            return this.element.lookupPrefix(namespaceURI);
+        }
+
+        public Iterator getPrefixes(String namespaceURI) {
+            String prefix = getPrefix(namespaceURI);
+
+            if (prefix == null) {
+                return Collections.emptyList().iterator();
+            }
+
+            return Collections.singletonList(prefix).iterator();
+        }
+    }
+}
@@ -19,7 +19,6 @@ package org.picketlink.common.util;
 
 import org.picketlink.common.PicketLinkLogger;
 import org.picketlink.common.PicketLinkLoggerFactory;
-import org.picketlink.common.constants.GeneralConstants;
 import org.picketlink.common.exceptions.ConfigurationException;
 import org.picketlink.common.exceptions.ParsingException;
 import org.picketlink.common.exceptions.ProcessingException;
@@ -34,8 +33,6 @@ import org.xml.sax.SAXException;
 
 import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
@@ -64,8 +61,6 @@ public class DocumentUtil {
 
     private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
 
-    private static DocumentBuilderFactory documentBuilderFactory;
-
     public static final String feature_external_general_entities = "http://xml.org/sax/features/external-general-entities";
     public static final String feature_external_parameter_entities = "http://xml.org/sax/features/external-parameter-entities";
     public static final String feature_disallow_doctype_decl = "http://apache.org/xml/features/disallow-doctype-decl";
@@ -95,17 +90,15 @@ public class DocumentUtil {
      *
      * @return
      *
-     * @throws ParserConfigurationException
+     * @throws ConfigurationException
      */
     public static Document createDocument() throws ConfigurationException {
-        DocumentBuilderFactory factory = getDocumentBuilderFactory();
-        DocumentBuilder builder;
+        DocumentBuilder builder = XMLFactoryUtil.getDocumentBuilder();
         try {
-            builder = factory.newDocumentBuilder();
-        } catch (ParserConfigurationException e) {
-            throw new ConfigurationException(e);
+            return builder.newDocument();
+        } finally {
+            XMLFactoryUtil.releaseDocumentBuilder(builder);
         }
-        return builder.newDocument();
     }
 
     /**
@@ -118,14 +111,16 @@ public class DocumentUtil {
      * @throws ProcessingException
      */
     public static Document createDocumentWithBaseNamespace(String baseNamespace, String localPart) throws ProcessingException {
+        DocumentBuilder builder = null;
         try {
-            DocumentBuilderFactory factory = getDocumentBuilderFactory();
-            DocumentBuilder builder = factory.newDocumentBuilder();
+            builder = XMLFactoryUtil.getDocumentBuilder();
             return builder.getDOMImplementation().createDocument(baseNamespace, localPart, null);
         } catch (DOMException e) {
             throw logger.processingError(e);
-        } catch (ParserConfigurationException e) {
+        } catch (ConfigurationException e) {
             throw logger.processingError(e);
+        } finally {
+            XMLFactoryUtil.releaseDocumentBuilder(builder);
         }
     }
 
@@ -138,7 +133,6 @@ public class DocumentUtil {
      *
      * @throws IOException
      * @throws SAXException
-     * @throws ParserConfigurationException
      */
     public static Document getDocument(String docString) throws ConfigurationException, ParsingException, ProcessingException {
         return getDocument(new StringReader(docString));
@@ -152,21 +146,19 @@ public class DocumentUtil {
      * @return
      *
      * @throws ParsingException
-     * @throws ParserConfigurationException
      * @throws IOException
      * @throws SAXException
      */
     public static Document getDocument(Reader reader) throws ConfigurationException, ProcessingException, ParsingException {
+        DocumentBuilder builder = XMLFactoryUtil.getDocumentBuilder();
         try {
-            DocumentBuilderFactory factory = getDocumentBuilderFactory();
-            DocumentBuilder builder = factory.newDocumentBuilder();
             return builder.parse(new InputSource(reader));
-        } catch (ParserConfigurationException e) {
-            throw logger.configurationError(e);
         } catch (SAXException e) {
             throw logger.parserError(e);
         } catch (IOException e) {
             throw logger.processingError(e);
+        } finally {
+            XMLFactoryUtil.releaseDocumentBuilder(builder);
         }
     }
 
@@ -177,21 +169,19 @@ public class DocumentUtil {
      *
      * @return
      *
-     * @throws ParserConfigurationException
      * @throws IOException
      * @throws SAXException
      */
     public static Document getDocument(File file) throws ConfigurationException, ProcessingException, ParsingException {
-        DocumentBuilderFactory factory = getDocumentBuilderFactory();
+        DocumentBuilder builder = XMLFactoryUtil.getDocumentBuilder();
         try {
-            DocumentBuilder builder = factory.newDocumentBuilder();
             return builder.parse(file);
-        } catch (ParserConfigurationException e) {
-            throw logger.configurationError(e);
         } catch (SAXException e) {
             throw logger.parserError(e);
         } catch (IOException e) {
             throw logger.processingError(e);
+        } finally {
+            XMLFactoryUtil.releaseDocumentBuilder(builder);
         }
     }
 
@@ -202,21 +192,19 @@ public class DocumentUtil {
      *
      * @return
      *
-     * @throws ParserConfigurationException
      * @throws IOException
      * @throws SAXException
      */
     public static Document getDocument(InputStream is) throws ConfigurationException, ProcessingException, ParsingException {
-        DocumentBuilderFactory factory = getDocumentBuilderFactory();
+        DocumentBuilder builder = XMLFactoryUtil.getDocumentBuilder();
         try {
-            DocumentBuilder builder = factory.newDocumentBuilder();
             return builder.parse(is);
-        } catch (ParserConfigurationException e) {
-            throw logger.configurationError(e);
         } catch (SAXException e) {
             throw logger.parserError(e);
         } catch (IOException e) {
             throw logger.processingError(e);
+        } finally {
+            XMLFactoryUtil.releaseDocumentBuilder(builder);
         }
     }
 
@@ -236,11 +224,13 @@ public class DocumentUtil {
 
         Result streamResult = new StreamResult(sw);
         // Write the DOM document to the stream
-        Transformer xformer = TransformerUtil.getTransformer();
+        Transformer xformer = XMLFactoryUtil.getTransformer();
         try {
             xformer.transform(source, streamResult);
         } catch (TransformerException e) {
             throw logger.processingError(e);
+        } finally {
+            XMLFactoryUtil.releaseTransformer(xformer);
         }
 
         return sw.toString();
@@ -262,11 +252,13 @@ public class DocumentUtil {
 
         Result streamResult = new StreamResult(sw);
         // Write the DOM document to the file
-        Transformer xformer = TransformerUtil.getTransformer();
+        Transformer xformer = XMLFactoryUtil.getTransformer();
         try {
             xformer.transform(source, streamResult);
         } catch (TransformerException e) {
             throw logger.processingError(e);
+        } finally {
+            XMLFactoryUtil.releaseTransformer(xformer);
         }
 
         return sw.toString();
@@ -343,11 +335,13 @@ public class DocumentUtil {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         Result streamResult = new StreamResult(baos);
         // Write the DOM document to the stream
-        Transformer transformer = TransformerUtil.getTransformer();
+        Transformer transformer = XMLFactoryUtil.getTransformer();
         try {
             transformer.transform(source, streamResult);
         } catch (TransformerException e) {
             throw logger.processingError(e);
+        } finally {
+            XMLFactoryUtil.releaseTransformer(transformer);
         }
 
         return new ByteArrayInputStream(baos.toByteArray());
@@ -370,11 +364,13 @@ public class DocumentUtil {
 
         Result streamResult = new StreamResult(baos);
         // Write the DOM document to the stream
-        Transformer transformer = TransformerUtil.getTransformer();
+        Transformer transformer = XMLFactoryUtil.getTransformer();
         try {
             transformer.transform(source, streamResult);
         } catch (TransformerException e) {
             throw logger.processingError(e);
+        } finally {
+            XMLFactoryUtil.releaseTransformer(transformer);
         }
 
         return new String(baos.toByteArray());
@@ -468,24 +464,28 @@ public class DocumentUtil {
     }
 
     public static Node getNodeFromSource(Source source) throws ProcessingException, ConfigurationException {
+        Transformer transformer = XMLFactoryUtil.getTransformer();
         try {
-            Transformer transformer = TransformerUtil.getTransformer();
             DOMResult result = new DOMResult();
             TransformerUtil.transform(transformer, source, result);
             return result.getNode();
         } catch (ParsingException te) {
             throw logger.processingError(te);
+        } finally {
+            XMLFactoryUtil.releaseTransformer(transformer);
         }
     }
 
     public static Document getDocumentFromSource(Source source) throws ProcessingException, ConfigurationException {
+        Transformer transformer = XMLFactoryUtil.getTransformer();
         try {
-            Transformer transformer = TransformerUtil.getTransformer();
             DOMResult result = new DOMResult();
             TransformerUtil.transform(transformer, source, result);
             return (Document) result.getNode();
         } catch (ParsingException te) {
             throw logger.processingError(te);
+        } finally {
+            XMLFactoryUtil.releaseTransformer(transformer);
         }
     }
 
@@ -502,43 +502,4 @@ public class DocumentUtil {
             visit(childNode, level + 1);
         }
     }
-
-    /**
-     * <p> Creates a namespace aware {@link DocumentBuilderFactory}. The returned instance is cached and shared between
-     * different threads. </p>
-     *
-     * @return
-     */
-    private static DocumentBuilderFactory getDocumentBuilderFactory() {
-        boolean tccl_jaxp = SystemPropertiesUtil.getSystemProperty(GeneralConstants.TCCL_JAXP, "false")
-                .equalsIgnoreCase("true");
-        ClassLoader prevTCCL = SecurityActions.getTCCL();
-        if (documentBuilderFactory == null) {
-            try {
-                if (tccl_jaxp) {
-                    SecurityActions.setTCCL(DocumentUtil.class.getClassLoader());
-                }
-                documentBuilderFactory = DocumentBuilderFactory.newInstance();
-                documentBuilderFactory.setNamespaceAware(true);
-                documentBuilderFactory.setXIncludeAware(true);
-                String feature = "";
-                try {
-                    feature = feature_disallow_doctype_decl;
-                    documentBuilderFactory.setFeature(feature, true);
-                    feature = feature_external_general_entities;
-                    documentBuilderFactory.setFeature(feature, false);
-                    feature = feature_external_parameter_entities;
-                    documentBuilderFactory.setFeature(feature, false);
-                } catch (ParserConfigurationException e) {
-                    throw logger.parserFeatureNotSupported(feature);
-                }
-            } finally {
-                if (tccl_jaxp) {
-                    SecurityActions.setTCCL(prevTCCL);
-                }
-            }
-        }
-
-        return documentBuilderFactory;
-    }
 }
\ No newline at end of file
@@ -59,6 +59,45 @@ public final class LDAPUtil {
         return displayStr.toString();
     }
 
+    /**
+     * <p>Encodes a string in the form returned by {@link #decodeObjectGUID(byte[])} back into the raw byte array
+     * representing the value of the <code>objectGUID</code> attribute.</p>
+     *
+     * <p>The returned array is useful to build filters based on the <code>objectGUID</code> value without retrieving
+     * the entry from Active Directory first. Eg.:</p>
+     *
+     * <p>
+     * String filter = "(&(objectClass=*)(objectGUID" + EQUAL + convertObjectGUIToByteString(encodeObjectGUID(id)) + "))";
+     * </p>
+     *
+     * @param objectGUID A string in the form of [3][2][1][0]-[5][4]-[7][6]-[8][9]-[10][11][12][13][14][15].
+     *
+     * @return A raw byte array representing the value of the <code>objectGUID</code> attribute.
+     *
+     * @throws IllegalArgumentException If the given string is not a valid <code>objectGUID</code> representation.
+     */
+    public static byte[] encodeObjectGUID(String objectGUID) {
+        String hex = objectGUID.replace("-", "");
+
+        if (hex.length() != 32 || objectGUID.length() != 36) {
+            throw new IllegalArgumentException("Invalid objectGUID [" + objectGUID + "].");
+        }
+
+        byte[] bytes = new byte[16];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+
+        // the first three groups are stored in little-endian order
+        return new byte[] {
+            bytes[3], bytes[2], bytes[1], bytes[0],
+            bytes[5], bytes[4],
+            bytes[7], bytes[6],
+            bytes[8], bytes[9], bytes[10], bytes[11], bytes[12], bytes[13], bytes[14], bytes[15]
+        };
+    }
+
     private static String convertToDashedString(byte[] objectGUID) {
         StringBuilder displayStr = new StringBuilder();
 
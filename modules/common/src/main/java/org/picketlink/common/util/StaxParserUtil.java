@@ -19,18 +19,17 @@ package org.picketlink.common.util;
 
 import org.picketlink.common.PicketLinkLogger;
 import org.picketlink.common.PicketLinkLoggerFactory;
-import org.picketlink.common.constants.GeneralConstants;
 import org.picketlink.common.constants.JBossSAMLConstants;
 import org.picketlink.common.constants.JBossSAMLURIConstants;
 import org.picketlink.common.exceptions.ConfigurationException;
 import org.picketlink.common.exceptions.ParsingException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
 import javax.xml.namespace.QName;
 import javax.xml.stream.Location;
 import javax.xml.stream.XMLEventReader;
-import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.Attribute;
 import javax.xml.stream.events.EndElement;
@@ -124,7 +123,7 @@ public class StaxParserUtil {
 
         try {
             if (useJDKTransformer) {
-                transformer = TransformerUtil.getTransformer();
+                transformer = XMLFactoryUtil.getTransformer();
             } else {
                 transformer = TransformerUtil.getStaxSourceToDomResultTransformer();
             }
@@ -142,6 +141,10 @@ public class StaxParserUtil {
             throw logger.parserException(e);
         } catch (XMLStreamException e) {
             throw logger.parserException(e);
+        } finally {
+            if (useJDKTransformer) {
+                XMLFactoryUtil.releaseTransformer(transformer);
+            }
         }
     }
 
@@ -173,22 +176,27 @@ public class StaxParserUtil {
      * @return
      */
     public static XMLEventReader getXMLEventReader(InputStream is) {
-        XMLInputFactory xmlInputFactory = null;
         XMLEventReader xmlEventReader = null;
         try {
-            xmlInputFactory = getXMLInputFactory();
-            xmlInputFactory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, Boolean.TRUE);
-            xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
-            xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
-            xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
-
-            xmlEventReader = xmlInputFactory.createXMLEventReader(is);
+            xmlEventReader = XMLFactoryUtil.getXMLInputFactory().createXMLEventReader(is);
         } catch (Exception ex) {
             throw new RuntimeException(ex);
         }
         return xmlEventReader;
     }
 
+    /**
+     * Get an XML event reader for an already parsed DOM {@code Document} or {@code Element}, so it does not need to be
+     * serialized and parsed again. The DOM must not be modified while it is read.
+     *
+     * @param node
+     *
+     * @return
+     */
+    public static XMLEventReader getXMLEventReader(Node node) {
+        return new DOMXMLEventReader(node);
+    }
+
     /**
      * Given a {@code Location}, return a formatted string [lineNum,colNum]
      *
@@ -451,20 +459,4 @@ public class StaxParserUtil {
         if (!tag.equals(elementTag))
             throw new RuntimeException(logger.parserExpectedEndTag("</" + tag + ">.  Found </" + elementTag + ">"));
     }
-
-    private static XMLInputFactory getXMLInputFactory() {
-        boolean tccl_jaxp = SystemPropertiesUtil.getSystemProperty(GeneralConstants.TCCL_JAXP, "false")
-                .equalsIgnoreCase("true");
-        ClassLoader prevTCCL = SecurityActions.getTCCL();
-        try {
-            if (tccl_jaxp) {
-                SecurityActions.setTCCL(StaxParserUtil.class.getClassLoader());
-            }
-            return XMLInputFactory.newInstance();
-        } finally {
-            if (tccl_jaxp) {
-                SecurityActions.setTCCL(prevTCCL);
-            }
-        }
-    }
 }
\ No newline at end of file
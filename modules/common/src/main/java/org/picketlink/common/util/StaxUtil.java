@@ -19,7 +19,6 @@ package org.picketlink.common.util;
 
 import org.picketlink.common.PicketLinkLogger;
 import org.picketlink.common.PicketLinkLoggerFactory;
-import org.picketlink.common.constants.GeneralConstants;
 import org.picketlink.common.exceptions.ProcessingException;
 import org.w3c.dom.Attr;
 import org.w3c.dom.DOMException;
@@ -430,18 +429,6 @@ public class StaxUtil {
     }
 
     private static XMLOutputFactory getXMLOutputFactory() {
-        boolean tccl_jaxp = SystemPropertiesUtil.getSystemProperty(GeneralConstants.TCCL_JAXP, "false")
-                .equalsIgnoreCase("true");
-        ClassLoader prevTCCL = SecurityActions.getTCCL();
-        try {
-            if (tccl_jaxp) {
-                SecurityActions.setTCCL(StaxUtil.class.getClassLoader());
-            }
-            return XMLOutputFactory.newInstance();
-        } finally {
-            if (tccl_jaxp) {
-                SecurityActions.setTCCL(prevTCCL);
-            }
-        }
+        return XMLFactoryUtil.getXMLOutputFactory();
     }
 }
\ No newline at end of file
@@ -66,10 +66,9 @@ public class TransformerUtil {
 
     private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
 
-    private static TransformerFactory transformerFactory;
-
     /**
-     * Get the Default Transformer
+     * Get the Default Transformer. A new instance is returned on each call, use {@link XMLFactoryUtil#getTransformer()}
+     * to reuse the instance of the current thread.
      *
      * @return
      *
@@ -78,7 +77,11 @@ public class TransformerUtil {
     public static Transformer getTransformer() throws ConfigurationException {
         Transformer transformer;
         try {
-            transformer = getTransformerFactory().newTransformer();
+            TransformerFactory transformerFactory = getTransformerFactory();
+
+            synchronized (transformerFactory) {
+                transformer = transformerFactory.newTransformer();
+            }
         } catch (TransformerConfigurationException e) {
             throw logger.configurationError(e);
         } catch (TransformerFactoryConfigurationError e) {
@@ -100,23 +103,7 @@ public class TransformerUtil {
      * @throws TransformerFactoryConfigurationError
      */
     public static TransformerFactory getTransformerFactory() throws TransformerFactoryConfigurationError {
-        if (transformerFactory == null) {
-            boolean tccl_jaxp = SystemPropertiesUtil.getSystemProperty(GeneralConstants.TCCL_JAXP, "false")
-                    .equalsIgnoreCase("true");
-            ClassLoader prevTCCL = SecurityActions.getTCCL();
-            try {
-                if (tccl_jaxp) {
-                    SecurityActions.setTCCL(TransformerUtil.class.getClassLoader());
-                }
-                transformerFactory = TransformerFactory.newInstance();
-            } finally {
-                if (tccl_jaxp) {
-                    SecurityActions.setTCCL(prevTCCL);
-                }
-            }
-        }
-
-        return transformerFactory;
+        return XMLFactoryUtil.getTransformerFactory();
     }
 
     /**
@@ -171,13 +158,16 @@ public class TransformerUtil {
     }
 
     public static void transform(JAXBContext context, JAXBElement<?> jaxb, Result result) throws ParsingException {
+        Transformer transformer = null;
         try {
-            Transformer transformer = getTransformer();
+            transformer = XMLFactoryUtil.getTransformer();
             JAXBSource jaxbSource = new JAXBSource(context, jaxb);
 
             transformer.transform(jaxbSource, result);
         } catch (Exception e) {
             throw logger.parserError(e);
+        } finally {
+            XMLFactoryUtil.releaseTransformer(transformer);
         }
     }
 
@@ -0,0 +1,445 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.common.util;
+
+import org.picketlink.common.PicketLinkLogger;
+import org.picketlink.common.PicketLinkLoggerFactory;
+import org.picketlink.common.constants.GeneralConstants;
+import org.picketlink.common.exceptions.ConfigurationException;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.TransformerFactoryConfigurationError;
+import javax.xml.transform.stream.StreamSource;
+import java.net.URL;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Creates and caches the JAXP factories used by PicketLink, so the JAXP lookup only happens once.</p>
+ *
+ * <p>Factories are configured once and shared by all threads, given that their implementations are thread-safe once
+ * configured. Callers must not change their configuration. No factory is bound to a thread, so pooled threads do not
+ * keep references to the class loader of the factory implementations.</p>
+ *
+ * <p>{@link DocumentBuilder} and {@link Transformer} instances are borrowed from a bounded pool, so a nested call never
+ * gets an instance that is still in use. Callers should give them back once done using
+ * {@link #releaseDocumentBuilder(DocumentBuilder)} and {@link #releaseTransformer(Transformer)}. Instances that are not
+ * given back are simply garbage collected.</p>
+ *
+ * <p>If the {@link GeneralConstants#TCCL_JAXP} system property is set to true, the factories are looked up using the
+ * class loader of this class.</p>
+ */
+public class XMLFactoryUtil {
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    private static volatile DocumentBuilderFactory documentBuilderFactory;
+
+    private static volatile TransformerFactory transformerFactory;
+
+    private static volatile DatatypeFactory datatypeFactory;
+
+    private static final ConcurrentMap<String, Templates> templates = new ConcurrentHashMap<String, Templates>();
+
+    private static volatile XMLInputFactory xmlInputFactory;
+
+    private static volatile XMLOutputFactory xmlOutputFactory;
+
+    private static volatile XMLEventFactory xmlEventFactory;
+
+    /**
+     * <p>The location of the events created by the shared {@link XMLEventFactory}, which is not meaningful.</p>
+     */
+    private static final Location UNKNOWN_LOCATION = new Location() {
+        public int getLineNumber() {
+            return -1;
+        }
+
+        public int getColumnNumber() {
+            return -1;
+        }
+
+        public int getCharacterOffset() {
+            return -1;
+        }
+
+        public String getPublicId() {
+            return null;
+        }
+
+        public String getSystemId() {
+            return null;
+        }
+    };
+
+    /**
+     * <p>The maximum number of idle {@link DocumentBuilder} and {@link Transformer} instances kept for reuse.</p>
+     */
+    private static final int MAX_IDLE_INSTANCES = 16;
+
+    private static final Queue<DocumentBuilder> idleDocumentBuilders = new ConcurrentLinkedQueue<DocumentBuilder>();
+
+    private static final AtomicInteger idleDocumentBuilderCount = new AtomicInteger();
+
+    private static final Queue<Transformer> idleTransformers = new ConcurrentLinkedQueue<Transformer>();
+
+    private static final AtomicInteger idleTransformerCount = new AtomicInteger();
+
+    /**
+     * <p>Returns the shared {@link XMLInputFactory}. It is namespace aware, coalescing, and does not support external
+     * entities.</p>
+     *
+     * @return
+     */
+    public static XMLInputFactory getXMLInputFactory() {
+        XMLInputFactory factory = xmlInputFactory;
+
+        if (factory == null) {
+            factory = new FactoryLookup<XMLInputFactory>() {
+                @Override
+                XMLInputFactory newInstance() {
+                    return XMLInputFactory.newInstance();
+                }
+            }.lookup();
+
+            factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, Boolean.TRUE);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+            factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+
+            xmlInputFactory = factory;
+        }
+
+        return factory;
+    }
+
+    /**
+     * <p>Returns the shared {@link XMLOutputFactory}.</p>
+     *
+     * @return
+     */
+    public static XMLOutputFactory getXMLOutputFactory() {
+        XMLOutputFactory factory = xmlOutputFactory;
+
+        if (factory == null) {
+            factory = new FactoryLookup<XMLOutputFactory>() {
+                @Override
+                XMLOutputFactory newInstance() {
+                    return XMLOutputFactory.newInstance();
+                }
+            }.lookup();
+
+            xmlOutputFactory = factory;
+        }
+
+        return factory;
+    }
+
+    /**
+     * <p>Returns the shared {@link XMLEventFactory}. Created events have no meaningful location, callers must not
+     * change it given that it is shared by the events created by all threads.</p>
+     *
+     * @return
+     */
+    public static XMLEventFactory getXMLEventFactory() {
+        XMLEventFactory factory = xmlEventFactory;
+
+        if (factory == null) {
+            factory = new FactoryLookup<XMLEventFactory>() {
+                @Override
+                XMLEventFactory newInstance() {
+                    return XMLEventFactory.newInstance();
+                }
+            }.lookup();
+
+            factory.setLocation(UNKNOWN_LOCATION);
+
+            xmlEventFactory = factory;
+        }
+
+        return factory;
+    }
+
+    /**
+     * <p>Returns the shared namespace aware {@link DocumentBuilderFactory}, which does not allow doctype declarations
+     * nor external entities.</p>
+     *
+     * @return
+     */
+    public static DocumentBuilderFactory getDocumentBuilderFactory() {
+        DocumentBuilderFactory factory = documentBuilderFactory;
+
+        if (factory == null) {
+            factory = new FactoryLookup<DocumentBuilderFactory>() {
+                @Override
+                DocumentBuilderFactory newInstance() {
+                    return DocumentBuilderFactory.newInstance();
+                }
+            }.lookup();
+
+            factory.setNamespaceAware(true);
+            factory.setXIncludeAware(true);
+
+            String feature = "";
+            try {
+                feature = DocumentUtil.feature_disallow_doctype_decl;
+                factory.setFeature(feature, true);
+                feature = DocumentUtil.feature_external_general_entities;
+                factory.setFeature(feature, false);
+                feature = DocumentUtil.feature_external_parameter_entities;
+                factory.setFeature(feature, false);
+            } catch (ParserConfigurationException e) {
+                throw logger.parserFeatureNotSupported(feature);
+            }
+
+            documentBuilderFactory = factory;
+        }
+
+        return factory;
+    }
+
+    /**
+     * <p>Borrows a {@link DocumentBuilder} created from {@link #getDocumentBuilderFactory()}. It should be given back
+     * using {@link #releaseDocumentBuilder(DocumentBuilder)} once done.</p>
+     *
+     * @return
+     *
+     * @throws ConfigurationException
+     */
+    public static DocumentBuilder getDocumentBuilder() throws ConfigurationException {
+        DocumentBuilder documentBuilder = idleDocumentBuilders.poll();
+
+        if (documentBuilder != null) {
+            idleDocumentBuilderCount.decrementAndGet();
+            return documentBuilder;
+        }
+
+        try {
+            return getDocumentBuilderFactory().newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw logger.configurationError(e);
+        }
+    }
+
+    /**
+     * <p>Gives back a {@link DocumentBuilder} obtained from {@link #getDocumentBuilder()}. It is reset and kept for
+     * reuse, unless enough idle instances are already kept. The caller must not use it anymore.</p>
+     *
+     * @param documentBuilder
+     */
+    public static void releaseDocumentBuilder(DocumentBuilder documentBuilder) {
+        if (documentBuilder == null) {
+            return;
+        }
+
+        if (idleDocumentBuilderCount.incrementAndGet() > MAX_IDLE_INSTANCES) {
+            idleDocumentBuilderCount.decrementAndGet();
+            return;
+        }
+
+        documentBuilder.reset();
+        idleDocumentBuilders.offer(documentBuilder);
+    }
+
+    /**
+     * <p>Returns the shared {@link TransformerFactory}.</p>
+     *
+     * @return
+     *
+     * @throws TransformerFactoryConfigurationError
+     */
+    public static TransformerFactory getTransformerFactory() throws TransformerFactoryConfigurationError {
+        TransformerFactory factory = transformerFactory;
+
+        if (factory == null) {
+            factory = new FactoryLookup<TransformerFactory>() {
+                @Override
+                TransformerFactory newInstance() {
+                    return TransformerFactory.newInstance();
+                }
+            }.lookup();
+
+            transformerFactory = factory;
+        }
+
+        return factory;
+    }
+
+    /**
+     * <p>Borrows an identity {@link Transformer}, which omits the XML declaration and does not indent. It should be given
+     * back using {@link #releaseTransformer(Transformer)} once done.</p>
+     *
+     * @return
+     *
+     * @throws ConfigurationException
+     */
+    public static Transformer getTransformer() throws ConfigurationException {
+        Transformer transformer = idleTransformers.poll();
+
+        if (transformer != null) {
+            idleTransformerCount.decrementAndGet();
+        } else {
+            TransformerFactory factory = getTransformerFactory();
+
+            try {
+                // creating transformers is not guaranteed to be thread-safe
+                synchronized (factory) {
+                    transformer = factory.newTransformer();
+                }
+            } catch (TransformerConfigurationException e) {
+                throw logger.configurationError(e);
+            }
+        }
+
+        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        transformer.setOutputProperty(OutputKeys.INDENT, "no");
+
+        return transformer;
+    }
+
+    /**
+     * <p>Gives back a {@link Transformer} obtained from {@link #getTransformer()}. Its output properties and parameters
+     * are discarded and it is kept for reuse, unless enough idle instances are already kept. The caller must not use it
+     * anymore.</p>
+     *
+     * @param transformer
+     */
+    public static void releaseTransformer(Transformer transformer) {
+        if (transformer == null) {
+            return;
+        }
+
+        if (idleTransformerCount.incrementAndGet() > MAX_IDLE_INSTANCES) {
+            idleTransformerCount.decrementAndGet();
+            return;
+        }
+
+        transformer.reset();
+        idleTransformers.offer(transformer);
+    }
+
+    /**
+     * <p>Returns the compiled form of the given stylesheet, which is compiled once and shared. A new
+     * {@link Transformer} can be safely created from the returned instance by any thread.</p>
+     *
+     * @param stylesheet
+     *
+     * @return
+     *
+     * @throws ConfigurationException
+     */
+    public static Templates getTemplates(URL stylesheet) throws ConfigurationException {
+        String key = stylesheet.toExternalForm();
+        Templates result = templates.get(key);
+
+        if (result == null) {
+            TransformerFactory factory = getTransformerFactory();
+
+            try {
+                synchronized (factory) {
+                    result = factory.newTemplates(new StreamSource(key));
+                }
+            } catch (TransformerConfigurationException e) {
+                throw logger.configurationError(e);
+            }
+
+            Templates existing = templates.putIfAbsent(key, result);
+
+            if (existing != null) {
+                result = existing;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * <p>Returns the shared {@link DatatypeFactory}.</p>
+     *
+     * @return
+     *
+     * @throws DatatypeConfigurationException
+     */
+    public static DatatypeFactory getDatatypeFactory() throws DatatypeConfigurationException {
+        DatatypeFactory factory = datatypeFactory;
+
+        if (factory == null) {
+            final DatatypeConfigurationException[] failure = new DatatypeConfigurationException[1];
+
+            factory = new FactoryLookup<DatatypeFactory>() {
+                @Override
+                DatatypeFactory newInstance() {
+                    try {
+                        return DatatypeFactory.newInstance();
+                    } catch (DatatypeConfigurationException e) {
+                        failure[0] = e;
+                        return null;
+                    }
+                }
+            }.lookup();
+
+            if (factory == null) {
+                throw failure[0];
+            }
+
+            datatypeFactory = factory;
+        }
+
+        return factory;
+    }
+
+    /**
+     * <p>Looks up a factory, using the class loader of this class as the TCCL if required.</p>
+     */
+    private abstract static class FactoryLookup<T> {
+
+        abstract T newInstance();
+
+        T lookup() {
+            boolean tccl_jaxp = SystemPropertiesUtil.getSystemProperty(GeneralConstants.TCCL_JAXP, "false")
+                    .equalsIgnoreCase("true");
+            ClassLoader prevTCCL = SecurityActions.getTCCL();
+            try {
+                if (tccl_jaxp) {
+                    SecurityActions.setTCCL(XMLFactoryUtil.class.getClassLoader());
+                }
+                return newInstance();
+            } finally {
+                if (tccl_jaxp) {
+                    SecurityActions.setTCCL(prevTCCL);
+                }
+            }
+        }
+    }
+}
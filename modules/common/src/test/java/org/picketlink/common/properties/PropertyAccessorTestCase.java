@@ -0,0 +1,222 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.common.properties;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * <p>Test case for the {@link PropertyAccessor}.</p>
+ */
+public class PropertyAccessorTestCase {
+
+    @Test
+    public void testPrimitiveFieldBoxed() throws Exception {
+        Field field = Account.class.getField("count");
+        PropertyAccessor reader = PropertyAccessor.forField(field, false);
+        PropertyAccessor writer = PropertyAccessor.forField(field, true);
+        Account account = new Account();
+
+        writer.set(account, 10);
+
+        assertEquals(10, account.count);
+        assertEquals(Integer.valueOf(10), reader.get(account));
+    }
+
+    @Test
+    public void testPrimitiveMethodBoxed() throws Exception {
+        PropertyAccessor getter = PropertyAccessor.forGetter(Account.class.getMethod("getLimit"));
+        PropertyAccessor setter = PropertyAccessor.forSetter(Account.class.getMethod("setLimit", long.class));
+        Account account = new Account();
+
+        setter.set(account, 20L);
+
+        assertEquals(20L, account.getLimit());
+        assertEquals(Long.valueOf(20L), getter.get(account));
+    }
+
+    @Test
+    public void testErrorRethrownUnchanged() throws Exception {
+        PropertyAccessor setter = PropertyAccessor.forSetter(Account.class.getMethod("setLimit", long.class));
+        AccountError error = new AccountError();
+        Account account = new Account();
+
+        account.error = error;
+
+        try {
+            setter.set(account, 20L);
+            fail();
+        } catch (AccountError expected) {
+            assertSame(error, expected);
+        }
+    }
+
+    @Test
+    public void testExceptionWrapped() throws Exception {
+        PropertyAccessor getter = PropertyAccessor.forGetter(Account.class.getMethod("getName"));
+        Account account = new Account();
+
+        try {
+            getter.get(account);
+            fail();
+        } catch (RuntimeException expected) {
+            assertTrue(IllegalStateException.class.isInstance(expected.getCause()));
+            assertTrue(expected.getMessage().contains("getName"));
+        }
+    }
+
+    @Test
+    public void testWideningValueSetByReflection() throws Exception {
+        PropertyAccessor writer = PropertyAccessor.forField(Account.class.getField("count"), true);
+        PropertyAccessor setter = PropertyAccessor.forSetter(Account.class.getMethod("setLimit", long.class));
+        Account account = new Account();
+
+        writer.set(account, (short) 5);
+        setter.set(account, 6);
+
+        assertEquals(5, account.count);
+        assertEquals(6L, account.getLimit());
+
+        AccountError error = new AccountError();
+
+        account.error = error;
+
+        // reflection wraps the error thrown by the method
+        try {
+            setter.set(account, 7);
+            fail();
+        } catch (RuntimeException expected) {
+            assertSame(error, expected.getCause());
+        }
+    }
+
+    @Test
+    public void testNullInstanceAccessedByReflection() throws Exception {
+        Field field = Account.class.getField("count");
+        Method getter = Account.class.getMethod("getLimit");
+
+        try {
+            PropertyAccessor.forField(field, false).get(null);
+            fail();
+        } catch (NullPointerException expected) {
+        }
+
+        try {
+            PropertyAccessor.forGetter(getter).get(null);
+            fail();
+        } catch (NullPointerException expected) {
+        }
+    }
+
+    @Test
+    public void testIncompatibleArgumentsAccessedByReflection() throws Exception {
+        Field field = Account.class.getField("count");
+        PropertyAccessor setter = PropertyAccessor.forSetter(Account.class.getMethod("setLimit", long.class));
+
+        try {
+            PropertyAccessor.forField(field, false).get("not an account");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+
+        try {
+            PropertyAccessor.forField(field, true).set(new Account(), "not a number");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+
+        try {
+            PropertyAccessor.forField(field, true).set(new Account(), null);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+
+        try {
+            setter.set(new Account(), 1.5d);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testNullReferenceValue() throws Exception {
+        PropertyAccessor writer = PropertyAccessor.forField(Account.class.getField("owner"), true);
+        Account account = new Account();
+
+        account.owner = "john";
+
+        writer.set(account, null);
+
+        assertNull(account.owner);
+    }
+
+    @Test
+    public void testInaccessibleFieldAccessedByReflection() throws Exception {
+        Field field = Account.class.getDeclaredField("secret");
+        PropertyAccessor reader = PropertyAccessor.forField(field, false);
+        Account account = new Account();
+
+        try {
+            reader.get(account);
+            fail();
+        } catch (RuntimeException expected) {
+            assertTrue(IllegalAccessException.class.isInstance(expected.getCause()));
+        }
+
+        field.setAccessible(true);
+        reader.reset();
+
+        assertEquals("secret", reader.get(account));
+    }
+
+    public static class Account {
+
+        public int count;
+        public String owner;
+        private String secret = "secret";
+        private long limit;
+        private AccountError error;
+
+        public long getLimit() {
+            return this.limit;
+        }
+
+        public void setLimit(long limit) {
+            if (this.error != null) {
+                throw this.error;
+            }
+
+            this.limit = limit;
+        }
+
+        public String getName() {
+            throw new IllegalStateException("No name.");
+        }
+    }
+
+    public static class AccountError extends Error {
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.common.properties.query;
+
+import org.junit.Test;
+import org.picketlink.common.properties.Property;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Test case for the results cached by {@link PropertyQuery}.</p>
+ */
+public class PropertyQueryTestCase {
+
+    @Test
+    public void testResultsCachedByCriteria() {
+        List<Property<Object>> named = PropertyQueries.createQuery(Person.class)
+            .addCriteria(new NamedPropertyCriteria("name")).getResultList();
+
+        assertEquals(1, named.size());
+        assertSame(named, PropertyQueries.createQuery(Person.class)
+            .addCriteria(new NamedPropertyCriteria("name")).getResultList());
+
+        List<Property<Object>> typed = PropertyQueries.createQuery(Person.class)
+            .addCriteria(new TypedPropertyCriteria(Address.class)).getResultList();
+
+        assertEquals(1, typed.size());
+        assertEquals("address", typed.get(0).getName());
+        assertSame(typed, PropertyQueries.createQuery(Person.class)
+            .addCriteria(new TypedPropertyCriteria(Address.class)).getResultList());
+
+        List<Property<Object>> annotated = PropertyQueries.createQuery(Person.class)
+            .addCriteria(new AnnotatedPropertyCriteria(Identifier.class)).getResultList();
+
+        assertEquals(1, annotated.size());
+        assertEquals("id", annotated.get(0).getName());
+        assertSame(annotated, PropertyQueries.createQuery(Person.class)
+            .addCriteria(new AnnotatedPropertyCriteria(Identifier.class)).getResultList());
+    }
+
+    @Test
+    public void testDifferentCriteriaNotShared() {
+        List<Property<Object>> name = PropertyQueries.createQuery(Person.class)
+            .addCriteria(new NamedPropertyCriteria("name")).getResultList();
+        List<Property<Object>> id = PropertyQueries.createQuery(Person.class)
+            .addCriteria(new NamedPropertyCriteria("id")).getResultList();
+
+        assertNotSame(name, id);
+        assertEquals("id", id.get(0).getName());
+
+        List<Property<Object>> subTypes = PropertyQueries.createQuery(Person.class)
+            .addCriteria(new TypedPropertyCriteria(Object.class, TypedPropertyCriteria.MatchOption.SUB_TYPE))
+            .getResultList();
+        List<Property<Object>> exactType = PropertyQueries.createQuery(Person.class)
+            .addCriteria(new TypedPropertyCriteria(Object.class)).getResultList();
+
+        assertTrue(subTypes.size() > 1);
+        assertTrue(exactType.isEmpty());
+
+        // the same criteria on another class
+        List<Property<Object>> employee = PropertyQueries.createQuery(Employee.class)
+            .addCriteria(new NamedPropertyCriteria("name")).getResultList();
+
+        assertEquals(1, employee.size());
+        assertNotSame(name, employee);
+        assertSame(employee, PropertyQueries.createQuery(Employee.class)
+            .addCriteria(new NamedPropertyCriteria("name")).getResultList());
+    }
+
+    @Test
+    public void testWritableResultsCachedSeparately() {
+        List<Property<Object>> all = PropertyQueries.createQuery(Person.class)
+            .addCriteria(new NamedPropertyCriteria("fullName")).getResultList();
+        List<Property<Object>> writable = PropertyQueries.createQuery(Person.class)
+            .addCriteria(new NamedPropertyCriteria("fullName")).getWritableResultList();
+
+        assertEquals(1, all.size());
+        assertTrue(writable.isEmpty());
+        assertSame(writable, PropertyQueries.createQuery(Person.class)
+            .addCriteria(new NamedPropertyCriteria("fullName")).getWritableResultList());
+    }
+
+    @Test
+    public void testOtherCriteriaNotCached() {
+        PropertyCriteria custom = new PropertyCriteria() {
+            @Override
+            public boolean fieldMatches(Field f) {
+                return f.getName().equals("name");
+            }
+
+            @Override
+            public boolean methodMatches(Method m) {
+                return false;
+            }
+        };
+
+        List<Property<Object>> first = PropertyQueries.createQuery(Person.class).addCriteria(custom).getResultList();
+        List<Property<Object>> second = PropertyQueries.createQuery(Person.class).addCriteria(custom).getResultList();
+
+        assertEquals(1, first.size());
+        assertNotSame(first, second);
+
+        // a subclass of a cacheable criteria may match differently
+        NamedPropertyCriteria nothing = new NamedPropertyCriteria("name") {
+            @Override
+            public boolean fieldMatches(Field f) {
+                return false;
+            }
+        };
+
+        assertTrue(PropertyQueries.createQuery(Person.class).addCriteria(nothing).getResultList().isEmpty());
+    }
+
+    @Test
+    public void testCriteriaClassesWeaklyReferenced() throws Exception {
+        WeakReference<Class<?>> reference = queryWithIsolatedClass();
+
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+
+        assertNull("Class referenced by the criteria was not unloaded.", reference.get());
+
+        // a miss on the same target class removes the stale results
+        assertEquals(1, PropertyQueries.createQuery(Person.class)
+            .addCriteria(new TypedPropertyCriteria(Address.class)).getResultList().size());
+    }
+
+    private WeakReference<Class<?>> queryWithIsolatedClass() throws Exception {
+        Class<?> isolatedAddress = new IsolatingClassLoader(Address.class).loadClass(Address.class.getName());
+
+        assertNotSame(Address.class, isolatedAddress);
+
+        // a class with the same name, but from another class loader, does not match nor share the cached results
+        List<Property<Object>> results = PropertyQueries.createQuery(Person.class)
+            .addCriteria(new TypedPropertyCriteria(isolatedAddress)).getResultList();
+
+        assertTrue(results.isEmpty());
+        assertEquals(1, PropertyQueries.createQuery(Person.class)
+            .addCriteria(new TypedPropertyCriteria(Address.class)).getResultList().size());
+
+        return new WeakReference<Class<?>>(isolatedAddress);
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface Identifier {
+    }
+
+    public static class Address {
+    }
+
+    public static class Person {
+
+        @Identifier
+        private String id;
+        private String name;
+        private Address address;
+
+        public String getFullName() {
+            return this.name;
+        }
+    }
+
+    public static class Employee extends Person {
+
+        private String name;
+    }
+
+    /**
+     * Defines its own copy of a class, instead of delegating to the parent class loader.
+     */
+    private static class IsolatingClassLoader extends ClassLoader {
+
+        private final Class<?> isolatedClass;
+
+        IsolatingClassLoader(Class<?> isolatedClass) {
+            super(isolatedClass.getClassLoader());
+            this.isolatedClass = isolatedClass;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(this.isolatedClass.getName())) {
+                return super.loadClass(name, resolve);
+            }
+
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> type = findLoadedClass(name);
+
+                if (type == null) {
+                    byte[] bytes = readClass(name);
+
+                    type = defineClass(name, bytes, 0, bytes.length);
+                }
+
+                return type;
+            }
+        }
+
+        private byte[] readClass(String name) throws ClassNotFoundException {
+            InputStream is = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+
+            if (is == null) {
+                throw new ClassNotFoundException(name);
+            }
+
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+
+                while ((read = is.read(buffer)) != -1) {
+                    bytes.write(buffer, 0, read);
+                }
+
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            } finally {
+                try {
+                    is.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.common.util;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Test case for the {@link DOMXMLEventReader}, which must report the same events as a StAX reader parsing the same
+ * document.</p>
+ */
+public class DOMXMLEventReaderTestCase {
+
+    private static final String SAML_NS = "urn:oasis:names:tc:SAML:2.0:assertion";
+    private static final String SOAP_NS = "http://schemas.xmlsoap.org/soap/envelope/";
+
+    private static final String ASSERTION =
+        "<saml:Assertion xmlns:saml=\"" + SAML_NS + "\" xmlns:xs=\"http://www.w3.org/2001/XMLSchema\""
+            + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" ID=\"ID_1\" Version=\"2.0\">\n"
+            + "  <!-- issued by the test -->\n"
+            + "  <saml:Issuer>http://localhost/idp</saml:Issuer>\n"
+            + "  <saml:AttributeStatement>\n"
+            + "    <saml:Attribute Name=\"role\">\n"
+            + "      <saml:AttributeValue xsi:type=\"xs:string\">manager</saml:AttributeValue>\n"
+            + "    </saml:Attribute>\n"
+            + "  </saml:AttributeStatement>\n"
+            + "</saml:Assertion>";
+
+    private static final String DEFAULT_NAMESPACE =
+        "<config xmlns=\"urn:picketlink:test\" xmlns:ext=\"urn:picketlink:ext\">"
+            + "<ext:option name=\"a\" ext:scope=\"global\">one<?ignored instruction?> two</ext:option>"
+            + "<empty/>"
+            + "<unqualified xmlns=\"\">text &amp; entities</unqualified>"
+            + "</config>";
+
+    private static final String ENVELOPE =
+        "<soap:Envelope xmlns:soap=\"" + SOAP_NS + "\" xmlns:saml=\"" + SAML_NS + "\""
+            + " xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">"
+            + "<soap:Body>"
+            + "<saml:AttributeValue xmlns:saml=\"" + SAML_NS + "\" xsi:type=\"xs:string\">manager</saml:AttributeValue>"
+            + "</soap:Body>"
+            + "</soap:Envelope>";
+
+    @Test
+    public void testSameEventsAsStream() throws Exception {
+        for (String document : new String[] {ASSERTION, DEFAULT_NAMESPACE, ENVELOPE}) {
+            List<String> streamEvents = describe(StaxParserUtil.getXMLEventReader(
+                new ByteArrayInputStream(document.getBytes("UTF-8"))));
+            List<String> domEvents = describe(StaxParserUtil.getXMLEventReader(DocumentUtil.getDocument(document)));
+
+            assertEquals(streamEvents, domEvents);
+        }
+    }
+
+    @Test
+    public void testElementRootReportsAncestorNamespaces() throws Exception {
+        Document document = DocumentUtil.getDocument(ENVELOPE);
+        Element body = (Element) document.getDocumentElement().getFirstChild();
+        Element attributeValue = (Element) body.getFirstChild();
+        XMLEventReader reader = StaxParserUtil.getXMLEventReader(attributeValue);
+
+        assertTrue(reader.nextEvent().isStartDocument());
+
+        StartElement startElement = reader.nextEvent().asStartElement();
+
+        assertEquals(new QName(SAML_NS, "AttributeValue"), startElement.getName());
+
+        Set<String> namespaces = new TreeSet<String>();
+
+        for (Iterator<?> iterator = startElement.getNamespaces(); iterator.hasNext(); ) {
+            Namespace namespace = (Namespace) iterator.next();
+            namespaces.add(namespace.getPrefix() + "=" + namespace.getNamespaceURI());
+        }
+
+        // the prefix declared by the element itself is reported once
+        assertEquals(4, namespaces.size());
+        assertTrue(namespaces.contains("saml=" + SAML_NS));
+        assertTrue(namespaces.contains("soap=" + SOAP_NS));
+        assertTrue(namespaces.contains("xs=http://www.w3.org/2001/XMLSchema"));
+        assertTrue(namespaces.contains("xsi=http://www.w3.org/2001/XMLSchema-instance"));
+
+        assertEquals("manager", reader.getElementText());
+        assertTrue(reader.nextEvent().isEndDocument());
+        assertFalse(reader.hasNext());
+
+        // the standalone payload is read as if it had been serialized with the namespaces in scope
+        assertEquals(describe(StaxParserUtil.getXMLEventReader(new ByteArrayInputStream(
+                DocumentUtil.getNodeAsString(withNamespacesInScope(attributeValue)).getBytes("UTF-8")))),
+            describe(StaxParserUtil.getXMLEventReader(attributeValue)));
+    }
+
+    @Test
+    public void testTextAndCDATAMerged() throws Exception {
+        Document document = DocumentUtil.getDocument("<value>a &lt; b<![CDATA[ <c> ]]>d</value>");
+        XMLEventReader reader = StaxParserUtil.getXMLEventReader(document);
+
+        assertTrue(reader.nextEvent().isStartDocument());
+        assertTrue(reader.nextEvent().isStartElement());
+
+        XMLEvent text = reader.nextEvent();
+
+        assertTrue(text.isCharacters());
+        assertEquals("a < b <c> d", text.asCharacters().getData());
+        assertTrue(reader.nextEvent().isEndElement());
+        assertTrue(reader.nextEvent().isEndDocument());
+    }
+
+    @Test
+    public void testXSITypeResolvedByNamespaceContext() throws Exception {
+        Document document = DocumentUtil.getDocument(ENVELOPE);
+        Element attributeValue = (Element) document.getDocumentElement().getFirstChild().getFirstChild();
+
+        for (XMLEventReader reader : new XMLEventReader[] {StaxParserUtil.getXMLEventReader(document),
+            StaxParserUtil.getXMLEventReader(attributeValue)}) {
+            StartElement startElement;
+
+            do {
+                startElement = StaxParserUtil.getNextStartElement(reader);
+            } while (!"AttributeValue".equals(startElement.getName().getLocalPart()));
+
+            String xsiType = StaxParserUtil.getXSITypeValue(startElement);
+            NamespaceContext namespaceContext = startElement.getNamespaceContext();
+            String prefix = xsiType.substring(0, xsiType.indexOf(':'));
+
+            assertEquals("xs:string", xsiType);
+            assertEquals(XMLConstants.W3C_XML_SCHEMA_NS_URI, namespaceContext.getNamespaceURI(prefix));
+            assertEquals(SAML_NS, namespaceContext.getNamespaceURI("saml"));
+            assertEquals("xs", namespaceContext.getPrefix(XMLConstants.W3C_XML_SCHEMA_NS_URI));
+            assertEquals(XMLConstants.NULL_NS_URI, namespaceContext.getNamespaceURI("undeclared"));
+        }
+    }
+
+    @Test
+    public void testDOMElementFromReader() throws Exception {
+        XMLEventReader streamReader = StaxParserUtil.getXMLEventReader(new ByteArrayInputStream(ENVELOPE.getBytes("UTF-8")));
+        XMLEventReader domReader = StaxParserUtil.getXMLEventReader(DocumentUtil.getDocument(ENVELOPE));
+        List<String> elements = new ArrayList<String>();
+
+        for (XMLEventReader reader : new XMLEventReader[] {streamReader, domReader}) {
+            StaxParserUtil.getNextStartElement(reader);
+            StaxParserUtil.getNextStartElement(reader);
+
+            Element attributeValue = StaxParserUtil.getDOMElement(reader);
+
+            assertEquals(SAML_NS, attributeValue.getNamespaceURI());
+            assertEquals("AttributeValue", attributeValue.getLocalName());
+            assertEquals("xs:string", attributeValue.getAttributeNS(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "type"));
+            assertEquals("manager", attributeValue.getTextContent());
+            elements.add(DocumentUtil.getNodeAsString(attributeValue));
+        }
+
+        assertEquals(elements.get(0), elements.get(1));
+    }
+
+    /**
+     * Describes the events read, merging adjacent characters and skipping comments and processing instructions, which
+     * are not reported by the DOM reader.
+     */
+    private List<String> describe(XMLEventReader reader) throws Exception {
+        List<String> events = new ArrayList<String>();
+        StringBuilder text = null;
+
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+
+            if (event.isCharacters()) {
+                if (text == null) {
+                    text = new StringBuilder();
+                }
+
+                text.append(event.asCharacters().getData());
+                continue;
+            }
+
+            if (event.getEventType() == XMLEvent.COMMENT || event.isProcessingInstruction()) {
+                continue;
+            }
+
+            if (text != null) {
+                events.add("characters " + text);
+                text = null;
+            }
+
+            if (event.isStartElement()) {
+                StartElement startElement = event.asStartElement();
+                Set<String> attributes = new TreeSet<String>();
+                Set<String> namespaces = new TreeSet<String>();
+
+                for (Iterator<?> iterator = startElement.getAttributes(); iterator.hasNext(); ) {
+                    Attribute attribute = (Attribute) iterator.next();
+                    attributes.add(attribute.getName() + "=" + attribute.getValue());
+                }
+
+                for (Iterator<?> iterator = startElement.getNamespaces(); iterator.hasNext(); ) {
+                    Namespace namespace = (Namespace) iterator.next();
+                    // some StAX implementations report a null URI when the default namespace is undeclared
+                    String namespaceURI = namespace.getNamespaceURI() != null ? namespace.getNamespaceURI() : "";
+
+                    namespaces.add(namespace.getPrefix() + "=" + namespaceURI);
+                }
+
+                events.add("start " + startElement.getName() + " " + attributes + " " + namespaces);
+            } else if (event.isEndElement()) {
+                events.add("end " + event.asEndElement().getName());
+            } else {
+                events.add("event " + event.getEventType());
+            }
+        }
+
+        return events;
+    }
+
+    /**
+     * Copies the element into a new document, declaring on it the namespaces declared by its ancestors.
+     */
+    private Element withNamespacesInScope(Element element) throws Exception {
+        Document document = DocumentUtil.createDocument();
+        Element copy = (Element) document.importNode(element, true);
+
+        for (org.w3c.dom.Node ancestor = element.getParentNode(); ancestor instanceof Element;
+             ancestor = ancestor.getParentNode()) {
+            org.w3c.dom.NamedNodeMap attributes = ancestor.getAttributes();
+
+            for (int i = 0; i < attributes.getLength(); i++) {
+                org.w3c.dom.Attr attribute = (org.w3c.dom.Attr) attributes.item(i);
+
+                if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI())
+                    && !copy.hasAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, attribute.getLocalName())) {
+                    copy.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, attribute.getName(), attribute.getValue());
+                }
+            }
+        }
+
+        document.appendChild(copy);
+
+        return copy;
+    }
+}
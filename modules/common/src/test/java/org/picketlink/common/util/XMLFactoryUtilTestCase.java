@@ -0,0 +1,186 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.common.util;
+
+import org.junit.Test;
+import org.picketlink.common.exceptions.ParsingException;
+import org.picketlink.common.parsers.AbstractParser;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.StartElement;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Test case for the {@link XMLFactoryUtil}.</p>
+ */
+public class XMLFactoryUtilTestCase {
+
+    private static final int MAX_IDLE_INSTANCES = 16;
+
+    private static final String DOCUMENT = "<root xmlns=\"urn:test\"><child>value</child></root>";
+
+    @Test
+    public void testNestedDocumentBuilders() throws Exception {
+        DocumentBuilder outer = XMLFactoryUtil.getDocumentBuilder();
+
+        try {
+            DocumentBuilder inner = XMLFactoryUtil.getDocumentBuilder();
+
+            assertNotSame(outer, inner);
+
+            XMLFactoryUtil.releaseDocumentBuilder(inner);
+
+            // a nested parse must not reset the builder still in use by the caller
+            assertEquals("root", DocumentUtil.getDocument(DOCUMENT).getDocumentElement().getLocalName());
+
+            Document document = outer.parse(new InputSource(new StringReader(DOCUMENT)));
+
+            assertEquals("urn:test", document.getDocumentElement().getNamespaceURI());
+        } finally {
+            XMLFactoryUtil.releaseDocumentBuilder(outer);
+        }
+    }
+
+    @Test
+    public void testReleasedDocumentBuilderReused() throws Exception {
+        DocumentBuilder documentBuilder = XMLFactoryUtil.getDocumentBuilder();
+
+        XMLFactoryUtil.releaseDocumentBuilder(documentBuilder);
+
+        // other idle instances may be returned first
+        List<DocumentBuilder> borrowed = new ArrayList<DocumentBuilder>();
+
+        try {
+            for (int i = 0; i <= MAX_IDLE_INSTANCES; i++) {
+                DocumentBuilder reused = XMLFactoryUtil.getDocumentBuilder();
+
+                assertTrue(reused.isNamespaceAware());
+                borrowed.add(reused);
+            }
+
+            assertTrue(borrowed.contains(documentBuilder));
+        } finally {
+            for (DocumentBuilder reused : borrowed) {
+                XMLFactoryUtil.releaseDocumentBuilder(reused);
+            }
+        }
+    }
+
+    @Test
+    public void testNestedTransformers() throws Exception {
+        Transformer outer = XMLFactoryUtil.getTransformer();
+
+        try {
+            outer.setOutputProperty(OutputKeys.INDENT, "yes");
+
+            Transformer inner = XMLFactoryUtil.getTransformer();
+
+            assertNotSame(outer, inner);
+            assertEquals("no", inner.getOutputProperty(OutputKeys.INDENT));
+
+            XMLFactoryUtil.releaseTransformer(inner);
+
+            // a nested transformation must not reset the transformer still in use by the caller
+            DocumentUtil.getDocumentAsString(DocumentUtil.getDocument(DOCUMENT));
+
+            assertEquals("yes", outer.getOutputProperty(OutputKeys.INDENT));
+        } finally {
+            XMLFactoryUtil.releaseTransformer(outer);
+        }
+    }
+
+    @Test
+    public void testReleasedTransformerReset() throws Exception {
+        Transformer transformer = XMLFactoryUtil.getTransformer();
+
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        transformer.setParameter("test", "value");
+
+        XMLFactoryUtil.releaseTransformer(transformer);
+
+        List<Transformer> borrowed = new ArrayList<Transformer>();
+
+        try {
+            for (int i = 0; i <= MAX_IDLE_INSTANCES; i++) {
+                borrowed.add(XMLFactoryUtil.getTransformer());
+            }
+
+            assertTrue(borrowed.contains(transformer));
+            assertEquals("no", transformer.getOutputProperty(OutputKeys.INDENT));
+            assertEquals("yes", transformer.getOutputProperty(OutputKeys.OMIT_XML_DECLARATION));
+            assertNull(transformer.getParameter("test"));
+        } finally {
+            for (Transformer reused : borrowed) {
+                XMLFactoryUtil.releaseTransformer(reused);
+            }
+        }
+    }
+
+    @Test
+    public void testParserInputFactoryNotShared() throws Exception {
+        TestParser parser = new TestParser();
+        XMLInputFactory xmlInputFactory = parser.getXMLInputFactory();
+
+        assertNotSame(XMLFactoryUtil.getXMLInputFactory(), xmlInputFactory);
+        assertNotSame(xmlInputFactory, parser.getXMLInputFactory());
+
+        // changing the factory of a parser does not affect the shared one
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+
+        assertEquals(Boolean.TRUE, XMLFactoryUtil.getXMLInputFactory().getProperty(XMLInputFactory.IS_COALESCING));
+        assertEquals(new QName("urn:test", "root"), parser.parse(new ByteArrayInputStream(DOCUMENT.getBytes())));
+    }
+
+    private static class TestParser extends AbstractParser {
+
+        @Override
+        protected XMLInputFactory getXMLInputFactory() {
+            return super.getXMLInputFactory();
+        }
+
+        public Object parse(XMLEventReader xmlEventReader) throws ParsingException {
+            try {
+                StartElement startElement = xmlEventReader.nextTag().asStartElement();
+
+                return startElement.getName();
+            } catch (XMLStreamException e) {
+                throw new ParsingException(e);
+            }
+        }
+
+        public boolean supports(QName qname) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.identity.federation.core.audit;
+
+import org.jboss.security.audit.AuditEvent;
+import org.picketlink.common.PicketLinkLogger;
+import org.picketlink.common.PicketLinkLoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>Delivers audit events to a {@link PicketLinkAuditSink} from a background thread, so the threads raising the events
+ * do not wait for the sink.</p>
+ *
+ * <p>Events are held by a bounded queue. Enqueuing does not take any lock: the queue is a non-blocking linked queue,
+ * and its capacity is enforced by a non-fair semaphore whose permits are only blocked on by the {@link
+ * AuditOverflowPolicy#BLOCK} policy. The dispatcher thread drains the queue in batches of at most the configured batch
+ * size, and releases the capacity held by a batch once the sink is done with it.</p>
+ *
+ * <p>The dispatcher thread is only started when the first event is raised, so a dispatcher that is never used does not
+ * hold a thread. Whoever creates a dispatcher must call {@link #stop()} once it is no longer used, which delivers the
+ * pending events, stops the thread and closes the sink. Events raised after {@link #stop()} are delivered to the sink
+ * by the calling thread.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public class AsyncAuditDispatcher {
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    /**
+     * <p>Max time the dispatcher thread waits for new events before checking the queue again.</p>
+     */
+    private static final long MAX_IDLE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * <p>Max time {@link #stop()} waits for the pending events to be delivered.</p>
+     */
+    private static final long STOP_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    private final PicketLinkAuditSink sink;
+    private final int capacity;
+    private final int batchSize;
+    private final AuditOverflowPolicy overflowPolicy;
+    private final int sampleRate;
+
+    private final Queue<AuditEvent> events = new ConcurrentLinkedQueue<AuditEvent>();
+    private final Semaphore freeSlots;
+    private final Thread dispatcherThread;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicBoolean overflowReported = new AtomicBoolean();
+    private volatile boolean running = true;
+    private volatile boolean waiting;
+
+    private final AtomicLong sampleCounter = new AtomicLong();
+    private final AtomicLong acceptedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    /**
+     * Create a dispatcher. The dispatcher thread is started by the first call to {@link #dispatch(AuditEvent)}.
+     *
+     * @param sink the sink to which events are delivered
+     * @param capacity the max number of events waiting to be delivered
+     * @param batchSize the max number of events delivered to the sink at once
+     * @param overflowPolicy what to do with events raised while the queue is full
+     * @param sampleRate when using {@link AuditOverflowPolicy#SAMPLE}, one out of how many events is kept
+     */
+    public AsyncAuditDispatcher(PicketLinkAuditSink sink, int capacity, int batchSize, AuditOverflowPolicy overflowPolicy,
+                                int sampleRate) {
+        if (sink == null) {
+            throw logger.nullArgumentError("sink");
+        }
+
+        if (capacity <= 0 || batchSize <= 0 || sampleRate <= 0) {
+            throw new IllegalArgumentException("Capacity, batch size and sample rate must be positive.");
+        }
+
+        if (overflowPolicy == null) {
+            throw logger.nullArgumentError("overflowPolicy");
+        }
+
+        this.sink = sink;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.sampleRate = sampleRate;
+        this.freeSlots = new Semaphore(capacity);
+        this.dispatcherThread = new Thread(new Dispatcher(), "picketlink-audit-dispatcher");
+        this.dispatcherThread.setDaemon(true);
+    }
+
+    /**
+     * Queue an event to be delivered to the sink
+     *
+     * @param event
+     *
+     * @return false if the event was dropped
+     */
+    public boolean dispatch(AuditEvent event) {
+        if (!this.running) {
+            deliver(Collections.singletonList(event));
+            return true;
+        }
+
+        if (!this.started.get() && this.started.compareAndSet(false, true)) {
+            this.dispatcherThread.start();
+        }
+
+        if (!acquireSlot()) {
+            this.droppedCount.incrementAndGet();
+
+            if (this.overflowReported.compareAndSet(false, true)) {
+                logger.warn("Audit queue is full, events are being dropped. Queue capacity: " + this.capacity
+                        + ", overflow policy: " + this.overflowPolicy + ".");
+            }
+
+            return false;
+        }
+
+        this.acceptedCount.incrementAndGet();
+        this.events.offer(event);
+
+        // the dispatcher thread sets the flag before checking the queue for the last time, so it either sees the event
+        // or is woken up
+        if (this.waiting) {
+            LockSupport.unpark(this.dispatcherThread);
+        }
+
+        return true;
+    }
+
+    /**
+     * Stop the dispatcher thread once the pending events are delivered, and close the sink
+     */
+    public void stop() {
+        if (!this.running) {
+            return;
+        }
+
+        this.running = false;
+
+        LockSupport.unpark(this.dispatcherThread);
+
+        try {
+            this.dispatcherThread.join(STOP_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (this.dispatcherThread.isAlive()) {
+            logger.warn("Audit dispatcher did not deliver all pending events in time. Pending events: "
+                    + getQueueDepth() + ".");
+        } else {
+            // events queued by callers that checked the state just before the dispatcher thread stopped
+            List<AuditEvent> remaining = new ArrayList<AuditEvent>();
+            AuditEvent event;
+
+            while ((event = this.events.poll()) != null) {
+                remaining.add(event);
+            }
+
+            if (!remaining.isEmpty()) {
+                deliver(remaining);
+                this.freeSlots.release(remaining.size());
+            }
+        }
+
+        this.sink.close();
+    }
+
+    /**
+     * The max number of events waiting to be delivered
+     *
+     * @return
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * The number of events waiting to be delivered, including the ones being delivered
+     *
+     * @return
+     */
+    public int getQueueDepth() {
+        return this.capacity - this.freeSlots.availablePermits();
+    }
+
+    /**
+     * The total number of events queued
+     *
+     * @return
+     */
+    public long getAcceptedCount() {
+        return this.acceptedCount.get();
+    }
+
+    /**
+     * The total number of events dropped by the overflow policy
+     *
+     * @return
+     */
+    public long getDroppedCount() {
+        return this.droppedCount.get();
+    }
+
+    /**
+     * The total number of events delivered to the sink
+     *
+     * @return
+     */
+    public long getDispatchedCount() {
+        return this.dispatchedCount.get();
+    }
+
+    /**
+     * The total number of events the sink failed to write
+     *
+     * @return
+     */
+    public long getFailedCount() {
+        return this.failedCount.get();
+    }
+
+    private boolean acquireSlot() {
+        if (this.overflowPolicy == AuditOverflowPolicy.SAMPLE && this.freeSlots.availablePermits() <= this.capacity / 2
+                && this.sampleCounter.incrementAndGet() % this.sampleRate != 0) {
+            return false;
+        }
+
+        if (this.freeSlots.tryAcquire()) {
+            return true;
+        }
+
+        if (this.overflowPolicy == AuditOverflowPolicy.BLOCK) {
+            try {
+                this.freeSlots.acquire();
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return false;
+    }
+
+    private void deliver(List<AuditEvent> batch) {
+        try {
+            this.sink.audit(batch);
+            this.dispatchedCount.addAndGet(batch.size());
+        } catch (RuntimeException e) {
+            this.failedCount.addAndGet(batch.size());
+            logger.error(e);
+        }
+    }
+
+    private class Dispatcher implements Runnable {
+
+        public void run() {
+            List<AuditEvent> batch = new ArrayList<AuditEvent>(batchSize);
+
+            while (true) {
+                AuditEvent event;
+
+                while (batch.size() < batchSize && (event = events.poll()) != null) {
+                    batch.add(event);
+                }
+
+                if (!batch.isEmpty()) {
+                    deliver(batch);
+                    freeSlots.release(batch.size());
+                    batch.clear();
+                    continue;
+                }
+
+                if (!running) {
+                    return;
+                }
+
+                waiting = true;
+
+                if (events.isEmpty() && running) {
+                    LockSupport.parkNanos(this, MAX_IDLE_NANOS);
+                }
+
+                waiting = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.identity.federation.core.audit;
+
+import org.jboss.security.audit.AuditEvent;
+import org.jboss.security.audit.AuditManager;
+
+import java.util.List;
+
+/**
+ * A {@link PicketLinkAuditSink} that hands the events over to the {@link AuditManager} of a security domain.
+ */
+public class AuditManagerSink implements PicketLinkAuditSink {
+
+    private final AuditManager auditManager;
+
+    public AuditManagerSink(AuditManager auditManager) {
+        this.auditManager = auditManager;
+    }
+
+    public void audit(List<AuditEvent> events) {
+        for (AuditEvent event : events) {
+            this.auditManager.audit(event);
+        }
+    }
+
+    public void close() {
+    }
+}
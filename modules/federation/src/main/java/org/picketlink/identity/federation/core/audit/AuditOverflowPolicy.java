@@ -0,0 +1,40 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.identity.federation.core.audit;
+
+/**
+ * What the {@link AsyncAuditDispatcher} does with an event raised while its queue is full.
+ */
+public enum AuditOverflowPolicy {
+
+    /**
+     * Wait until the queue has room for the event. No event is lost, but a slow sink slows down the callers.
+     */
+    BLOCK,
+
+    /**
+     * Drop the event.
+     */
+    DROP,
+
+    /**
+     * Once the queue is half full, only keep one out of every <i>sample rate</i> events, and drop the event if the queue
+     * is full. Callers are never slowed down, and events of all kinds keep being audited while the sink catches up.
+     */
+    SAMPLE
+}
@@ -37,18 +37,39 @@ import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.servlet.ServletContext;
 import java.io.InputStream;
+import java.util.Collections;
 
 /**
  * Helper class to deal with audit
  *
+ * <p>Events are written to a {@link PicketLinkAuditSink}, by default the {@link AuditManager} of the security domain.
+ * Another sink can be configured using the {@link GeneralConstants#AUDIT_SINK} system property, or by overriding
+ * {@link #createAuditSink()}. Unless the {@link GeneralConstants#AUDIT_ASYNC} system property is set to false, events
+ * are delivered to the sink by an {@link AsyncAuditDispatcher}, configured using the
+ * {@link GeneralConstants#AUDIT_QUEUE_CAPACITY}, {@link GeneralConstants#AUDIT_BATCH_SIZE},
+ * {@link GeneralConstants#AUDIT_OVERFLOW_POLICY} and {@link GeneralConstants#AUDIT_SAMPLE_RATE} system properties.</p>
+ *
+ * <p>The dispatcher thread is only started when the first event is audited. Whoever creates a helper owns it and must
+ * call {@link #stop()} once it is no longer used, helpers obtained from someone else must not be stopped.</p>
+ *
  * @author anil saldhana
  */
 public class PicketLinkAuditHelper {
 
     private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
 
+    private static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    private static final int DEFAULT_SAMPLE_RATE = 10;
+
     private AuditManager auditManager = null;
 
+    private PicketLinkAuditSink auditSink = null;
+
+    private AsyncAuditDispatcher dispatcher = null;
+
     /**
      * Create a {@link PicketLinkAuditHelper}
      *
@@ -58,10 +79,12 @@ public class PicketLinkAuditHelper {
      */
     public PicketLinkAuditHelper(String securityDomainName) throws ConfigurationException {
         configureAuditManager(securityDomainName);
+        configureAuditSink();
     }
 
     public PicketLinkAuditHelper(ServletContext servletContext) throws ConfigurationException {
         configureAuditManager(getSecurityDomainName(servletContext));
+        configureAuditSink();
     }
 
     protected void configureAuditManager(String securityDomainName) throws ConfigurationException {
@@ -74,16 +97,100 @@ public class PicketLinkAuditHelper {
         }
     }
 
+    /**
+     * Create the sink to which events are written. If no sink is configured, events are written to the
+     * {@link AuditManager}, if any.
+     *
+     * @return the sink, or null if events can not be written
+     *
+     * @throws ConfigurationException
+     */
+    protected PicketLinkAuditSink createAuditSink() throws ConfigurationException {
+        String sinkType = SecurityActions.getSystemProperty(GeneralConstants.AUDIT_SINK, null);
+
+        if (StringUtil.isNotNull(sinkType)) {
+            Class<?> sinkClass = SecurityActions.loadClass(getClass(), sinkType);
+
+            if (sinkClass == null) {
+                throw logger.configurationError(new ClassNotFoundException(sinkType));
+            }
+
+            try {
+                return (PicketLinkAuditSink) sinkClass.newInstance();
+            } catch (Exception e) {
+                throw logger.configurationError(e);
+            }
+        }
+
+        if (auditManager != null) {
+            return new AuditManagerSink(auditManager);
+        }
+
+        return null;
+    }
+
+    private void configureAuditSink() throws ConfigurationException {
+        auditSink = createAuditSink();
+
+        if (auditSink == null) {
+            return;
+        }
+
+        if (Boolean.parseBoolean(SecurityActions.getSystemProperty(GeneralConstants.AUDIT_ASYNC, "true"))) {
+            try {
+                int capacity = getIntProperty(GeneralConstants.AUDIT_QUEUE_CAPACITY, DEFAULT_QUEUE_CAPACITY);
+                int batchSize = getIntProperty(GeneralConstants.AUDIT_BATCH_SIZE, DEFAULT_BATCH_SIZE);
+                int sampleRate = getIntProperty(GeneralConstants.AUDIT_SAMPLE_RATE, DEFAULT_SAMPLE_RATE);
+                AuditOverflowPolicy overflowPolicy = AuditOverflowPolicy.valueOf(SecurityActions.getSystemProperty(
+                        GeneralConstants.AUDIT_OVERFLOW_POLICY, AuditOverflowPolicy.BLOCK.name()).trim().toUpperCase());
+
+                dispatcher = new AsyncAuditDispatcher(auditSink, capacity, batchSize, overflowPolicy, sampleRate);
+            } catch (IllegalArgumentException e) {
+                throw logger.configurationError(e);
+            }
+        }
+    }
+
+    private static int getIntProperty(String key, int defaultValue) {
+        return Integer.parseInt(SecurityActions.getSystemProperty(key, String.valueOf(defaultValue)).trim());
+    }
+
     /**
      * Audit the event
      *
      * @param ae
      */
     public void audit(AuditEvent ae) {
-        if (auditManager == null) {
+        if (dispatcher != null) {
+            dispatcher.dispatch(ae);
+            return;
+        }
+
+        if (auditSink == null) {
             throw logger.auditNullAuditManager();
         }
-        auditManager.audit(ae);
+
+        auditSink.audit(Collections.singletonList(ae));
+    }
+
+    /**
+     * Get the dispatcher delivering the events, which also exposes the queue depth and the number of dropped events
+     *
+     * @return the dispatcher, or null if events are written synchronously
+     */
+    public AsyncAuditDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Deliver the pending events and release the resources held by the sink
+     */
+    public void stop() {
+        if (dispatcher != null) {
+            dispatcher.stop();
+        } else if (auditSink != null) {
+            auditSink.close();
+        }
     }
 
     /**
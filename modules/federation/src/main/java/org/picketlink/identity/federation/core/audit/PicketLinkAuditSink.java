@@ -0,0 +1,42 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.identity.federation.core.audit;
+
+import org.jboss.security.audit.AuditEvent;
+
+import java.util.List;
+
+/**
+ * A destination of audit events, such as the container {@link org.jboss.security.audit.AuditManager} or a file.
+ *
+ * <p>Implementations used by {@link PicketLinkAuditHelper} must have a public no-arg constructor.</p>
+ */
+public interface PicketLinkAuditSink {
+
+    /**
+     * Write a batch of audit events, in the order they were raised
+     *
+     * @param events
+     */
+    void audit(List<AuditEvent> events);
+
+    /**
+     * Release any resource held by this sink. No events are written afterwards.
+     */
+    void close();
+}
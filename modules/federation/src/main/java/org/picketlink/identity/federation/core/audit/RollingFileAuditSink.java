@@ -0,0 +1,168 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.identity.federation.core.audit;
+
+import org.jboss.security.audit.AuditEvent;
+import org.picketlink.common.PicketLinkLogger;
+import org.picketlink.common.PicketLinkLoggerFactory;
+import org.picketlink.common.constants.GeneralConstants;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * <p>A {@link PicketLinkAuditSink} that appends one line per event to a file.</p>
+ *
+ * <p>Once the file exceeds its max size, it is renamed to <i>file</i>.1, the previous backups are shifted by one and
+ * the oldest backup beyond the max number of backups is deleted.</p>
+ *
+ * <p>When created using the no-arg constructor, the file, its max size in bytes and the max number of backups are read
+ * from the {@link GeneralConstants#AUDIT_FILE}, {@link GeneralConstants#AUDIT_FILE_MAX_SIZE} and {@link
+ * GeneralConstants#AUDIT_FILE_MAX_BACKUPS} system properties.</p>
+ */
+public class RollingFileAuditSink implements PicketLinkAuditSink {
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    private static final String DEFAULT_FILE_NAME = "picketlink-audit.log";
+
+    private static final long DEFAULT_MAX_SIZE = 10 * 1024 * 1024;
+
+    private static final int DEFAULT_MAX_BACKUPS = 5;
+
+    private static final String LINE_SEPARATOR = SecurityActions.getSystemProperty("line.separator", "\n");
+
+    private final File file;
+    private final long maxSize;
+    private final int maxBackups;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+
+    private OutputStream out;
+    private long size;
+
+    public RollingFileAuditSink() {
+        this(new File(SecurityActions.getSystemProperty(GeneralConstants.AUDIT_FILE, getDefaultFile())),
+                Long.parseLong(SecurityActions.getSystemProperty(GeneralConstants.AUDIT_FILE_MAX_SIZE,
+                        String.valueOf(DEFAULT_MAX_SIZE))),
+                Integer.parseInt(SecurityActions.getSystemProperty(GeneralConstants.AUDIT_FILE_MAX_BACKUPS,
+                        String.valueOf(DEFAULT_MAX_BACKUPS))));
+    }
+
+    public RollingFileAuditSink(File file, long maxSize, int maxBackups) {
+        if (file == null) {
+            throw logger.nullArgumentError("file");
+        }
+
+        this.file = file;
+        this.maxSize = maxSize;
+        this.maxBackups = maxBackups;
+    }
+
+    public synchronized void audit(List<AuditEvent> events) {
+        try {
+            for (AuditEvent event : events) {
+                if (this.out == null || (this.maxSize > 0 && this.size >= this.maxSize)) {
+                    roll();
+                }
+
+                byte[] line = (this.dateFormat.format(new Date()) + " " + event + LINE_SEPARATOR).getBytes("UTF-8");
+
+                this.out.write(line);
+                this.size = this.size + line.length;
+            }
+
+            this.out.flush();
+        } catch (IOException e) {
+            closeFile();
+            throw new RuntimeException("Could not write audit events to [" + this.file.getPath() + "].", e);
+        }
+    }
+
+    public synchronized void close() {
+        closeFile();
+    }
+
+    /**
+     * <p>Opens the file, after moving it to a backup if it is already full.</p>
+     */
+    private void roll() throws IOException {
+        closeFile();
+
+        if (this.maxSize > 0 && this.file.length() >= this.maxSize) {
+            File oldest = getBackup(this.maxBackups);
+
+            if (oldest.exists() && !oldest.delete()) {
+                throw new IOException("Could not delete audit file [" + oldest.getPath() + "].");
+            }
+
+            for (int i = this.maxBackups - 1; i >= 1; i--) {
+                File backup = getBackup(i);
+
+                if (backup.exists() && !backup.renameTo(getBackup(i + 1))) {
+                    throw new IOException("Could not rename audit file [" + backup.getPath() + "].");
+                }
+            }
+
+            boolean moved = this.maxBackups > 0 ? this.file.renameTo(getBackup(1)) : this.file.delete();
+
+            if (!moved) {
+                throw new IOException("Could not roll audit file [" + this.file.getPath() + "].");
+            }
+        }
+
+        File parent = this.file.getAbsoluteFile().getParentFile();
+
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+
+        this.out = new BufferedOutputStream(new FileOutputStream(this.file, true));
+        this.size = this.file.length();
+    }
+
+    private File getBackup(int index) {
+        return new File(this.file.getPath() + "." + index);
+    }
+
+    private void closeFile() {
+        if (this.out != null) {
+            try {
+                this.out.close();
+            } catch (IOException ignore) {
+            }
+
+            this.out = null;
+        }
+    }
+
+    private static String getDefaultFile() {
+        String logDir = SecurityActions.getSystemProperty("jboss.server.log.dir", null);
+
+        if (logDir == null) {
+            return DEFAULT_FILE_NAME;
+        }
+
+        return new File(logDir, DEFAULT_FILE_NAME).getPath();
+    }
+}
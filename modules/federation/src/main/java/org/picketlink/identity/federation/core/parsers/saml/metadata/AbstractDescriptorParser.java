@@ -20,6 +20,7 @@ package org.picketlink.identity.federation.core.parsers.saml.metadata;
 
 import org.picketlink.common.exceptions.ParsingException;
 import org.picketlink.common.parsers.AbstractParser;
+import org.picketlink.common.util.XMLFactoryUtil;
 
 import javax.xml.stream.EventFilter;
 import javax.xml.stream.XMLEventReader;
@@ -37,7 +38,7 @@ public abstract class AbstractDescriptorParser extends AbstractParser {
 
     protected XMLEventReader filterWhiteSpaceCharacters(XMLEventReader xmlEventReader) throws ParsingException {
 
-        XMLInputFactory xmlInputFactory = getXMLInputFactory();
+        XMLInputFactory xmlInputFactory = XMLFactoryUtil.getXMLInputFactory();
 
         try {
             xmlEventReader = xmlInputFactory.createFilteredReader(xmlEventReader, new EventFilter() {
@@ -0,0 +1,141 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.identity.federation.core.parsers.saml.metadata;
+
+import org.picketlink.common.PicketLinkLogger;
+import org.picketlink.common.PicketLinkLoggerFactory;
+import org.picketlink.common.constants.JBossSAMLConstants;
+import org.picketlink.common.exceptions.ParsingException;
+import org.picketlink.common.util.StaxParserUtil;
+import org.picketlink.identity.federation.core.saml.v2.util.XMLTimeUtil;
+import org.picketlink.identity.federation.saml.v2.metadata.EntitiesDescriptorType;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.EndElement;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+/**
+ * <p>Streaming parser for SAML metadata documents, which can be either a single "EntityDescriptor" or an aggregate
+ * "EntitiesDescriptor".</p>
+ *
+ * <p>Unlike {@link SAMLEntitiesDescriptorParser}, this parser does not build the whole object graph. Each
+ * "EntityDescriptor" element is handed to a {@link Handler} as soon as it is reached, so memory usage does not depend on
+ * the size of the aggregate. Only the attributes of the "EntitiesDescriptor" elements, such as validUntil and
+ * cacheDuration, are parsed and passed to the handler.</p>
+ *
+ * <p>{@link #parse(XMLEventReader)} is inherited and still builds the whole object graph.</p>
+ */
+public class SAMLEntitiesDescriptorStreamParser extends SAMLEntitiesDescriptorParser {
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    private final String EDT = JBossSAMLConstants.ENTITIES_DESCRIPTOR.get();
+
+    public void parse(XMLEventReader xmlEventReader, Handler handler) throws ParsingException {
+        xmlEventReader = filterWhiteSpaceCharacters(xmlEventReader);
+
+        StartElement startElement = StaxParserUtil.peekNextStartElement(xmlEventReader);
+
+        if (startElement == null) {
+            throw logger.parserException(new IllegalArgumentException("No metadata found."));
+        }
+
+        if (JBossSAMLConstants.ENTITY_DESCRIPTOR.get().equals(startElement.getName().getLocalPart())) {
+            handler.handleEntityDescriptor(xmlEventReader);
+        } else {
+            parseEntitiesDescriptor(xmlEventReader, handler);
+        }
+    }
+
+    private void parseEntitiesDescriptor(XMLEventReader xmlEventReader, Handler handler) throws ParsingException {
+        StartElement startElement = StaxParserUtil.getNextStartElement(xmlEventReader);
+        StaxParserUtil.validate(startElement, EDT);
+
+        EntitiesDescriptorType entitiesDescriptorType = new EntitiesDescriptorType();
+
+        Attribute validUntil = startElement.getAttributeByName(new QName(JBossSAMLConstants.VALID_UNTIL.get()));
+        if (validUntil != null) {
+            entitiesDescriptorType.setValidUntil(XMLTimeUtil.parse(StaxParserUtil.getAttributeValue(validUntil)));
+        }
+
+        Attribute id = startElement.getAttributeByName(new QName(JBossSAMLConstants.ID.get()));
+        if (id != null) {
+            entitiesDescriptorType.setID(StaxParserUtil.getAttributeValue(id));
+        }
+
+        Attribute name = startElement.getAttributeByName(new QName(JBossSAMLConstants.NAME.get()));
+        if (name != null) {
+            entitiesDescriptorType.setName(StaxParserUtil.getAttributeValue(name));
+        }
+
+        Attribute cacheDuration = startElement.getAttributeByName(new QName(JBossSAMLConstants.CACHE_DURATION.get()));
+        if (cacheDuration != null) {
+            entitiesDescriptorType
+                    .setCacheDuration(XMLTimeUtil.parseAsDuration(StaxParserUtil.getAttributeValue(cacheDuration)));
+        }
+
+        handler.handleEntitiesDescriptor(entitiesDescriptorType);
+
+        while (xmlEventReader.hasNext()) {
+            XMLEvent xmlEvent = StaxParserUtil.peek(xmlEventReader);
+            if (xmlEvent instanceof EndElement) {
+                StaxParserUtil.validate((EndElement) xmlEvent, EDT);
+                StaxParserUtil.getNextEndElement(xmlEventReader);
+                break;
+            }
+            startElement = (StartElement) xmlEvent;
+            String localPart = startElement.getName().getLocalPart();
+
+            if (JBossSAMLConstants.ENTITY_DESCRIPTOR.get().equals(localPart)) {
+                handler.handleEntityDescriptor(xmlEventReader);
+            } else if (JBossSAMLConstants.ENTITIES_DESCRIPTOR.get().equalsIgnoreCase(localPart)) {
+                parseEntitiesDescriptor(xmlEventReader, handler);
+            } else if (JBossSAMLConstants.EXTENSIONS.get().equalsIgnoreCase(localPart)
+                    || JBossSAMLConstants.SIGNATURE.get().equals(localPart)) {
+                StaxParserUtil.bypassElementBlock(xmlEventReader, localPart);
+            } else
+                throw logger.parserUnknownTag(localPart, startElement.getLocation());
+        }
+    }
+
+    /**
+     * <p>Receives the elements found by a {@link SAMLEntitiesDescriptorStreamParser}.</p>
+     */
+    public interface Handler {
+
+        /**
+         * <p>Called for each "EntitiesDescriptor" element, before any of its children. The given descriptor only holds
+         * the attributes of the element.</p>
+         *
+         * @param entitiesDescriptor
+         */
+        void handleEntitiesDescriptor(EntitiesDescriptorType entitiesDescriptor) throws ParsingException;
+
+        /**
+         * <p>Called for each "EntityDescriptor" element. The next event of the given reader is the start of the element,
+         * which must be fully consumed by the handler, for instance using {@link SAMLEntityDescriptorParser} or
+         * {@link StaxParserUtil#getDOMElement(XMLEventReader)}.</p>
+         *
+         * @param xmlEventReader
+         */
+        void handleEntityDescriptor(XMLEventReader xmlEventReader) throws ParsingException;
+    }
+}
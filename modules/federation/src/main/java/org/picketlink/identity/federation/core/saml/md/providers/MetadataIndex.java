@@ -0,0 +1,308 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.identity.federation.core.saml.md.providers;
+
+import org.picketlink.common.exceptions.ParsingException;
+import org.picketlink.common.util.DocumentUtil;
+import org.picketlink.common.util.StaxParserUtil;
+import org.picketlink.identity.federation.core.parsers.saml.metadata.SAMLEntityDescriptorParser;
+import org.picketlink.identity.federation.saml.v2.metadata.EntityDescriptorType;
+import org.w3c.dom.Element;
+
+import javax.xml.stream.XMLEventReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>An immutable index of the entities loaded by a {@link MetadataStore}, keyed by entityID.</p>
+ *
+ * <p>Indexes are populated by a {@link Builder}, one entity at a time, and can not be changed once built.</p>
+ */
+abstract class MetadataIndex {
+
+    /**
+     * <p>Returns the entity with the given entityID, or null if it is not in the index.</p>
+     */
+    abstract EntityDescriptorType get(String entityID) throws ParsingException;
+
+    /**
+     * <p>Indicates if the entities returned by {@link #get(String)} are parsed on each call.</p>
+     */
+    abstract boolean isParsedOnRead();
+
+    abstract int size();
+
+    abstract Set<String> getEntityIDs();
+
+    abstract static class Builder {
+
+        /**
+         * <p>Consumes the "EntityDescriptor" element that is the next event of the given reader.</p>
+         *
+         * @return The added entity.
+         */
+        abstract EntityDescriptorType add(XMLEventReader xmlEventReader) throws ParsingException;
+
+        abstract MetadataIndex build() throws ParsingException;
+
+        /**
+         * <p>Releases the resources held by this builder if the index is not going to be built.</p>
+         */
+        void discard() {
+        }
+    }
+
+    /**
+     * <p>Keeps the parsed entities in memory.</p>
+     */
+    static class InMemory extends MetadataIndex {
+
+        private final Map<String, EntityDescriptorType> entities;
+
+        InMemory(Map<String, EntityDescriptorType> entities) {
+            this.entities = Collections.unmodifiableMap(new HashMap<String, EntityDescriptorType>(entities));
+        }
+
+        @Override
+        EntityDescriptorType get(String entityID) {
+            return this.entities.get(entityID);
+        }
+
+        @Override
+        boolean isParsedOnRead() {
+            return false;
+        }
+
+        @Override
+        int size() {
+            return this.entities.size();
+        }
+
+        @Override
+        Set<String> getEntityIDs() {
+            return this.entities.keySet();
+        }
+
+        static class Builder extends MetadataIndex.Builder {
+
+            private final Map<String, EntityDescriptorType> entities = new HashMap<String, EntityDescriptorType>();
+
+            @Override
+            EntityDescriptorType add(XMLEventReader xmlEventReader) throws ParsingException {
+                EntityDescriptorType entity = (EntityDescriptorType) new SAMLEntityDescriptorParser().parse(xmlEventReader);
+
+                this.entities.put(entity.getEntityID(), entity);
+
+                return entity;
+            }
+
+            @Override
+            MetadataIndex build() {
+                return new InMemory(this.entities);
+            }
+        }
+    }
+
+    /**
+     * <p>Keeps the serialized form of each entity in a memory-mapped file and only the location of each entity in
+     * memory. Entities are parsed when they are read.</p>
+     *
+     * <p>The file is deleted as soon as it is mapped, its contents remain available until the mapped buffers are
+     * garbage collected, which only happens once no thread can read from the index anymore.</p>
+     */
+    static class MappedFile extends MetadataIndex {
+
+        /**
+         * <p>Max size of a single mapped buffer. Entities never span two buffers.</p>
+         */
+        private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+        private final ByteBuffer[] segments;
+        private final Map<String, Region> regions;
+
+        private MappedFile(ByteBuffer[] segments, Map<String, Region> regions) {
+            this.segments = segments;
+            this.regions = regions;
+        }
+
+        @Override
+        EntityDescriptorType get(String entityID) throws ParsingException {
+            Region region = this.regions.get(entityID);
+
+            if (region == null) {
+                return null;
+            }
+
+            // buffers are duplicated so concurrent readers do not share their position
+            ByteBuffer buffer = this.segments[region.segment].duplicate();
+            byte[] data = new byte[region.length];
+
+            buffer.position(region.offset);
+            buffer.get(data);
+
+            XMLEventReader xmlEventReader = StaxParserUtil.getXMLEventReader(new ByteArrayInputStream(data));
+
+            return (EntityDescriptorType) new SAMLEntityDescriptorParser().parse(xmlEventReader);
+        }
+
+        @Override
+        boolean isParsedOnRead() {
+            return true;
+        }
+
+        @Override
+        int size() {
+            return this.regions.size();
+        }
+
+        @Override
+        Set<String> getEntityIDs() {
+            return Collections.unmodifiableSet(this.regions.keySet());
+        }
+
+        static class Builder extends MetadataIndex.Builder {
+
+            private final File file;
+            private final RandomAccessFile randomAccessFile;
+            private final List<Long> segmentOffsets = new ArrayList<Long>();
+            private final Map<String, Region> regions = new HashMap<String, Region>();
+            private long position;
+
+            Builder(File directory) throws IOException {
+                // deleteOnExit is not used given that it keeps a reference to every file until the JVM exits
+                this.file = File.createTempFile("picketlink-metadata-", ".idx", directory);
+
+                try {
+                    this.randomAccessFile = new RandomAccessFile(this.file, "rw");
+                } catch (IOException e) {
+                    this.file.delete();
+                    throw e;
+                }
+
+                this.segmentOffsets.add(0L);
+            }
+
+            @Override
+            EntityDescriptorType add(XMLEventReader xmlEventReader) throws ParsingException {
+                Element element = StaxParserUtil.getDOMElement(xmlEventReader);
+                byte[] data;
+
+                try {
+                    data = toByteArray(DocumentUtil.getNodeAsStream(element));
+                } catch (Exception e) {
+                    throw new ParsingException(e);
+                }
+
+                // the entity is parsed once to make sure it can be read later on
+                EntityDescriptorType entity = (EntityDescriptorType) new SAMLEntityDescriptorParser()
+                        .parse(StaxParserUtil.getXMLEventReader(new ByteArrayInputStream(data)));
+
+                try {
+                    long segmentOffset = this.segmentOffsets.get(this.segmentOffsets.size() - 1);
+
+                    if (this.position + data.length - segmentOffset > MAX_SEGMENT_SIZE) {
+                        segmentOffset = this.position;
+                        this.segmentOffsets.add(segmentOffset);
+                    }
+
+                    this.randomAccessFile.seek(this.position);
+                    this.randomAccessFile.write(data);
+
+                    this.regions.put(entity.getEntityID(), new Region(this.segmentOffsets.size() - 1,
+                            (int) (this.position - segmentOffset), data.length));
+
+                    this.position = this.position + data.length;
+                } catch (IOException e) {
+                    throw new ParsingException(e);
+                }
+
+                return entity;
+            }
+
+            @Override
+            MetadataIndex build() throws ParsingException {
+                try {
+                    FileChannel channel = this.randomAccessFile.getChannel();
+                    ByteBuffer[] segments = new ByteBuffer[this.segmentOffsets.size()];
+
+                    for (int i = 0; i < segments.length; i++) {
+                        long start = this.segmentOffsets.get(i);
+                        long end = i + 1 < segments.length ? this.segmentOffsets.get(i + 1) : this.position;
+                        MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+
+                        segments[i] = segment;
+                    }
+
+                    return new MappedFile(segments, this.regions);
+                } catch (IOException e) {
+                    throw new ParsingException(e);
+                } finally {
+                    discard();
+                }
+            }
+
+            @Override
+            void discard() {
+                try {
+                    this.randomAccessFile.close();
+                } catch (IOException ignore) {
+                }
+
+                this.file.delete();
+            }
+
+            private static byte[] toByteArray(InputStream inputStream) throws IOException {
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int count;
+
+                while ((count = inputStream.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, count);
+                }
+
+                return outputStream.toByteArray();
+            }
+        }
+
+        private static class Region {
+
+            private final int segment;
+            private final int offset;
+            private final int length;
+
+            Region(int segment, int offset, int length) {
+                this.segment = segment;
+                this.offset = offset;
+                this.length = length;
+            }
+        }
+    }
+}
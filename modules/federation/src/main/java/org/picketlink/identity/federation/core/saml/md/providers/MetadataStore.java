@@ -0,0 +1,713 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.identity.federation.core.saml.md.providers;
+
+import org.picketlink.common.PicketLinkLogger;
+import org.picketlink.common.PicketLinkLoggerFactory;
+import org.picketlink.common.exceptions.ConfigurationException;
+import org.picketlink.common.exceptions.ParsingException;
+import org.picketlink.common.exceptions.ProcessingException;
+import org.picketlink.common.util.DocumentUtil;
+import org.picketlink.common.util.StaxParserUtil;
+import org.picketlink.identity.federation.core.parsers.saml.metadata.SAMLEntitiesDescriptorStreamParser;
+import org.picketlink.identity.federation.core.saml.v2.util.SAMLMetadataUtil;
+import org.picketlink.identity.federation.core.util.CoreConfigUtil;
+import org.picketlink.identity.federation.saml.v2.metadata.EntitiesDescriptorType;
+import org.picketlink.identity.federation.saml.v2.metadata.EntityDescriptorType;
+import org.picketlink.identity.federation.saml.v2.metadata.IDPSSODescriptorType;
+import org.picketlink.identity.federation.saml.v2.metadata.KeyTypes;
+import org.picketlink.identity.federation.saml.v2.metadata.SPSSODescriptorType;
+import org.picketlink.identity.federation.saml.v2.metadata.SSODescriptorType;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.crypto.MarshalException;
+import javax.xml.crypto.dsig.CanonicalizationMethod;
+import javax.xml.crypto.dsig.Reference;
+import javax.xml.crypto.dsig.Transform;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureException;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+import javax.xml.datatype.Duration;
+import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.stream.XMLEventReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Holds the entities of a SAML metadata document, indexed by entityID.</p>
+ *
+ * <p>Metadata is read from a {@link URL}, usually pointing to a federation aggregate, which is stream-parsed one
+ * "EntityDescriptor" at a time. Entities are either kept in memory or, if an index directory is provided, serialized to
+ * a memory-mapped file and parsed again when they are looked up. In the latter case, only the most recently used
+ * entities are kept in memory.</p>
+ *
+ * <p>Once started, the store refreshes the metadata in background. The delay between two refreshes is the configured
+ * max refresh delay, shortened by the cacheDuration and validUntil attributes found in the metadata, but never shorter
+ * than the configured min refresh delay. Unchanged metadata, according to the last modification date of the
+ * {@link URL}, is not parsed again. Entities, or whole documents, whose validUntil is in the past are not returned.</p>
+ *
+ * <p>Each refresh builds a new index which replaces the previous one atomically, lookups are never blocked by a
+ * refresh. If a refresh fails, the previous index is kept and a new refresh is attempted after the min refresh
+ * delay.</p>
+ *
+ * <p>If a trust key is provided, the document element must carry an enveloped signature made with this key, which is
+ * verified before any entity is indexed. In this case the whole document is read into memory to be verified. A trust key
+ * is required for metadata read over the network.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public class MetadataStore {
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    /**
+     * <p>Max number of parsed entities kept in memory when entities are stored in an index file.</p>
+     */
+    public static final int DEFAULT_MAX_CACHED_ENTITIES = 1000;
+
+    private static final Set<String> REMOTE_PROTOCOLS = new HashSet<String>(Arrays.asList("http", "https", "ftp"));
+
+    /**
+     * <p>Transforms allowed in the signature of a metadata document. Any other transform, such as XPath, could exclude
+     * part of the document from the signature.</p>
+     */
+    private static final Set<String> ALLOWED_TRANSFORMS = new HashSet<String>(Arrays.asList(Transform.ENVELOPED,
+            CanonicalizationMethod.EXCLUSIVE, CanonicalizationMethod.EXCLUSIVE_WITH_COMMENTS,
+            CanonicalizationMethod.INCLUSIVE, CanonicalizationMethod.INCLUSIVE_WITH_COMMENTS));
+
+    private final URL metadataURL;
+    private final long minRefreshDelay;
+    private final long maxRefreshDelay;
+    private final File indexDirectory;
+    private final int maxCachedEntities;
+    private final PublicKey trustKey;
+
+    private volatile Snapshot snapshot;
+
+    private ScheduledExecutorService scheduler;
+    private long lastModified;
+
+    /**
+     * <p>Creates a store that reads metadata from the given {@link URL}.</p>
+     *
+     * @param metadataURL The location of the metadata document.
+     * @param minRefreshDelay The min delay between two refreshes, in milliseconds.
+     * @param maxRefreshDelay The max delay between two refreshes, in milliseconds. If zero or negative, the metadata is
+     * only read once.
+     * @param indexDirectory The directory where the index file is created, or null if entities are kept in memory.
+     *
+     * @throws IllegalArgumentException If the metadata is read over the network.
+     */
+    public MetadataStore(URL metadataURL, long minRefreshDelay, long maxRefreshDelay, File indexDirectory) {
+        this(metadataURL, minRefreshDelay, maxRefreshDelay, indexDirectory, null);
+    }
+
+    /**
+     * <p>Creates a store that reads metadata from the given {@link URL} and verifies its signature with the given
+     * key.</p>
+     *
+     * @param metadataURL The location of the metadata document.
+     * @param minRefreshDelay The min delay between two refreshes, in milliseconds.
+     * @param maxRefreshDelay The max delay between two refreshes, in milliseconds. If zero or negative, the metadata is
+     * only read once.
+     * @param indexDirectory The directory where the index file is created, or null if entities are kept in memory.
+     * @param trustKey The key used to verify the signature of the metadata, or null if the metadata is not signed.
+     *
+     * @throws IllegalArgumentException If no trust key is given and the metadata is read over the network.
+     */
+    public MetadataStore(URL metadataURL, long minRefreshDelay, long maxRefreshDelay, File indexDirectory,
+            PublicKey trustKey) {
+        if (metadataURL == null) {
+            throw logger.nullArgumentError("metadataURL");
+        }
+
+        if (trustKey == null && REMOTE_PROTOCOLS.contains(metadataURL.getProtocol().toLowerCase())) {
+            throw new IllegalArgumentException("A trust certificate is required to verify the signature of metadata ["
+                    + metadataURL + "].");
+        }
+
+        this.metadataURL = metadataURL;
+        this.minRefreshDelay = Math.max(0, minRefreshDelay);
+        this.maxRefreshDelay = maxRefreshDelay;
+        this.indexDirectory = indexDirectory;
+        this.maxCachedEntities = DEFAULT_MAX_CACHED_ENTITIES;
+        this.trustKey = trustKey;
+        this.snapshot = new Snapshot(new MetadataIndex.InMemory(new HashMap<String, EntityDescriptorType>()), null);
+    }
+
+    private MetadataStore(List<EntityDescriptorType> entities) {
+        Map<String, EntityDescriptorType> index = new HashMap<String, EntityDescriptorType>();
+
+        for (EntityDescriptorType entity : entities) {
+            index.put(entity.getEntityID(), entity);
+        }
+
+        this.metadataURL = null;
+        this.minRefreshDelay = 0;
+        this.maxRefreshDelay = 0;
+        this.indexDirectory = null;
+        this.maxCachedEntities = DEFAULT_MAX_CACHED_ENTITIES;
+        this.trustKey = null;
+        this.snapshot = new Snapshot(new MetadataIndex.InMemory(index), null);
+    }
+
+    /**
+     * <p>Creates a store holding the given entities, which is never refreshed.</p>
+     *
+     * @param entities
+     *
+     * @return
+     */
+    public static MetadataStore fromEntities(List<EntityDescriptorType> entities) {
+        return new MetadataStore(entities);
+    }
+
+    /**
+     * <p>Reads the metadata and schedules the next refreshes.</p>
+     *
+     * @throws ProcessingException If the metadata could not be read.
+     */
+    public synchronized void start() throws ProcessingException {
+        if (this.metadataURL == null || this.scheduler != null) {
+            return;
+        }
+
+        refresh();
+
+        if (this.maxRefreshDelay > 0) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "picketlink-metadata-refresh");
+
+                    thread.setDaemon(true);
+
+                    return thread;
+                }
+            });
+
+            scheduleRefresh(getRefreshDelay(this.snapshot));
+        }
+    }
+
+    /**
+     * <p>Stops refreshing the metadata. Entities already loaded are still available.</p>
+     */
+    public synchronized void stop() {
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * <p>Reads the metadata, unless it was not modified since it was last read, and replaces the current index.</p>
+     *
+     * @return True if the index was replaced.
+     *
+     * @throws ProcessingException If the metadata could not be read or its signature is not valid. The current index is
+     * kept.
+     */
+    public synchronized boolean refresh() throws ProcessingException {
+        if (this.metadataURL == null) {
+            return false;
+        }
+
+        InputStream inputStream = null;
+
+        try {
+            URLConnection connection = this.metadataURL.openConnection();
+
+            if (this.lastModified > 0) {
+                connection.setIfModifiedSince(this.lastModified);
+            }
+
+            if (connection instanceof HttpURLConnection
+                    && ((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // there is no body to read and close, release the connection explicitly
+                ((HttpURLConnection) connection).disconnect();
+                logger.debug("Metadata [" + this.metadataURL + "] not modified.");
+                return false;
+            }
+
+            long modified = connection.getLastModified();
+
+            inputStream = connection.getInputStream();
+
+            if (modified > 0 && modified == this.lastModified) {
+                logger.debug("Metadata [" + this.metadataURL + "] not modified.");
+                return false;
+            }
+
+            if (this.trustKey != null) {
+                byte[] document = read(inputStream);
+
+                verifySignature(document);
+
+                inputStream.close();
+                inputStream = new ByteArrayInputStream(document);
+            }
+
+            Snapshot snapshot = load(inputStream);
+
+            this.snapshot = snapshot;
+            this.lastModified = modified;
+
+            logger.debug("Loaded [" + snapshot.index.size() + "] entities from metadata [" + this.metadataURL + "].");
+
+            return true;
+        } catch (IOException e) {
+            throw new ProcessingException("Could not read metadata [" + this.metadataURL + "].", e);
+        } catch (ParsingException e) {
+            throw new ProcessingException("Could not parse metadata [" + this.metadataURL + "].", e);
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>Returns the entity with the given entityID, or null if there is no such valid entity.</p>
+     *
+     * @param entityID
+     *
+     * @return
+     */
+    public EntityDescriptorType getEntityDescriptor(String entityID) {
+        Entry entry = getEntry(entityID);
+
+        if (entry == null) {
+            return null;
+        }
+
+        return entry.descriptor;
+    }
+
+    /**
+     * <p>Returns the SP descriptor of the entity with the given entityID, or null if there is no such valid entity or if
+     * it does not describe a SP.</p>
+     *
+     * @param entityID
+     *
+     * @return
+     */
+    public SPSSODescriptorType getSPSSODescriptor(String entityID) {
+        Entry entry = getEntry(entityID);
+
+        if (entry == null) {
+            return null;
+        }
+
+        return entry.spDescriptor;
+    }
+
+    /**
+     * <p>Returns the IDP descriptor of the entity with the given entityID, or null if there is no such valid entity or
+     * if it does not describe an IDP.</p>
+     *
+     * @param entityID
+     *
+     * @return
+     */
+    public IDPSSODescriptorType getIDPSSODescriptor(String entityID) {
+        Entry entry = getEntry(entityID);
+
+        if (entry == null) {
+            return null;
+        }
+
+        return entry.idpDescriptor;
+    }
+
+    /**
+     * <p>Returns the certificate with the given use from the SP descriptor of the entity with the given entityID.
+     * Certificates are cached until the metadata is refreshed.</p>
+     *
+     * @param entityID
+     * @param use
+     *
+     * @return
+     */
+    public X509Certificate getSPCertificate(String entityID, KeyTypes use) {
+        Entry entry = getEntry(entityID);
+
+        if (entry == null) {
+            return null;
+        }
+
+        return entry.getCertificate(entry.spDescriptor, "SP", use);
+    }
+
+    /**
+     * <p>Returns the certificate with the given use from the IDP descriptor of the entity with the given entityID.
+     * Certificates are cached until the metadata is refreshed.</p>
+     *
+     * @param entityID
+     * @param use
+     *
+     * @return
+     */
+    public X509Certificate getIDPCertificate(String entityID, KeyTypes use) {
+        Entry entry = getEntry(entityID);
+
+        if (entry == null) {
+            return null;
+        }
+
+        return entry.getCertificate(entry.idpDescriptor, "IDP", use);
+    }
+
+    /**
+     * <p>Returns all entities currently in the store, including expired ones. When entities are stored in an index
+     * file, each of them is parsed again.</p>
+     *
+     * @return
+     */
+    public EntitiesDescriptorType getEntitiesDescriptor() {
+        Snapshot snapshot = this.snapshot;
+        EntitiesDescriptorType entitiesDescriptor = new EntitiesDescriptorType();
+
+        for (String entityID : snapshot.index.getEntityIDs()) {
+            try {
+                entitiesDescriptor.addEntityDescriptor(snapshot.index.get(entityID));
+            } catch (ParsingException e) {
+                throw new RuntimeException("Could not parse metadata for entity [" + entityID + "].", e);
+            }
+        }
+
+        return entitiesDescriptor;
+    }
+
+    /**
+     * <p>The number of entities currently in the store.</p>
+     *
+     * @return
+     */
+    public int size() {
+        return this.snapshot.index.size();
+    }
+
+    private Entry getEntry(String entityID) {
+        if (entityID == null) {
+            return null;
+        }
+
+        Snapshot snapshot = this.snapshot;
+        long now = System.currentTimeMillis();
+
+        if (snapshot.isExpired(now)) {
+            return null;
+        }
+
+        Entry entry = snapshot.entries.get(entityID);
+
+        if (entry == null) {
+            EntityDescriptorType descriptor;
+
+            try {
+                descriptor = snapshot.index.get(entityID);
+            } catch (ParsingException e) {
+                throw new RuntimeException("Could not parse metadata for entity [" + entityID + "].", e);
+            }
+
+            if (descriptor == null) {
+                return null;
+            }
+
+            if (snapshot.index.isParsedOnRead() && snapshot.entries.size() >= this.maxCachedEntities) {
+                snapshot.entries.clear();
+            }
+
+            entry = new Entry(descriptor);
+
+            Entry existing = snapshot.entries.putIfAbsent(entityID, entry);
+
+            if (existing != null) {
+                entry = existing;
+            }
+        }
+
+        if (entry.validUntil < now) {
+            return null;
+        }
+
+        return entry;
+    }
+
+    private Snapshot load(InputStream inputStream) throws IOException, ParsingException {
+        final MetadataIndex.Builder builder;
+
+        if (this.indexDirectory != null) {
+            builder = new MetadataIndex.MappedFile.Builder(this.indexDirectory);
+        } else {
+            builder = new MetadataIndex.InMemory.Builder();
+        }
+
+        final Validity validity = new Validity();
+
+        try {
+            XMLEventReader xmlEventReader = StaxParserUtil.getXMLEventReader(inputStream);
+
+            new SAMLEntitiesDescriptorStreamParser().parse(xmlEventReader, new SAMLEntitiesDescriptorStreamParser.Handler() {
+                @Override
+                public void handleEntitiesDescriptor(EntitiesDescriptorType entitiesDescriptor) {
+                    validity.update(entitiesDescriptor.getValidUntil(), entitiesDescriptor.getCacheDuration());
+                }
+
+                @Override
+                public void handleEntityDescriptor(XMLEventReader xmlEventReader) throws ParsingException {
+                    EntityDescriptorType entity = builder.add(xmlEventReader);
+
+                    validity.update(null, entity.getCacheDuration());
+                }
+            });
+        } catch (ParsingException e) {
+            builder.discard();
+            throw e;
+        } catch (RuntimeException e) {
+            builder.discard();
+            throw e;
+        }
+
+        return new Snapshot(builder.build(), validity);
+    }
+
+    private byte[] read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int length;
+
+        while ((length = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, length);
+        }
+
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * <p>Checks that the document element of the given metadata is signed with the trust key, by an enveloped signature
+     * that covers the whole document.</p>
+     */
+    private void verifySignature(byte[] document) throws ProcessingException {
+        try {
+            Element root = DocumentUtil.getDocument(new ByteArrayInputStream(document)).getDocumentElement();
+            Element signatureElement = null;
+
+            for (Node child = root.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child instanceof Element && XMLSignature.XMLNS.equals(child.getNamespaceURI())
+                        && "Signature".equals(child.getLocalName())) {
+                    signatureElement = (Element) child;
+                    break;
+                }
+            }
+
+            if (signatureElement == null) {
+                throw new ProcessingException("Metadata [" + this.metadataURL + "] is not signed.");
+            }
+
+            String id = root.getAttribute("ID");
+
+            if (id.length() > 0) {
+                root.setIdAttribute("ID", true);
+            }
+
+            DOMValidateContext validateContext = new DOMValidateContext(this.trustKey, signatureElement);
+
+            validateContext.setProperty("org.jcp.xml.dsig.secureValidation", Boolean.TRUE);
+            XMLSignature signature = XMLSignatureFactory.getInstance("DOM").unmarshalXMLSignature(validateContext);
+            List<?> references = signature.getSignedInfo().getReferences();
+
+            if (references.size() != 1 || !isDocumentReference((Reference) references.get(0), id)) {
+                throw new ProcessingException("Signature of metadata [" + this.metadataURL
+                        + "] does not cover the whole document.");
+            }
+
+            if (!signature.validate(validateContext)) {
+                throw new ProcessingException("Invalid signature for metadata [" + this.metadataURL + "].");
+            }
+        } catch (ConfigurationException e) {
+            throw new ProcessingException("Could not verify signature of metadata [" + this.metadataURL + "].", e);
+        } catch (ParsingException e) {
+            throw new ProcessingException("Could not parse metadata [" + this.metadataURL + "].", e);
+        } catch (MarshalException e) {
+            throw new ProcessingException("Invalid signature for metadata [" + this.metadataURL + "].", e);
+        } catch (XMLSignatureException e) {
+            throw new ProcessingException("Invalid signature for metadata [" + this.metadataURL + "].", e);
+        }
+    }
+
+    private static boolean isDocumentReference(Reference reference, String id) {
+        String uri = reference.getURI();
+
+        if (!"".equals(uri) && !(id.length() > 0 && ("#" + id).equals(uri))) {
+            return false;
+        }
+
+        for (Object transform : reference.getTransforms()) {
+            if (!ALLOWED_TRANSFORMS.contains(((Transform) transform).getAlgorithm())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void scheduleRefresh(long delay) {
+        try {
+            this.scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    long nextDelay;
+
+                    try {
+                        refresh();
+                        nextDelay = getRefreshDelay(snapshot);
+                    } catch (Exception e) {
+                        logger.warn("Could not refresh metadata [" + metadataURL + "], retrying in [" + minRefreshDelay
+                                + "] ms: " + e.getMessage());
+                        nextDelay = minRefreshDelay;
+                    }
+
+                    synchronized (MetadataStore.this) {
+                        if (scheduler != null) {
+                            scheduleRefresh(nextDelay);
+                        }
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignore) {
+            // the store was stopped
+        }
+    }
+
+    private long getRefreshDelay(Snapshot snapshot) {
+        long delay = this.maxRefreshDelay;
+        Validity validity = snapshot.validity;
+
+        if (validity != null) {
+            delay = Math.min(delay, validity.cacheDuration);
+            delay = Math.min(delay, validity.validUntil - System.currentTimeMillis());
+        }
+
+        return Math.max(delay, this.minRefreshDelay);
+    }
+
+    private static long toMillis(XMLGregorianCalendar calendar) {
+        if (calendar == null) {
+            return Long.MAX_VALUE;
+        }
+
+        return calendar.toGregorianCalendar().getTimeInMillis();
+    }
+
+    /**
+     * <p>The earliest validUntil and the shortest cacheDuration found in a metadata document.</p>
+     */
+    private static class Validity {
+
+        private long validUntil = Long.MAX_VALUE;
+        private long cacheDuration = Long.MAX_VALUE;
+
+        void update(XMLGregorianCalendar validUntil, Duration cacheDuration) {
+            this.validUntil = Math.min(this.validUntil, toMillis(validUntil));
+
+            if (cacheDuration != null) {
+                this.cacheDuration = Math.min(this.cacheDuration, cacheDuration.getTimeInMillis(new Date()));
+            }
+        }
+    }
+
+    private static class Snapshot {
+
+        private final MetadataIndex index;
+        private final Validity validity;
+        private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+        Snapshot(MetadataIndex index, Validity validity) {
+            this.index = index;
+            this.validity = validity;
+        }
+
+        boolean isExpired(long now) {
+            return this.validity != null && this.validity.validUntil < now;
+        }
+    }
+
+    private static class Entry {
+
+        private final EntityDescriptorType descriptor;
+        private final SPSSODescriptorType spDescriptor;
+        private final IDPSSODescriptorType idpDescriptor;
+        private final long validUntil;
+        private final ConcurrentMap<String, X509Certificate> certificates = new ConcurrentHashMap<String, X509Certificate>();
+
+        Entry(EntityDescriptorType descriptor) {
+            this.descriptor = descriptor;
+            this.spDescriptor = CoreConfigUtil.getSPDescriptor(descriptor);
+            this.idpDescriptor = CoreConfigUtil.getIDPDescriptor(descriptor);
+            this.validUntil = toMillis(descriptor.getValidUntil());
+        }
+
+        X509Certificate getCertificate(SSODescriptorType ssoDescriptor, String role, KeyTypes use) {
+            if (ssoDescriptor == null) {
+                return null;
+            }
+
+            String key = use != null ? role + ":" + use.value() : role;
+            X509Certificate certificate = this.certificates.get(key);
+
+            if (certificate == null) {
+                certificate = SAMLMetadataUtil.getCertificate(use, ssoDescriptor);
+
+                if (certificate != null) {
+                    this.certificates.putIfAbsent(key, certificate);
+                }
+            }
+
+            return certificate;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.identity.federation.core.saml.md.providers;
+
+import org.picketlink.common.PicketLinkLogger;
+import org.picketlink.common.PicketLinkLoggerFactory;
+import org.picketlink.identity.federation.core.interfaces.IMetadataProvider;
+import org.picketlink.identity.federation.saml.v2.metadata.EntitiesDescriptorType;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.PublicKey;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Metadata provider backed by a {@link MetadataStore}, suitable for large federation aggregates that must be
+ * refreshed periodically.</p>
+ *
+ * <p>The following options are supported:</p>
+ *
+ * <ul>
+ *     <li><code>FileName</code>: the path of the metadata document within the web application.</li>
+ *     <li><code>MetadataURL</code>: the location of the metadata document, used instead of <code>FileName</code>.</li>
+ *     <li><code>RefreshInterval</code>: the max number of seconds between two refreshes. Defaults to 4 hours, zero
+ *     disables refreshes.</li>
+ *     <li><code>MinRefreshInterval</code>: the min number of seconds between two refreshes. Defaults to 5 minutes.</li>
+ *     <li><code>IndexDirectory</code>: a directory where entities are stored in a memory-mapped index file instead of
+ *     being kept in memory.</li>
+ *     <li><code>TrustCertificate</code>: the path of a PEM or DER encoded X.509 certificate, whose key must have signed
+ *     the metadata document. Required when <code>MetadataURL</code> is a network location, unless a key is injected
+ *     using {@link #injectSigningKey(PublicKey)}.</li>
+ * </ul>
+ */
+public class MetadataStoreProvider extends AbstractMetadataProvider implements IMetadataProvider<EntitiesDescriptorType> {
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    public static final String METADATA_URL_KEY = "MetadataURL";
+
+    public static final String REFRESH_INTERVAL_KEY = "RefreshInterval";
+
+    public static final String MIN_REFRESH_INTERVAL_KEY = "MinRefreshInterval";
+
+    public static final String INDEX_DIRECTORY_KEY = "IndexDirectory";
+
+    public static final String TRUST_CERTIFICATE_KEY = "TrustCertificate";
+
+    private static final long DEFAULT_REFRESH_INTERVAL = TimeUnit.HOURS.toSeconds(4);
+
+    private static final long DEFAULT_MIN_REFRESH_INTERVAL = TimeUnit.MINUTES.toSeconds(5);
+
+    private String fileName;
+
+    private URL metadataURL;
+
+    private long refreshInterval;
+
+    private long minRefreshInterval;
+
+    private File indexDirectory;
+
+    private PublicKey trustKey;
+
+    private MetadataStore metadataStore;
+
+    @Override
+    public void init(Map<String, String> options) {
+        super.init(options);
+
+        this.fileName = options.get(AbstractFileBasedMetadataProvider.FILENAME_KEY);
+
+        String metadataURL = options.get(METADATA_URL_KEY);
+
+        if (metadataURL != null) {
+            try {
+                this.metadataURL = new URL(metadataURL);
+            } catch (MalformedURLException e) {
+                throw new RuntimeException("Invalid metadata URL [" + metadataURL + "].", e);
+            }
+        } else if (this.fileName == null) {
+            throw logger.optionNotSet(AbstractFileBasedMetadataProvider.FILENAME_KEY);
+        }
+
+        this.refreshInterval = getLongOption(options, REFRESH_INTERVAL_KEY, DEFAULT_REFRESH_INTERVAL);
+        this.minRefreshInterval = getLongOption(options, MIN_REFRESH_INTERVAL_KEY, DEFAULT_MIN_REFRESH_INTERVAL);
+
+        String indexDirectory = options.get(INDEX_DIRECTORY_KEY);
+
+        if (indexDirectory != null) {
+            this.indexDirectory = new File(indexDirectory);
+        }
+
+        String trustCertificate = options.get(TRUST_CERTIFICATE_KEY);
+
+        if (trustCertificate != null) {
+            this.trustKey = loadCertificate(trustCertificate).getPublicKey();
+        }
+    }
+
+    /**
+     * <p>The path of the metadata document within the web application, which must be resolved and injected using
+     * {@link #injectMetadataURL(URL)} if no metadata URL was configured.</p>
+     *
+     * @return
+     */
+    public String getFileName() {
+        if (this.metadataURL != null) {
+            return null;
+        }
+
+        return this.fileName;
+    }
+
+    public void injectMetadataURL(URL metadataURL) {
+        this.metadataURL = metadataURL;
+    }
+
+    /**
+     * <p>Returns the {@link MetadataStore} configured by this provider. The store is not started.</p>
+     *
+     * @return
+     */
+    public synchronized MetadataStore getMetadataStore() {
+        if (this.metadataStore == null) {
+            if (this.metadataURL == null) {
+                throw logger.injectedValueMissing("Metadata URL");
+            }
+
+            this.metadataStore = new MetadataStore(this.metadataURL, TimeUnit.SECONDS.toMillis(this.minRefreshInterval),
+                    TimeUnit.SECONDS.toMillis(this.refreshInterval), this.indexDirectory, this.trustKey);
+        }
+
+        return this.metadataStore;
+    }
+
+    /**
+     * <p>Returns all entities of the metadata document. Prefer {@link #getMetadataStore()}, which does not require all
+     * entities to be in memory at once.</p>
+     *
+     * @see org.picketlink.identity.federation.core.interfaces.IMetadataProvider#getMetaData()
+     */
+    public EntitiesDescriptorType getMetaData() {
+        MetadataStore metadataStore = getMetadataStore();
+
+        try {
+            metadataStore.refresh();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        return metadataStore.getEntitiesDescriptor();
+    }
+
+    public boolean isMultiple() {
+        return true;
+    }
+
+    public String requireFileInjection() {
+        return null;
+    }
+
+    public void injectFileStream(InputStream fileStream) {
+    }
+
+    /**
+     * <p>Sets the key used to verify the signature of the metadata document, instead of the <code>TrustCertificate</code>
+     * option. Must be called before {@link #getMetadataStore()}.</p>
+     *
+     * @param publicKey
+     */
+    public void injectSigningKey(PublicKey publicKey) {
+        this.trustKey = publicKey;
+    }
+
+    public void injectEncryptionKey(PublicKey publicKey) {
+    }
+
+    private static X509Certificate loadCertificate(String path) {
+        InputStream inputStream = null;
+
+        try {
+            inputStream = new FileInputStream(path);
+
+            return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(inputStream);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read trust certificate [" + path + "].", e);
+        } catch (CertificateException e) {
+            throw new RuntimeException("Invalid trust certificate [" + path + "].", e);
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    private static long getLongOption(Map<String, String> options, String key, long defaultValue) {
+        String value = options.get(key);
+
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid value [" + value + "] for option [" + key + "].", e);
+        }
+    }
+}
@@ -22,7 +22,7 @@ import org.picketlink.common.PicketLinkLoggerFactory;
 import org.picketlink.common.constants.GeneralConstants;
 import org.picketlink.common.exceptions.ConfigurationException;
 import org.picketlink.common.exceptions.ParsingException;
-import org.picketlink.common.util.SystemPropertiesUtil;
+import org.picketlink.common.util.XMLFactoryUtil;
 
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeConstants;
@@ -227,25 +227,13 @@ public class XMLTimeUtil {
 
 
     /**
-     * Create a new {@link DatatypeFactory}
+     * Get the {@link DatatypeFactory}. The returned instance is cached and shared between different threads.
      *
      * @return
      *
      * @throws DatatypeConfigurationException
      */
     public static DatatypeFactory newDatatypeFactory() throws DatatypeConfigurationException {
-        boolean tccl_jaxp = SystemPropertiesUtil.getSystemProperty(GeneralConstants.TCCL_JAXP, "false")
-                .equalsIgnoreCase("true");
-        ClassLoader prevTCCL = SecurityActions.getTCCL();
-        try {
-            if (tccl_jaxp) {
-                SecurityActions.setTCCL(XMLTimeUtil.class.getClassLoader());
-            }
-            return DatatypeFactory.newInstance();
-        } finally {
-            if (tccl_jaxp) {
-                SecurityActions.setTCCL(prevTCCL);
-            }
-        }
+        return XMLFactoryUtil.getDatatypeFactory();
     }
 }
\ No newline at end of file
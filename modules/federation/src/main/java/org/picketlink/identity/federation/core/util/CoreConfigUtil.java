@@ -36,6 +36,8 @@ import org.picketlink.config.federation.TokenProviderType;
 import org.picketlink.identity.federation.core.constants.PicketLinkFederationConstants;
 import org.picketlink.identity.federation.core.interfaces.IMetadataProvider;
 import org.picketlink.identity.federation.core.interfaces.TrustKeyManager;
+import org.picketlink.identity.federation.core.saml.md.providers.MetadataStore;
+import org.picketlink.identity.federation.core.saml.md.providers.MetadataStoreProvider;
 import org.picketlink.identity.federation.saml.v2.metadata.EndpointType;
 import org.picketlink.identity.federation.saml.v2.metadata.EntitiesDescriptorType;
 import org.picketlink.identity.federation.saml.v2.metadata.EntityDescriptorType;
@@ -51,6 +53,8 @@ import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.PBEParameterSpec;
 import javax.servlet.ServletContext;
 import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.security.GeneralSecurityException;
 import java.security.PublicKey;
 import java.util.ArrayList;
@@ -581,8 +585,66 @@ public class CoreConfigUtil {
      *
      * @return
      */
-    @SuppressWarnings({"rawtypes", "unchecked"})
+    @SuppressWarnings({"rawtypes"})
     public static List<EntityDescriptorType> getMetadataConfiguration(ProviderType providerType, ServletContext servletContext) {
+        IMetadataProvider metadataProvider = createMetadataProvider(providerType, servletContext);
+
+        if (metadataProvider == null) {
+            return null;
+        }
+
+        List<EntityDescriptorType> resultList = new ArrayList<EntityDescriptorType>();
+        if (metadataProvider.isMultiple()) {
+            EntitiesDescriptorType metadatas = (EntitiesDescriptorType) metadataProvider.getMetaData();
+            addAllEntityDescriptorsRecursively(resultList, metadatas);
+        } else {
+            EntityDescriptorType metadata = (EntityDescriptorType) metadataProvider.getMetaData();
+            resultList.add(metadata);
+        }
+        return resultList;
+    }
+
+    /**
+     * <p>Read metadata from ProviderType into a {@link MetadataStore}. If the configured provider is a
+     * {@link MetadataStoreProvider}, the returned store is started and refreshes itself in background. Otherwise, the
+     * store holds the entities returned by {@link #getMetadataConfiguration(ProviderType, ServletContext)}.</p>
+     *
+     * @param providerType
+     * @param servletContext
+     *
+     * @return
+     */
+    @SuppressWarnings({"rawtypes"})
+    public static MetadataStore getMetadataStore(ProviderType providerType, ServletContext servletContext) {
+        IMetadataProvider metadataProvider = createMetadataProvider(providerType, servletContext);
+
+        if (metadataProvider == null) {
+            return null;
+        }
+
+        if (metadataProvider instanceof MetadataStoreProvider) {
+            MetadataStore metadataStore = ((MetadataStoreProvider) metadataProvider).getMetadataStore();
+
+            try {
+                metadataStore.start();
+            } catch (ProcessingException e) {
+                throw new RuntimeException(e);
+            }
+
+            return metadataStore;
+        }
+
+        List<EntityDescriptorType> resultList = new ArrayList<EntityDescriptorType>();
+        if (metadataProvider.isMultiple()) {
+            addAllEntityDescriptorsRecursively(resultList, (EntitiesDescriptorType) metadataProvider.getMetaData());
+        } else {
+            resultList.add((EntityDescriptorType) metadataProvider.getMetaData());
+        }
+        return MetadataStore.fromEntities(resultList);
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static IMetadataProvider createMetadataProvider(ProviderType providerType, ServletContext servletContext) {
         MetadataProviderType metadataProviderType = providerType.getMetaDataProvider();
 
         if (metadataProviderType == null) {
@@ -611,15 +673,26 @@ public class CoreConfigUtil {
             metadataProvider.injectFileStream(servletContext.getResourceAsStream(fileInjectionStr));
         }
 
-        List<EntityDescriptorType> resultList = new ArrayList<EntityDescriptorType>();
-        if (metadataProvider.isMultiple()) {
-            EntitiesDescriptorType metadatas = (EntitiesDescriptorType) metadataProvider.getMetaData();
-            addAllEntityDescriptorsRecursively(resultList, metadatas);
-        } else {
-            EntityDescriptorType metadata = (EntityDescriptorType) metadataProvider.getMetaData();
-            resultList.add(metadata);
+        if (metadataProvider instanceof MetadataStoreProvider) {
+            MetadataStoreProvider metadataStoreProvider = (MetadataStoreProvider) metadataProvider;
+            String fileName = metadataStoreProvider.getFileName();
+
+            if (isNotNull(fileName)) {
+                try {
+                    URL metadataURL = servletContext.getResource(fileName);
+
+                    if (metadataURL == null) {
+                        throw logger.injectedValueMissing("Metadata file [" + fileName + "]");
+                    }
+
+                    metadataStoreProvider.injectMetadataURL(metadataURL);
+                } catch (MalformedURLException e) {
+                    throw new RuntimeException(e);
+                }
+            }
         }
-        return resultList;
+
+        return metadataProvider;
     }
 
     private static void addAllEntityDescriptorsRecursively(List<EntityDescriptorType> resultList,
@@ -21,14 +21,17 @@ import org.picketlink.common.PicketLinkLogger;
 import org.picketlink.common.PicketLinkLoggerFactory;
 import org.picketlink.common.constants.GeneralConstants;
 import org.picketlink.common.exceptions.ProcessingException;
-import org.picketlink.common.util.DocumentUtil;
 import org.picketlink.common.util.SystemPropertiesUtil;
 import org.w3c.dom.Node;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stax.StAXSource;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
@@ -37,9 +40,24 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Utility class associated with JAXP Validation
+ * <p>Utility class associated with JAXP Validation.</p>
+ *
+ * <p>The {@link Schema} is compiled once and shared, given that it is thread-safe. A {@link Validator} is not, so each
+ * validation borrows an idle validator, or creates a new one, and gives it back once done. Up to
+ * {@link #MAX_IDLE_VALIDATORS} validators are kept idle. Validators are not bound to threads, so pooled threads do not
+ * keep references to this class loader, and a validation started while another one is running on the same thread,
+ * for instance from a resource resolver, uses its own validator.</p>
+ *
+ * <p>DOM and StAX sources are validated directly, without serializing them first. The number of validated documents and
+ * the time spent validating them are available from {@link #getValidationCount()} and
+ * {@link #getValidationTime()}, the time spent validating each document is logged at trace level.</p>
  *
  * @author Anil.Saldhana@redhat.com
  * @since Jun 30, 2011
@@ -48,16 +66,84 @@ public class JAXPValidationUtil {
 
     private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
 
-    protected static Validator validator;
+    /**
+     * <p>Max number of validators kept to be reused by the next validations.</p>
+     */
+    private static final int MAX_IDLE_VALIDATORS = 16;
+
+    private static final Queue<Validator> idleValidators = new ConcurrentLinkedQueue<Validator>();
+
+    private static final AtomicInteger idleValidatorCount = new AtomicInteger();
+
+    private static final AtomicLong validationCount = new AtomicLong();
+
+    private static final AtomicLong validationTime = new AtomicLong();
+
+    private static volatile Schema schema;
 
     protected static SchemaFactory schemaFactory;
 
+    /**
+     * @deprecated Validators are not thread-safe and are no longer shared. This field is not used anymore, use
+     * {@link #validator()} to get a new validator.
+     */
+    @Deprecated
+    protected static Validator validator;
+
     public static void validate(String str) throws SAXException, IOException {
-        validator().validate(new StreamSource(str));
+        validate(new StreamSource(str));
     }
 
     public static void validate(InputStream stream) throws SAXException, IOException {
-        validator().validate(new StreamSource(stream));
+        validate(new StreamSource(stream));
+    }
+
+    /**
+     * <p>Validates a DOM node, which can be a document or an element, without serializing it.</p>
+     *
+     * @param node
+     *
+     * @throws SAXException
+     * @throws IOException
+     */
+    public static void validate(Node node) throws SAXException, IOException {
+        validate(new DOMSource(node));
+    }
+
+    /**
+     * <p>Validates the events of a StAX reader, without building a DOM.</p>
+     *
+     * @param xmlEventReader
+     *
+     * @throws SAXException
+     * @throws IOException
+     */
+    public static void validate(XMLEventReader xmlEventReader) throws SAXException, IOException {
+        try {
+            validate(new StAXSource(xmlEventReader));
+        } catch (XMLStreamException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    public static void validate(Source source) throws SAXException, IOException {
+        Validator validator = borrowValidator();
+        long start = System.nanoTime();
+
+        try {
+            validator.validate(source);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+
+            validationCount.incrementAndGet();
+            validationTime.addAndGet(elapsed);
+
+            if (logger.isTraceEnabled()) {
+                logger.trace("Schema validation took [" + TimeUnit.NANOSECONDS.toMicros(elapsed) + "] microseconds.");
+            }
+
+            releaseValidator(validator);
+        }
     }
 
     /**
@@ -70,27 +156,97 @@ public class JAXPValidationUtil {
     public static void checkSchemaValidation(Node samlDocument) throws ProcessingException {
         if (SecurityActions.getSystemProperty("picketlink.schema.validate", "false").equalsIgnoreCase("true")) {
             try {
-                JAXPValidationUtil.validate(DocumentUtil.getNodeAsStream(samlDocument));
+                JAXPValidationUtil.validate(samlDocument);
             } catch (Exception e) {
                 throw logger.processingError(e);
             }
         }
     }
 
+    /**
+     * <p>Returns a new {@link Validator} for the PicketLink schemas. The returned instance is owned by the caller and
+     * must not be shared with other threads.</p>
+     *
+     * @return
+     *
+     * @throws SAXException
+     * @throws IOException
+     */
     public static Validator validator() throws SAXException, IOException {
-        SystemPropertiesUtil.ensure();
+        Validator validator = schema().newValidator();
+        validator.setErrorHandler(new CustomErrorHandler());
+        return validator;
+    }
 
-        if (validator == null) {
-            Schema schema = getSchema();
-            if (schema == null)
-                throw logger.nullValueError("schema");
+    /**
+     * <p>The number of documents validated so far.</p>
+     *
+     * @return
+     */
+    public static long getValidationCount() {
+        return validationCount.get();
+    }
 
-            validator = schema.newValidator();
-            validator.setErrorHandler(new CustomErrorHandler());
+    /**
+     * <p>The total time spent validating documents so far, in nanoseconds.</p>
+     *
+     * @return
+     */
+    public static long getValidationTime() {
+        return validationTime.get();
+    }
+
+    private static Validator borrowValidator() throws SAXException, IOException {
+        Validator validator = idleValidators.poll();
+
+        if (validator == null) {
+            return validator();
         }
+
+        idleValidatorCount.decrementAndGet();
+
         return validator;
     }
 
+    /**
+     * <p>Gives back a validator once a validation completed, or discards it if enough validators are idle.</p>
+     */
+    private static void releaseValidator(Validator validator) {
+        if (idleValidatorCount.incrementAndGet() > MAX_IDLE_VALIDATORS) {
+            idleValidatorCount.decrementAndGet();
+            return;
+        }
+
+        // resetting the validator also discards its error handler
+        validator.reset();
+        validator.setErrorHandler(new CustomErrorHandler());
+
+        idleValidators.offer(validator);
+    }
+
+    private static Schema schema() throws IOException {
+        Schema result = schema;
+
+        if (result == null) {
+            synchronized (JAXPValidationUtil.class) {
+                result = schema;
+
+                if (result == null) {
+                    SystemPropertiesUtil.ensure();
+
+                    result = getSchema();
+
+                    if (result == null)
+                        throw logger.nullValueError("schema");
+
+                    schema = result;
+                }
+            }
+        }
+
+        return result;
+    }
+
     private static Schema getSchema() throws IOException {
         boolean tccl_jaxp = SystemPropertiesUtil.getSystemProperty(GeneralConstants.TCCL_JAXP, "false").equalsIgnoreCase("true");
 
@@ -163,6 +319,4 @@ public class JAXPValidationUtil {
             }
         }
     }
-
-    ;
 }
\ No newline at end of file
@@ -66,6 +66,7 @@ import org.picketlink.identity.federation.core.interfaces.AttributeManager;
 import org.picketlink.identity.federation.core.interfaces.ProtocolContext;
 import org.picketlink.identity.federation.core.interfaces.RoleGenerator;
 import org.picketlink.identity.federation.core.interfaces.TrustKeyManager;
+import org.picketlink.identity.federation.core.saml.md.providers.MetadataStore;
 import org.picketlink.identity.federation.core.saml.v1.SAML11ProtocolContext;
 import org.picketlink.identity.federation.core.saml.v1.writers.SAML11ResponseWriter;
 import org.picketlink.identity.federation.core.saml.v2.common.IDGenerator;
@@ -96,7 +97,6 @@ import org.picketlink.identity.federation.saml.v1.protocol.SAML11ResponseType;
 import org.picketlink.identity.federation.saml.v1.protocol.SAML11StatusType;
 import org.picketlink.identity.federation.saml.v2.SAML2Object;
 import org.picketlink.identity.federation.saml.v2.assertion.NameIDType;
-import org.picketlink.identity.federation.saml.v2.metadata.EntityDescriptorType;
 import org.picketlink.identity.federation.saml.v2.metadata.SPSSODescriptorType;
 import org.picketlink.identity.federation.saml.v2.protocol.AuthnRequestType;
 import org.picketlink.identity.federation.saml.v2.protocol.LogoutRequestType;
@@ -152,6 +152,12 @@ public class IDPFilter implements Filter {
 
     protected PicketLinkAuditHelper auditHelper = null;
 
+    /**
+     * <p>Indicates if the {@link #auditHelper} was created by this filter, in which case it is stopped when the filter
+     * is destroyed. Helpers provided by the servlet context are owned by whoever registered them.</p>
+     */
+    private boolean auditHelperCreated = false;
+
     protected IDPType idpConfiguration = null;
     private final IDPType originalConfiguration;
 
@@ -188,7 +194,7 @@ public class IDPFilter implements Filter {
      */
     private final Lock chainLock = new ReentrantLock();
 
-    private Map<String, SPSSODescriptorType> spSSOMetadataMap = new HashMap<String, SPSSODescriptorType>();
+    private volatile MetadataStore spMetadataStore;
     private Handlers handlers;
     private String characterEncoding;
     private boolean passUserPrincipalToAttributeManager;
@@ -263,6 +269,13 @@ public class IDPFilter implements Filter {
 
     @Override
     public void destroy() {
+        if (this.spMetadataStore != null) {
+            this.spMetadataStore.stop();
+        }
+
+        if (this.auditHelper != null && this.auditHelperCreated) {
+            this.auditHelper.stop();
+        }
     }
 
     /**
@@ -495,12 +508,12 @@ public class IDPFilter implements Filter {
             }
 
             requestOptions.put(GeneralConstants.IGNORE_SIGNATURES, ignoreSignatures);
-            requestOptions.put(GeneralConstants.SP_SSO_METADATA_DESCRIPTOR, spSSOMetadataMap.get(issuer));
+            requestOptions.put(GeneralConstants.SP_SSO_METADATA_DESCRIPTOR, getSPMetadata(issuer));
             requestOptions.put(GeneralConstants.ROLE_GENERATOR, roleGenerator);
             requestOptions.put(GeneralConstants.CONFIGURATION, this.idpConfiguration);
             requestOptions.put(GeneralConstants.SAML_IDP_STRICT_POST_BINDING, this.idpConfiguration.isStrictPostBinding());
             requestOptions.put(GeneralConstants.SUPPORTS_SIGNATURES, this.idpConfiguration.isSupportsSignature());
-            requestOptions.put(GeneralConstants.SSO_METADATA_DESCRIPTOR, spSSOMetadataMap.get(issuer));
+            requestOptions.put(GeneralConstants.SSO_METADATA_DESCRIPTOR, getSPMetadata(issuer));
 
             if (assertionID != null) {
                 requestOptions.put(GeneralConstants.ASSERTION_ID, assertionID);
@@ -1088,6 +1101,7 @@ public class IDPFilter implements Filter {
                     if (auditHelper == null) {
                         String securityDomainName = PicketLinkAuditHelper.getSecurityDomainName(servletContext);
                         auditHelper = new PicketLinkAuditHelper(securityDomainName);
+                        auditHelperCreated = true;
                     }
                 }
             }
@@ -1131,15 +1145,13 @@ public class IDPFilter implements Filter {
             }
 
             // Read SP Metadata if provided
-            List<EntityDescriptorType> entityDescriptors = CoreConfigUtil.getMetadataConfiguration(idpType,
-                    servletContext);
-            if (entityDescriptors != null) {
-                for (EntityDescriptorType entityDescriptorType : entityDescriptors) {
-                    SPSSODescriptorType spSSODescriptor = CoreConfigUtil.getSPDescriptor(entityDescriptorType);
-                    if (spSSODescriptor != null) {
-                        spSSOMetadataMap.put(entityDescriptorType.getEntityID(), spSSODescriptor);
-                    }
-                }
+            MetadataStore previousMetadataStore = this.spMetadataStore;
+
+            this.spMetadataStore = CoreConfigUtil.getMetadataStore(idpType, servletContext);
+
+            // the configuration may be reloaded, the previous store must not keep refreshing
+            if (previousMetadataStore != null) {
+                previousMetadataStore.stop();
             }
 
             this.picketLinkConfiguration = picketLinkType;
@@ -1266,6 +1278,16 @@ public class IDPFilter implements Filter {
         return attrStatement;
     }
 
+    private SPSSODescriptorType getSPMetadata(String issuer) {
+        MetadataStore spMetadataStore = this.spMetadataStore;
+
+        if (spMetadataStore == null) {
+            return null;
+        }
+
+        return spMetadataStore.getSPSSODescriptor(issuer);
+    }
+
     /**
      * We will ignore signatures of current SAMLRequest if SP Metadata are provided for current SP and if metadata specifies
      * that SAMLRequest is not signed for this SP.
@@ -1274,7 +1296,7 @@ public class IDPFilter implements Filter {
      * @return true if signature is not expected in SAMLRequest and so signature validation should be ignored
      */
     private Boolean willIgnoreSignatureOfCurrentRequest(String spIssuer) {
-        SPSSODescriptorType currentSPMetadata = spSSOMetadataMap.get(spIssuer);
+        SPSSODescriptorType currentSPMetadata = getSPMetadata(spIssuer);
 
         if (currentSPMetadata == null) {
             return false;
@@ -1324,6 +1346,7 @@ public class IDPFilter implements Filter {
                 try {
                     this.auditHelper = (PicketLinkAuditHelper) SecurityActions
                             .loadClass(Thread.currentThread().getContextClassLoader(), auditHelperType).newInstance();
+                    this.auditHelperCreated = true;
                 } catch (Exception e) {
                     throw new ServletException("Could not create audit helper [" + auditHelperType + "].", e);
                 }
@@ -161,6 +161,15 @@ public class ConfigurationUtil {
         return null;
     }
 
+    /**
+     * Create a new {@link PicketLinkAuditHelper} for the given {@link ServletContext}. The caller owns the returned
+     * helper and must call {@link PicketLinkAuditHelper#stop()} once it is no longer used, usually when the
+     * application is undeployed.
+     *
+     * @param servletContext
+     *
+     * @return
+     */
     public static PicketLinkAuditHelper getAuditHelper(ServletContext servletContext) {
         String auditHelperType = servletContext.getInitParameter(AUDIT_HELPER);
 
@@ -0,0 +1,230 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.identity.federation.core.audit;
+
+import org.jboss.security.audit.AuditEvent;
+import org.junit.Test;
+import org.picketlink.identity.federation.core.audit.AsyncAuditDispatcher;
+import org.picketlink.identity.federation.core.audit.AuditOverflowPolicy;
+import org.picketlink.identity.federation.core.audit.PicketLinkAuditEvent;
+import org.picketlink.identity.federation.core.audit.PicketLinkAuditSink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test {@link AsyncAuditDispatcher}
+ */
+public class AsyncAuditDispatcherTestCase {
+
+    @Test
+    public void testEventsDeliveredInOrder() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        AsyncAuditDispatcher dispatcher = new AsyncAuditDispatcher(sink, 100, 10, AuditOverflowPolicy.BLOCK, 1);
+        List<AuditEvent> events = new ArrayList<AuditEvent>();
+
+        for (int i = 0; i < 50; i++) {
+            AuditEvent event = new PicketLinkAuditEvent("Info");
+
+            events.add(event);
+            assertTrue(dispatcher.dispatch(event));
+        }
+
+        dispatcher.stop();
+
+        assertEquals(events, sink.events);
+        assertEquals(50, dispatcher.getDispatchedCount());
+        assertEquals(0, dispatcher.getDroppedCount());
+        assertEquals(0, dispatcher.getQueueDepth());
+        assertTrue(sink.closed);
+
+        for (Integer batchSize : sink.batchSizes) {
+            assertTrue(batchSize <= 10);
+        }
+    }
+
+    @Test
+    public void testDropWhenFull() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        AsyncAuditDispatcher dispatcher = new AsyncAuditDispatcher(sink, 5, 1, AuditOverflowPolicy.DROP, 1);
+
+        sink.block();
+
+        // the first event is held by the blocked sink
+        assertTrue(dispatcher.dispatch(new PicketLinkAuditEvent("Info")));
+        assertTrue(sink.awaitBlocked());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(dispatcher.dispatch(new PicketLinkAuditEvent("Info")));
+        }
+
+        assertFalse(dispatcher.dispatch(new PicketLinkAuditEvent("Info")));
+        assertEquals(5, dispatcher.getQueueDepth());
+        assertEquals(1, dispatcher.getDroppedCount());
+
+        sink.unblock();
+        dispatcher.stop();
+
+        assertEquals(5, sink.events.size());
+        assertEquals(5, dispatcher.getDispatchedCount());
+    }
+
+    @Test
+    public void testSampleWhenHalfFull() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        AsyncAuditDispatcher dispatcher = new AsyncAuditDispatcher(sink, 10, 1, AuditOverflowPolicy.SAMPLE, 2);
+
+        sink.block();
+
+        assertTrue(dispatcher.dispatch(new PicketLinkAuditEvent("Info")));
+        assertTrue(sink.awaitBlocked());
+
+        int accepted = 1;
+
+        for (int i = 0; i < 20; i++) {
+            if (dispatcher.dispatch(new PicketLinkAuditEvent("Info"))) {
+                accepted++;
+            }
+        }
+
+        // 5 events fill half the queue, then one out of two events is kept until the queue is full
+        assertEquals(10, accepted);
+        assertEquals(11, dispatcher.getDroppedCount());
+
+        sink.unblock();
+        dispatcher.stop();
+
+        assertEquals(10, sink.events.size());
+    }
+
+    @Test
+    public void testBlockWhenFull() throws Exception {
+        final RecordingSink sink = new RecordingSink();
+        final AsyncAuditDispatcher dispatcher = new AsyncAuditDispatcher(sink, 1, 1, AuditOverflowPolicy.BLOCK, 1);
+
+        sink.block();
+
+        assertTrue(dispatcher.dispatch(new PicketLinkAuditEvent("Info")));
+        assertTrue(sink.awaitBlocked());
+
+        final CountDownLatch dispatched = new CountDownLatch(1);
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                dispatcher.dispatch(new PicketLinkAuditEvent("Info"));
+                dispatched.countDown();
+            }
+        });
+
+        producer.start();
+
+        assertFalse(dispatched.await(200, TimeUnit.MILLISECONDS));
+
+        sink.unblock();
+
+        assertTrue(dispatched.await(5, TimeUnit.SECONDS));
+
+        dispatcher.stop();
+
+        assertEquals(2, sink.events.size());
+        assertEquals(0, dispatcher.getDroppedCount());
+    }
+
+    @Test
+    public void testSinkFailure() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        AsyncAuditDispatcher dispatcher = new AsyncAuditDispatcher(sink, 10, 10, AuditOverflowPolicy.BLOCK, 1);
+
+        sink.fail = true;
+
+        dispatcher.dispatch(new PicketLinkAuditEvent("Info"));
+        dispatcher.stop();
+
+        assertEquals(1, dispatcher.getFailedCount());
+        assertEquals(0, dispatcher.getDispatchedCount());
+        assertEquals(0, dispatcher.getQueueDepth());
+    }
+
+    @Test
+    public void testStopWithoutEvents() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        AsyncAuditDispatcher dispatcher = new AsyncAuditDispatcher(sink, 10, 10, AuditOverflowPolicy.BLOCK, 1);
+
+        dispatcher.stop();
+
+        assertTrue(sink.closed);
+
+        // events raised once stopped are delivered by the calling thread
+        AuditEvent event = new PicketLinkAuditEvent("Info");
+
+        assertTrue(dispatcher.dispatch(event));
+        assertEquals(1, sink.events.size());
+        assertEquals(event, sink.events.get(0));
+        assertEquals(0, dispatcher.getAcceptedCount());
+    }
+
+    private static class RecordingSink implements PicketLinkAuditSink {
+
+        private final List<AuditEvent> events = new ArrayList<AuditEvent>();
+        private final List<Integer> batchSizes = new ArrayList<Integer>();
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private volatile CountDownLatch unblocked = new CountDownLatch(0);
+        private volatile boolean fail;
+        private volatile boolean closed;
+
+        public void audit(List<AuditEvent> batch) {
+            blocked.countDown();
+
+            try {
+                unblocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (fail) {
+                throw new RuntimeException("Sink failure.");
+            }
+
+            synchronized (this) {
+                events.addAll(batch);
+                batchSizes.add(batch.size());
+            }
+        }
+
+        public void close() {
+            closed = true;
+        }
+
+        void block() {
+            unblocked = new CountDownLatch(1);
+        }
+
+        boolean awaitBlocked() throws InterruptedException {
+            return blocked.await(5, TimeUnit.SECONDS);
+        }
+
+        void unblock() {
+            unblocked.countDown();
+        }
+    }
+}
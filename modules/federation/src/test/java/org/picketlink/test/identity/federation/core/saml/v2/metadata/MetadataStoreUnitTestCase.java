@@ -0,0 +1,285 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.identity.federation.core.saml.v2.metadata;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.picketlink.common.exceptions.ProcessingException;
+import org.picketlink.common.util.DocumentUtil;
+import org.picketlink.identity.federation.core.saml.md.providers.MetadataStore;
+import org.picketlink.identity.federation.core.util.XMLSignatureUtil;
+import org.picketlink.identity.federation.saml.v2.metadata.KeyTypes;
+import org.w3c.dom.Document;
+
+import javax.xml.crypto.dsig.DigestMethod;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * <p>Unit test the {@link MetadataStore}.</p>
+ */
+public class MetadataStoreUnitTestCase {
+
+    private static final String METADATA_FILE = "saml2/metadata/seam-entities.xml";
+
+    private static final String OPENSSO_ENTITY_ID = "http://localhost:8888/opensso";
+
+    private static final String SSOCIRCLE_ENTITY_ID = "http://idp.ssocircle.com";
+
+    private static final String RSA_SHA256 = "http://www.w3.org/2001/04/xmldsig-more#rsa-sha256";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServer server;
+    private volatile byte[] servedMetadata;
+    private final AtomicInteger notModifiedResponses = new AtomicInteger();
+
+    @After
+    public void onAfter() {
+        if (this.server != null) {
+            this.server.stop(0);
+        }
+    }
+
+    @Test
+    public void testIndexLookup() throws Exception {
+        MetadataStore store = new MetadataStore(getMetadataResource(), 0, 0, null);
+
+        assertTrue(store.refresh());
+        assertEntitiesFound(store);
+    }
+
+    @Test
+    public void testIndexFileLookup() throws Exception {
+        MetadataStore store = new MetadataStore(getMetadataResource(), 0, 0, this.temporaryFolder.newFolder());
+
+        assertTrue(store.refresh());
+        assertEntitiesFound(store);
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+        File metadataFile = this.temporaryFolder.newFile("metadata.xml");
+        String metadata = new String(readResource(), "UTF-8");
+
+        writeFile(metadataFile, metadata, System.currentTimeMillis() - 60000);
+
+        MetadataStore store = new MetadataStore(metadataFile.toURI().toURL(), 0, 0, null);
+
+        assertTrue(store.refresh());
+        assertNotNull(store.getEntityDescriptor(SSOCIRCLE_ENTITY_ID));
+
+        // unchanged metadata is not parsed again
+        assertFalse(store.refresh());
+
+        writeFile(metadataFile, metadata.replace(SSOCIRCLE_ENTITY_ID, "http://idp.example.com"), System.currentTimeMillis());
+
+        assertTrue(store.refresh());
+        assertNull(store.getEntityDescriptor(SSOCIRCLE_ENTITY_ID));
+        assertNotNull(store.getEntityDescriptor("http://idp.example.com"));
+        assertNotNull(store.getEntityDescriptor(OPENSSO_ENTITY_ID));
+    }
+
+    @Test
+    public void testNotModified() throws Exception {
+        KeyPair keyPair = generateKeyPair();
+
+        this.servedMetadata = sign(readResource(), keyPair);
+
+        MetadataStore store = new MetadataStore(startServer(), 0, 0, null, keyPair.getPublic());
+
+        assertTrue(store.refresh());
+        assertFalse(store.refresh());
+        assertEquals(1, this.notModifiedResponses.get());
+        assertEntitiesFound(store);
+    }
+
+    @Test
+    public void testSignatureVerified() throws Exception {
+        KeyPair keyPair = generateKeyPair();
+
+        this.servedMetadata = sign(readResource(), keyPair);
+
+        MetadataStore store = new MetadataStore(startServer(), 0, 0, null, keyPair.getPublic());
+
+        assertTrue(store.refresh());
+        assertEntitiesFound(store);
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void failRemoteMetadataWithoutTrustKey() throws Exception {
+        new MetadataStore(new URL("https://localhost/metadata.xml"), 0, 0, null);
+    }
+
+    @Test
+    public void failUnsignedMetadata() throws Exception {
+        this.servedMetadata = readResource();
+
+        assertRejected(new MetadataStore(startServer(), 0, 0, null, generateKeyPair().getPublic()));
+    }
+
+    @Test
+    public void failUntrustedSignature() throws Exception {
+        this.servedMetadata = sign(readResource(), generateKeyPair());
+
+        assertRejected(new MetadataStore(startServer(), 0, 0, null, generateKeyPair().getPublic()));
+    }
+
+    @Test
+    public void failTamperedMetadata() throws Exception {
+        KeyPair keyPair = generateKeyPair();
+        String signedMetadata = new String(sign(readResource(), keyPair), "UTF-8");
+
+        this.servedMetadata = signedMetadata.replace(SSOCIRCLE_ENTITY_ID, "http://idp.example.com").getBytes("UTF-8");
+
+        assertRejected(new MetadataStore(startServer(), 0, 0, null, keyPair.getPublic()));
+    }
+
+    private void assertRejected(MetadataStore store) {
+        try {
+            store.refresh();
+            fail("Metadata must be rejected.");
+        } catch (ProcessingException expected) {
+        }
+
+        assertEquals(0, store.size());
+        assertNull(store.getEntityDescriptor(OPENSSO_ENTITY_ID));
+    }
+
+    private void assertEntitiesFound(MetadataStore store) {
+        assertEquals(2, store.size());
+        assertNotNull(store.getEntityDescriptor(OPENSSO_ENTITY_ID));
+        assertNotNull(store.getIDPSSODescriptor(OPENSSO_ENTITY_ID));
+        assertNull(store.getSPSSODescriptor(OPENSSO_ENTITY_ID));
+        assertNotNull(store.getIDPCertificate(OPENSSO_ENTITY_ID, KeyTypes.SIGNING));
+        assertNotNull(store.getIDPSSODescriptor(SSOCIRCLE_ENTITY_ID));
+        assertNull(store.getEntityDescriptor("http://unknown.example.com"));
+    }
+
+    private URL startServer() throws IOException {
+        final String lastModified;
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        lastModified = format.format(new Date(System.currentTimeMillis() - 60000));
+
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/metadata.xml", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (exchange.getRequestHeaders().getFirst("If-Modified-Since") != null) {
+                    notModifiedResponses.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    exchange.getResponseHeaders().set("Last-Modified", lastModified);
+                    exchange.sendResponseHeaders(200, servedMetadata.length);
+
+                    OutputStream outputStream = exchange.getResponseBody();
+
+                    outputStream.write(servedMetadata);
+                    outputStream.close();
+                }
+
+                exchange.close();
+            }
+        });
+        this.server.start();
+
+        return new URL("http://localhost:" + this.server.getAddress().getPort() + "/metadata.xml");
+    }
+
+    private byte[] sign(byte[] metadata, KeyPair keyPair) throws Exception {
+        Document document = DocumentUtil.getDocument(new String(metadata, "UTF-8"));
+
+        XMLSignatureUtil.sign(document, keyPair, DigestMethod.SHA256, RSA_SHA256, "");
+
+        return DocumentUtil.getDocumentAsString(document).getBytes("UTF-8");
+    }
+
+    private KeyPair generateKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+
+        generator.initialize(2048);
+
+        return generator.generateKeyPair();
+    }
+
+    private URL getMetadataResource() {
+        URL resource = Thread.currentThread().getContextClassLoader().getResource(METADATA_FILE);
+
+        assertNotNull(resource);
+
+        return resource;
+    }
+
+    private byte[] readResource() throws IOException {
+        InputStream inputStream = getMetadataResource().openStream();
+
+        try {
+            byte[] buffer = new byte[8192];
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            int length;
+
+            while ((length = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, length);
+            }
+
+            return outputStream.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private void writeFile(File file, String content, long lastModified) throws IOException {
+        OutputStream outputStream = new FileOutputStream(file);
+
+        try {
+            outputStream.write(content.getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+
+        assertTrue(file.setLastModified(lastModified));
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.identity.federation.core.util;
+
+import org.junit.Test;
+import org.picketlink.common.util.DocumentUtil;
+import org.picketlink.common.util.StaxParserUtil;
+import org.picketlink.identity.federation.core.util.JAXPValidationUtil;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.sax.SAXSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test the {@link JAXPValidationUtil}
+ */
+public class JAXPValidationUtilUnitTestCase {
+
+    private static final String VALID =
+        "<saml:Issuer xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\">http://localhost/idp</saml:Issuer>";
+
+    private static final String INVALID =
+        "<saml:Issuer xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\"><saml:Unknown/></saml:Issuer>";
+
+    @Test
+    public void testValidateSources() throws Exception {
+        long count = JAXPValidationUtil.getValidationCount();
+
+        JAXPValidationUtil.validate(DocumentUtil.getDocument(VALID));
+        JAXPValidationUtil.validate(new ByteArrayInputStream(VALID.getBytes("UTF-8")));
+        JAXPValidationUtil.validate(StaxParserUtil.getXMLEventReader(new ByteArrayInputStream(VALID.getBytes("UTF-8"))));
+
+        assertTrue(JAXPValidationUtil.getValidationCount() >= count + 3);
+    }
+
+    @Test
+    public void testValidAfterInvalid() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            try {
+                JAXPValidationUtil.validate(DocumentUtil.getDocument(INVALID));
+                fail("Invalid document accepted.");
+            } catch (SAXException expected) {
+            }
+
+            JAXPValidationUtil.validate(DocumentUtil.getDocument(VALID));
+        }
+    }
+
+    @Test
+    public void testValidatorNotShared() throws Exception {
+        assertNotSame(JAXPValidationUtil.validator(), JAXPValidationUtil.validator());
+    }
+
+    @Test
+    public void testReentrantValidation() throws Exception {
+        final List<String> nested = new ArrayList<String>();
+
+        // validates another document while the outer document is being parsed by the validator
+        XMLFilterImpl reader = new XMLFilterImpl(newXMLReader()) {
+            @Override
+            public void parse(InputSource input) throws SAXException, IOException {
+                try {
+                    JAXPValidationUtil.validate(DocumentUtil.getDocument(INVALID));
+                } catch (SAXException expected) {
+                    nested.add(expected.getMessage());
+                } catch (Exception e) {
+                    throw new SAXException(e);
+                }
+
+                JAXPValidationUtil.validate(new ByteArrayInputStream(VALID.getBytes("UTF-8")));
+
+                super.parse(input);
+            }
+        };
+
+        JAXPValidationUtil.validate(new SAXSource(reader, new InputSource(new StringReader(VALID))));
+
+        assertEquals(1, nested.size());
+
+        try {
+            JAXPValidationUtil.validate(new SAXSource(reader, new InputSource(new StringReader(INVALID))));
+            fail("Invalid document accepted.");
+        } catch (SAXException expected) {
+        }
+
+        assertEquals(2, nested.size());
+    }
+
+    @Test
+    public void testConcurrentValidation() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+
+            for (int i = 0; i < 64; i++) {
+                final boolean valid = i % 4 != 0;
+
+                results.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        try {
+                            JAXPValidationUtil.validate(DocumentUtil.getDocument(valid ? VALID : INVALID));
+                        } catch (SAXException e) {
+                            if (valid) {
+                                throw e;
+                            }
+
+                            return null;
+                        }
+
+                        if (!valid) {
+                            fail("Invalid document accepted.");
+                        }
+
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Object> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private org.xml.sax.XMLReader newXMLReader() throws Exception {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+
+        factory.setNamespaceAware(true);
+
+        return factory.newSAXParser().getXMLReader();
+    }
+}
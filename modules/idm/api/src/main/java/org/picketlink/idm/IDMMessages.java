@@ -172,6 +172,10 @@ public interface IDMMessages {
     SecurityConfigurationException configJpaStoreRequiredMappingAnnotation(Class<?> entityType,
                                                                            Class<? extends Annotation> annotation);
 
+    @Message(value = "Field annotated with %s in entity [%s] must be of type %s.")
+    SecurityConfigurationException configJpaStoreInvalidMappingAnnotationType(Class<? extends Annotation> annotation,
+                                                                               Class<?> entityType, String expectedTypes);
+
     @Message(value = "Invalid mapping for type [%s]. No entity found with a field annotated with %s.")
     SecurityConfigurationException configJpaStoreRequiredMappingAnnotationForAttributedType(Class<? extends AttributedType> attributedType,
         Class<? extends Annotation> annotation);
@@ -26,15 +26,67 @@ import org.picketlink.idm.model.basic.Realm;
 import org.picketlink.idm.model.basic.Role;
 import org.picketlink.idm.model.basic.User;
 
+import java.util.List;
+
 /**
- * Storage for User, Group and Role instances to enable quick resolution of identity memberships.
+ * <p>Storage for {@link IdentityType} instances to enable quick resolution of identities without querying the
+ * identity stores.</p>
+ *
+ * <p>Entries are keyed by the partition, the queried type and a single identifying property (eg.: the identifier,
+ * the login name of an {@link Agent} or the name of a {@link Role}), and hold the result that a query for that property
+ * returned. Empty results are also cached, so lookups for identities that do not exist can be resolved without
+ * querying the stores as well.</p>
  *
- * TODO: dicuss if we can have only two methods here. put(IdentityType) and lookup/get(IdentityType).
- * TODO: dicuss if we need cache capabilities when using stores like the the JPA that usually have its own cache mechanisms (eg.: hibernate second level cache).
+ * <p>Implementations must be thread-safe, given that a single instance is shared by all {@link IdentityManager} instances
+ * created for the same configuration.</p>
  *
  * @author Shane Bryzak
  */
 public interface IdentityCache {
+
+    /**
+     * The active IdentityCache instance may be stored in the IdentityContext under this parameter name
+     */
+    String IDENTITY_CACHE_CTX_PARAMETER = "IDENTITY_CACHE_CTX_PARAMETER";
+
+    /**
+     * <p>Returns the cached result of a query for instances of the given <code>type</code> whose property with the
+     * given <code>propertyName</code> is equal to <code>value</code>.</p>
+     *
+     * @param partition The partition the query was executed for.
+     * @param type The queried type.
+     * @param propertyName The name of the identifying property.
+     * @param value The value of the identifying property.
+     *
+     * @return The cached result, which may be empty. If nothing was cached for the given key, returns null.
+     */
+    <T extends IdentityType> List<T> lookup(Partition partition, Class<T> type, String propertyName, Object value);
+
+    /**
+     * <p>Returns the current generation of this cache, which changes whenever an entry is invalidated. It must be
+     * obtained before querying the stores and provided when caching the result.</p>
+     *
+     * @return
+     */
+    long getGeneration();
+
+    /**
+     * <p>Caches the result of a query for instances of the given <code>type</code> whose property with the given
+     * <code>propertyName</code> is equal to <code>value</code>, unless an entry was invalidated since the given
+     * <code>generation</code> was obtained. In that case the result may already be stale.</p>
+     *
+     * <p>Implementations may ignore keys they are not able to invalidate properly.</p>
+     *
+     * @param partition The partition the query was executed for.
+     * @param type The queried type.
+     * @param propertyName The name of the identifying property.
+     * @param value The value of the identifying property.
+     * @param result The query result.
+     * @param generation The generation obtained from {@link #getGeneration()} before querying the stores.
+     */
+    <T extends IdentityType> void put(Partition partition, Class<T> type, String propertyName, Object value, List<T> result,
+                                      long generation);
+
     /**
      * Returns the cached User object for the specified id, in the specified Realm.  If the User has
      * not previously been cached, returns null.
@@ -102,14 +154,51 @@ public interface IdentityCache {
     /**
      * Inserts the specified {@link Agent} into the cache, within the specified Partition.
      *
-     * @param partition
-     * @param role
+     * @param realm
+     * @param agent
      */
     void putAgent(Realm realm, Agent agent);
 
     /**
+     * <p>Removes all entries that reference the given {@link IdentityType}, as well as all entries whose key matches
+     * any of its identifying properties. This method must be called whenever an identity is added, updated or removed.</p>
      *
+     * @param partition
      * @param identity
      */
     void invalidate(Partition partition, IdentityType identity);
+
+    /**
+     * <p>Removes all entries cached for the given {@link Partition}.</p>
+     *
+     * @param partition
+     */
+    void invalidate(Partition partition);
+
+    /**
+     * <p>Removes all entries from the cache.</p>
+     */
+    void invalidateAll();
+
+    /**
+     * <p>Returns the number of lookups resolved from the cache.</p>
+     *
+     * @return
+     */
+    long getHitCount();
+
+    /**
+     * <p>Returns the number of lookups that could not be resolved from the cache.</p>
+     *
+     * @return
+     */
+    long getMissCount();
+
+    /**
+     * <p>Returns the number of entries removed from the cache because they expired or because the cache reached its
+     * maximum size.</p>
+     *
+     * @return
+     */
+    long getEvictionCount();
 }
@@ -26,6 +26,8 @@ import org.picketlink.idm.query.IdentityQueryBuilder;
 
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * <p>Manages all Identity Management related operations.</p>
@@ -129,6 +131,33 @@ public interface IdentityManager {
      */
     void validateCredentials(Credentials credentials);
 
+    /**
+     * <p>
+     * Validates the given {@link Credentials} without blocking the calling thread.
+     * </p>
+     * <p>
+     * If a password hashing executor is enabled for the partition's configuration, the account and the stored
+     * credential are still read by the calling thread but the password hashing runs on one of the executor threads. The
+     * returned stage completes exceptionally if the executor is saturated. By default, the credentials are validated by
+     * the calling thread before this method returns.
+     * </p>
+     *
+     * @param credentials
+     * @return A stage completed with the given credentials once they are validated.
+     */
+    default <T extends Credentials> CompletionStage<T> validateCredentialsAsync(T credentials) {
+        CompletableFuture<T> result = new CompletableFuture<T>();
+
+        try {
+            validateCredentials(credentials);
+            result.complete(credentials);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+
+        return result;
+    }
+
     /**
      * <p>
      * Updates a credential for the given {@link Account}.
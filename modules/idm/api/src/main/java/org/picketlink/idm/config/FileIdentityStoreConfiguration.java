@@ -38,12 +38,16 @@ public class FileIdentityStoreConfiguration extends AbstractIdentityStoreConfigu
     private final boolean asyncWrite;
     private final boolean alwaysCreateFiles;
     private final String workingDir;
+    private final boolean journal;
+    private final int journalCompactionThreshold;
 
     FileIdentityStoreConfiguration(
             String workingDir,
             boolean preserveState,
             boolean asyncWrite,
             int asyncWriteThreadPool,
+            boolean journal,
+            int journalCompactionThreshold,
             Map<Class<? extends AttributedType>, Set<IdentityOperation>> supportedTypes,
             Map<Class<? extends AttributedType>, Set<IdentityOperation>> unsupportedTypes,
             List<ContextInitializer> contextInitializers,
@@ -58,6 +62,8 @@ public class FileIdentityStoreConfiguration extends AbstractIdentityStoreConfigu
         this.alwaysCreateFiles = !preserveState;
         this.asyncWrite = asyncWrite;
         this.asyncThreadPool = asyncWriteThreadPool;
+        this.journal = journal;
+        this.journalCompactionThreshold = journalCompactionThreshold;
     }
 
     public String getWorkingDir() {
@@ -75,4 +81,23 @@ public class FileIdentityStoreConfiguration extends AbstractIdentityStoreConfigu
     public int getAsyncThreadPool() {
         return this.asyncThreadPool;
     }
+
+    /**
+     * <p>Indicates if changes are appended to a journal, instead of rewriting the data files on every change.</p>
+     *
+     * @return
+     */
+    public boolean isJournal() {
+        return this.journal;
+    }
+
+    /**
+     * <p>The number of journal records after which a snapshot of the data files is written and the journal is
+     * truncated.</p>
+     *
+     * @return
+     */
+    public int getJournalCompactionThreshold() {
+        return this.journalCompactionThreshold;
+    }
 }
\ No newline at end of file
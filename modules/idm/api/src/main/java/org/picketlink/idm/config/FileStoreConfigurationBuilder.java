@@ -37,6 +37,8 @@ public class FileStoreConfigurationBuilder extends
     private boolean preserveState = false;
     private boolean asyncWrite = false;
     private int asyncWriteThreadPool = 5;
+    private boolean journal = false;
+    private int journalCompactionThreshold = 10000;
 
     public FileStoreConfigurationBuilder(IdentityStoresConfigurationBuilder builder) {
         super(builder);
@@ -90,6 +92,35 @@ public class FileStoreConfigurationBuilder extends
         return this;
     }
 
+    /**
+     * <p>Indicates that changes should be appended to a journal, instead of rewriting the data files on every change.
+     * The journal is replayed on startup and compacted into the data files once it reaches the compaction
+     * threshold.</p>
+     *
+     * <p>Journal writes are synced to disk in batches. If asyncWrite is also enabled, write operations return before
+     * their changes are synced.</p>
+     *
+     * <p>Defaults to false.</p>
+     *
+     * @param journal
+     * @return
+     */
+    public FileStoreConfigurationBuilder journal(boolean journal) {
+        this.journal = journal;
+        return this;
+    }
+
+    /**
+     * <p>If journal is enabled, defines the number of records after which the journal is compacted.</p>
+     *
+     * @param records
+     * @return
+     */
+    public FileStoreConfigurationBuilder journalCompactionThreshold(int records) {
+        this.journalCompactionThreshold = records;
+        return this;
+    }
+
     @Override
     protected FileIdentityStoreConfiguration create() {
         return new FileIdentityStoreConfiguration(
@@ -97,6 +128,8 @@ public class FileStoreConfigurationBuilder extends
                 this.preserveState,
                 this.asyncWrite,
                 this.asyncWriteThreadPool,
+                this.journal,
+                this.journalCompactionThreshold,
                 getSupportedTypes(),
                 getUnsupportedTypes(),
                 getContextInitializers(),
@@ -114,6 +147,10 @@ public class FileStoreConfigurationBuilder extends
         if (this.asyncWriteThreadPool <= 0) {
             throw new SecurityConfigurationException("The thread pool size must be greater than zero.");
         }
+
+        if (this.journal && this.journalCompactionThreshold <= 0) {
+            throw new SecurityConfigurationException("The journal compaction threshold must be greater than zero.");
+        }
     }
 
     @Override
@@ -123,6 +160,8 @@ public class FileStoreConfigurationBuilder extends
         this.preserveState = !configuration.isAlwaysCreateFiles();
         this.asyncWrite = configuration.isAsyncWrite();
         this.asyncWriteThreadPool = configuration.getAsyncThreadPool();
+        this.journal = configuration.isJournal();
+        this.journalCompactionThreshold = configuration.getJournalCompactionThreshold();
 
         return this;
     }
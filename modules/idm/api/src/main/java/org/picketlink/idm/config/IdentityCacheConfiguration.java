@@ -0,0 +1,137 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.idm.config;
+
+/**
+ * <p>Caching configuration for a specific {@link IdentityConfiguration}. It defines the settings for the
+ * {@link org.picketlink.idm.IdentityCache} and for the partitions resolved by the
+ * {@link org.picketlink.idm.PartitionManager}.</p>
+ */
+public class IdentityCacheConfiguration {
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long expiration;
+    private final long partitionExpiration;
+    private final long privilegeExpiration;
+    private final long permissionDecisionExpiration;
+    private final long credentialValidationExpiration;
+    private final long unknownAccountExpiration;
+
+    IdentityCacheConfiguration(boolean enabled, int maxEntries, long expiration, long partitionExpiration,
+                               long privilegeExpiration, long permissionDecisionExpiration,
+                               long credentialValidationExpiration, long unknownAccountExpiration) {
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.expiration = expiration;
+        this.partitionExpiration = partitionExpiration;
+        this.privilegeExpiration = privilegeExpiration;
+        this.permissionDecisionExpiration = permissionDecisionExpiration;
+        this.credentialValidationExpiration = credentialValidationExpiration;
+        this.unknownAccountExpiration = unknownAccountExpiration;
+    }
+
+    /**
+     * <p>Indicates if the {@link org.picketlink.idm.IdentityCache} is enabled.</p>
+     *
+     * @return
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * <p>The maximum number of entries held by the cache.</p>
+     *
+     * @return
+     */
+    public int getMaxEntries() {
+        return this.maxEntries;
+    }
+
+    /**
+     * <p>The time, in milliseconds, an entry is kept in the cache. If zero, entries never expire and are only removed
+     * when invalidated or when the cache reaches its maximum size.</p>
+     *
+     * @return
+     */
+    public long getExpiration() {
+        return this.expiration;
+    }
+
+    /**
+     * <p>The time, in milliseconds, a partition is kept in the cache after being resolved from the partition store. If
+     * zero, partitions are only removed from the cache when they are updated or removed.</p>
+     *
+     * @return
+     */
+    public long getPartitionExpiration() {
+        return this.partitionExpiration;
+    }
+
+    /**
+     * <p>The time, in milliseconds, the privileges inherited by an identity are kept in the index used to resolve
+     * {@link org.picketlink.idm.RelationshipManager#inheritsPrivileges(org.picketlink.idm.model.IdentityType, org.picketlink.idm.model.IdentityType)}.
+     * If zero, they are only removed from the index when the relationships or identities they depend on change.</p>
+     *
+     * @return
+     */
+    public long getPrivilegeExpiration() {
+        return this.privilegeExpiration;
+    }
+
+    /**
+     * <p>The time, in milliseconds, a decision made by the
+     * {@link org.picketlink.idm.permission.acl.spi.PersistentPermissionVoter} is cached. If zero, decisions are not
+     * cached.</p>
+     *
+     * @return
+     */
+    public long getPermissionDecisionExpiration() {
+        return this.permissionDecisionExpiration;
+    }
+
+    /**
+     * <p>The time, in milliseconds, a successful credential validation is cached by the
+     * {@link org.picketlink.idm.credential.handler.CredentialValidationCache}. If zero, validations are not cached.</p>
+     *
+     * @return
+     */
+    public long getCredentialValidationExpiration() {
+        return this.credentialValidationExpiration;
+    }
+
+    /**
+     * <p>The time, in milliseconds, the {@link org.picketlink.idm.credential.handler.CredentialValidationCache}
+     * remembers that no account exists for a login name. If zero, lookups for unknown accounts are not cached.</p>
+     *
+     * @return
+     */
+    public long getUnknownAccountExpiration() {
+        return this.unknownAccountExpiration;
+    }
+
+    /**
+     * <p>Indicates if the {@link org.picketlink.idm.credential.handler.CredentialValidationCache} is enabled.</p>
+     *
+     * @return
+     */
+    public boolean isCredentialValidationCacheEnabled() {
+        return this.credentialValidationExpiration > 0 || this.unknownAccountExpiration > 0;
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.idm.config;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A class used to build the configuration for the {@link org.picketlink.idm.IdentityCache} of a specific
+ * {@link IdentityConfiguration}.</p>
+ *
+ * <p>The identity cache is disabled by default. Once enabled, lookups by identifier, login name or name are resolved
+ * from memory and only hit the identity stores when the entry is missing, expired or was invalidated by a write
+ * operation.</p>
+ *
+ * <p>This builder also defines how partitions resolved by the {@link org.picketlink.idm.PartitionManager} are
+ * cached.</p>
+ */
+public class IdentityCacheConfigurationBuilder extends AbstractIdentityConfigurationChildBuilder<IdentityCacheConfiguration> {
+
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+    private static final long DEFAULT_EXPIRATION = TimeUnit.MINUTES.toMillis(5);
+
+    private final NamedIdentityConfigurationBuilder namedIdentityConfigurationBuilder;
+    private boolean enabled;
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+    private long expiration = DEFAULT_EXPIRATION;
+    private long partitionExpiration;
+    private long privilegeExpiration;
+    private long permissionDecisionExpiration;
+    private long credentialValidationExpiration;
+    private long unknownAccountExpiration;
+
+    protected IdentityCacheConfigurationBuilder(NamedIdentityConfigurationBuilder builder) {
+        super(builder);
+        this.namedIdentityConfigurationBuilder = builder;
+    }
+
+    /**
+     * <p>Enables the cache.</p>
+     *
+     * @return
+     */
+    public IdentityCacheConfigurationBuilder enabled() {
+        this.enabled = true;
+        return this;
+    }
+
+    /**
+     * <p>Defines the maximum number of entries held by the cache. Once this limit is reached, the oldest entries are
+     * evicted.</p>
+     *
+     * <p>Defaults to 10000.</p>
+     *
+     * @param maxEntries
+     * @return
+     */
+    public IdentityCacheConfigurationBuilder maxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        return enabled();
+    }
+
+    /**
+     * <p>Defines how long an entry is kept in the cache. A value of zero means that entries never expire.</p>
+     *
+     * <p>Defaults to five minutes. When multiple nodes share the same identity stores, this value defines for how long
+     * a node may see stale data after another node changed it.</p>
+     *
+     * @param expiration
+     * @param unit
+     * @return
+     */
+    public IdentityCacheConfigurationBuilder expiration(long expiration, TimeUnit unit) {
+        this.expiration = unit.toMillis(expiration);
+        return enabled();
+    }
+
+    /**
+     * <p>Defines how long a partition is kept in the cache after being resolved from the partition store. Partitions
+     * are always cached, regardless of the identity cache being enabled, and are invalidated when updated or removed
+     * through the {@link org.picketlink.idm.PartitionManager}.</p>
+     *
+     * <p>Defaults to zero, meaning that partitions never expire. When multiple nodes share the same partition store,
+     * this value defines for how long a node may see a partition that was changed by another node.</p>
+     *
+     * @param expiration
+     * @param unit
+     * @return
+     */
+    public IdentityCacheConfigurationBuilder partitionExpiration(long expiration, TimeUnit unit) {
+        this.partitionExpiration = unit.toMillis(expiration);
+        return this;
+    }
+
+    /**
+     * <p>Defines how long the privileges inherited by an identity are kept in memory. Inherited privileges are always
+     * indexed, regardless of the identity cache being enabled, and are invalidated when relationships or identities are
+     * changed through the {@link org.picketlink.idm.PartitionManager}.</p>
+     *
+     * <p>Defaults to zero, meaning that inherited privileges never expire. When multiple nodes share the same identity
+     * stores, this value defines for how long a node may see privileges that were changed by another node.</p>
+     *
+     * @param expiration
+     * @param unit
+     * @return
+     */
+    public IdentityCacheConfigurationBuilder privilegeExpiration(long expiration, TimeUnit unit) {
+        this.privilegeExpiration = unit.toMillis(expiration);
+        return this;
+    }
+
+    /**
+     * <p>Enables caching of the decisions made by the {@link org.picketlink.idm.permission.acl.spi.PersistentPermissionVoter}
+     * and defines for how long they are kept. Decisions are invalidated when permissions, relationships or identities
+     * are changed through the {@link org.picketlink.idm.PartitionManager}, as long as the events it raises are passed
+     * to the voter. When using CDI, this is done automatically.</p>
+     *
+     * <p>Defaults to zero, meaning that decisions are not cached. When multiple nodes share the same identity stores,
+     * this value defines for how long a node may use a decision that was affected by a change made by another
+     * node.</p>
+     *
+     * @param expiration
+     * @param unit
+     * @return
+     */
+    public IdentityCacheConfigurationBuilder permissionDecisionExpiration(long expiration, TimeUnit unit) {
+        this.permissionDecisionExpiration = unit.toMillis(expiration);
+        return this;
+    }
+
+    /**
+     * <p>Enables caching of successful credential validations and defines for how long they are kept. While cached, a
+     * credential presented again for the same account is considered valid without retrieving the stored credential or
+     * encoding the presented secret. Secrets are never cached, only a keyed hash of them.</p>
+     *
+     * <p>Cached validations are invalidated when the credentials of the account are updated or when the account is
+     * updated or removed through the {@link org.picketlink.idm.IdentityManager}. Accounts are always checked for being
+     * enabled before a cached validation is used.</p>
+     *
+     * <p>Defaults to zero, meaning that validations are not cached. When multiple nodes share the same identity
+     * stores, this value defines for how long a node may accept a credential that was changed by another node.</p>
+     *
+     * @param expiration
+     * @param unit
+     * @return
+     */
+    public IdentityCacheConfigurationBuilder credentialValidationExpiration(long expiration, TimeUnit unit) {
+        this.credentialValidationExpiration = unit.toMillis(expiration);
+        return this;
+    }
+
+    /**
+     * <p>Enables caching of credential validations for login names that do not match any account and defines for how
+     * long they are kept. While cached, credentials presented for the same login name are considered invalid without
+     * querying the identity stores, which protects them from repeated attempts with unknown login names.</p>
+     *
+     * <p>Cached lookups are invalidated when accounts are added or updated through the
+     * {@link org.picketlink.idm.IdentityManager}.</p>
+     *
+     * <p>Defaults to zero, meaning that lookups for unknown accounts are not cached. When multiple nodes share the same
+     * identity stores, this value defines for how long a node may reject the credentials of an account created by
+     * another node.</p>
+     *
+     * @param expiration
+     * @param unit
+     * @return
+     */
+    public IdentityCacheConfigurationBuilder unknownAccountExpiration(long expiration, TimeUnit unit) {
+        this.unknownAccountExpiration = unit.toMillis(expiration);
+        return this;
+    }
+
+    /**
+     * <p>This method should be used to enable and configure the executor used to hash passwords.</p>
+     *
+     * @return
+     */
+    public PasswordHashingConfigurationBuilder hashing() {
+        return this.namedIdentityConfigurationBuilder.hashing();
+    }
+
+    /**
+     * <p>This method should be used to provide all the necessary configuration for the identity stores supported by
+     * this configuration.</p>
+     *
+     * @return
+     */
+    public IdentityStoresConfigurationBuilder stores() {
+        return this.namedIdentityConfigurationBuilder.stores();
+    }
+
+    @Override
+    protected IdentityCacheConfiguration create() {
+        return new IdentityCacheConfiguration(this.enabled, this.maxEntries, this.expiration, this.partitionExpiration,
+                this.privilegeExpiration, this.permissionDecisionExpiration, this.credentialValidationExpiration,
+                this.unknownAccountExpiration);
+    }
+
+    @Override
+    protected void validate() {
+        if (this.maxEntries <= 0) {
+            throw new SecurityConfigurationException("The maximum number of cache entries must be greater than zero.");
+        }
+
+        if (this.expiration < 0) {
+            throw new SecurityConfigurationException("The cache expiration must not be negative.");
+        }
+
+        if (this.partitionExpiration < 0) {
+            throw new SecurityConfigurationException("The partition cache expiration must not be negative.");
+        }
+
+        if (this.privilegeExpiration < 0) {
+            throw new SecurityConfigurationException("The privilege expiration must not be negative.");
+        }
+
+        if (this.permissionDecisionExpiration < 0) {
+            throw new SecurityConfigurationException("The permission decision expiration must not be negative.");
+        }
+
+        if (this.credentialValidationExpiration < 0) {
+            throw new SecurityConfigurationException("The credential validation expiration must not be negative.");
+        }
+
+        if (this.unknownAccountExpiration < 0) {
+            throw new SecurityConfigurationException("The unknown account expiration must not be negative.");
+        }
+    }
+
+    @Override
+    protected IdentityCacheConfigurationBuilder readFrom(IdentityCacheConfiguration configuration) {
+        if (configuration != null) {
+            this.enabled = configuration.isEnabled();
+            this.maxEntries = configuration.getMaxEntries();
+            this.expiration = configuration.getExpiration();
+            this.partitionExpiration = configuration.getPartitionExpiration();
+            this.privilegeExpiration = configuration.getPrivilegeExpiration();
+            this.permissionDecisionExpiration = configuration.getPermissionDecisionExpiration();
+            this.credentialValidationExpiration = configuration.getCredentialValidationExpiration();
+            this.unknownAccountExpiration = configuration.getUnknownAccountExpiration();
+        }
+
+        return this;
+    }
+}
@@ -58,10 +58,13 @@ public class IdentityConfiguration {
     private final String name;
     private final List<? extends IdentityStoreConfiguration> storeConfiguration;
     private final RelationshipPolicy relationshipPolicy;
+    private final IdentityCacheConfiguration cacheConfiguration;
+    private final PasswordHashingConfiguration hashingConfiguration;
 
     @SuppressWarnings("unchecked")
     IdentityConfiguration(String name, List<? extends IdentityStoreConfiguration> identityStores,
-            RelationshipPolicy relationshipPolicy) {
+            RelationshipPolicy relationshipPolicy, IdentityCacheConfiguration cacheConfiguration,
+            PasswordHashingConfiguration hashingConfiguration) {
         if (name == null) {
             throw new SecurityConfigurationException("You must specify a name for the IdentityConfiguration.");
         }
@@ -69,6 +72,8 @@ public class IdentityConfiguration {
         this.name = name;
         this.storeConfiguration = unmodifiableList(identityStores);
         this.relationshipPolicy = relationshipPolicy;
+        this.cacheConfiguration = cacheConfiguration;
+        this.hashingConfiguration = hashingConfiguration;
     }
 
     public RelationshipPolicy getRelationshipPolicy() {
@@ -83,6 +88,33 @@ public class IdentityConfiguration {
         return this.storeConfiguration;
     }
 
+    /**
+     * <p>Returns the configuration for the {@link org.picketlink.idm.IdentityCache}.</p>
+     *
+     * @return
+     */
+    public IdentityCacheConfiguration getCacheConfiguration() {
+        return this.cacheConfiguration;
+    }
+
+    /**
+     * <p>Check if identity caching is enabled for this configuration.</p>
+     *
+     * @return
+     */
+    public boolean isCacheEnabled() {
+        return this.cacheConfiguration.isEnabled();
+    }
+
+    /**
+     * <p>Returns the configuration for the {@link org.picketlink.idm.credential.handler.PasswordHashingExecutor}.</p>
+     *
+     * @return
+     */
+    public PasswordHashingConfiguration getHashingConfiguration() {
+        return this.hashingConfiguration;
+    }
+
     public boolean supportsPartition() {
         for (IdentityStoreConfiguration storeConfiguration : getStoreConfiguration()) {
             if (storeConfiguration.supportsPartition()) {
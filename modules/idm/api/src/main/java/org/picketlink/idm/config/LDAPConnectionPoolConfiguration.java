@@ -0,0 +1,113 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.idm.config;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Connection pooling settings for a {@link LDAPIdentityStoreConfiguration}.</p>
+ *
+ * <p>Two pools are created for each LDAP store: one for the connections bound to the configured bind DN, used by all
+ * directory operations, and one for the connections used to authenticate users.</p>
+ */
+public class LDAPConnectionPoolConfiguration {
+
+    static final int DEFAULT_MAX_SIZE = 10;
+    static final long DEFAULT_MAX_WAIT = TimeUnit.SECONDS.toMillis(30);
+    static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+    private final boolean enabled;
+    private final int maxSize;
+    private final int authenticationMaxSize;
+    private final long maxWait;
+    private final long idleTimeout;
+    private final boolean validateOnBorrow;
+
+    /**
+     * <p>Creates a configuration with pooling enabled and the default settings.</p>
+     */
+    LDAPConnectionPoolConfiguration() {
+        this(true, DEFAULT_MAX_SIZE, DEFAULT_MAX_SIZE, DEFAULT_MAX_WAIT, DEFAULT_IDLE_TIMEOUT, false);
+    }
+
+    LDAPConnectionPoolConfiguration(boolean enabled, int maxSize, int authenticationMaxSize, long maxWait,
+                                    long idleTimeout, boolean validateOnBorrow) {
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        this.authenticationMaxSize = authenticationMaxSize;
+        this.maxWait = maxWait;
+        this.idleTimeout = idleTimeout;
+        this.validateOnBorrow = validateOnBorrow;
+    }
+
+    /**
+     * <p>Indicates if connections are pooled. If false, a new connection is created for each operation.</p>
+     *
+     * @return
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * <p>The maximum number of connections bound to the configured bind DN.</p>
+     *
+     * @return
+     */
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * <p>The maximum number of connections used to authenticate users.</p>
+     *
+     * @return
+     */
+    public int getAuthenticationMaxSize() {
+        return this.authenticationMaxSize;
+    }
+
+    /**
+     * <p>The time, in milliseconds, to wait for a connection when all of them are in use. If zero, waits
+     * indefinitely.</p>
+     *
+     * @return
+     */
+    public long getMaxWait() {
+        return this.maxWait;
+    }
+
+    /**
+     * <p>The time, in milliseconds, an idle connection is kept in the pool before being closed. If zero, idle
+     * connections are never closed.</p>
+     *
+     * @return
+     */
+    public long getIdleTimeout() {
+        return this.idleTimeout;
+    }
+
+    /**
+     * <p>Indicates if an idle connection is checked against the server before being used.</p>
+     *
+     * @return
+     */
+    public boolean isValidateOnBorrow() {
+        return this.validateOnBorrow;
+    }
+}
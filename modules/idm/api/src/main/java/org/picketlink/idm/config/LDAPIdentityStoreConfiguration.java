@@ -51,6 +51,7 @@ public class LDAPIdentityStoreConfiguration extends AbstractIdentityStoreConfigu
     private final Properties connectionProperties;
     private final boolean pagination;
     private final String uniqueIdentifierAttributeName;
+    private final LDAPConnectionPoolConfiguration connectionPoolConfiguration;
 
     private String baseDN;
     private final Map<Class<? extends AttributedType>, LDAPMappingConfiguration> mappingConfig;
@@ -69,6 +70,26 @@ public class LDAPIdentityStoreConfiguration extends AbstractIdentityStoreConfigu
             Map<String, Object> credentialHandlerProperties,
             Set<Class<? extends CredentialHandler>> credentialHandlers,
             boolean supportsCredential) {
+        this(url, connectionProperties, bindDN, bindCredential, baseDN, activeDirectory, pagination,
+                uniqueIdentifierAttributeName, new LDAPConnectionPoolConfiguration(), mappingConfig, supportedTypes,
+                unsupportedTypes, contextInitializers, credentialHandlerProperties, credentialHandlers, supportsCredential);
+    }
+
+    LDAPIdentityStoreConfiguration(
+            String url,
+            final Properties connectionProperties, String bindDN,
+            String bindCredential,
+            String baseDN,
+            final boolean activeDirectory,
+            boolean pagination,
+            String uniqueIdentifierAttributeName,
+            LDAPConnectionPoolConfiguration connectionPoolConfiguration,
+            Map<Class<? extends AttributedType>, LDAPMappingConfiguration> mappingConfig, Map<Class<? extends AttributedType>, Set<IdentityOperation>> supportedTypes,
+            Map<Class<? extends AttributedType>, Set<IdentityOperation>> unsupportedTypes,
+            List<ContextInitializer> contextInitializers,
+            Map<String, Object> credentialHandlerProperties,
+            Set<Class<? extends CredentialHandler>> credentialHandlers,
+            boolean supportsCredential) {
         super(supportedTypes, unsupportedTypes, contextInitializers, credentialHandlerProperties, credentialHandlers,
                 false, supportsCredential, false);
         this.ldapURL = url;
@@ -79,6 +100,7 @@ public class LDAPIdentityStoreConfiguration extends AbstractIdentityStoreConfigu
         this.baseDN = baseDN;
         this.mappingConfig = mappingConfig;
         this.pagination = pagination;
+        this.connectionPoolConfiguration = connectionPoolConfiguration;
         if (uniqueIdentifierAttributeName != null) {
             this.uniqueIdentifierAttributeName = uniqueIdentifierAttributeName;
         } else {
@@ -190,4 +212,8 @@ public class LDAPIdentityStoreConfiguration extends AbstractIdentityStoreConfigu
     public boolean isPagination() {
         return pagination;
     }
+
+    public LDAPConnectionPoolConfiguration getConnectionPoolConfiguration() {
+        return this.connectionPoolConfiguration;
+    }
 }
\ No newline at end of file
@@ -31,6 +31,7 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static org.picketlink.common.util.StringUtil.isNullOrEmpty;
 
@@ -53,6 +54,12 @@ public class LDAPStoreConfigurationBuilder extends
     private Set<LDAPMappingConfigurationBuilder> mappingBuilders = new HashSet<LDAPMappingConfigurationBuilder>();
     private boolean pagination;
     private String uniqueIdentifierAttributeName;
+    private boolean connectionPooling = true;
+    private int connectionPoolSize = LDAPConnectionPoolConfiguration.DEFAULT_MAX_SIZE;
+    private int authenticationPoolSize = LDAPConnectionPoolConfiguration.DEFAULT_MAX_SIZE;
+    private long connectionPoolMaxWait = LDAPConnectionPoolConfiguration.DEFAULT_MAX_WAIT;
+    private long connectionPoolIdleTimeout = LDAPConnectionPoolConfiguration.DEFAULT_IDLE_TIMEOUT;
+    private boolean connectionPoolValidation;
 
     public LDAPStoreConfigurationBuilder(IdentityStoresConfigurationBuilder builder) {
         super(builder);
@@ -138,6 +145,92 @@ public class LDAPStoreConfigurationBuilder extends
     }
 
 
+    /**
+     * <p>Indicates if connections to the LDAP server are pooled. If disabled, a new connection is created for each
+     * operation and for each authentication.</p>
+     *
+     * <p>Defaults to true.</p>
+     *
+     * @param connectionPooling
+     * @return
+     */
+    public LDAPStoreConfigurationBuilder connectionPooling(boolean connectionPooling) {
+        this.connectionPooling = connectionPooling;
+        return this;
+    }
+
+    /**
+     * <p>Sets the maximum number of pooled connections bound to the <code>bindDN</code>. These connections are used
+     * for all operations, except authentication.</p>
+     *
+     * <p>Defaults to 10.</p>
+     *
+     * @param connectionPoolSize
+     * @return
+     */
+    public LDAPStoreConfigurationBuilder connectionPoolSize(int connectionPoolSize) {
+        this.connectionPoolSize = connectionPoolSize;
+        return this;
+    }
+
+    /**
+     * <p>Sets the maximum number of pooled connections used to authenticate users. These connections are kept apart
+     * from the others, given that they are re-bound with the credentials being validated.</p>
+     *
+     * <p>Defaults to 10.</p>
+     *
+     * @param authenticationPoolSize
+     * @return
+     */
+    public LDAPStoreConfigurationBuilder authenticationPoolSize(int authenticationPoolSize) {
+        this.authenticationPoolSize = authenticationPoolSize;
+        return this;
+    }
+
+    /**
+     * <p>Sets how long to wait for a connection when all pooled connections are in use. A value of zero means
+     * waiting indefinitely.</p>
+     *
+     * <p>Defaults to 30 seconds.</p>
+     *
+     * @param maxWait
+     * @param unit
+     * @return
+     */
+    public LDAPStoreConfigurationBuilder connectionPoolMaxWait(long maxWait, TimeUnit unit) {
+        this.connectionPoolMaxWait = unit.toMillis(maxWait);
+        return this;
+    }
+
+    /**
+     * <p>Sets how long a connection may stay idle in the pool before being closed. A value of zero means that idle
+     * connections are never closed.</p>
+     *
+     * <p>Defaults to five minutes.</p>
+     *
+     * @param idleTimeout
+     * @param unit
+     * @return
+     */
+    public LDAPStoreConfigurationBuilder connectionPoolIdleTimeout(long idleTimeout, TimeUnit unit) {
+        this.connectionPoolIdleTimeout = unit.toMillis(idleTimeout);
+        return this;
+    }
+
+    /**
+     * <p>Indicates if an idle connection must be validated against the server before being used. Validation costs
+     * an additional round trip, but prevents using connections closed by the server or by firewalls.</p>
+     *
+     * <p>Defaults to false.</p>
+     *
+     * @param connectionPoolValidation
+     * @return
+     */
+    public LDAPStoreConfigurationBuilder connectionPoolValidation(boolean connectionPoolValidation) {
+        this.connectionPoolValidation = connectionPoolValidation;
+        return this;
+    }
+
     /**
      * <p>Maps a specific {@link AttributedType}.</p>
      *
@@ -187,6 +280,13 @@ public class LDAPStoreConfigurationBuilder extends
                 this.activeDirectory,
                 this.pagination,
                 this.uniqueIdentifierAttributeName,
+                new LDAPConnectionPoolConfiguration(
+                        this.connectionPooling,
+                        this.connectionPoolSize,
+                        this.authenticationPoolSize,
+                        this.connectionPoolMaxWait,
+                        this.connectionPoolIdleTimeout,
+                        this.connectionPoolValidation),
                 mappingConfig,
                 getSupportedTypes(),
                 getUnsupportedTypes(),
@@ -220,6 +320,16 @@ public class LDAPStoreConfigurationBuilder extends
             builder.validate();
         }
 
+        if (this.connectionPooling) {
+            if (this.connectionPoolSize <= 0 || this.authenticationPoolSize <= 0) {
+                throw new SecurityConfigurationException("The size of the LDAP connection pools must be greater than zero.");
+            }
+
+            if (this.connectionPoolMaxWait < 0 || this.connectionPoolIdleTimeout < 0) {
+                throw new SecurityConfigurationException("The LDAP connection pool timeouts must not be negative.");
+            }
+        }
+
         unsupportType(Partition.class);
     }
 
@@ -236,6 +346,15 @@ public class LDAPStoreConfigurationBuilder extends
         this.pagination = configuration.isPagination();
         this.uniqueIdentifierAttributeName = configuration.getUniqueIdentifierAttributeName();
 
+        LDAPConnectionPoolConfiguration connectionPoolConfiguration = configuration.getConnectionPoolConfiguration();
+
+        this.connectionPooling = connectionPoolConfiguration.isEnabled();
+        this.connectionPoolSize = connectionPoolConfiguration.getMaxSize();
+        this.authenticationPoolSize = connectionPoolConfiguration.getAuthenticationMaxSize();
+        this.connectionPoolMaxWait = connectionPoolConfiguration.getMaxWait();
+        this.connectionPoolIdleTimeout = connectionPoolConfiguration.getIdleTimeout();
+        this.connectionPoolValidation = connectionPoolConfiguration.isValidateOnBorrow();
+
         for (Class<? extends AttributedType> attributedType: configuration.getMappingConfig().keySet()) {
             LDAPMappingConfiguration mappingConfiguration = configuration.getMappingConfig().get(attributedType);
 
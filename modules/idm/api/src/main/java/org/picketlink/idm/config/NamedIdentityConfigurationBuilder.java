@@ -30,6 +30,8 @@ import static org.picketlink.idm.IDMMessages.MESSAGES;
 public class NamedIdentityConfigurationBuilder extends AbstractIdentityConfigurationChildBuilder<IdentityConfiguration> {
 
     private final IdentityStoresConfigurationBuilder identityStoresConfigurationBuilder;
+    private final IdentityCacheConfigurationBuilder identityCacheConfigurationBuilder;
+    private final PasswordHashingConfigurationBuilder passwordHashingConfigurationBuilder;
     private final String name;
 
     protected NamedIdentityConfigurationBuilder(String name, IdentityConfigurationBuilder builder) {
@@ -40,6 +42,8 @@ public class NamedIdentityConfigurationBuilder extends AbstractIdentityConfigura
         }
 
         this.identityStoresConfigurationBuilder = new IdentityStoresConfigurationBuilder(this);
+        this.identityCacheConfigurationBuilder = new IdentityCacheConfigurationBuilder(this);
+        this.passwordHashingConfigurationBuilder = new PasswordHashingConfigurationBuilder(this);
         this.name = name;
     }
 
@@ -53,22 +57,48 @@ public class NamedIdentityConfigurationBuilder extends AbstractIdentityConfigura
         return this.identityStoresConfigurationBuilder;
     }
 
+    /**
+     * <p>This method should be used to enable and configure the cache for identity lookups performed against the
+     * identity stores supported by this configuration.</p>
+     *
+     * @return
+     */
+    public IdentityCacheConfigurationBuilder cache() {
+        return this.identityCacheConfigurationBuilder;
+    }
+
+    /**
+     * <p>This method should be used to enable and configure the executor used to hash passwords for the identity
+     * stores supported by this configuration.</p>
+     *
+     * @return
+     */
+    public PasswordHashingConfigurationBuilder hashing() {
+        return this.passwordHashingConfigurationBuilder;
+    }
+
     @Override
     protected IdentityConfiguration create() {
         return new IdentityConfiguration(this.name,
                 this.identityStoresConfigurationBuilder.create(),
                 new RelationshipPolicy(this.identityStoresConfigurationBuilder.getSelfRelationships(),
-                        this.identityStoresConfigurationBuilder.getGlobalRelationships()));
+                        this.identityStoresConfigurationBuilder.getGlobalRelationships()),
+                this.identityCacheConfigurationBuilder.create(),
+                this.passwordHashingConfigurationBuilder.create());
     }
 
     @Override
     protected void validate() {
         this.identityStoresConfigurationBuilder.validate();
+        this.identityCacheConfigurationBuilder.validate();
+        this.passwordHashingConfigurationBuilder.validate();
     }
 
     @Override
     protected Builder<IdentityConfiguration> readFrom(IdentityConfiguration configuration) {
         this.identityStoresConfigurationBuilder.readFrom(configuration.getStoreConfiguration());
+        this.identityCacheConfigurationBuilder.readFrom(configuration.getCacheConfiguration());
+        this.passwordHashingConfigurationBuilder.readFrom(configuration.getHashingConfiguration());
         return this;
     }
 
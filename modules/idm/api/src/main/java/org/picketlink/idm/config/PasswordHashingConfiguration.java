@@ -0,0 +1,76 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.idm.config;
+
+/**
+ * <p>Configuration of the {@link org.picketlink.idm.credential.handler.PasswordHashingExecutor} used to encode and
+ * verify passwords for a specific {@link IdentityConfiguration}.</p>
+ */
+public class PasswordHashingConfiguration {
+
+    private final boolean enabled;
+    private final int parallelism;
+    private final int queueSize;
+    private final long maxWait;
+
+    PasswordHashingConfiguration(boolean enabled, int parallelism, int queueSize, long maxWait) {
+        this.enabled = enabled;
+        this.parallelism = parallelism;
+        this.queueSize = queueSize;
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * <p>Indicates if passwords are hashed by a dedicated executor. If false, passwords are hashed by the thread
+     * validating or updating the credential.</p>
+     *
+     * @return
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * <p>The maximum number of passwords hashed at the same time.</p>
+     *
+     * @return
+     */
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    /**
+     * <p>The maximum number of hashing tasks waiting for a thread. Once this limit is reached, new tasks are rejected
+     * immediately.</p>
+     *
+     * @return
+     */
+    public int getQueueSize() {
+        return this.queueSize;
+    }
+
+    /**
+     * <p>The time, in milliseconds, a caller waits for a hashing task to complete. If zero, callers wait until the task
+     * completes.</p>
+     *
+     * @return
+     */
+    public long getMaxWait() {
+        return this.maxWait;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.idm.config;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A class used to build the configuration for the
+ * {@link org.picketlink.idm.credential.handler.PasswordHashingExecutor} of a specific {@link IdentityConfiguration}.</p>
+ *
+ * <p>The executor is disabled by default, in which case passwords are hashed by the thread validating or updating the
+ * credential. Once enabled, passwords are hashed by a bounded number of threads, so a peak of authentication requests
+ * can not take all the CPU available to the application. Hashing tasks that can not be queued are rejected
+ * immediately, and the credential operation fails with an {@link org.picketlink.idm.IdentityManagementException}.</p>
+ */
+public class PasswordHashingConfigurationBuilder extends AbstractIdentityConfigurationChildBuilder<PasswordHashingConfiguration> {
+
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    private final NamedIdentityConfigurationBuilder namedIdentityConfigurationBuilder;
+    private boolean enabled;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+    private long maxWait;
+
+    protected PasswordHashingConfigurationBuilder(NamedIdentityConfigurationBuilder builder) {
+        super(builder);
+        this.namedIdentityConfigurationBuilder = builder;
+    }
+
+    /**
+     * <p>Enables the executor.</p>
+     *
+     * @return
+     */
+    public PasswordHashingConfigurationBuilder enabled() {
+        this.enabled = true;
+        return this;
+    }
+
+    /**
+     * <p>Defines the maximum number of passwords hashed at the same time.</p>
+     *
+     * <p>Defaults to the number of available processors.</p>
+     *
+     * @param parallelism
+     * @return
+     */
+    public PasswordHashingConfigurationBuilder parallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return enabled();
+    }
+
+    /**
+     * <p>Defines the maximum number of hashing tasks waiting for a thread. Once this limit is reached, new tasks are
+     * rejected immediately instead of making callers wait for the tasks already queued.</p>
+     *
+     * <p>Defaults to 1000.</p>
+     *
+     * @param queueSize
+     * @return
+     */
+    public PasswordHashingConfigurationBuilder queueSize(int queueSize) {
+        this.queueSize = queueSize;
+        return enabled();
+    }
+
+    /**
+     * <p>Defines how long a caller waits for a hashing task to complete. Tasks still queued when this time expires are
+     * discarded.</p>
+     *
+     * <p>Defaults to zero, meaning that callers wait until the task completes.</p>
+     *
+     * @param maxWait
+     * @param unit
+     * @return
+     */
+    public PasswordHashingConfigurationBuilder maxWait(long maxWait, TimeUnit unit) {
+        this.maxWait = unit.toMillis(maxWait);
+        return enabled();
+    }
+
+    /**
+     * <p>This method should be used to enable and configure the cache for identity lookups.</p>
+     *
+     * @return
+     */
+    public IdentityCacheConfigurationBuilder cache() {
+        return this.namedIdentityConfigurationBuilder.cache();
+    }
+
+    /**
+     * <p>This method should be used to provide all the necessary configuration for the identity stores supported by
+     * this configuration.</p>
+     *
+     * @return
+     */
+    public IdentityStoresConfigurationBuilder stores() {
+        return this.namedIdentityConfigurationBuilder.stores();
+    }
+
+    @Override
+    protected PasswordHashingConfiguration create() {
+        return new PasswordHashingConfiguration(this.enabled, this.parallelism, this.queueSize, this.maxWait);
+    }
+
+    @Override
+    protected void validate() {
+        if (this.parallelism <= 0) {
+            throw new SecurityConfigurationException("The password hashing parallelism must be greater than zero.");
+        }
+
+        if (this.queueSize < 0) {
+            throw new SecurityConfigurationException("The password hashing queue size must not be negative.");
+        }
+
+        if (this.maxWait < 0) {
+            throw new SecurityConfigurationException("The password hashing max wait must not be negative.");
+        }
+    }
+
+    @Override
+    protected PasswordHashingConfigurationBuilder readFrom(PasswordHashingConfiguration configuration) {
+        if (configuration != null) {
+            this.enabled = configuration.isEnabled();
+            this.parallelism = configuration.getParallelism();
+            this.queueSize = configuration.getQueueSize();
+            this.maxWait = configuration.getMaxWait();
+        }
+
+        return this;
+    }
+}
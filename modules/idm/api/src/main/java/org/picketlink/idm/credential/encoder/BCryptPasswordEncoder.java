@@ -24,7 +24,15 @@ import org.picketlink.idm.credential.util.BCrypt;
  * @author Anil Saldhana
  * @since June 18, 2013
  */
-public class BCryptPasswordEncoder implements PasswordEncoder{
+public class BCryptPasswordEncoder implements SelfDescribingPasswordEncoder {
+
+    public static final String ALGORITHM = "BCrypt";
+
+    /**
+     * <p>BCrypt always uses a salt of 16 bytes, which is part of the hash.</p>
+     */
+    private static final int SALT_LENGTH = 16;
+
     int logRounds = 12;
 
     /**
@@ -43,4 +51,13 @@ public class BCryptPasswordEncoder implements PasswordEncoder{
     public boolean verify(String rawPassword, String encodedPassword) {
         return BCrypt.checkpw(rawPassword, encodedPassword);
     }
+
+    @Override
+    public PasswordHashMetadata getMetadata() {
+        return new PasswordHashMetadata(ALGORITHM, this.logRounds, SALT_LENGTH, 0);
+    }
+
+    public int getLogRounds() {
+        return this.logRounds;
+    }
 }
\ No newline at end of file
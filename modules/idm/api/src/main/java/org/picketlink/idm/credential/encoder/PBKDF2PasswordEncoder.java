@@ -25,6 +25,7 @@ import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
 
+import org.picketlink.idm.credential.util.CryptoInstancePool;
 
 /**
  * Implementation of {@link PasswordEncoder} that uses PBKDF2
@@ -32,11 +33,22 @@ import javax.crypto.spec.PBEKeySpec;
  * @author Anil Saldhana
  * @since June 18, 2013
  */
-public class PBKDF2PasswordEncoder implements PasswordEncoder {
+public class PBKDF2PasswordEncoder implements SelfDescribingPasswordEncoder {
     private final byte[] salt;
     private final int keyLength, iterationCount;
     public static final String ALGO = "PBKDF2WithHmacSHA1";
 
+    private final CryptoInstancePool<SecretKeyFactory> secretKeyFactories = new CryptoInstancePool<SecretKeyFactory>() {
+        @Override
+        protected SecretKeyFactory create() {
+            try {
+                return SecretKeyFactory.getInstance(ALGO);
+            } catch (NoSuchAlgorithmException nsae) {
+                throw new RuntimeException(nsae);
+            }
+        }
+    };
+
     public PBKDF2PasswordEncoder(byte[] salt, int iterationCount, int keyLength) {
         this.salt = salt;
         this.iterationCount = iterationCount;
@@ -45,17 +57,15 @@ public class PBKDF2PasswordEncoder implements PasswordEncoder {
 
     @Override
     public String encode(String rawPassword) {
+        final KeySpec keySpec = new PBEKeySpec(rawPassword.toCharArray(), salt, iterationCount, keyLength);
+        final SecretKeyFactory secretKeyFactory = this.secretKeyFactories.borrow();
         try {
-            final SecretKeyFactory secretKeyFactory = SecretKeyFactory.getInstance(ALGO);
-            final KeySpec keySpec = new PBEKeySpec(rawPassword.toCharArray(), salt, iterationCount, keyLength);
-            try {
-                final SecretKey secretKey = secretKeyFactory.generateSecret(keySpec);
-                return new String(secretKey.getEncoded());
-            } catch (InvalidKeySpecException ikse) {
-                throw new RuntimeException(ikse);
-            }
-        } catch (NoSuchAlgorithmException nsae) {
-            throw new RuntimeException(nsae);
+            final SecretKey secretKey = secretKeyFactory.generateSecret(keySpec);
+            return new String(secretKey.getEncoded());
+        } catch (InvalidKeySpecException ikse) {
+            throw new RuntimeException(ikse);
+        } finally {
+            this.secretKeyFactories.release(secretKeyFactory);
         }
     }
 
@@ -63,4 +73,17 @@ public class PBKDF2PasswordEncoder implements PasswordEncoder {
     public boolean verify(String rawPassword, String encodedPassword) {
         return encode(rawPassword).equals(encodedPassword);
     }
+
+    @Override
+    public PasswordHashMetadata getMetadata() {
+        return new PasswordHashMetadata(ALGO, this.iterationCount, this.salt.length, this.keyLength);
+    }
+
+    public int getIterationCount() {
+        return this.iterationCount;
+    }
+
+    public int getKeyLength() {
+        return this.keyLength;
+    }
 }
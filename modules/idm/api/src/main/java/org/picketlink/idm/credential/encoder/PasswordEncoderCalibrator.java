@@ -0,0 +1,183 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.idm.credential.encoder;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Picks the cost factor of a {@link PasswordEncoder} by measuring how long it takes to verify a password on the
+ * current hardware, so the cost can be raised as hardware gets faster.</p>
+ *
+ * <p>The calibrated cost is the highest one for which verifying a password does not take longer than the target
+ * time, but never lower than the minimum recommended for the algorithm. Each measurement is the median of several
+ * verifications, taken after a warm-up verification.</p>
+ *
+ * <p>Calibration should run once, for instance at startup or from an administration task, given that it takes a few
+ * times the target time to complete. Passwords stored with a previous cost are upgraded on the next successful login
+ * when both the {@link org.picketlink.idm.credential.handler.PasswordCredentialHandler#REHASH_ON_LOGIN} and
+ * {@link org.picketlink.idm.credential.handler.PasswordCredentialHandler#STORE_HASH_METADATA} options are
+ * enabled.</p>
+ */
+public class PasswordEncoderCalibrator {
+
+    public static final int MIN_BCRYPT_LOG_ROUNDS = 4;
+    public static final int MAX_BCRYPT_LOG_ROUNDS = 31;
+    public static final int MIN_PBKDF2_ITERATIONS = 1000;
+
+    private static final int DEFAULT_SAMPLES = 5;
+    private static final int PBKDF2_REFINEMENTS = 2;
+    private static final String SAMPLE_PASSWORD = "picketlink-calibration";
+
+    private final long targetVerifyTime;
+    private final int samples;
+
+    /**
+     * @param targetVerifyTime The maximum time verifying a password should take.
+     * @param unit
+     */
+    public PasswordEncoderCalibrator(long targetVerifyTime, TimeUnit unit) {
+        this(targetVerifyTime, unit, DEFAULT_SAMPLES);
+    }
+
+    /**
+     * @param targetVerifyTime The maximum time verifying a password should take.
+     * @param unit
+     * @param samples The number of verifications measured for each cost factor.
+     */
+    public PasswordEncoderCalibrator(long targetVerifyTime, TimeUnit unit, int samples) {
+        if (targetVerifyTime <= 0) {
+            throw new IllegalArgumentException("The target verify time must be greater than zero.");
+        }
+
+        if (samples <= 0) {
+            throw new IllegalArgumentException("The number of samples must be greater than zero.");
+        }
+
+        this.targetVerifyTime = unit.toNanos(targetVerifyTime);
+        this.samples = samples;
+    }
+
+    /**
+     * <p>Returns the number of log rounds for a {@link BCryptPasswordEncoder}. Each additional round doubles the time
+     * needed to verify a password.</p>
+     *
+     * @return
+     */
+    public int calibrateBCryptLogRounds() {
+        int logRounds = MIN_BCRYPT_LOG_ROUNDS;
+        long verifyTime = measure(new BCryptPasswordEncoder(logRounds));
+
+        while (logRounds < MAX_BCRYPT_LOG_ROUNDS && verifyTime * 2 <= this.targetVerifyTime) {
+            logRounds++;
+            verifyTime = measure(new BCryptPasswordEncoder(logRounds));
+        }
+
+        if (verifyTime > this.targetVerifyTime && logRounds > MIN_BCRYPT_LOG_ROUNDS) {
+            logRounds--;
+        }
+
+        return logRounds;
+    }
+
+    /**
+     * <p>Returns the number of iterations for a {@link PBKDF2PasswordEncoder}. The time needed to verify a password is
+     * proportional to the number of iterations, so the count is extrapolated from a first measurement and refined by
+     * measuring the extrapolated count. If the last measurement is still above the target time, the count is scaled
+     * down accordingly.</p>
+     *
+     * @param salt
+     * @param keyLength
+     * @return
+     */
+    public int calibratePBKDF2Iterations(byte[] salt, int keyLength) {
+        int iterations = MIN_PBKDF2_ITERATIONS;
+        long verifyTime = measure(new PBKDF2PasswordEncoder(salt, iterations, keyLength));
+
+        for (int i = 0; i < PBKDF2_REFINEMENTS; i++) {
+            double estimate = (double) iterations * this.targetVerifyTime / Math.max(verifyTime, 1);
+            int nextIterations = (int) Math.max(MIN_PBKDF2_ITERATIONS, Math.min(Integer.MAX_VALUE, estimate));
+
+            if (nextIterations == iterations) {
+                break;
+            }
+
+            iterations = nextIterations;
+            verifyTime = measure(new PBKDF2PasswordEncoder(salt, iterations, keyLength));
+        }
+
+        if (verifyTime > this.targetVerifyTime) {
+            iterations = (int) Math.max(MIN_PBKDF2_ITERATIONS, (double) iterations * this.targetVerifyTime / verifyTime);
+        }
+
+        return iterations;
+    }
+
+    /**
+     * <p>Creates a {@link BCryptPasswordEncoder} using the number of log rounds returned by
+     * {@link #calibrateBCryptLogRounds()}.</p>
+     *
+     * @return
+     */
+    public BCryptPasswordEncoder createBCryptPasswordEncoder() {
+        return new BCryptPasswordEncoder(calibrateBCryptLogRounds());
+    }
+
+    /**
+     * <p>Creates a {@link PBKDF2PasswordEncoder} using the number of iterations returned by
+     * {@link #calibratePBKDF2Iterations(byte[], int)}.</p>
+     *
+     * @param salt
+     * @param keyLength
+     * @return
+     */
+    public PBKDF2PasswordEncoder createPBKDF2PasswordEncoder(byte[] salt, int keyLength) {
+        return new PBKDF2PasswordEncoder(salt, calibratePBKDF2Iterations(salt, keyLength), keyLength);
+    }
+
+    /**
+     * <p>Returns the median time, in nanoseconds, the given encoder takes to verify a password.</p>
+     *
+     * @param encoder
+     * @return
+     */
+    protected long measure(PasswordEncoder encoder) {
+        String encodedPassword = encoder.encode(SAMPLE_PASSWORD);
+        long[] verifyTimes = new long[this.samples];
+
+        verify(encoder, encodedPassword);
+
+        for (int i = 0; i < this.samples; i++) {
+            long start = System.nanoTime();
+
+            verify(encoder, encodedPassword);
+
+            verifyTimes[i] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(verifyTimes);
+
+        return verifyTimes[this.samples / 2];
+    }
+
+    private void verify(PasswordEncoder encoder, String encodedPassword) {
+        if (!encoder.verify(SAMPLE_PASSWORD, encodedPassword)) {
+            throw new IllegalStateException("Password encoder [" + encoder + "] could not verify its own hash.");
+        }
+    }
+}
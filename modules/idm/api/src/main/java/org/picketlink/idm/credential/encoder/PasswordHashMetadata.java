@@ -0,0 +1,168 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.idm.credential.encoder;
+
+/**
+ * <p>Describes how a password hash was produced: the algorithm, its cost factor and the length of the salt and of the
+ * derived key used by the {@link PasswordEncoder}.</p>
+ *
+ * <p>Metadata is recorded as a header in front of the encoded hash, for instance
+ * <code>{PL:BCrypt:12:16:0}</code>, so it is kept by any identity store able to store the hash. Hashes stored without
+ * a header were produced before metadata was recorded or by an encoder that does not provide it.</p>
+ *
+ * <p>The salt generated by the {@link org.picketlink.idm.credential.handler.PasswordCredentialHandler} for each
+ * password is stored apart from the hash and is not described by this class.</p>
+ */
+public class PasswordHashMetadata {
+
+    private static final String HEADER_PREFIX = "{PL:";
+    private static final char HEADER_SUFFIX = '}';
+    private static final char SEPARATOR = ':';
+
+    private final String algorithm;
+    private final int cost;
+    private final int saltLength;
+    private final int keyLength;
+
+    /**
+     * @param algorithm The name of the algorithm.
+     * @param cost The cost factor, as defined by the algorithm. For instance, the number of log rounds for BCrypt or the
+     * number of iterations for PBKDF2. Zero if the algorithm does not have a cost factor.
+     * @param saltLength The length, in bytes, of the salt used by the encoder itself. Zero if it does not use one.
+     * @param keyLength The length, in bits, of the derived key. Zero if it is defined by the algorithm.
+     */
+    public PasswordHashMetadata(String algorithm, int cost, int saltLength, int keyLength) {
+        if (algorithm == null || algorithm.isEmpty() || algorithm.indexOf(SEPARATOR) != -1
+            || algorithm.indexOf(HEADER_SUFFIX) != -1) {
+            throw new IllegalArgumentException("Invalid algorithm name [" + algorithm + "].");
+        }
+
+        this.algorithm = algorithm;
+        this.cost = cost;
+        this.saltLength = saltLength;
+        this.keyLength = keyLength;
+    }
+
+    /**
+     * <p>Parses the metadata from the header of the given stored hash.</p>
+     *
+     * @param storedHash
+     * @return The metadata, or null if the hash does not have a valid header.
+     */
+    public static PasswordHashMetadata parse(String storedHash) {
+        int headerEnd = getHeaderEnd(storedHash);
+
+        if (headerEnd == -1) {
+            return null;
+        }
+
+        String[] fields = storedHash.substring(HEADER_PREFIX.length(), headerEnd).split(String.valueOf(SEPARATOR), -1);
+
+        if (fields.length != 4) {
+            return null;
+        }
+
+        try {
+            return new PasswordHashMetadata(fields[0], Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                Integer.parseInt(fields[3]));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * <p>Removes the metadata header, if any, from the given stored hash.</p>
+     *
+     * @param storedHash
+     * @return The hash as produced by the {@link PasswordEncoder}.
+     */
+    public static String removeHeader(String storedHash) {
+        if (parse(storedHash) == null) {
+            return storedHash;
+        }
+
+        return storedHash.substring(getHeaderEnd(storedHash) + 1);
+    }
+
+    /**
+     * <p>Adds this metadata as a header to the given hash.</p>
+     *
+     * @param encodedHash The hash as produced by the {@link PasswordEncoder}.
+     * @return The hash to be stored.
+     */
+    public String addHeader(String encodedHash) {
+        return HEADER_PREFIX + this.algorithm + SEPARATOR + this.cost + SEPARATOR + this.saltLength + SEPARATOR
+            + this.keyLength + HEADER_SUFFIX + encodedHash;
+    }
+
+    public String getAlgorithm() {
+        return this.algorithm;
+    }
+
+    public int getCost() {
+        return this.cost;
+    }
+
+    public int getSaltLength() {
+        return this.saltLength;
+    }
+
+    public int getKeyLength() {
+        return this.keyLength;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof PasswordHashMetadata)) {
+            return false;
+        }
+
+        PasswordHashMetadata other = (PasswordHashMetadata) obj;
+
+        return this.algorithm.equals(other.algorithm) && this.cost == other.cost && this.saltLength == other.saltLength
+            && this.keyLength == other.keyLength;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = this.algorithm.hashCode();
+
+        result = 31 * result + this.cost;
+        result = 31 * result + this.saltLength;
+        result = 31 * result + this.keyLength;
+
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return addHeader("");
+    }
+
+    private static int getHeaderEnd(String storedHash) {
+        if (storedHash == null || !storedHash.startsWith(HEADER_PREFIX)) {
+            return -1;
+        }
+
+        return storedHash.indexOf(HEADER_SUFFIX);
+    }
+}
@@ -20,6 +20,7 @@ package org.picketlink.idm.credential.encoder;
 
 import org.picketlink.common.util.Base64;
 import org.picketlink.idm.IDMMessages;
+import org.picketlink.idm.credential.util.CryptoInstancePool;
 
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
@@ -37,17 +38,24 @@ import static org.picketlink.idm.IDMMessages.MESSAGES;
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
  *
  */
-public class SHAPasswordEncoder implements PasswordEncoder {
+public class SHAPasswordEncoder implements SelfDescribingPasswordEncoder {
 
     private int strength;
 
+    private final CryptoInstancePool<MessageDigest> messageDigests = new CryptoInstancePool<MessageDigest>() {
+        @Override
+        protected MessageDigest create() {
+            return getMessageDigest();
+        }
+    };
+
     public SHAPasswordEncoder(int strength) {
         this.strength = strength;
     }
 
     @Override
     public String encode(String rawPassword) {
-        MessageDigest messageDigest = getMessageDigest();
+        MessageDigest messageDigest = this.messageDigests.borrow();
 
         String encodedPassword = null;
 
@@ -56,6 +64,8 @@ public class SHAPasswordEncoder implements PasswordEncoder {
             encodedPassword = Base64.encodeBytes(digest);
         } catch (UnsupportedEncodingException e) {
             throw MESSAGES.credentialCouldNotEncodePassword(e);
+        } finally {
+            this.messageDigests.release(messageDigest);
         }
 
         return encodedPassword;
@@ -76,6 +86,11 @@ public class SHAPasswordEncoder implements PasswordEncoder {
         }
     }
 
+    @Override
+    public PasswordHashMetadata getMetadata() {
+        return new PasswordHashMetadata("SHA-" + this.strength, 0, 0, 0);
+    }
+
     public int getStrength() {
         return this.strength;
     }
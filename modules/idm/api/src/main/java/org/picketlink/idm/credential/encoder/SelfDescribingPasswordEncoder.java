@@ -0,0 +1,37 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.idm.credential.encoder;
+
+/**
+ * <p>A {@link PasswordEncoder} able to describe the hashes it produces.</p>
+ *
+ * <p>When used by the {@link org.picketlink.idm.credential.handler.PasswordCredentialHandler} with the
+ * {@link org.picketlink.idm.credential.handler.PasswordCredentialHandler#STORE_HASH_METADATA} option enabled, the
+ * metadata is stored along with each hash. This allows the handler to select the encoder able to verify a stored hash
+ * and to detect hashes produced with parameters other than the current ones, so they can be upgraded on the next
+ * successful login.</p>
+ */
+public interface SelfDescribingPasswordEncoder extends PasswordEncoder {
+
+    /**
+     * <p>Returns the metadata describing the hashes produced by {@link #encode(String)}.</p>
+     *
+     * @return
+     */
+    PasswordHashMetadata getMetadata();
+}
@@ -25,6 +25,7 @@ import org.picketlink.idm.IdentityManagementException;
 import org.picketlink.idm.IdentityManager;
 import org.picketlink.idm.credential.AbstractBaseCredentials;
 import org.picketlink.idm.credential.Credentials.Status;
+import org.picketlink.idm.credential.Password;
 import org.picketlink.idm.credential.storage.CredentialStorage;
 import org.picketlink.idm.credential.util.CredentialUtils;
 import org.picketlink.idm.model.Account;
@@ -36,6 +37,7 @@ import org.picketlink.idm.query.IdentityQueryBuilder;
 import org.picketlink.idm.spi.CredentialStore;
 import org.picketlink.idm.spi.IdentityContext;
 
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -51,6 +53,8 @@ import static org.picketlink.idm.IDMMessages.MESSAGES;
 public abstract class AbstractCredentialHandler<S extends CredentialStore<?>, V extends AbstractBaseCredentials, U>
         implements CredentialHandler<S, V, U> {
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     private List<Class<? extends Account>> defaultAccountTypes;
 
     @Override
@@ -162,7 +166,9 @@ public abstract class AbstractCredentialHandler<S extends CredentialStore<?>, V
             CREDENTIAL_LOGGER.debugf("Starting validation for credentials [%s][%s] using identity store [%s] and credential handler [%s].", credentials.getClass(), credentials, store, this);
         }
 
-        Account account = getAccount(context, credentials);
+        CredentialValidationCache validationCache = context.getParameter(
+            CredentialValidationCache.CREDENTIAL_VALIDATION_CACHE_CTX_PARAMETER);
+        Account account = resolveAccount(context, credentials, validationCache);
 
         if (account != null) {
             if (isDebugEnabled()) {
@@ -174,18 +180,50 @@ public abstract class AbstractCredentialHandler<S extends CredentialStore<?>, V
                     CREDENTIAL_LOGGER.debugf("Account [%s] is ENABLED.", account, credentials);
                 }
 
-                CredentialStorage credentialStorage = getCredentialStorage(context, account, credentials, store);
+                byte[] secret = null;
+                long generation = -1;
 
-                if (isDebugEnabled()) {
-                    CREDENTIAL_LOGGER.debugf("Current credential storage for account [%s] is [%s].", account, credentialStorage);
+                if (validationCache != null) {
+                    secret = getSecret(credentials);
+                    generation = validationCache.getGeneration(account);
                 }
 
-                if (validateCredential(context, credentialStorage, credentials, store)) {
-                    if (credentialStorage != null && CredentialUtils.isCredentialExpired(credentialStorage)) {
-                        credentials.setStatus(Status.EXPIRED);
-                    } else if (Status.IN_PROGRESS.equals(credentials.getStatus())) {
-                        credentials.setStatus(Status.VALID);
+                if (secret != null && validationCache.isValid(account, credentials.getClass(), secret)) {
+                    if (isDebugEnabled()) {
+                        CREDENTIAL_LOGGER.debugf("Credentials for account [%s] resolved from validation cache.", account);
+                    }
+
+                    credentials.setStatus(Status.VALID);
+                } else {
+                    final CredentialStorage credentialStorage = getCredentialStorage(context, account, credentials, store);
+
+                    if (isDebugEnabled()) {
+                        CREDENTIAL_LOGGER.debugf("Current credential storage for account [%s] is [%s].", account, credentialStorage);
+                    }
+
+                    boolean valid = validateCredential(context, credentialStorage, credentials, store);
+                    DeferredHashing deferredHashing = context.getParameter(DeferredHashing.DEFERRED_HASHING_CTX_PARAMETER);
+
+                    if (deferredHashing != null && deferredHashing.isPending()) {
+                        final Account validatingAccount = account;
+                        final CredentialValidationCache cache = validationCache;
+                        final byte[] validatingSecret = secret;
+                        final long validatingGeneration = generation;
+
+                        // the credential is verified by the hashing executor, the validation is finished once it is done
+                        deferredHashing.onCompletion(new DeferredHashing.Completion() {
+                            @Override
+                            public void complete(boolean verified) {
+                                applyValidationResult(verified, validatingAccount, credentials, credentialStorage, cache,
+                                    validatingSecret, validatingGeneration);
+                                finishValidation(validatingAccount, credentials, store);
+                            }
+                        });
+
+                        return;
                     }
+
+                    applyValidationResult(valid, account, credentials, credentialStorage, validationCache, secret, generation);
                 }
             } else {
                 if (isDebugEnabled()) {
@@ -199,6 +237,31 @@ public abstract class AbstractCredentialHandler<S extends CredentialStore<?>, V
             }
         }
 
+        finishValidation(account, credentials, store);
+    }
+
+    private void applyValidationResult(boolean valid, Account account, V credentials, CredentialStorage credentialStorage,
+                                       CredentialValidationCache validationCache, byte[] secret, long generation) {
+        if (valid) {
+            if (credentialStorage != null && CredentialUtils.isCredentialExpired(credentialStorage)) {
+                credentials.setStatus(Status.EXPIRED);
+            } else if (Status.IN_PROGRESS.equals(credentials.getStatus())) {
+                credentials.setStatus(Status.VALID);
+
+                if (secret != null) {
+                    Date expiryDate = null;
+
+                    if (credentialStorage != null) {
+                        expiryDate = credentialStorage.getExpiryDate();
+                    }
+
+                    validationCache.putValid(account, credentials.getClass(), secret, expiryDate, generation);
+                }
+            }
+        }
+    }
+
+    private void finishValidation(Account account, V credentials, S store) {
         credentials.setValidatedAccount(null);
 
         if (Status.VALID.equals(credentials.getStatus())) {
@@ -225,6 +288,51 @@ public abstract class AbstractCredentialHandler<S extends CredentialStore<?>, V
         store.storeCredential(context, account, storage);
     }
 
+    /**
+     * <p>Subclasses may override this method to enable the {@link CredentialValidationCache} for the credentials they
+     * support, returning the login name presented by the given credentials. Lookups for login names that do not match
+     * any account are then cached.</p>
+     *
+     * @param credentials
+     *
+     * @return The login name, or null if lookups for unknown accounts should not be cached.
+     */
+    protected String getLoginName(V credentials) {
+        return null;
+    }
+
+    /**
+     * <p>Subclasses may override this method to enable the {@link CredentialValidationCache} for the credentials they
+     * support, returning the secret presented by the given credentials. Successful validations are then cached, so the
+     * same secret can be validated again without retrieving the stored credential.</p>
+     *
+     * <p>Only credentials whose validation depends exclusively on the presented secret and on the stored credential
+     * should be cached. For instance, one-time passwords must never be cached.</p>
+     *
+     * @param credentials
+     *
+     * @return The secret, or null if validations should not be cached.
+     */
+    protected byte[] getSecret(V credentials) {
+        return null;
+    }
+
+    /**
+     * <p>Returns the secret to be cached for the given password, for subclasses overriding
+     * {@link #getSecret(AbstractBaseCredentials)}.</p>
+     *
+     * @param password
+     *
+     * @return The UTF-8 encoded password, or null if no password was presented.
+     */
+    protected static byte[] toSecret(Password password) {
+        if (password == null || password.getValue() == null) {
+            return null;
+        }
+
+        return new String(password.getValue()).getBytes(UTF_8);
+    }
+
     protected abstract CredentialStorage createCredentialStorage(IdentityContext context, Account account, U password, S store, Date effectiveDate, Date expiryDate);
 
     protected abstract boolean validateCredential(IdentityContext context, final CredentialStorage credentialStorage, final V credentials, S store);
@@ -245,6 +353,32 @@ public abstract class AbstractCredentialHandler<S extends CredentialStore<?>, V
         return identityManager;
     }
 
+    private Account resolveAccount(IdentityContext context, V credentials, CredentialValidationCache validationCache) {
+        String loginName = null;
+        long generation = -1;
+
+        if (validationCache != null) {
+            loginName = getLoginName(credentials);
+            generation = validationCache.getUnknownAccountGeneration();
+
+            if (loginName != null && validationCache.isUnknownAccount(context.getPartition(), loginName)) {
+                if (isDebugEnabled()) {
+                    CREDENTIAL_LOGGER.debugf("Account [%s] resolved as unknown from validation cache.", loginName);
+                }
+
+                return null;
+            }
+        }
+
+        Account account = getAccount(context, credentials);
+
+        if (account == null && loginName != null) {
+            validationCache.putUnknownAccount(context.getPartition(), loginName, generation);
+        }
+
+        return account;
+    }
+
     private void configureDefaultSupportedAccountTypes(final S store) {
         this.defaultAccountTypes = new ArrayList<Class<? extends Account>>();
 
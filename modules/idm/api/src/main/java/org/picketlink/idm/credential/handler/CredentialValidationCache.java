@@ -0,0 +1,456 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.idm.credential.handler;
+
+import org.picketlink.idm.IdentityManagementException;
+import org.picketlink.idm.model.Account;
+import org.picketlink.idm.model.IdentityType;
+import org.picketlink.idm.model.Partition;
+import org.picketlink.idm.model.basic.Agent;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Caches the outcome of credential validations performed by {@link AbstractCredentialHandler}, so repeated
+ * validations of the same credentials do not hit the credential stores or encode the presented secret again.</p>
+ *
+ * <p>Two kinds of entries are held:</p>
+ *
+ * <ul>
+ *     <li>Successful validations, keyed by account. Each entry holds a HMAC of the validated secret, computed with a key
+ *     generated when the cache is created, and is only used when the same secret is presented again for the same
+ *     account and type of credentials. Secrets are never kept in memory.</li>
+ *     <li>Lookups for login names that do not match any account, keyed by partition and login name.</li>
+ * </ul>
+ *
+ * <p>Entries are invalidated by the {@link org.picketlink.idm.IdentityManager} when accounts or their credentials are
+ * changed. Once the maximum number of entries is reached, expired entries are removed and, if that is not enough, all
+ * entries of the same kind are discarded.</p>
+ *
+ * <p>Entries are computed from data read from the identity stores, which may change before the entry is cached. To
+ * prevent caching an outdated entry, callers obtain a generation using {@link #getGeneration(Account)} or
+ * {@link #getUnknownAccountGeneration()} before reading from the stores, and pass it when caching the entry. The entry
+ * is discarded if it was invalidated in the meantime.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public class CredentialValidationCache {
+
+    /**
+     * The active CredentialValidationCache instance may be stored in the IdentityContext under this parameter name
+     */
+    public static final String CREDENTIAL_VALIDATION_CACHE_CTX_PARAMETER = "CREDENTIAL_VALIDATION_CACHE_CTX_PARAMETER";
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int HMAC_KEY_LENGTH = 32;
+
+    /**
+     * <p>Number of generations tracked for validations. Accounts sharing a generation also share invalidations, which
+     * only prevents some validations from being cached.</p>
+     */
+    private static final int GENERATION_STRIPES = 64;
+
+    private final Clock clock;
+    private final int maxEntries;
+    private final long validationExpiration;
+    private final long unknownAccountExpiration;
+    private final SecretKeySpec hmacKey;
+    private final ThreadLocal<Mac> mac = new ThreadLocal<Mac>();
+
+    private final ConcurrentMap<String, Validation> validations = new ConcurrentHashMap<String, Validation>();
+    private final ConcurrentMap<UnknownAccountKey, Long> unknownAccounts = new ConcurrentHashMap<UnknownAccountKey, Long>();
+
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final AtomicLong unknownAccountGeneration = new AtomicLong();
+
+    private final AtomicLong validationHitCount = new AtomicLong();
+    private final AtomicLong unknownAccountHitCount = new AtomicLong();
+
+    /**
+     * @param maxEntries The maximum number of entries of each kind.
+     * @param validationExpiration The time, in milliseconds, successful validations are cached. If zero, they are not cached.
+     * @param unknownAccountExpiration The time, in milliseconds, lookups for unknown accounts are cached. If zero, they are not cached.
+     */
+    public CredentialValidationCache(int maxEntries, long validationExpiration, long unknownAccountExpiration) {
+        this(maxEntries, validationExpiration, unknownAccountExpiration, Clock.systemUTC());
+    }
+
+    /**
+     * @param maxEntries The maximum number of entries of each kind.
+     * @param validationExpiration The time, in milliseconds, successful validations are cached. If zero, they are not cached.
+     * @param unknownAccountExpiration The time, in milliseconds, lookups for unknown accounts are cached. If zero, they are not cached.
+     * @param clock The clock used to expire entries.
+     */
+    public CredentialValidationCache(int maxEntries, long validationExpiration, long unknownAccountExpiration, Clock clock) {
+        this.clock = clock;
+        this.maxEntries = maxEntries;
+        this.validationExpiration = validationExpiration;
+        this.unknownAccountExpiration = unknownAccountExpiration;
+
+        byte[] key = new byte[HMAC_KEY_LENGTH];
+
+        new SecureRandom().nextBytes(key);
+
+        this.hmacKey = new SecretKeySpec(key, HMAC_ALGORITHM);
+    }
+
+    /**
+     * <p>Checks if the given secret was successfully validated for the given account and type of credentials.</p>
+     *
+     * @param account
+     * @param credentialsType
+     * @param secret
+     *
+     * @return True if a validation is cached and did not expire, including the validated credential.
+     */
+    public boolean isValid(Account account, Class<?> credentialsType, byte[] secret) {
+        if (this.validationExpiration <= 0 || account.getId() == null) {
+            return false;
+        }
+
+        Validation validation = this.validations.get(account.getId());
+
+        if (validation == null) {
+            return false;
+        }
+
+        if (validation.isExpired(this.clock.millis())) {
+            this.validations.remove(account.getId(), validation);
+            return false;
+        }
+
+        if (!validation.credentialsType.equals(credentialsType)
+            || !MessageDigest.isEqual(validation.secretHash, hash(secret))) {
+            return false;
+        }
+
+        this.validationHitCount.incrementAndGet();
+
+        return true;
+    }
+
+    /**
+     * <p>Returns the current generation of the validations cached for the given account. It must be obtained before
+     * the stored credential is read.</p>
+     *
+     * @param account
+     *
+     * @return
+     */
+    public long getGeneration(Account account) {
+        if (account.getId() == null) {
+            return -1;
+        }
+
+        return this.generations.get(getGenerationIndex(account.getId()));
+    }
+
+    /**
+     * <p>Caches a successful validation of the given secret.</p>
+     *
+     * @param account
+     * @param credentialsType
+     * @param secret
+     * @param credentialExpiryDate The expiry date of the stored credential, if any. The validation is not used once
+     * the credential expires.
+     * @param generation The generation obtained from {@link #getGeneration(Account)} before the stored credential was
+     * read. The validation is not cached if the validations for the account were invalidated since then.
+     */
+    public void putValid(Account account, Class<?> credentialsType, byte[] secret, Date credentialExpiryDate,
+        long generation) {
+        if (this.validationExpiration <= 0 || account.getId() == null || getGeneration(account) != generation) {
+            return;
+        }
+
+        long expirationTime = this.clock.millis() + this.validationExpiration;
+
+        if (credentialExpiryDate != null && credentialExpiryDate.getTime() < expirationTime) {
+            expirationTime = credentialExpiryDate.getTime();
+        }
+
+        if (this.validations.size() >= this.maxEntries) {
+            removeExpiredValidations();
+
+            if (this.validations.size() >= this.maxEntries) {
+                this.validations.clear();
+            }
+        }
+
+        Validation validation = new Validation(credentialsType, hash(secret), expirationTime);
+
+        this.validations.put(account.getId(), validation);
+
+        // an invalidation may have happened after the generation was checked
+        if (getGeneration(account) != generation) {
+            this.validations.remove(account.getId(), validation);
+        }
+    }
+
+    /**
+     * <p>Checks if a lookup for the given login name did not find any account in the given partition.</p>
+     *
+     * @param partition
+     * @param loginName
+     *
+     * @return
+     */
+    public boolean isUnknownAccount(Partition partition, String loginName) {
+        if (this.unknownAccountExpiration <= 0 || partition == null || partition.getId() == null) {
+            return false;
+        }
+
+        UnknownAccountKey key = new UnknownAccountKey(partition.getId(), loginName);
+        Long expirationTime = this.unknownAccounts.get(key);
+
+        if (expirationTime == null) {
+            return false;
+        }
+
+        if (this.clock.millis() > expirationTime) {
+            this.unknownAccounts.remove(key, expirationTime);
+            return false;
+        }
+
+        this.unknownAccountHitCount.incrementAndGet();
+
+        return true;
+    }
+
+    /**
+     * <p>Returns the current generation of the unknown accounts. It must be obtained before looking up the account.</p>
+     *
+     * @return
+     */
+    public long getUnknownAccountGeneration() {
+        return this.unknownAccountGeneration.get();
+    }
+
+    /**
+     * <p>Caches that no account was found for the given login name in the given partition.</p>
+     *
+     * @param partition
+     * @param loginName
+     * @param generation The generation obtained from {@link #getUnknownAccountGeneration()} before the account was
+     * looked up. The lookup is not cached if accounts were changed since then.
+     */
+    public void putUnknownAccount(Partition partition, String loginName, long generation) {
+        if (this.unknownAccountExpiration <= 0 || partition == null || partition.getId() == null
+            || getUnknownAccountGeneration() != generation) {
+            return;
+        }
+
+        if (this.unknownAccounts.size() >= this.maxEntries) {
+            removeExpiredUnknownAccounts();
+
+            if (this.unknownAccounts.size() >= this.maxEntries) {
+                this.unknownAccounts.clear();
+            }
+        }
+
+        UnknownAccountKey key = new UnknownAccountKey(partition.getId(), loginName);
+        Long expirationTime = this.clock.millis() + this.unknownAccountExpiration;
+
+        this.unknownAccounts.put(key, expirationTime);
+
+        // an invalidation may have happened after the generation was checked
+        if (getUnknownAccountGeneration() != generation) {
+            this.unknownAccounts.remove(key, expirationTime);
+        }
+    }
+
+    /**
+     * <p>Removes the entries affected by a change to the given {@link IdentityType}: the validations cached for it and,
+     * given that it may now match a login name that was unknown, the unknown accounts cached for the partition.</p>
+     *
+     * @param partition
+     * @param identityType
+     */
+    public void invalidate(Partition partition, IdentityType identityType) {
+        if (!Account.class.isInstance(identityType)) {
+            return;
+        }
+
+        invalidateCredentials((Account) identityType);
+
+        // lookups in progress may not have found the account, the generation is changed even if nothing is cached
+        this.unknownAccountGeneration.incrementAndGet();
+
+        if (this.unknownAccounts.isEmpty() || partition == null || partition.getId() == null) {
+            return;
+        }
+
+        if (Agent.class.isInstance(identityType) && ((Agent) identityType).getLoginName() != null) {
+            this.unknownAccounts.remove(new UnknownAccountKey(partition.getId(), ((Agent) identityType).getLoginName()));
+            return;
+        }
+
+        // the login name property of custom accounts is not known, all unknown accounts for the partition are removed
+        Iterator<UnknownAccountKey> iterator = this.unknownAccounts.keySet().iterator();
+
+        while (iterator.hasNext()) {
+            if (iterator.next().partitionId.equals(partition.getId())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * <p>Removes the validations cached for the given {@link Account}.</p>
+     *
+     * @param account
+     */
+    public void invalidateCredentials(Account account) {
+        if (account.getId() != null) {
+            this.generations.incrementAndGet(getGenerationIndex(account.getId()));
+            this.validations.remove(account.getId());
+        }
+    }
+
+    /**
+     * <p>Removes all entries.</p>
+     */
+    public void invalidateAll() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            this.generations.incrementAndGet(i);
+        }
+
+        this.unknownAccountGeneration.incrementAndGet();
+        this.validations.clear();
+        this.unknownAccounts.clear();
+    }
+
+    /**
+     * <p>The number of times a cached validation was used.</p>
+     *
+     * @return
+     */
+    public long getValidationHitCount() {
+        return this.validationHitCount.get();
+    }
+
+    /**
+     * <p>The number of times a login name was found to be unknown without querying the identity stores.</p>
+     *
+     * @return
+     */
+    public long getUnknownAccountHitCount() {
+        return this.unknownAccountHitCount.get();
+    }
+
+    private int getGenerationIndex(String accountId) {
+        return (accountId.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES;
+    }
+
+    private byte[] hash(byte[] secret) {
+        Mac mac = this.mac.get();
+
+        if (mac == null) {
+            try {
+                mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(this.hmacKey);
+            } catch (GeneralSecurityException e) {
+                throw new IdentityManagementException("Could not create " + HMAC_ALGORITHM + " instance.", e);
+            }
+
+            this.mac.set(mac);
+        }
+
+        return mac.doFinal(secret);
+    }
+
+    private void removeExpiredValidations() {
+        long now = this.clock.millis();
+        Iterator<Validation> iterator = this.validations.values().iterator();
+
+        while (iterator.hasNext()) {
+            if (iterator.next().isExpired(now)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void removeExpiredUnknownAccounts() {
+        long now = this.clock.millis();
+        Iterator<Long> iterator = this.unknownAccounts.values().iterator();
+
+        while (iterator.hasNext()) {
+            if (now > iterator.next()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static class Validation {
+
+        private final Class<?> credentialsType;
+        private final byte[] secretHash;
+        private final long expirationTime;
+
+        Validation(Class<?> credentialsType, byte[] secretHash, long expirationTime) {
+            this.credentialsType = credentialsType;
+            this.secretHash = secretHash;
+            this.expirationTime = expirationTime;
+        }
+
+        boolean isExpired(long now) {
+            return now > this.expirationTime;
+        }
+    }
+
+    private static class UnknownAccountKey {
+
+        private final String partitionId;
+        private final String loginName;
+
+        UnknownAccountKey(String partitionId, String loginName) {
+            this.partitionId = partitionId;
+            this.loginName = loginName;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof UnknownAccountKey)) {
+                return false;
+            }
+
+            UnknownAccountKey other = (UnknownAccountKey) obj;
+
+            return this.partitionId.equals(other.partitionId) && this.loginName.equals(other.loginName);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.partitionId.hashCode() + this.loginName.hashCode();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.idm.credential.handler;
+
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * <p>Lets a credential validation hand its password hashing over to a {@link PasswordHashingExecutor} without waiting
+ * for it. The account and the stored credential are still read by the thread validating the credentials, only the
+ * hashing runs on the executor.</p>
+ *
+ * <p>An instance is stored in the {@link org.picketlink.idm.spi.IdentityContext} under
+ * {@link #DEFERRED_HASHING_CTX_PARAMETER} while credentials are validated asynchronously. Handlers supporting it submit
+ * their hashing with {@link #submit(Callable)} and the validation is finished by the {@link Completion} registered with
+ * {@link #onCompletion(Completion)}. Handlers that do not submit anything finish the validation as usual.</p>
+ *
+ * <p>Instances are used by a single validation and are not thread-safe.</p>
+ */
+public class DeferredHashing {
+
+    /**
+     * The DeferredHashing instance of an asynchronous validation is stored in the IdentityContext under this parameter
+     * name
+     */
+    public static final String DEFERRED_HASHING_CTX_PARAMETER = "DEFERRED_HASHING_CTX_PARAMETER";
+
+    private final PasswordHashingExecutor hashingExecutor;
+    private CompletionStage<Boolean> verification;
+    private CompletionStage<Void> result;
+
+    public DeferredHashing(PasswordHashingExecutor hashingExecutor) {
+        this.hashingExecutor = hashingExecutor;
+    }
+
+    /**
+     * <p>Submits the task verifying the credentials to the executor.</p>
+     *
+     * @param verification A task returning true if the credentials match.
+     */
+    public void submit(Callable<Boolean> verification) {
+        if (this.verification != null) {
+            throw new IllegalStateException("Credentials verification already submitted.");
+        }
+
+        this.verification = this.hashingExecutor.submit(verification);
+    }
+
+    /**
+     * <p>Indicates if a verification was submitted and the validation is waiting for a {@link Completion}.</p>
+     *
+     * @return
+     */
+    public boolean isPending() {
+        return this.verification != null && this.result == null;
+    }
+
+    /**
+     * <p>Registers the completion finishing the validation once the submitted verification is done.</p>
+     *
+     * @param completion
+     */
+    public void onCompletion(final Completion completion) {
+        if (!isPending()) {
+            throw new IllegalStateException("No credentials verification pending.");
+        }
+
+        this.result = this.verification.thenApply(new Function<Boolean, Void>() {
+            @Override
+            public Void apply(Boolean verified) {
+                completion.complete(Boolean.TRUE.equals(verified));
+                return null;
+            }
+        });
+    }
+
+    /**
+     * <p>Returns a stage completed once the validation is finished.</p>
+     *
+     * @return The stage or null if no verification was submitted.
+     */
+    public CompletionStage<Void> getResult() {
+        if (isPending()) {
+            throw new IllegalStateException("Credentials verification submitted without a completion.");
+        }
+
+        return this.result;
+    }
+
+    /**
+     * <p>Finishes a validation with the result of the verification.</p>
+     */
+    public interface Completion {
+
+        void complete(boolean verified);
+    }
+}
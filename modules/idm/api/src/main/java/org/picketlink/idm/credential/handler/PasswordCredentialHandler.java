@@ -25,23 +25,33 @@ import org.picketlink.idm.config.SecurityConfigurationException;
 import org.picketlink.idm.credential.Password;
 import org.picketlink.idm.credential.UsernamePasswordCredentials;
 import org.picketlink.idm.credential.encoder.PasswordEncoder;
+import org.picketlink.idm.credential.encoder.PasswordHashMetadata;
 import org.picketlink.idm.credential.encoder.SHAPasswordEncoder;
+import org.picketlink.idm.credential.encoder.SelfDescribingPasswordEncoder;
 import org.picketlink.idm.credential.handler.annotations.SupportsCredentials;
 import org.picketlink.idm.credential.storage.CredentialStorage;
 import org.picketlink.idm.credential.storage.EncodedPasswordStorage;
+import org.picketlink.idm.credential.util.CredentialUtils;
 import org.picketlink.idm.model.Account;
 import org.picketlink.idm.spi.CredentialStore;
 import org.picketlink.idm.spi.IdentityContext;
 
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import static org.picketlink.common.util.StringUtil.isNullOrEmpty;
+import static org.picketlink.idm.IDMLog.CREDENTIAL_LOGGER;
 import static org.picketlink.idm.IDMMessages.MESSAGES;
 
 /**
@@ -50,6 +60,11 @@ import static org.picketlink.idm.IDMMessages.MESSAGES;
  * configuration option using the <code>PASSWORD_ENCODER</code>. By default a SHA-512 encoding is performed. </p> <p/>
  * <p> Password are always salted before encoding. </p>
  *
+ * <p>If the <code>STORE_HASH_METADATA</code> option is enabled and the encoder is a
+ * {@link SelfDescribingPasswordEncoder}, its {@link PasswordHashMetadata} is stored along with each hash. Hashes produced by previous encoders can still be verified by configuring them using the
+ * <code>LEGACY_PASSWORD_ENCODERS</code> option and, if the <code>REHASH_ON_LOGIN</code> option is enabled, are encoded
+ * again with the current encoder on the next successful login.</p>
+ *
  * @author Shane Bryzak
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
  */
@@ -86,7 +101,31 @@ public class PasswordCredentialHandler<S extends CredentialStore<?>, V extends U
      */
     public static final String KEY_LENGTH_RANDOM_NUMBER = "KEY_LENGTH_RANDOM_NUMBER";
 
+    /**
+     * <p>One or more <b>stateless</b> {@link PasswordEncoder} instances, as an array or a collection, used to verify
+     * passwords encoded before the current <code>PASSWORD_ENCODER</code> was configured.</p>
+     */
+    public static final String LEGACY_PASSWORD_ENCODERS = "LEGACY_PASSWORD_ENCODERS";
+
+    /**
+     * <p>Indicates if passwords encoded by a legacy encoder should be encoded again with the current encoder after a
+     * successful validation. If <code>STORE_HASH_METADATA</code> is enabled, the same applies to passwords stored with
+     * metadata other than the one of the current encoder. Only synchronous validations encode passwords again.
+     * Defaults to false.</p>
+     */
+    public static final String REHASH_ON_LOGIN = "REHASH_ON_LOGIN";
+
+    /**
+     * <p>Indicates if the {@link PasswordHashMetadata} of a {@link SelfDescribingPasswordEncoder} should be stored
+     * along with each hash. Hashes stored with metadata can only be verified by releases supporting it. Defaults to
+     * false.</p>
+     */
+    public static final String STORE_HASH_METADATA = "STORE_HASH_METADATA";
+
     private PasswordEncoder passwordEncoder = new SHAPasswordEncoder(512);
+    private List<PasswordEncoder> legacyPasswordEncoders = Collections.emptyList();
+    private boolean rehashOnLogin;
+    private boolean storeHashMetadata;
 
     private final Lock lock = new ReentrantLock();
     private Integer renewRandomNumberGeneratorInterval = -1;
@@ -113,6 +152,24 @@ public class PasswordCredentialHandler<S extends CredentialStore<?>, V extends U
                 }
             }
 
+            Object legacyPasswordEncoders = options.get(LEGACY_PASSWORD_ENCODERS);
+
+            if (legacyPasswordEncoders != null) {
+                this.legacyPasswordEncoders = toPasswordEncoders(legacyPasswordEncoders);
+            }
+
+            Object rehashOnLogin = options.get(REHASH_ON_LOGIN);
+
+            if (rehashOnLogin != null) {
+                this.rehashOnLogin = Boolean.valueOf(rehashOnLogin.toString());
+            }
+
+            Object storeHashMetadata = options.get(STORE_HASH_METADATA);
+
+            if (storeHashMetadata != null) {
+                this.storeHashMetadata = Boolean.valueOf(storeHashMetadata.toString());
+            }
+
             Object renewRandomNumberGeneratorInterval = options.get(RENEW_RANDOM_NUMBER_GENERATOR_INTERVAL);
 
             if (renewRandomNumberGeneratorInterval != null) {
@@ -148,6 +205,16 @@ public class PasswordCredentialHandler<S extends CredentialStore<?>, V extends U
         return getAccount(context, credentials.getUsername());
     }
 
+    @Override
+    protected String getLoginName(V credentials) {
+        return credentials.getUsername();
+    }
+
+    @Override
+    protected byte[] getSecret(V credentials) {
+        return toSecret(credentials.getPassword());
+    }
+
     @Override
     protected CredentialStorage getCredentialStorage(final IdentityContext context, final Account account, final V credentials, final S store) {
         return store.retrieveCurrentCredential(context, account, EncodedPasswordStorage.class);
@@ -159,7 +226,18 @@ public class PasswordCredentialHandler<S extends CredentialStore<?>, V extends U
 
         if (hash != null) {
             String rawPassword = new String(credentials.getPassword().getValue());
-            return this.passwordEncoder.verify(saltPassword(rawPassword, hash.getSalt()), hash.getEncodedHash());
+            PasswordEncoder matchingEncoder = verifyPassword(context, saltPassword(rawPassword, hash.getSalt()),
+                hash.getEncodedHash());
+
+            if (matchingEncoder == null) {
+                return false;
+            }
+
+            if (this.rehashOnLogin && !CredentialUtils.isCredentialExpired(hash) && isRehashRequired(hash, matchingEncoder)) {
+                rehashPassword(context, credentials, hash, rawPassword, store);
+            }
+
+            return true;
         }
 
         return false;
@@ -169,18 +247,25 @@ public class PasswordCredentialHandler<S extends CredentialStore<?>, V extends U
     public CredentialStorage createCredentialStorage(IdentityContext context, Account account, U password, S store,
         Date effectiveDate, Date expiryDate) {
 
-        EncodedPasswordStorage hash = new EncodedPasswordStorage();
-
         if (password.getValue() == null || isNullOrEmpty(password.getValue().toString())) {
             throw MESSAGES.credentialInvalidPassword();
         }
 
-        String rawPassword = new String(password.getValue());
+        return createEncodedPasswordStorage(context, new String(password.getValue()), effectiveDate, expiryDate);
+    }
+
+    protected SecureRandomProvider getSecureRandomProvider() {
+        return this.secureRandomProvider;
+    }
+
+    private EncodedPasswordStorage createEncodedPasswordStorage(IdentityContext context, String rawPassword,
+        Date effectiveDate, Date expiryDate) {
+        EncodedPasswordStorage hash = new EncodedPasswordStorage();
 
         String passwordSalt = generateSalt();
 
         hash.setSalt(passwordSalt);
-        hash.setEncodedHash(this.passwordEncoder.encode(saltPassword(rawPassword, passwordSalt)));
+        hash.setEncodedHash(encodePassword(context, saltPassword(rawPassword, passwordSalt)));
 
         if (effectiveDate != null) {
             hash.setEffectiveDate(effectiveDate);
@@ -191,8 +276,192 @@ public class PasswordCredentialHandler<S extends CredentialStore<?>, V extends U
         return hash;
     }
 
-    protected SecureRandomProvider getSecureRandomProvider() {
-        return this.secureRandomProvider;
+    /**
+     * <p>Stores a new hash of the given password, encoded with the current encoder and effective from now on. The
+     * previous hash is never removed, so a failure is logged and does not affect the validation. In that case, the
+     * password is encoded again on the next login.</p>
+     */
+    private void rehashPassword(IdentityContext context, V credentials, EncodedPasswordStorage hash, String rawPassword,
+        S store) {
+        try {
+            Account account = getAccount(context, credentials);
+            EncodedPasswordStorage newHash = createEncodedPasswordStorage(context, rawPassword, new Date(),
+                hash.getExpiryDate());
+
+            store.storeCredential(context, account, newHash);
+        } catch (RuntimeException e) {
+            CREDENTIAL_LOGGER.warnf(e, "Could not encode again the password for account [%s].", credentials.getUsername());
+        }
+    }
+
+    private boolean isRehashRequired(EncodedPasswordStorage hash, PasswordEncoder matchingEncoder) {
+        if (matchingEncoder != this.passwordEncoder) {
+            return true;
+        }
+
+        if (isStoringHashMetadata()) {
+            PasswordHashMetadata metadata = ((SelfDescribingPasswordEncoder) this.passwordEncoder).getMetadata();
+
+            return !metadata.equals(hash.getHashMetadata());
+        }
+
+        return false;
+    }
+
+    private boolean isStoringHashMetadata() {
+        return this.storeHashMetadata && SelfDescribingPasswordEncoder.class.isInstance(this.passwordEncoder);
+    }
+
+    /**
+     * <p>Encodes the given password using the {@link PasswordHashingExecutor} available from the given context, if
+     * any. Otherwise, the password is encoded by the calling thread. If hash metadata is stored, the encoded password
+     * starts with the metadata of the current encoder.</p>
+     *
+     * @param context
+     * @param rawPassword
+     * @return
+     */
+    private String encodePassword(IdentityContext context, final String rawPassword) {
+        PasswordHashingExecutor hashingExecutor = context.getParameter(
+            PasswordHashingExecutor.PASSWORD_HASHING_EXECUTOR_CTX_PARAMETER);
+
+        String encodedPassword;
+
+        if (hashingExecutor == null) {
+            encodedPassword = this.passwordEncoder.encode(rawPassword);
+        } else {
+            encodedPassword = hashingExecutor.execute(new Callable<String>() {
+                @Override
+                public String call() {
+                    return passwordEncoder.encode(rawPassword);
+                }
+            });
+        }
+
+        if (isStoringHashMetadata()) {
+            encodedPassword = ((SelfDescribingPasswordEncoder) this.passwordEncoder).getMetadata().addHeader(encodedPassword);
+        }
+
+        return encodedPassword;
+    }
+
+    /**
+     * <p>Verifies the given password using the {@link PasswordHashingExecutor} available from the given context, if
+     * any. Otherwise, the password is verified by the calling thread.</p>
+     *
+     * @param context
+     * @param rawPassword
+     * @param storedPassword
+     * @return The encoder that verified the password, or null if the password does not match.
+     */
+    private PasswordEncoder verifyPassword(IdentityContext context, final String rawPassword, String storedPassword) {
+        final List<PasswordEncoder> candidates = getCandidateEncoders(PasswordHashMetadata.parse(storedPassword));
+        final String encodedPassword = PasswordHashMetadata.removeHeader(storedPassword);
+        PasswordHashingExecutor hashingExecutor = context.getParameter(
+            PasswordHashingExecutor.PASSWORD_HASHING_EXECUTOR_CTX_PARAMETER);
+
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        DeferredHashing deferredHashing = context.getParameter(DeferredHashing.DEFERRED_HASHING_CTX_PARAMETER);
+
+        if (deferredHashing != null) {
+            // validating asynchronously, the hash is not upgraded as no encoder is returned here
+            deferredHashing.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return verifyPassword(candidates, rawPassword, encodedPassword) != null;
+                }
+            });
+
+            return null;
+        }
+
+        if (hashingExecutor == null) {
+            return verifyPassword(candidates, rawPassword, encodedPassword);
+        }
+
+        return hashingExecutor.execute(new Callable<PasswordEncoder>() {
+            @Override
+            public PasswordEncoder call() {
+                return verifyPassword(candidates, rawPassword, encodedPassword);
+            }
+        });
+    }
+
+    private PasswordEncoder verifyPassword(List<PasswordEncoder> candidates, String rawPassword, String encodedPassword) {
+        for (PasswordEncoder encoder : candidates) {
+            try {
+                if (encoder.verify(rawPassword, encodedPassword)) {
+                    return encoder;
+                }
+            } catch (IllegalArgumentException ignore) {
+                // the hash was not produced by this encoder
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * <p>Returns the encoders that may have produced a hash with the given metadata, starting with the ones describing
+     * exactly the same metadata. If the hash has no metadata, all encoders are returned, starting with the current
+     * one.</p>
+     */
+    private List<PasswordEncoder> getCandidateEncoders(PasswordHashMetadata metadata) {
+        List<PasswordEncoder> candidates = new ArrayList<PasswordEncoder>(this.legacyPasswordEncoders.size() + 1);
+
+        candidates.add(this.passwordEncoder);
+        candidates.addAll(this.legacyPasswordEncoders);
+
+        if (metadata == null) {
+            return candidates;
+        }
+
+        List<PasswordEncoder> exactMatches = new ArrayList<PasswordEncoder>();
+        List<PasswordEncoder> algorithmMatches = new ArrayList<PasswordEncoder>();
+
+        for (PasswordEncoder encoder : candidates) {
+            if (SelfDescribingPasswordEncoder.class.isInstance(encoder)) {
+                PasswordHashMetadata encoderMetadata = ((SelfDescribingPasswordEncoder) encoder).getMetadata();
+
+                if (metadata.equals(encoderMetadata)) {
+                    exactMatches.add(encoder);
+                } else if (metadata.getAlgorithm().equals(encoderMetadata.getAlgorithm())) {
+                    algorithmMatches.add(encoder);
+                }
+            }
+        }
+
+        exactMatches.addAll(algorithmMatches);
+
+        return exactMatches;
+    }
+
+    private List<PasswordEncoder> toPasswordEncoders(Object encoders) {
+        Collection<?> values;
+
+        if (encoders instanceof Object[]) {
+            values = Arrays.asList((Object[]) encoders);
+        } else if (encoders instanceof Collection) {
+            values = (Collection<?>) encoders;
+        } else {
+            values = Collections.singletonList(encoders);
+        }
+
+        List<PasswordEncoder> passwordEncoders = new ArrayList<PasswordEncoder>(values.size());
+
+        for (Object encoder : values) {
+            if (!PasswordEncoder.class.isInstance(encoder)) {
+                throw new SecurityConfigurationException("The legacy password encoder [" + encoder
+                        + "] must be an instance of " + PasswordEncoder.class.getName());
+            }
+
+            passwordEncoders.add((PasswordEncoder) encoder);
+        }
+
+        return passwordEncoders;
     }
 
     /**
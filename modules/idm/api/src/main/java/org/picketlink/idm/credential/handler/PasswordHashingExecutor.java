@@ -0,0 +1,330 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.idm.credential.handler;
+
+import org.picketlink.idm.IdentityManagementException;
+import org.picketlink.idm.config.PasswordHashingConfiguration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Runs password hashing on a bounded number of threads, so a peak of authentication requests can not take all the
+ * CPU available to the application.</p>
+ *
+ * <p>Tasks are queued up to the configured queue size. Once the queue is full, new tasks are rejected immediately and
+ * the caller gets an {@link IdentityManagementException}, instead of waiting behind the tasks already queued. Tasks
+ * executed from one of the executor threads run on the calling thread, so they can not wait on each other.</p>
+ *
+ * <p>Idle threads are stopped after a while, so an unused executor does not hold any thread.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public class PasswordHashingExecutor {
+
+    /**
+     * The active PasswordHashingExecutor instance may be stored in the IdentityContext under this parameter name
+     */
+    public static final String PASSWORD_HASHING_EXECUTOR_CTX_PARAMETER = "PASSWORD_HASHING_EXECUTOR_CTX_PARAMETER";
+
+    private static final long KEEP_ALIVE_TIME = 60;
+
+    private final String name;
+    private final int parallelism;
+    private final long maxWait;
+    private final ThreadPoolExecutor executor;
+    private final ThreadLocal<Boolean> workerThread = new ThreadLocal<Boolean>();
+
+    private final AtomicLong hashCount = new AtomicLong();
+    private final AtomicLong totalHashTime = new AtomicLong();
+    private final AtomicLong maxHashTime = new AtomicLong();
+    private final AtomicLong totalWaitTime = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    public PasswordHashingExecutor(String name, PasswordHashingConfiguration configuration) {
+        this.name = name;
+        this.parallelism = configuration.getParallelism();
+        this.maxWait = configuration.getMaxWait();
+
+        BlockingQueue<Runnable> queue;
+
+        if (configuration.getQueueSize() > 0) {
+            queue = new ArrayBlockingQueue<Runnable>(configuration.getQueueSize());
+        } else {
+            queue = new SynchronousQueue<Runnable>();
+        }
+
+        this.executor = new ThreadPoolExecutor(this.parallelism, this.parallelism, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+            queue, new WorkerThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * <p>Runs the given hashing task and waits for its result.</p>
+     *
+     * @param task
+     * @return The result of the task.
+     * @throws IdentityManagementException If the task was rejected, did not complete in time or failed.
+     */
+    public <T> T execute(Callable<T> task) throws IdentityManagementException {
+        if (isWorkerThread()) {
+            return new HashingTask<T>(task).call();
+        }
+
+        Future<T> future;
+
+        try {
+            future = this.executor.submit(new HashingTask<T>(task));
+        } catch (RejectedExecutionException e) {
+            throw rejected(e);
+        }
+
+        try {
+            if (this.maxWait > 0) {
+                return future.get(this.maxWait, TimeUnit.MILLISECONDS);
+            }
+
+            return future.get();
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            this.timeoutCount.incrementAndGet();
+            throw new IdentityManagementException("Timeout waiting for password hashing executor [" + this.name + "].", e);
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new IdentityManagementException("Interrupted while waiting for password hashing executor [" + this.name + "].", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw new IdentityManagementException("Password hashing failed.", e.getCause());
+        }
+    }
+
+    /**
+     * <p>Runs the given hashing task on one of the executor threads, without waiting for its result.</p>
+     *
+     * <p>If the task is rejected, the returned stage completes exceptionally with an
+     * {@link IdentityManagementException}.</p>
+     *
+     * @param task
+     * @return A stage completed with the result of the task.
+     */
+    public <T> CompletionStage<T> submit(Callable<T> task) {
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+        final HashingTask<T> hashingTask = new HashingTask<T>(task);
+
+        try {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        result.complete(hashingTask.call());
+                    } catch (Throwable t) {
+                        result.completeExceptionally(t);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(rejected(e));
+        }
+
+        return result;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    /**
+     * <p>The number of tasks currently waiting for a thread.</p>
+     *
+     * @return
+     */
+    public int getQueuedCount() {
+        return this.executor.getQueue().size();
+    }
+
+    /**
+     * <p>The number of threads currently running a task.</p>
+     *
+     * @return
+     */
+    public int getActiveCount() {
+        return this.executor.getActiveCount();
+    }
+
+    /**
+     * <p>The total number of hashing tasks completed, successfully or not.</p>
+     *
+     * @return
+     */
+    public long getHashCount() {
+        return this.hashCount.get();
+    }
+
+    /**
+     * <p>The total time spent running hashing tasks.</p>
+     *
+     * @param unit
+     * @return
+     */
+    public long getTotalHashTime(TimeUnit unit) {
+        return unit.convert(this.totalHashTime.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * <p>The longest time spent running a single hashing task.</p>
+     *
+     * @param unit
+     * @return
+     */
+    public long getMaxHashTime(TimeUnit unit) {
+        return unit.convert(this.maxHashTime.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * <p>The total time hashing tasks spent waiting for a thread.</p>
+     *
+     * @param unit
+     * @return
+     */
+    public long getTotalWaitTime(TimeUnit unit) {
+        return unit.convert(this.totalWaitTime.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * <p>The total number of tasks rejected because the queue was full.</p>
+     *
+     * @return
+     */
+    public long getRejectedCount() {
+        return this.rejectedCount.get();
+    }
+
+    /**
+     * <p>The total number of times a caller gave up waiting for a hashing task.</p>
+     *
+     * @return
+     */
+    public long getTimeoutCount() {
+        return this.timeoutCount.get();
+    }
+
+    /**
+     * <p>Stops all threads. Queued tasks are discarded and new tasks are rejected.</p>
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * <p>Indicates if this executor was shut down.</p>
+     *
+     * @return
+     */
+    public boolean isShutdown() {
+        return this.executor.isShutdown();
+    }
+
+    private boolean isWorkerThread() {
+        return Boolean.TRUE.equals(this.workerThread.get());
+    }
+
+    private IdentityManagementException rejected(RejectedExecutionException e) {
+        this.rejectedCount.incrementAndGet();
+        return new IdentityManagementException("Password hashing executor [" + this.name + "] is saturated.", e);
+    }
+
+    private void recordHashTime(long hashTime) {
+        this.hashCount.incrementAndGet();
+        this.totalHashTime.addAndGet(hashTime);
+
+        long currentMax = this.maxHashTime.get();
+
+        while (hashTime > currentMax && !this.maxHashTime.compareAndSet(currentMax, hashTime)) {
+            currentMax = this.maxHashTime.get();
+        }
+    }
+
+    private class HashingTask<T> implements Callable<T> {
+
+        private final Callable<T> task;
+        private final long queuedAt = System.nanoTime();
+
+        HashingTask(Callable<T> task) {
+            this.task = task;
+        }
+
+        @Override
+        public T call() {
+            long start = System.nanoTime();
+
+            totalWaitTime.addAndGet(start - this.queuedAt);
+
+            try {
+                return this.task.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IdentityManagementException("Password hashing failed.", e);
+            } finally {
+                recordHashTime(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    workerThread.set(Boolean.TRUE);
+                    runnable.run();
+                }
+            }, "picketlink-password-hashing-" + name + "-" + this.threadCount.incrementAndGet());
+
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+}
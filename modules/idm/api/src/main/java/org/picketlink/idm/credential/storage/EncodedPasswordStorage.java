@@ -18,11 +18,15 @@
 
 package org.picketlink.idm.credential.storage;
 
+import org.picketlink.idm.credential.encoder.PasswordHashMetadata;
 import org.picketlink.idm.credential.storage.annotations.Stored;
 
 /**
  * Represents the encoded hash value stored by an IdentityStore
  *
+ * <p>The encoded hash may start with a header describing the encoder that produced it. See
+ * {@link PasswordHashMetadata}.</p>
+ *
  * @author Shane Bryzak
  */
 public class EncodedPasswordStorage extends AbstractCredentialStorage {
@@ -48,4 +52,13 @@ public class EncodedPasswordStorage extends AbstractCredentialStorage {
         this.salt = salt;
     }
 
+    /**
+     * <p>Returns the metadata recorded in the header of the encoded hash.</p>
+     *
+     * @return The metadata, or null if the hash was stored without it.
+     */
+    public PasswordHashMetadata getHashMetadata() {
+        return PasswordHashMetadata.parse(this.encodedHash);
+    }
+
 }
@@ -0,0 +1,85 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.idm.credential.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>A small, bounded pool of JCA instances such as {@link java.security.MessageDigest}, {@link javax.crypto.Mac} or
+ * {@link javax.crypto.SecretKeyFactory}. These instances are not thread-safe and looking them up from the security
+ * providers on every call is expensive, so they are borrowed from the pool and given back once done.</p>
+ *
+ * <p>Pools are held by the object using them, so idle instances are released along with it and no thread keeps a
+ * reference to them. Instances that are not given back are simply garbage collected.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public abstract class CryptoInstancePool<T> {
+
+    /**
+     * <p>The maximum number of idle instances kept for reuse.</p>
+     */
+    private static final int MAX_IDLE_INSTANCES = 8;
+
+    private final Queue<T> idleInstances = new ConcurrentLinkedQueue<T>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * <p>Borrows an idle instance or creates a new one if none is available.</p>
+     *
+     * @return
+     */
+    public T borrow() {
+        T instance = this.idleInstances.poll();
+
+        if (instance != null) {
+            this.idleCount.decrementAndGet();
+            return instance;
+        }
+
+        return create();
+    }
+
+    /**
+     * <p>Gives back an instance obtained from {@link #borrow()}, unless enough idle instances are already kept. The
+     * caller must not use it anymore.</p>
+     *
+     * @param instance
+     */
+    public void release(T instance) {
+        if (instance == null) {
+            return;
+        }
+
+        if (this.idleCount.incrementAndGet() > MAX_IDLE_INSTANCES) {
+            this.idleCount.decrementAndGet();
+            return;
+        }
+
+        this.idleInstances.offer(instance);
+    }
+
+    /**
+     * <p>Creates a new instance.</p>
+     *
+     * @return
+     */
+    protected abstract T create();
+}
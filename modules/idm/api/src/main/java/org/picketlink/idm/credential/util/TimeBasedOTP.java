@@ -22,6 +22,7 @@
 package org.picketlink.idm.credential.util;
 
 import java.math.BigInteger;
+import java.security.NoSuchAlgorithmException;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.TimeZone;
@@ -52,6 +53,16 @@ public class TimeBasedOTP {
     private final String algorithm;
     private final int numberDigits;
     private final int delayWindow;
+    private final CryptoInstancePool<Mac> macs = new CryptoInstancePool<Mac>() {
+        @Override
+        protected Mac create() {
+            try {
+                return Mac.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    };
 
     public TimeBasedOTP() {
         this(DEFAULT_ALGORITHM, DEFAULT_NUMBER_DIGITS, DEFAULT_INTERVAL_SECONDS, DEFAULT_DELAY_WINDOW);
@@ -178,9 +189,11 @@ public class TimeBasedOTP {
      */
     private byte[] hmac_sha1(String crypto, byte[] keyBytes, byte[] text) {
         byte[] value;
+        boolean pooled = this.algorithm.equals(crypto);
+        Mac hmac = null;
 
         try {
-            Mac hmac = Mac.getInstance(crypto);
+            hmac = pooled ? this.macs.borrow() : Mac.getInstance(crypto);
             SecretKeySpec macKey = new SecretKeySpec(keyBytes, "RAW");
 
             hmac.init(macKey);
@@ -188,6 +201,10 @@ public class TimeBasedOTP {
             value = hmac.doFinal(text);
         } catch (Exception e) {
             throw new RuntimeException(e);
+        } finally {
+            if (pooled) {
+                this.macs.release(hmac);
+            }
         }
 
         return value;
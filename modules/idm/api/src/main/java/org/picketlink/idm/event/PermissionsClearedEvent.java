@@ -0,0 +1,38 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.picketlink.idm.event;
+
+import org.picketlink.idm.PartitionManager;
+
+/**
+ * <p>This event is raised whenever all permissions for a resource are revoked.</p>
+ */
+public class PermissionsClearedEvent extends AbstractBaseEvent {
+
+    private final Object resource;
+
+    public PermissionsClearedEvent(Object resource, PartitionManager partitionManager) {
+        super(partitionManager);
+        this.resource = resource;
+    }
+
+    public Object getResource() {
+        return this.resource;
+    }
+}
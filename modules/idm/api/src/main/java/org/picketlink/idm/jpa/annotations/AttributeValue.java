@@ -30,6 +30,10 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
  * Marks the attribute value property of an identity attribute entity, a relationship attribute entity
  * or credential attribute entity
  *
+ * For ad-hoc attribute entities, values are stored serialized: in binary form if the property is a
+ * <code>byte[]</code>, or as Base64 strings otherwise. If the entity also maps typed properties, such as
+ * {@link AttributeStringValue}, values are only serialized when they can not be stored in a typed property.
+ *
  * @author Shane Bryzak
  */
 @Target({METHOD, FIELD})
@@ -3,24 +3,78 @@ package org.picketlink.idm.permission.acl.spi;
 import org.picketlink.idm.PartitionManager;
 import org.picketlink.idm.PermissionManager;
 import org.picketlink.idm.RelationshipManager;
+import org.picketlink.idm.config.IdentityCacheConfiguration;
+import org.picketlink.idm.config.IdentityConfiguration;
+import org.picketlink.idm.event.IdentityTypeDeletedEvent;
+import org.picketlink.idm.event.IdentityTypeUpdatedEvent;
+import org.picketlink.idm.event.PartitionDeletedEvent;
+import org.picketlink.idm.event.PermissionGrantedEvent;
+import org.picketlink.idm.event.PermissionRevokedEvent;
+import org.picketlink.idm.event.PermissionsClearedEvent;
+import org.picketlink.idm.event.RelationshipCreatedEvent;
+import org.picketlink.idm.event.RelationshipDeletedEvent;
+import org.picketlink.idm.event.RelationshipUpdatedEvent;
 import org.picketlink.idm.model.IdentityType;
 import org.picketlink.idm.permission.IdentityPermission;
 import org.picketlink.idm.permission.Permission;
 import org.picketlink.idm.permission.spi.PermissionVoter;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * <p>A {@link PermissionVoter} that checks the permissions stored by the {@link PermissionManager}.</p>
+ *
+ * <p>If a permission decision expiration is configured for any of the configurations of the {@link PartitionManager},
+ * decisions are cached by recipient, resource and operation, including decisions that did not grant access. Cached
+ * decisions are invalidated by the events passed to {@link #onEvent(Object)}: permission changes invalidate the
+ * decisions for the affected resource class, while relationship and identity changes invalidate all decisions, given
+ * that they may change the privileges inherited by any recipient.</p>
  *
  * @author Shane Bryzak
  */
 public class PersistentPermissionVoter implements PermissionVoter {
 
     private final PartitionManager partitionManager;
+    private final long decisionExpiration;
+    private final int maxDecisions;
+
+    /**
+     * <p>Used to identify resources in the decision cache.</p>
+     */
+    private final PermissionHandlerPolicy permissionHandlerPolicy = new PermissionHandlerPolicy(null);
+    private final ConcurrentMap<DecisionKey, Decision> decisions = new ConcurrentHashMap<DecisionKey, Decision>();
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * <p>Guards invalidations and the addition of decisions, so that a decision computed before an invalidation is
+     * never added after it.</p>
+     */
+    private final Object lock = new Object();
 
     public PersistentPermissionVoter(PartitionManager partitionManager) {
         this.partitionManager = partitionManager;
+
+        long decisionExpiration = 0;
+        int maxDecisions = 0;
+
+        for (IdentityConfiguration configuration : getConfigurations(partitionManager)) {
+            IdentityCacheConfiguration cacheConfiguration = configuration.getCacheConfiguration();
+            long expiration = cacheConfiguration.getPermissionDecisionExpiration();
+
+            if (expiration > 0 && (decisionExpiration == 0 || expiration < decisionExpiration)) {
+                decisionExpiration = expiration;
+                maxDecisions = cacheConfiguration.getMaxEntries();
+            }
+        }
+
+        this.decisionExpiration = decisionExpiration;
+        this.maxDecisions = maxDecisions;
     }
 
     public VotingResult hasPermission(IdentityType recipient, Object resource, String operation) {
@@ -28,10 +82,17 @@ public class PersistentPermissionVoter implements PermissionVoter {
             throw new IllegalArgumentException("recipient must not be null");
         }
 
+        DecisionKey key = createKey(recipient, resource, operation);
+        VotingResult decision = getCachedDecision(key);
+
+        if (decision == null) {
+            long currentVersion = this.version.get();
+            List<Permission> permissions = getPermissionManager(recipient).listPermissions(resource, operation);
 
-        List<Permission> permissions = getPermissionManager(recipient).listPermissions(resource, operation);
+            decision = cacheDecision(key, checkPermission(recipient, permissions), currentVersion);
+        }
 
-        return checkPermission(recipient, permissions);
+        return decision;
     }
 
     public VotingResult hasPermission(IdentityType recipient, Class<?> resourceClass, Serializable identifier, String operation) {
@@ -39,9 +100,53 @@ public class PersistentPermissionVoter implements PermissionVoter {
             throw new IllegalArgumentException("recipient must not be null");
         }
 
-        List<Permission> permissions = getPermissionManager(recipient).listPermissions(resourceClass, identifier, operation);
+        DecisionKey key = createKey(recipient, resourceClass, identifier, operation);
+        VotingResult decision = getCachedDecision(key);
+
+        if (decision == null) {
+            long currentVersion = this.version.get();
+            List<Permission> permissions = getPermissionManager(recipient).listPermissions(resourceClass, identifier, operation);
 
-        return checkPermission(recipient, permissions);
+            decision = cacheDecision(key, checkPermission(recipient, permissions), currentVersion);
+        }
+
+        return decision;
+    }
+
+    /**
+     * <p>Invalidates the cached decisions affected by an event raised by the {@link PartitionManager}. When decisions
+     * are cached, all events must be passed to this method, for instance from the
+     * {@link org.picketlink.idm.event.EventBridge} used by the partition manager.</p>
+     *
+     * @param event
+     */
+    public void onEvent(Object event) {
+        if (!isCachingEnabled()) {
+            return;
+        }
+
+        if (PermissionGrantedEvent.class.isInstance(event)) {
+            invalidate(((PermissionGrantedEvent) event).getResource());
+        } else if (PermissionRevokedEvent.class.isInstance(event)) {
+            invalidate(((PermissionRevokedEvent) event).getResource());
+        } else if (PermissionsClearedEvent.class.isInstance(event)) {
+            invalidate(((PermissionsClearedEvent) event).getResource());
+        } else if (RelationshipCreatedEvent.class.isInstance(event) || RelationshipUpdatedEvent.class.isInstance(event)
+            || RelationshipDeletedEvent.class.isInstance(event) || IdentityTypeUpdatedEvent.class.isInstance(event)
+            || IdentityTypeDeletedEvent.class.isInstance(event) || PartitionDeletedEvent.class.isInstance(event)) {
+            // relationship and identity changes may affect the privileges inherited by any recipient
+            invalidateAll();
+        }
+    }
+
+    /**
+     * <p>Removes all cached decisions.</p>
+     */
+    public void invalidateAll() {
+        synchronized (this.lock) {
+            this.version.incrementAndGet();
+            this.decisions.clear();
+        }
     }
 
     private PermissionManager getPermissionManager(IdentityType recipient) {
@@ -63,4 +168,179 @@ public class PersistentPermissionVoter implements PermissionVoter {
 
         return VotingResult.NOT_APPLICABLE;
     }
+
+    private void invalidate(Object resource) {
+        Class<?> resourceClass = null;
+
+        if (resource != null) {
+            try {
+                resourceClass = this.permissionHandlerPolicy.getResourceClass(resource);
+            } catch (RuntimeException ignore) {
+                // resource can not be identified, all decisions are invalidated
+            }
+        }
+
+        if (resourceClass == null) {
+            invalidateAll();
+            return;
+        }
+
+        synchronized (this.lock) {
+            this.version.incrementAndGet();
+
+            Iterator<DecisionKey> iterator = this.decisions.keySet().iterator();
+
+            while (iterator.hasNext()) {
+                if (resourceClass.equals(iterator.next().resourceClass)) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private DecisionKey createKey(IdentityType recipient, Object resource, String operation) {
+        if (!isCachingEnabled() || resource == null) {
+            return null;
+        }
+
+        try {
+            return createKey(recipient, this.permissionHandlerPolicy.getResourceClass(resource),
+                this.permissionHandlerPolicy.getIdentifier(resource), operation);
+        } catch (RuntimeException e) {
+            // resource can not be identified, the decision is not cached
+            return null;
+        }
+    }
+
+    private DecisionKey createKey(IdentityType recipient, Class<?> resourceClass, Serializable identifier, String operation) {
+        if (!isCachingEnabled() || recipient.getId() == null || resourceClass == null || identifier == null) {
+            return null;
+        }
+
+        return new DecisionKey(recipient.getId(), resourceClass, identifier, operation);
+    }
+
+    private VotingResult getCachedDecision(DecisionKey key) {
+        if (key == null) {
+            return null;
+        }
+
+        Decision decision = this.decisions.get(key);
+
+        if (decision == null) {
+            return null;
+        }
+
+        if (decision.isExpired()) {
+            this.decisions.remove(key, decision);
+            return null;
+        }
+
+        return decision.result;
+    }
+
+    /**
+     * <p>Caches the given decision, unless decisions were invalidated since the given <code>version</code> was
+     * obtained.</p>
+     */
+    private VotingResult cacheDecision(DecisionKey key, VotingResult result, long version) {
+        if (key != null) {
+            if (this.decisions.size() >= this.maxDecisions) {
+                removeExpiredDecisions();
+
+                if (this.decisions.size() >= this.maxDecisions) {
+                    this.decisions.clear();
+                }
+            }
+
+            synchronized (this.lock) {
+                if (this.version.get() == version) {
+                    this.decisions.put(key, new Decision(result, System.currentTimeMillis() + this.decisionExpiration));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private void removeExpiredDecisions() {
+        Iterator<Decision> iterator = this.decisions.values().iterator();
+
+        while (iterator.hasNext()) {
+            if (iterator.next().isExpired()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private boolean isCachingEnabled() {
+        return this.decisionExpiration > 0;
+    }
+
+    private static Collection<IdentityConfiguration> getConfigurations(PartitionManager partitionManager) {
+        if (partitionManager == null) {
+            throw new IllegalArgumentException("partitionManager must not be null");
+        }
+
+        return partitionManager.getConfigurations();
+    }
+
+    private static class DecisionKey {
+
+        private final String recipientId;
+        private final Class<?> resourceClass;
+        private final Serializable identifier;
+        private final String operation;
+
+        DecisionKey(String recipientId, Class<?> resourceClass, Serializable identifier, String operation) {
+            this.recipientId = recipientId;
+            this.resourceClass = resourceClass;
+            this.identifier = identifier;
+            this.operation = operation;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof DecisionKey)) {
+                return false;
+            }
+
+            DecisionKey other = (DecisionKey) obj;
+
+            return this.recipientId.equals(other.recipientId)
+                && this.resourceClass.equals(other.resourceClass)
+                && this.identifier.equals(other.identifier)
+                && (this.operation == null ? other.operation == null : this.operation.equals(other.operation));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = this.recipientId.hashCode();
+
+            result = 31 * result + this.resourceClass.hashCode();
+            result = 31 * result + this.identifier.hashCode();
+            result = 31 * result + (this.operation != null ? this.operation.hashCode() : 0);
+
+            return result;
+        }
+    }
+
+    private static class Decision {
+
+        private final VotingResult result;
+        private final long expirationTime;
+
+        Decision(VotingResult result, long expirationTime) {
+            this.result = result;
+            this.expirationTime = expirationTime;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() > this.expirationTime;
+        }
+    }
 }
@@ -62,7 +62,8 @@ public interface IdentityQuery<T extends IdentityType> {
     Object getPaginationContext();
 
     /**
-     * Used for pagination models like LDAP when search will return some object (like cookie) for searching on next page
+     * Used for pagination models like LDAP when search will return some object (like cookie) for searching on next page.
+     * The JPA store also accepts a {@link KeysetPaginationContext}, which is rejected by all other stores.
      *
      * @param object to be used for search next page
      *
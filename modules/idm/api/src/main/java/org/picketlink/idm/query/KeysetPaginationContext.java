@@ -0,0 +1,99 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.idm.query;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * <p>Pagination context used to enable keyset (or seek) pagination for an {@link IdentityQuery}.</p>
+ *
+ * <p>Instead of skipping a number of results, the next page starts right after the sort key of the last result of
+ * the previous page. This keeps the cost of fetching a page constant, no matter how deep it is.</p>
+ *
+ * <p>Keyset pagination is only supported by the JPA identity store. Other stores reject queries using this context
+ * with an {@link org.picketlink.idm.IdentityManagementException}.</p>
+ *
+ * <pre>
+ *     IdentityQuery&lt;User&gt; query = identityManager.createIdentityQuery(User.class);
+ *
+ *     query.setSortParameters(User.LOGIN_NAME);
+ *     query.setLimit(100);
+ *     query.setPaginationContext(KeysetPaginationContext.firstPage());
+ *
+ *     while (!((KeysetPaginationContext) query.getPaginationContext()).isLastPage()) {
+ *         List&lt;User&gt; page = query.getResultList();
+ *         // process page
+ *     }
+ * </pre>
+ *
+ * <p>After each call to {@link IdentityQuery#getResultList()} the query holds the context for the next page. Results
+ * are always ordered by the sort parameters, if any, followed by the identifier. Sort parameters should be mandatory
+ * properties, given that null values can not be used as a key. The offset is ignored when using this context.</p>
+ */
+public class KeysetPaginationContext implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Serializable[] lastKey;
+    private final boolean lastPage;
+
+    /**
+     * @param lastKey The values of the sort parameters, followed by the identifier, of the last result of the previous page.
+     * @param lastPage Indicates if the previous page was the last one.
+     */
+    public KeysetPaginationContext(Serializable[] lastKey, boolean lastPage) {
+        this.lastKey = lastKey;
+        this.lastPage = lastPage;
+    }
+
+    /**
+     * <p>Creates a context for the first page.</p>
+     *
+     * @return
+     */
+    public static KeysetPaginationContext firstPage() {
+        return new KeysetPaginationContext(null, false);
+    }
+
+    /**
+     * <p>Returns the key of the last result of the previous page, or null if this is the first page.</p>
+     *
+     * @return
+     */
+    public Serializable[] getLastKey() {
+        if (this.lastKey == null) {
+            return null;
+        }
+
+        return Arrays.copyOf(this.lastKey, this.lastKey.length);
+    }
+
+    public boolean isFirstPage() {
+        return this.lastKey == null;
+    }
+
+    /**
+     * <p>Indicates if there are no more results to fetch.</p>
+     *
+     * @return
+     */
+    public boolean isLastPage() {
+        return this.lastPage;
+    }
+}
@@ -22,6 +22,7 @@ import org.picketlink.idm.model.Attribute;
 import org.picketlink.idm.model.AttributedType;
 
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * <p>A special type of IdentityStore that is also capable of providing attribute management functionality.</p>
@@ -67,4 +68,17 @@ public interface AttributeStore<T extends IdentityStoreConfiguration> extends Id
      * @param attributedType
      */
     void loadAttributes(IdentityContext context, AttributedType attributedType);
+
+    /**
+     * Loads all attributes for each of the given {@link AttributedType}. By default, attributes are loaded for each
+     * type individually. Stores should override this method if they can load the attributes for all types at once.
+     *
+     * @param context
+     * @param attributedTypes
+     */
+    default void loadAttributes(IdentityContext context, List<? extends AttributedType> attributedTypes) {
+        for (AttributedType attributedType : attributedTypes) {
+            loadAttributes(context, attributedType);
+        }
+    }
 }
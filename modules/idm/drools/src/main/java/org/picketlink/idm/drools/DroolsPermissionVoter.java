@@ -19,9 +19,16 @@
 package org.picketlink.idm.drools;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.kie.api.KieBase;
 import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.rule.FactHandle;
 import org.picketlink.idm.model.IdentityType;
 import org.picketlink.idm.permission.spi.PermissionVoter;
 
@@ -30,42 +37,186 @@ import org.picketlink.idm.permission.spi.PermissionVoter;
  * PermissionCheck object is created and inserted into the Drools session object, upon which all
  * rules are then fired.
  *
+ * <p>Sessions are reused across checks. Each check borrows an idle session, or creates a new one, and gives it back
+ * once all the facts inserted for the check were deleted. Up to <code>maxIdleSessions</code> sessions are kept idle,
+ * any other session is disposed. If <code>maxIdleSessions</code> is zero, a new session is created for every check
+ * and disposed right after.</p>
+ *
+ * <p>Rules match checks for a resource instance using {@link PermissionCheck#getResource()}. Checks for a resource
+ * class and identifier are only evaluated by the rules if <code>resourceClassChecks</code> is enabled, otherwise the
+ * voter abstains from them as rules written for resource instances would see a check without a resource. Rules
+ * match them using {@link PermissionCheck#getResourceClass()} and {@link PermissionCheck#getIdentifier()}.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ *
  * @author Shane Bryzak
  *
  */
 public class DroolsPermissionVoter implements PermissionVoter {
 
-    private KieBase securityRules;
+    /**
+     * <p>Default max number of idle sessions kept by a voter.</p>
+     */
+    public static final int DEFAULT_MAX_IDLE_SESSIONS = 16;
+
+    private final KieBase securityRules;
+    private final int maxIdleSessions;
+    private final boolean resourceClassChecks;
+    private final ConcurrentLinkedQueue<KieSession> idleSessions = new ConcurrentLinkedQueue<KieSession>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    private volatile boolean closed;
 
     public DroolsPermissionVoter(KieBase securityRules) {
+        this(securityRules, DEFAULT_MAX_IDLE_SESSIONS);
+    }
+
+    public DroolsPermissionVoter(KieBase securityRules, int maxIdleSessions) {
+        this(securityRules, maxIdleSessions, false);
+    }
+
+    public DroolsPermissionVoter(KieBase securityRules, int maxIdleSessions, boolean resourceClassChecks) {
+        if (securityRules == null) {
+            throw new IllegalArgumentException("securityRules must not be null");
+        }
+
+        if (maxIdleSessions < 0) {
+            throw new IllegalArgumentException("maxIdleSessions must not be negative");
+        }
+
         this.securityRules = securityRules;
+        this.maxIdleSessions = maxIdleSessions;
+        this.resourceClassChecks = resourceClassChecks;
     }
 
     @Override
     public VotingResult hasPermission(IdentityType recipient, Object resource, String operation) {
-        VotingResult result = VotingResult.NOT_APPLICABLE;
+        return check(recipient, new PermissionCheck(resource, operation));
+    }
 
-        KieSession session = securityRules.newKieSession();
+    /**
+     * Checks for a resource class and identifier are only evaluated by the rules if <code>resourceClassChecks</code> is
+     * enabled.
+     */
+    @Override
+    public VotingResult hasPermission(IdentityType recipient, Class<?> resourceClass, Serializable identifier, String operation) {
+        if (!this.resourceClassChecks) {
+            return VotingResult.NOT_APPLICABLE;
+        }
+
+        return check(recipient, new PermissionCheck(resourceClass, identifier, operation));
+    }
+
+    /**
+     * Evaluates all the given checks for the same recipient at once, firing the rules only once. Once this method
+     * returns, {@link PermissionCheck#isGranted()} tells whether each check was granted.
+     *
+     * @param recipient
+     * @param checks
+     */
+    public void checkPermissions(IdentityType recipient, Collection<PermissionCheck> checks) {
+        if (checks.isEmpty()) {
+            return;
+        }
 
-        PermissionCheck check = new PermissionCheck(resource, operation);
+        KieSession session = borrowSession();
+        List<FactHandle> factHandles = new ArrayList<FactHandle>(checks.size() + 1);
+        boolean reusable = false;
 
-        session.insert(recipient);
-        session.insert(check);
-        session.fireAllRules();
+        try {
+            factHandles.add(session.insert(recipient));
 
-        if (check.isGranted()) {
-            result = VotingResult.ALLOW;
+            for (PermissionCheck check : checks) {
+                factHandles.add(session.insert(check));
+            }
+
+            session.fireAllRules();
+
+            reusable = clearSession(session, factHandles);
+        } finally {
+            releaseSession(session, reusable);
         }
+    }
+
+    /**
+     * Disposes all idle sessions. Sessions in use are disposed once the check using them completes.
+     */
+    public void close() {
+        this.closed = true;
+
+        KieSession session;
 
-        return result;
+        while ((session = pollIdleSession()) != null) {
+            session.dispose();
+        }
     }
 
     /**
-     * Rule-based permission checks only work with the actual resource instance, not with the identifier.
+     * The number of sessions kept idle to be reused by the next checks.
+     *
+     * @return
      */
-    @Override
-    public VotingResult hasPermission(IdentityType recipient, Class<?> resourceClass, Serializable identifier, String operation) {
+    public int getIdleSessionCount() {
+        return this.idleCount.get();
+    }
+
+    private VotingResult check(IdentityType recipient, PermissionCheck check) {
+        checkPermissions(recipient, Collections.singletonList(check));
+
+        if (check.isGranted()) {
+            return VotingResult.ALLOW;
+        }
+
         return VotingResult.NOT_APPLICABLE;
     }
 
-}
\ No newline at end of file
+    private KieSession borrowSession() {
+        KieSession session = pollIdleSession();
+
+        if (session == null) {
+            session = this.securityRules.newKieSession();
+        }
+
+        return session;
+    }
+
+    private KieSession pollIdleSession() {
+        KieSession session = this.idleSessions.poll();
+
+        if (session != null) {
+            this.idleCount.decrementAndGet();
+        }
+
+        return session;
+    }
+
+    /**
+     * Deletes the facts inserted for a check. A session is only reused if no other fact was left behind by the rules.
+     */
+    private boolean clearSession(KieSession session, List<FactHandle> factHandles) {
+        for (FactHandle factHandle : factHandles) {
+            session.delete(factHandle);
+        }
+
+        return session.getFactCount() == 0;
+    }
+
+    private void releaseSession(KieSession session, boolean reusable) {
+        if (reusable && !this.closed) {
+            if (this.idleCount.incrementAndGet() <= this.maxIdleSessions) {
+                this.idleSessions.offer(session);
+
+                // the voter may have been closed while the session was given back
+                if (this.closed) {
+                    close();
+                }
+
+                return;
+            }
+
+            this.idleCount.decrementAndGet();
+        }
+
+        session.dispose();
+    }
+}
@@ -1,19 +1,35 @@
 package org.picketlink.idm.drools;
 
+import java.io.Serializable;
+
 /**
  * Represents a permission for which the currently authenticated user is tested for.
  *
+ * <p>A check is either created for a resource instance, in which case the resource class is the class of the
+ * resource, or for a resource class and identifier, in which case there is no resource instance.</p>
+ *
  * @author Shane Bryzak
  */
 public class PermissionCheck {
 
     private final Object resource;
+    private final Class<?> resourceClass;
+    private final Serializable identifier;
     private final String operation;
 
     private boolean granted = false;
 
     public PermissionCheck(Object resource, String operation) {
         this.resource = resource;
+        this.resourceClass = resource != null ? resource.getClass() : null;
+        this.identifier = null;
+        this.operation = operation;
+    }
+
+    public PermissionCheck(Class<?> resourceClass, Serializable identifier, String operation) {
+        this.resource = null;
+        this.resourceClass = resourceClass;
+        this.identifier = identifier;
         this.operation = operation;
     }
 
@@ -21,6 +37,14 @@ public class PermissionCheck {
         return resource;
     }
 
+    public Class<?> getResourceClass() {
+        return resourceClass;
+    }
+
+    public Serializable getIdentifier() {
+        return identifier;
+    }
+
     public String getOperation() {
         return operation;
     }
@@ -0,0 +1,184 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.idm.drools;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.KieBase;
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieBuilder;
+import org.kie.api.builder.KieFileSystem;
+import org.kie.api.builder.Message;
+import org.kie.api.runtime.KieSession;
+import org.picketlink.idm.drools.DroolsPermissionVoter;
+import org.picketlink.idm.drools.PermissionCheck;
+import org.picketlink.idm.model.basic.User;
+import org.picketlink.idm.permission.spi.PermissionVoter.VotingResult;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Test case for the {@link DroolsPermissionVoter}.</p>
+ */
+public class DroolsPermissionVoterTestCase {
+
+    private static final String SECURITY_RULES =
+        "package org.picketlink.test.idm.drools\n"
+            + "import org.picketlink.idm.drools.PermissionCheck\n"
+            + "import org.picketlink.idm.model.basic.User\n"
+            + "rule \"john can read documents\"\n"
+            + "when\n"
+            + "  User(loginName == \"john\")\n"
+            + "  check: PermissionCheck(resource == \"document\", operation == \"read\")\n"
+            + "then\n"
+            + "  check.grant();\n"
+            + "end\n"
+            + "rule \"john can read strings by identifier\"\n"
+            + "when\n"
+            + "  User(loginName == \"john\")\n"
+            + "  check: PermissionCheck(resource == null, resourceClass == String.class, operation == \"read\")\n"
+            + "then\n"
+            + "  check.grant();\n"
+            + "end\n"
+            + "rule \"audit writes\"\n"
+            + "when\n"
+            + "  PermissionCheck(operation == \"write\")\n"
+            + "then\n"
+            + "  insert(new StringBuilder(\"write attempt\"));\n"
+            + "end\n";
+
+    private KieBase securityRules;
+    private DroolsPermissionVoter voter;
+
+    @Before
+    public void onInit() {
+        KieServices kieServices = KieServices.Factory.get();
+        KieFileSystem kieFileSystem = kieServices.newKieFileSystem();
+
+        kieFileSystem.write("src/main/resources/security/security-rules.drl", SECURITY_RULES);
+
+        KieBuilder kieBuilder = kieServices.newKieBuilder(kieFileSystem).buildAll();
+
+        assertFalse(kieBuilder.getResults().getMessages(Message.Level.ERROR).toString(),
+            kieBuilder.getResults().hasMessages(Message.Level.ERROR));
+
+        this.securityRules = kieServices.newKieContainer(kieBuilder.getKieModule().getReleaseId()).getKieBase();
+    }
+
+    @After
+    public void onFinish() {
+        if (this.voter != null) {
+            this.voter.close();
+        }
+    }
+
+    @Test
+    public void testSessionReused() {
+        this.voter = new DroolsPermissionVoter(this.securityRules);
+
+        User john = new User("john");
+
+        assertEquals(VotingResult.ALLOW, this.voter.hasPermission(john, "document", "read"));
+        assertEquals(1, this.voter.getIdleSessionCount());
+        assertEquals(1, this.securityRules.getKieSessions().size());
+
+        int sessionId = this.securityRules.getKieSessions().iterator().next().getId();
+
+        assertEquals(VotingResult.NOT_APPLICABLE, this.voter.hasPermission(new User("mary"), "document", "read"));
+        assertEquals(VotingResult.ALLOW, this.voter.hasPermission(john, "document", "read"));
+        assertEquals(1, this.voter.getIdleSessionCount());
+        assertEquals(1, this.securityRules.getKieSessions().size());
+        assertEquals(sessionId, this.securityRules.getKieSessions().iterator().next().getId());
+    }
+
+    @Test
+    public void testFactsDeletedAfterCheck() {
+        this.voter = new DroolsPermissionVoter(this.securityRules);
+
+        PermissionCheck document = new PermissionCheck("document", "read");
+        PermissionCheck report = new PermissionCheck("report", "read");
+
+        this.voter.checkPermissions(new User("john"), Arrays.asList(document, report));
+
+        assertTrue(document.isGranted());
+        assertFalse(report.isGranted());
+
+        KieSession session = this.securityRules.getKieSessions().iterator().next();
+
+        assertEquals(0, session.getFactCount());
+    }
+
+    @Test
+    public void testSessionWithRemainingFactsDisposed() {
+        this.voter = new DroolsPermissionVoter(this.securityRules);
+
+        assertEquals(VotingResult.NOT_APPLICABLE, this.voter.hasPermission(new User("john"), "document", "write"));
+
+        // the fact inserted by the rules would leak into the next checks
+        assertEquals(0, this.voter.getIdleSessionCount());
+        assertTrue(this.securityRules.getKieSessions().isEmpty());
+    }
+
+    @Test
+    public void testSessionsDisposedWithoutIdleSessions() {
+        this.voter = new DroolsPermissionVoter(this.securityRules, 0);
+
+        assertEquals(VotingResult.ALLOW, this.voter.hasPermission(new User("john"), "document", "read"));
+        assertEquals(0, this.voter.getIdleSessionCount());
+        assertTrue(this.securityRules.getKieSessions().isEmpty());
+    }
+
+    @Test
+    public void testCloseDisposesIdleSessions() {
+        this.voter = new DroolsPermissionVoter(this.securityRules);
+
+        assertEquals(VotingResult.ALLOW, this.voter.hasPermission(new User("john"), "document", "read"));
+        assertEquals(1, this.securityRules.getKieSessions().size());
+
+        this.voter.close();
+
+        assertEquals(0, this.voter.getIdleSessionCount());
+        assertTrue(this.securityRules.getKieSessions().isEmpty());
+
+        // checks still work once closed, but sessions are no longer kept
+        assertEquals(VotingResult.ALLOW, this.voter.hasPermission(new User("john"), "document", "read"));
+        assertEquals(0, this.voter.getIdleSessionCount());
+        assertTrue(this.securityRules.getKieSessions().isEmpty());
+    }
+
+    @Test
+    public void testResourceClassChecksDisabledByDefault() {
+        this.voter = new DroolsPermissionVoter(this.securityRules);
+
+        assertEquals(VotingResult.NOT_APPLICABLE, this.voter.hasPermission(new User("john"), String.class, "1", "read"));
+        assertTrue(this.securityRules.getKieSessions().isEmpty());
+    }
+
+    @Test
+    public void testResourceClassChecks() {
+        this.voter = new DroolsPermissionVoter(this.securityRules, DroolsPermissionVoter.DEFAULT_MAX_IDLE_SESSIONS, true);
+
+        assertEquals(VotingResult.ALLOW, this.voter.hasPermission(new User("john"), String.class, "1", "read"));
+        assertEquals(VotingResult.NOT_APPLICABLE, this.voter.hasPermission(new User("john"), Integer.class, "1", "read"));
+    }
+}
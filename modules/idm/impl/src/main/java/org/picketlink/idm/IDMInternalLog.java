@@ -1,5 +1,6 @@
 package org.picketlink.idm;
 
+import org.jboss.logging.Cause;
 import org.jboss.logging.LogMessage;
 import org.jboss.logging.Logger;
 import org.jboss.logging.Message;
@@ -47,6 +48,18 @@ public interface IDMInternalLog extends IDMLog {
     @Message(id=1102, value = "Async write enabled. Using thread pool of size %s")
     void fileAsyncWriteEnabled(int threadPoolSize);
 
+    @LogMessage(level = Logger.Level.INFO)
+    @Message(id=1103, value = "Journal enabled. Compacting journal every %s records.")
+    void fileJournalEnabled(int compactionThreshold);
+
+    @LogMessage(level = Logger.Level.INFO)
+    @Message(id=1104, value = "Replayed [%s] record(s) from journal [%s].")
+    void fileJournalReplayed(int records, String path);
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id=1105, value = "Could not compact journal [%s].")
+    void fileJournalCompactionFailed(String path, @Cause Throwable cause);
+
     // LDAP store logging messages. Ids 1200-1299
 
     @LogMessage(level = Logger.Level.INFO)
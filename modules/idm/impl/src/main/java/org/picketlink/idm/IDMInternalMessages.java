@@ -126,6 +126,9 @@ public interface IDMInternalMessages extends IDMMessages {
     @Message(value = "Unsupported value for Query Parameter [%s]. Value: %s.")
     IdentityManagementException queryUnsupportedParameterValue(String parameterName, Object parameterValue);
 
+    @Message(value = "Keyset pagination is not supported by IdentityStore [%s].")
+    IdentityManagementException queryKeysetPaginationNotSupported(Class<? extends IdentityStore> storeType);
+
     // attributed types management messages 600-699
     @Message(id = 600, value = "Could not add AttributedType [%s].")
     IdentityManagementException attributedTypeAddFailed(AttributedType identityType, @Cause Throwable t);
@@ -23,11 +23,15 @@ import org.picketlink.idm.config.FileIdentityStoreConfiguration;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -35,6 +39,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.picketlink.common.util.StringUtil.isNullOrEmpty;
 import static org.picketlink.idm.IDMInternalLog.FILE_STORE_LOGGER;
@@ -65,6 +70,7 @@ public class FileDataSource {
     private static final String RELATIONSHIPS_FILE_NAME = "pl-idm-relationships.db";
     private static final String CREDENTIALS_FILE_NAME = "pl-idm-credentials.db";
     private static final String PERMISSIONS_FILE_NAME = "pl-idm-permissions.db";
+    private static final String JOURNAL_FILE_NAME = "pl-idm-journal.log";
 
     private final FileIdentityStoreConfiguration configuration;
 
@@ -86,6 +92,13 @@ public class FileDataSource {
      */
     private Map<String, Map<String, FileRelationship>> relationships;
 
+    /**
+     * <p>
+     * Indexes the {@link FileRelationship} instances by the identity types they reference.
+     * </p>
+     */
+    private FileRelationshipIndex relationshipIndex;
+
     /**
      * <p>
      * Holds all stored {@link FileAttribute} instances loaded from the filesystem. This {@link Map} is also used to
@@ -106,6 +119,14 @@ public class FileDataSource {
 
     private ExecutorService executorService;
 
+    /**
+     * <p>
+     * Journal where changes are appended when journaling is enabled. Otherwise, changes are flushed by rewriting the
+     * file they belong to.
+     * </p>
+     */
+    private FileJournal journal;
+
     FileDataSource(FileIdentityStoreConfiguration configuration) {
         this.configuration = configuration;
         init();
@@ -119,6 +140,10 @@ public class FileDataSource {
         return this.relationships;
     }
 
+    FileRelationshipIndex getRelationshipIndex() {
+        return this.relationshipIndex;
+    }
+
     Map<String, FileAttribute> getAttributes() {
         return attributes;
     }
@@ -127,39 +152,85 @@ public class FileDataSource {
         return this.attributedTypes;
     }
 
-    void flushPartitions() {
-        flush(PARTITIONS_FILE_NAME, getPartitions());
-    }
-
     void flushPartitions(FilePartition partition) {
         initPartition(partition.getId());
-        flush(PARTITIONS_FILE_NAME, getPartitions());
+        flushPartition(partition.getId());
+    }
+
+    void flushPartition(String partitionId) {
+        if (this.journal != null) {
+            this.journal.append(PARTITIONS_FILE_NAME, partitionId);
+        } else {
+            flush(PARTITIONS_FILE_NAME, getPartitions());
+        }
     }
 
-    void flushAttributedTypes(FilePartition partition) {
-        flush(partition, IDENTITY_TYPES__FILE_NAME, partition.getIdentityTypes());
+    void flushIdentityType(FilePartition partition, String type, String id) {
+        if (this.journal != null) {
+            this.journal.append(IDENTITY_TYPES__FILE_NAME, partition.getId(), type, id);
+        } else {
+            flush(partition, IDENTITY_TYPES__FILE_NAME, partition.getIdentityTypes());
+        }
     }
 
-    void flushRelationships() {
-        flush(RELATIONSHIPS_FILE_NAME, getRelationships());
+    void flushRelationship(String type, String id) {
+        if (this.journal != null) {
+            this.journal.append(RELATIONSHIPS_FILE_NAME, type, id);
+        } else {
+            flush(RELATIONSHIPS_FILE_NAME, getRelationships());
+        }
     }
 
-    void flushAttributes() {
-        flush(ATTRIBUTES_FILE_NAME, getAttributes());
+    void flushRelationships(List<FileRelationship> relationships) {
+        if (this.journal != null) {
+            for (FileRelationship relationship : relationships) {
+                this.journal.append(RELATIONSHIPS_FILE_NAME, relationship.getType(), relationship.getId());
+            }
+        } else {
+            flush(RELATIONSHIPS_FILE_NAME, getRelationships());
+        }
     }
 
-    void flushAttributedTypes() {
-        flush(ATTRIBUTED_TYPES__FILE_NAME, getAttributedTypes());
+    void flushAttribute(String attributedTypeId) {
+        if (this.journal != null) {
+            this.journal.append(ATTRIBUTES_FILE_NAME, attributedTypeId);
+        } else {
+            flush(ATTRIBUTES_FILE_NAME, getAttributes());
+        }
+    }
+
+    void flushAttributedType(String id) {
+        if (this.journal != null) {
+            this.journal.append(ATTRIBUTED_TYPES__FILE_NAME, id);
+        } else {
+            flush(ATTRIBUTED_TYPES__FILE_NAME, getAttributedTypes());
+        }
     }
 
-    void flushCredentials(FilePartition partition) {
-        FilePartition filePartition = getPartitions().get(partition.getId());
-        flush(filePartition, CREDENTIALS_FILE_NAME, filePartition.getCredentials());
+    void flushCredentials(FilePartition partition, String accountId) {
+        if (this.journal != null) {
+            this.journal.append(CREDENTIALS_FILE_NAME, partition.getId(), accountId);
+        } else {
+            flush(partition, CREDENTIALS_FILE_NAME, partition.getCredentials());
+        }
+    }
+
+    void flushPermissions(FilePartition partition, String assigneeId) {
+        if (this.journal != null) {
+            this.journal.append(PERMISSIONS_FILE_NAME, partition.getId(), assigneeId);
+        } else {
+            flush(partition, PERMISSIONS_FILE_NAME, partition.getPermissions());
+        }
     }
 
     void flushPermissions(FilePartition partition) {
-        FilePartition filePartition = getPartitions().get(partition.getId());
-        flush(filePartition, PERMISSIONS_FILE_NAME, filePartition.getPermissions());
+        if (this.journal != null) {
+            for (String assigneeId : partition.getPermissions().keySet()) {
+                this.journal.append(PERMISSIONS_FILE_NAME, partition.getId(), assigneeId);
+            }
+        } else {
+            flush(partition, PERMISSIONS_FILE_NAME, partition.getPermissions());
+        }
     }
 
     /**
@@ -186,7 +257,32 @@ public class FileDataSource {
         FILE_STORE_LOGGER.fileConfigUsingWorkingDir(workingDirectoryFile.getPath());
     }
 
+    /**
+     * <p>
+     * Writes all pending changes and releases the journal and the threads used to write changes asynchronously. Changes
+     * can not be flushed once the data source is closed.
+     * </p>
+     */
+    void close() {
+        if (this.journal != null) {
+            this.journal.close();
+        }
+
+        if (this.executorService != null) {
+            this.executorService.shutdown();
+
+            try {
+                this.executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     private void init() {
+        // a journal left open for the same directory must write its pending records before the files are read
+        FileJournal.close(getWorkingDirFile(JOURNAL_FILE_NAME));
+
         initWorkingDirectory();
 
         File partitionsFile =
@@ -202,6 +298,7 @@ public class FileDataSource {
         }
 
         this.relationships = relationships;
+        this.relationshipIndex = new FileRelationshipIndex(relationships);
 
         Map<String, FileAttribute> attributes =
                 readObject(createFileIfNotExists(getWorkingDirFile(ATTRIBUTES_FILE_NAME)));
@@ -221,12 +318,35 @@ public class FileDataSource {
 
         this.attributedTypes = attrubtedTypes;
 
-        if (this.configuration.isAsyncWrite()) {
+        if (this.configuration.isJournal()) {
+            FILE_STORE_LOGGER.fileJournalEnabled(this.configuration.getJournalCompactionThreshold());
+            initJournal();
+        } else if (this.configuration.isAsyncWrite()) {
             FILE_STORE_LOGGER.fileAsyncWriteEnabled(this.configuration.getAsyncThreadPool());
             this.executorService = Executors.newFixedThreadPool(this.configuration.getAsyncThreadPool());
         }
     }
 
+    private void initJournal() {
+        File journalFile = createFileIfNotExists(getWorkingDirFile(JOURNAL_FILE_NAME));
+
+        this.journal = new FileJournal(journalFile, this.configuration.getJournalCompactionThreshold(),
+                this.configuration.isAsyncWrite(), new JournalStore());
+
+        int replayed = this.journal.open();
+
+        if (replayed > 0) {
+            FILE_STORE_LOGGER.fileJournalReplayed(replayed, journalFile.getPath());
+
+            // records are applied directly to the maps, the indexes must be rebuilt
+            for (FilePartition filePartition : this.partitions.values()) {
+                filePartition.setIdentityTypes(filePartition.getIdentityTypes());
+            }
+
+            this.relationshipIndex = new FileRelationshipIndex(this.relationships);
+        }
+    }
+
     private void loadPartitions(File partitionsFile) {
         this.partitions = readObject(partitionsFile);
 
@@ -370,6 +490,42 @@ public class FileDataSource {
         }
     }
 
+    private byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(FLUSH_BYTE_BUFFER);
+        ObjectOutputStream oos = new ObjectOutputStream(bos);
+
+        oos.writeObject(object);
+        oos.close();
+
+        return bos.toByteArray();
+    }
+
+    /**
+     * <p>
+     * Writes the given content to a temporary file that then replaces the existing file, so a snapshot is never left
+     * partially written.
+     * </p>
+     *
+     * @param fileName
+     * @param content
+     * @throws IOException
+     */
+    private void writeSnapshot(String fileName, byte[] content) throws IOException {
+        File file = getWorkingDirFile(fileName);
+        File tempFile = new File(file.getPath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tempFile);
+
+        try {
+            fos.write(content);
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
     private File getWorkingDirFile(String name) {
         return new File(getWorkingDir() + File.separator + name);
     }
@@ -378,4 +534,148 @@ public class FileDataSource {
         return FILE_STORE_LOGGER.isDebugEnabled();
     }
 
-}
\ No newline at end of file
+    /**
+     * <p>
+     * Resolves the entries referenced by journal records. Entries stored per partition use the partition id as their
+     * first key.
+     * </p>
+     */
+    @SuppressWarnings("unchecked")
+    private class JournalStore implements FileJournal.Store {
+
+        @Override
+        public Object getValue(String fileName, String[] keys) {
+            Map<String, ?> map = getRootMap(fileName, keys);
+            int offset = getKeyOffset(fileName);
+
+            for (int i = offset; map != null && i < keys.length - 1; i++) {
+                map = (Map<String, ?>) map.get(keys[i]);
+            }
+
+            if (map == null) {
+                return null;
+            }
+
+            return map.get(keys[keys.length - 1]);
+        }
+
+        @Override
+        public void setValue(String fileName, String[] keys, Object value) {
+            if (PARTITIONS_FILE_NAME.equals(fileName)) {
+                setPartition(keys[0], (FilePartition) value);
+                return;
+            }
+
+            Map<String, Object> map = getRootMap(fileName, keys);
+
+            if (map == null) {
+                // the partition was removed
+                return;
+            }
+
+            for (int i = getKeyOffset(fileName); i < keys.length - 1; i++) {
+                Map<String, Object> child = (Map<String, Object>) map.get(keys[i]);
+
+                if (child == null) {
+                    child = new ConcurrentHashMap<String, Object>();
+                    map.put(keys[i], child);
+                }
+
+                map = child;
+            }
+
+            if (value == null) {
+                map.remove(keys[keys.length - 1]);
+            } else {
+                map.put(keys[keys.length - 1], value);
+            }
+        }
+
+        @Override
+        public Map<String, byte[]> copySnapshot() throws IOException {
+            // the partition files are written first, a partition is never stored without its data files
+            Map<String, byte[]> snapshot = new LinkedHashMap<String, byte[]>();
+
+            for (FilePartition filePartition : getPartitions().values()) {
+                String partitionId = filePartition.getId();
+
+                snapshot.put(partitionId + File.separator + IDENTITY_TYPES__FILE_NAME,
+                        serialize(filePartition.getIdentityTypes()));
+                snapshot.put(partitionId + File.separator + CREDENTIALS_FILE_NAME,
+                        serialize(filePartition.getCredentials()));
+                snapshot.put(partitionId + File.separator + PERMISSIONS_FILE_NAME,
+                        serialize(filePartition.getPermissions()));
+            }
+
+            snapshot.put(PARTITIONS_FILE_NAME, serialize(getPartitions()));
+            snapshot.put(RELATIONSHIPS_FILE_NAME, serialize(getRelationships()));
+            snapshot.put(ATTRIBUTES_FILE_NAME, serialize(getAttributes()));
+            snapshot.put(ATTRIBUTED_TYPES__FILE_NAME, serialize(getAttributedTypes()));
+
+            return snapshot;
+        }
+
+        @Override
+        public void writeSnapshot(Map<String, byte[]> snapshot) throws IOException {
+            for (Entry<String, byte[]> entry : snapshot.entrySet()) {
+                FileDataSource.this.writeSnapshot(entry.getKey(), entry.getValue());
+            }
+        }
+
+        private void setPartition(String partitionId, FilePartition filePartition) {
+            if (filePartition == null) {
+                getPartitions().remove(partitionId);
+                return;
+            }
+
+            FilePartition currentPartition = getPartitions().get(partitionId);
+
+            getPartitions().put(partitionId, filePartition);
+
+            if (currentPartition != null) {
+                filePartition.setIdentityTypes(currentPartition.getIdentityTypes());
+                filePartition.setCredentials(currentPartition.getCredentials());
+                filePartition.setPermissions(currentPartition.getPermissions());
+            } else {
+                initPartition(partitionId);
+            }
+        }
+
+        private Map getRootMap(String fileName, String[] keys) {
+            if (PARTITIONS_FILE_NAME.equals(fileName)) {
+                return getPartitions();
+            } else if (RELATIONSHIPS_FILE_NAME.equals(fileName)) {
+                return getRelationships();
+            } else if (ATTRIBUTES_FILE_NAME.equals(fileName)) {
+                return getAttributes();
+            } else if (ATTRIBUTED_TYPES__FILE_NAME.equals(fileName)) {
+                return getAttributedTypes();
+            }
+
+            FilePartition filePartition = getPartitions().get(keys[0]);
+
+            if (filePartition == null) {
+                return null;
+            }
+
+            if (IDENTITY_TYPES__FILE_NAME.equals(fileName)) {
+                return filePartition.getIdentityTypes();
+            } else if (CREDENTIALS_FILE_NAME.equals(fileName)) {
+                return filePartition.getCredentials();
+            } else if (PERMISSIONS_FILE_NAME.equals(fileName)) {
+                return filePartition.getPermissions();
+            }
+
+            throw new IdentityManagementException("Unknown file [" + fileName + "] in journal.");
+        }
+
+        private int getKeyOffset(String fileName) {
+            if (IDENTITY_TYPES__FILE_NAME.equals(fileName) || CREDENTIALS_FILE_NAME.equals(fileName)
+                    || PERMISSIONS_FILE_NAME.equals(fileName)) {
+                return 1;
+            }
+
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.idm.file.internal;
+
+import org.picketlink.common.properties.Property;
+import org.picketlink.common.properties.query.NamedPropertyCriteria;
+import org.picketlink.common.properties.query.PropertyQueries;
+import org.picketlink.idm.IdentityManagementException;
+import org.picketlink.idm.model.Attribute;
+import org.picketlink.idm.model.IdentityType;
+import org.picketlink.idm.query.AttributeParameter;
+import org.picketlink.idm.query.Condition;
+import org.picketlink.idm.query.IdentityQuery;
+import org.picketlink.idm.query.QueryParameter;
+import org.picketlink.idm.query.internal.BetweenCondition;
+import org.picketlink.idm.query.internal.EqualCondition;
+import org.picketlink.idm.query.internal.GreaterThanCondition;
+import org.picketlink.idm.query.internal.InCondition;
+import org.picketlink.idm.query.internal.LessThanCondition;
+import org.picketlink.idm.query.internal.LikeCondition;
+import org.picketlink.idm.spi.AttributeStore;
+import org.picketlink.idm.spi.IdentityContext;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Matches stored {@link IdentityType} instances against the conditions of an {@link IdentityQuery}.</p>
+ *
+ * <p>A query is compiled once, when the matcher is created. The properties referenced by each condition are resolved
+ * at that time, so matching a stored entry does not require any further property lookup.</p>
+ */
+public class FileIdentityQueryMatcher {
+
+    private final IdentityContext context;
+    private final AttributeStore<?> attributeStore;
+    private final boolean matchAll;
+    private final List<ConditionMatcher> conditionMatchers = new ArrayList<ConditionMatcher>();
+    private EqualCondition idCondition;
+    private EqualCondition indexedCondition;
+
+    FileIdentityQueryMatcher(IdentityQuery<?> identityQuery, IdentityContext context, AttributeStore<?> attributeStore) {
+        this.context = context;
+        this.attributeStore = attributeStore;
+        this.matchAll = identityQuery.getConditions().isEmpty();
+
+        for (Condition condition : identityQuery.getConditions()) {
+            QueryParameter queryParameter = condition.getParameter();
+
+            if (IdentityType.ID.equals(queryParameter)) {
+                if (!EqualCondition.class.isInstance(condition)) {
+                    throw new IdentityManagementException("Only equality conditions are allowed when queryng based on the identifier.");
+                }
+
+                this.idCondition = (EqualCondition) condition;
+            } else if (AttributeParameter.class.isInstance(queryParameter)) {
+                String attributeParameterName = ((AttributeParameter) queryParameter).getName();
+
+                Property<Serializable> property = PropertyQueries.<Serializable>createQuery(identityQuery.getIdentityType())
+                    .addCriteria(new NamedPropertyCriteria(attributeParameterName))
+                    .getFirstResult();
+
+                if (property == null || !property.getName().equals(attributeParameterName)) {
+                    property = null;
+                } else if (this.indexedCondition == null && EqualCondition.class.isInstance(condition)
+                    && FileIdentityTypeIndex.isIndexed(attributeParameterName)) {
+                    this.indexedCondition = (EqualCondition) condition;
+                }
+
+                this.conditionMatchers.add(new ConditionMatcher(condition, attributeParameterName, property));
+            }
+        }
+    }
+
+    /**
+     * <p>Returns the condition on the identifier, if any. Queries by identifier ignore any other condition.</p>
+     *
+     * @return
+     */
+    EqualCondition getIdCondition() {
+        return this.idCondition;
+    }
+
+    /**
+     * <p>Returns an equality condition on one of the {@link FileIdentityTypeIndex#INDEXED_PROPERTIES}, if any. Only
+     * the entries matching this condition can match the whole query.</p>
+     *
+     * @return
+     */
+    EqualCondition getIndexedCondition() {
+        return this.indexedCondition;
+    }
+
+    boolean matches(IdentityType storedEntry) {
+        boolean match = this.matchAll;
+
+        for (ConditionMatcher conditionMatcher : this.conditionMatchers) {
+            match = conditionMatcher.matches(storedEntry);
+
+            if (!match) {
+                break;
+            }
+        }
+
+        return match;
+    }
+
+    static boolean matches(Condition condition, Serializable storedValue) {
+        boolean match = false;
+
+        if (storedValue != null) {
+            if (EqualCondition.class.isInstance(condition)) {
+                EqualCondition equalCondition = (EqualCondition) condition;
+                match = storedValue != null && storedValue.equals(equalCondition.getValue());
+            } else if (LikeCondition.class.isInstance(condition)) {
+                LikeCondition likeCondition = (LikeCondition) condition;
+                String parameterValue = (String) likeCondition.getValue();
+
+                if (parameterValue.startsWith("%") && parameterValue.endsWith("%")) {
+                    String pattern = parameterValue.toLowerCase();
+
+                    pattern = pattern.replace(".", "\\.");
+                    pattern = pattern.replace("%", ".*");
+                    pattern = pattern.replace("?", ".");
+
+                    match = storedValue.toString().toLowerCase().matches(pattern);
+                }
+
+            } else if (GreaterThanCondition.class.isInstance(condition)) {
+                GreaterThanCondition greaterThanCondition = (GreaterThanCondition) condition;
+                Comparable parameterValue = (Comparable) greaterThanCondition.getValue();
+
+                if (greaterThanCondition.isOrEqual()) {
+                    match = parameterValue.compareTo(storedValue) <= 0;
+                } else {
+                    match = parameterValue.compareTo(storedValue) < 0;
+                }
+            } else if (LessThanCondition.class.isInstance(condition)) {
+                LessThanCondition lessThanCondition = (LessThanCondition) condition;
+                Comparable parameterValue = (Comparable) lessThanCondition.getValue();
+
+                if (lessThanCondition.isOrEqual()) {
+                    match = parameterValue.compareTo(storedValue) >= 0;
+                } else {
+                    match = parameterValue.compareTo(storedValue) > 0;
+                }
+            } else if (BetweenCondition.class.isInstance(condition)) {
+                BetweenCondition betweenCondition = (BetweenCondition) condition;
+                Comparable x = betweenCondition.getX();
+                Comparable y = betweenCondition.getY();
+
+                match = x.compareTo(storedValue) <= 0 && y.compareTo(storedValue) >= 0;
+            } else if (InCondition.class.isInstance(condition)) {
+                InCondition inCondition = (InCondition) condition;
+                Object[] valuesToCompare = inCondition.getValue();
+                int count = valuesToCompare.length;
+
+                for (Object value : valuesToCompare) {
+                    if (storedValue.getClass().isArray()) {
+                        Object[] userValues = (Object[]) storedValue;
+
+                        for (Object object : userValues) {
+                            if (object.equals(value)) {
+                                count--;
+                            }
+                        }
+                    } else {
+                        if (value.equals(storedValue)) {
+                            count--;
+                        }
+                    }
+                }
+
+                match = count <= 0;
+            } else {
+                throw new IdentityManagementException("Unsupported query condition [" + condition + "].");
+            }
+        }
+        return match;
+    }
+
+    private class ConditionMatcher {
+
+        private final Condition condition;
+        private final String attributeName;
+        private final Property<Serializable> property;
+
+        ConditionMatcher(Condition condition, String attributeName, Property<Serializable> property) {
+            this.condition = condition;
+            this.attributeName = attributeName;
+            this.property = property;
+        }
+
+        boolean matches(IdentityType storedEntry) {
+            if (this.property != null) {
+                return FileIdentityQueryMatcher.matches(this.condition, this.property.getValue(storedEntry));
+            }
+
+            attributeStore.loadAttributes(context, storedEntry);
+            Attribute<Serializable> attribute = storedEntry.getAttribute(this.attributeName);
+
+            return attribute != null ? FileIdentityQueryMatcher.matches(this.condition, attribute.getValue()) : false;
+        }
+    }
+}
@@ -52,17 +52,13 @@ import org.picketlink.idm.query.IdentityQuery;
 import org.picketlink.idm.query.QueryParameter;
 import org.picketlink.idm.query.RelationshipQuery;
 import org.picketlink.idm.query.RelationshipQueryParameter;
-import org.picketlink.idm.query.internal.BetweenCondition;
 import org.picketlink.idm.query.internal.EqualCondition;
-import org.picketlink.idm.query.internal.GreaterThanCondition;
-import org.picketlink.idm.query.internal.InCondition;
-import org.picketlink.idm.query.internal.LessThanCondition;
-import org.picketlink.idm.query.internal.LikeCondition;
 import org.picketlink.idm.spi.AttributeStore;
 import org.picketlink.idm.spi.CredentialStore;
 import org.picketlink.idm.spi.IdentityContext;
 import org.picketlink.idm.spi.PartitionStore;
 
+import java.io.Closeable;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -97,7 +93,7 @@ import static org.picketlink.idm.internal.util.PermissionUtil.hasAttributes;
 public class FileIdentityStore extends AbstractIdentityStore<FileIdentityStoreConfiguration>
     implements PartitionStore<FileIdentityStoreConfiguration>,
     CredentialStore<FileIdentityStoreConfiguration>,
-    AttributeStore<FileIdentityStoreConfiguration>, PermissionStore {
+    AttributeStore<FileIdentityStoreConfiguration>, PermissionStore, Closeable {
 
     private FileDataSource fileDataSource;
 
@@ -108,18 +104,31 @@ public class FileIdentityStore extends AbstractIdentityStore<FileIdentityStoreCo
         this.fileDataSource = new FileDataSource(configuration);
     }
 
+    /**
+     * <p>Writes all pending changes and closes the journal, if enabled.</p>
+     */
+    @Override
+    public void close() {
+        this.fileDataSource.close();
+    }
+
     @Override
     protected void removeFromRelationships(IdentityContext context, IdentityType identityType) {
         Map<String, Map<String, FileRelationship>> relationships = this.fileDataSource.getRelationships();
-        for (Map<String, FileRelationship> relationshipsType : relationships.values()) {
-            for (FileRelationship fileRelationship : new HashMap<String, FileRelationship>(relationshipsType).values()) {
-                if (fileRelationship.hasIdentityType(identityType)) {
-                    relationshipsType.remove(fileRelationship.getId());
-                }
+        FileRelationshipIndex relationshipIndex = this.fileDataSource.getRelationshipIndex();
+        List<FileRelationship> removedRelationships = new ArrayList<FileRelationship>(relationshipIndex.get(identityType));
+
+        for (FileRelationship fileRelationship : removedRelationships) {
+            Map<String, FileRelationship> relationshipsType = relationships.get(fileRelationship.getType());
+
+            if (relationshipsType != null) {
+                relationshipsType.remove(fileRelationship.getId());
             }
+
+            relationshipIndex.remove(fileRelationship.getId());
         }
 
-        this.fileDataSource.flushRelationships();
+        this.fileDataSource.flushRelationships(removedRelationships);
     }
 
     @Override
@@ -131,7 +140,7 @@ public class FileIdentityStore extends AbstractIdentityStore<FileIdentityStoreCo
 
         credentials.remove(account.getId());
 
-        this.fileDataSource.flushCredentials(filePartition);
+        this.fileDataSource.flushCredentials(filePartition, account.getId());
     }
 
     @Override
@@ -172,21 +181,20 @@ public class FileIdentityStore extends AbstractIdentityStore<FileIdentityStoreCo
                 identityTypes.remove(identityType.getId());
             }
 
-            this.fileDataSource.flushAttributedTypes(filePartition);
+            filePartition.getIdentityTypeIndex().remove(identityType.getId());
+
+            this.fileDataSource.flushIdentityType(filePartition, attributedType.getClass().getName(), identityType.getId());
         } else if (Relationship.class.isInstance(attributedType)) {
             Map<String, FileRelationship> fileRelationships = this.fileDataSource.getRelationships()
                 .get(attributedType.getClass().getName());
 
-            for (FileRelationship fileRelationship : new HashMap<String, FileRelationship>(fileRelationships).values()) {
-                if (fileRelationship.getId().equals(attributedType.getId())) {
-                    fileRelationships.remove(fileRelationship.getId());
-                }
-            }
+            fileRelationships.remove(attributedType.getId());
+            this.fileDataSource.getRelationshipIndex().remove(attributedType.getId());
 
-            this.fileDataSource.flushRelationships();
+            this.fileDataSource.flushRelationship(attributedType.getClass().getName(), attributedType.getId());
         } else {
             this.fileDataSource.getAttributedTypes().remove(attributedType.getId());
-            this.fileDataSource.flushAttributedTypes();
+            this.fileDataSource.flushAttributedType(attributedType.getId());
         }
     }
 
@@ -256,7 +264,7 @@ public class FileIdentityStore extends AbstractIdentityStore<FileIdentityStoreCo
 
         this.fileDataSource.getPartitions().put(partition.getId(),
             new FilePartition(cloneAttributedType(identityContext, partition), filePartition.getConfigurationName()));
-        this.fileDataSource.flushPartitions();
+        this.fileDataSource.flushPartition(partition.getId());
     }
 
     @Override
@@ -264,7 +272,7 @@ public class FileIdentityStore extends AbstractIdentityStore<FileIdentityStoreCo
         FilePartition filePartition = resolve(partition.getClass(), partition.getName());
 
         this.fileDataSource.getPartitions().remove(filePartition.getId());
-        this.fileDataSource.flushPartitions();
+        this.fileDataSource.flushPartition(filePartition.getId());
     }
 
     @Override
@@ -273,7 +281,7 @@ public class FileIdentityStore extends AbstractIdentityStore<FileIdentityStoreCo
 
         credentials.add(new FileCredentialStorage(storage));
 
-        flushCredentials(context.getPartition());
+        flushCredentials(account);
     }
 
     @Override
@@ -309,11 +317,13 @@ public class FileIdentityStore extends AbstractIdentityStore<FileIdentityStoreCo
             credentials.clear();
         }
 
-        flushCredentials(context.getPartition());
+        flushCredentials(account);
     }
 
     @Override
     public <V extends IdentityType> List<V> fetchQueryResults(IdentityContext context, IdentityQuery<V> identityQuery) {
+        checkKeysetPaginationNotSupported(identityQuery);
+
         Partition partition = null;
 
         for (Condition condition : identityQuery.getConditions()) {
@@ -333,83 +343,83 @@ public class FileIdentityStore extends AbstractIdentityStore<FileIdentityStoreCo
         }
 
         FilePartition filePartition = resolve(partition.getClass(), partition.getName());
+        FileIdentityTypeIndex identityTypeIndex = filePartition.getIdentityTypeIndex();
 
         List<V> result = new ArrayList<V>();
         Map<String, Map<String, FileIdentityType>> identityTypes = filePartition.getIdentityTypes();
-        Map<String, FileIdentityType> typedIdentityTypes = null;
+        boolean anyIdentityType = IdentityType.class.equals(identityQuery.getIdentityType());
+        Map<String, FileIdentityType> typedIdentityTypes = identityTypes.get(identityQuery.getIdentityType().getName());
 
-        if (IdentityType.class.equals(identityQuery.getIdentityType())) {
-            typedIdentityTypes = new HashMap<String, FileIdentityType>();
-            for (String type : identityTypes.keySet()) {
-                typedIdentityTypes.putAll(identityTypes.get(type));
-            }
-        } else {
-            typedIdentityTypes = identityTypes.get(identityQuery.getIdentityType().getName());
-        }
-
-        if (typedIdentityTypes == null) {
+        if (!anyIdentityType && typedIdentityTypes == null) {
             return result;
         }
 
-        for (FileIdentityType storedIdentityType : typedIdentityTypes.values()) {
-            IdentityType storedEntry = storedIdentityType.getEntry();
-
-            boolean match = identityQuery.getConditions().isEmpty();
+        FileIdentityQueryMatcher matcher = new FileIdentityQueryMatcher(identityQuery, context, this);
+        EqualCondition idCondition = matcher.getIdCondition();
 
-            for (Condition condition : identityQuery.getConditions()) {
-                QueryParameter queryParameter = condition.getParameter();
+        if (idCondition != null) {
+            Object value = idCondition.getValue();
 
-                if (IdentityType.ID.equals(queryParameter)) {
-                    if (!EqualCondition.class.isInstance(condition)) {
-                        throw new IdentityManagementException("Only equality conditions are allowed when queryng based on the identifier.");
-                    }
+            if (value != null) {
+                FileIdentityType fileAttributedType;
 
-                    EqualCondition equalCondition = (EqualCondition) condition;
-                    Object value = equalCondition.getValue();
-
-                    if (value != null) {
-                        FileIdentityType fileAttributedType = typedIdentityTypes.get(value);
-
-                        if (fileAttributedType != null) {
-                            result.add(cloneAttributedType(context, (V) fileAttributedType.getEntry()));
-                        }
-                    }
+                if (anyIdentityType) {
+                    fileAttributedType = identityTypeIndex.get(value.toString());
+                } else {
+                    fileAttributedType = typedIdentityTypes.get(value);
+                }
 
-                    return result;
+                if (fileAttributedType != null) {
+                    result.add(cloneAttributedType(context, (V) fileAttributedType.getEntry()));
                 }
+            }
 
-                if (AttributeParameter.class.isInstance(queryParameter)) {
-                    AttributeParameter attributeParameter = (AttributeParameter) queryParameter;
-                    String attributeParameterName = attributeParameter.getName();
+            return result;
+        }
 
-                    Property<Serializable> property = PropertyQueries.<Serializable>createQuery(identityQuery.getIdentityType())
-                        .addCriteria(new NamedPropertyCriteria(attributeParameterName))
-                        .getFirstResult();
+        Collection<FileIdentityType> candidates;
+        EqualCondition indexedCondition = matcher.getIndexedCondition();
 
-                    if (property != null && property.getName().equals(attributeParameterName)) {
-                        Serializable storedValue = property.getValue(storedEntry);
+        if (indexedCondition != null) {
+            AttributeParameter indexedParameter = (AttributeParameter) indexedCondition.getParameter();
 
-                        match = matches(condition, storedValue);
-                    } else {
-                        loadAttributes(context, storedEntry);
-                        Attribute<Serializable> attribute = storedEntry.getAttribute(attributeParameterName);
+            candidates = new ArrayList<FileIdentityType>();
 
-                        match = attribute != null ? matches(condition, attribute.getValue()) : false;
-                    }
+            for (String id : identityTypeIndex.getIds(indexedParameter.getName(), indexedCondition.getValue())) {
+                FileIdentityType candidate;
 
-                    if (!match) {
-                        break;
-                    }
+                if (anyIdentityType) {
+                    candidate = identityTypeIndex.get(id);
+                } else {
+                    candidate = typedIdentityTypes.get(id);
+                }
+
+                if (candidate != null) {
+                    candidates.add(candidate);
                 }
             }
+        } else if (anyIdentityType) {
+            candidates = new ArrayList<FileIdentityType>();
+
+            for (Map<String, FileIdentityType> typeIdentityTypes : identityTypes.values()) {
+                candidates.addAll(typeIdentityTypes.values());
+            }
+        } else {
+            candidates = typedIdentityTypes.values();
+        }
+
+        for (FileIdentityType storedIdentityType : candidates) {
+            IdentityType storedEntry = storedIdentityType.getEntry();
 
-            if (match) {
-                result.add((V) cloneAttributedType(context, storedEntry));
+            if (matcher.matches(storedEntry)) {
+                result.add((V) storedEntry);
             }
         }
 
         // Apply sorting
-        Collections.sort(result, new FileSortingComparator<V>(identityQuery));
+        if (!identityQuery.getSorting().isEmpty()) {
+            Collections.sort(result, new FileSortingComparator<V>(identityQuery));
+        }
 
         // Apply pagination
         if (identityQuery.getLimit() > 0) {
@@ -417,81 +427,12 @@ public class FileIdentityStore extends AbstractIdentityStore<FileIdentityStoreCo
             result = result.subList(identityQuery.getOffset(), identityQuery.getOffset() + numberOfItems);
         }
 
-        return result;
-    }
-
-    private <V extends IdentityType> boolean matches(Condition condition, Serializable storedValue) {
-        boolean match = false;
-
-        if (storedValue != null) {
-            if (EqualCondition.class.isInstance(condition)) {
-                EqualCondition equalCondition = (EqualCondition) condition;
-                match = storedValue != null && storedValue.equals(equalCondition.getValue());
-            } else if (LikeCondition.class.isInstance(condition)) {
-                LikeCondition likeCondition = (LikeCondition) condition;
-                String parameterValue = (String) likeCondition.getValue();
-
-                if (parameterValue.startsWith("%") && parameterValue.endsWith("%")) {
-                    String pattern = parameterValue.toLowerCase();
-
-                    pattern = pattern.replace(".", "\\.");
-                    pattern = pattern.replace("%", ".*");
-                    pattern = pattern.replace("?", ".");
-
-                    match = storedValue.toString().toLowerCase().matches(pattern);
-                }
-
-            } else if (GreaterThanCondition.class.isInstance(condition)) {
-                GreaterThanCondition greaterThanCondition = (GreaterThanCondition) condition;
-                Comparable parameterValue = (Comparable) greaterThanCondition.getValue();
-
-                if (greaterThanCondition.isOrEqual()) {
-                    match = parameterValue.compareTo(storedValue) <= 0;
-                } else {
-                    match = parameterValue.compareTo(storedValue) < 0;
-                }
-            } else if (LessThanCondition.class.isInstance(condition)) {
-                LessThanCondition lessThanCondition = (LessThanCondition) condition;
-                Comparable parameterValue = (Comparable) lessThanCondition.getValue();
-
-                if (lessThanCondition.isOrEqual()) {
-                    match = parameterValue.compareTo(storedValue) >= 0;
-                } else {
-                    match = parameterValue.compareTo(storedValue) > 0;
-                }
-            } else if (BetweenCondition.class.isInstance(condition)) {
-                BetweenCondition betweenCondition = (BetweenCondition) condition;
-                Comparable x = betweenCondition.getX();
-                Comparable y = betweenCondition.getY();
-
-                match = x.compareTo(storedValue) <= 0 && y.compareTo(storedValue) >= 0;
-            } else if (InCondition.class.isInstance(condition)) {
-                InCondition inCondition = (InCondition) condition;
-                Object[] valuesToCompare = inCondition.getValue();
-                int count = valuesToCompare.length;
-
-                for (Object value : valuesToCompare) {
-                    if (storedValue.getClass().isArray()) {
-                        Object[] userValues = (Object[]) storedValue;
-
-                        for (Object object : userValues) {
-                            if (object.equals(value)) {
-                                count--;
-                            }
-                        }
-                    } else {
-                        if (value.equals(storedValue)) {
-                            count--;
-                        }
-                    }
-                }
-
-                match = count <= 0;
-            } else {
-                throw new IdentityManagementException("Unsupported query condition [" + condition + "].");
-            }
+        // only the entries in the requested page are copied
+        for (int i = 0; i < result.size(); i++) {
+            result.set(i, cloneAttributedType(context, result.get(i)));
         }
-        return match;
+
+        return result;
     }
 
     @Override
@@ -512,21 +453,27 @@ public class FileIdentityStore extends AbstractIdentityStore<FileIdentityStoreCo
                 }
             }
         } else {
-            List<FileRelationship> relationships = new ArrayList<FileRelationship>();
+            Collection<FileRelationship> relationships = getCandidateRelationships(query);
+            Map<String, Property<Serializable>> attributeProperties = new HashMap<String, Property<Serializable>>();
 
-            if (Relationship.class.equals(typeToSearch)) {
-                for (Map<String, FileRelationship> partitionRelationships : this.fileDataSource.getRelationships().values()) {
-                    relationships.addAll(partitionRelationships.values());
-                }
-            } else {
-                Map<String, FileRelationship> typedRelationship = this.fileDataSource.getRelationships().get(
-                    typeToSearch.getName());
+            for (QueryParameter queryParameter : query.getParameters().keySet()) {
+                if (AttributeParameter.class.isInstance(queryParameter)) {
+                    AttributeParameter attributeParameter = (AttributeParameter) queryParameter;
+
+                    Property<Serializable> property = PropertyQueries
+                        .<Serializable>createQuery(query.getRelationshipClass())
+                        .addCriteria(new NamedPropertyCriteria(attributeParameter.getName()))
+                        .getFirstResult();
 
-                if (typedRelationship != null) {
-                    relationships.addAll(typedRelationship.values());
+                    attributeProperties.put(attributeParameter.getName(), property);
                 }
             }
 
+            List<Property<IdentityType>> identityTypeProperties = PropertyQueries.<IdentityType>createQuery(query
+                .getRelationshipClass())
+                .addCriteria(new TypedPropertyCriteria(IdentityType.class, MatchOption.SUB_TYPE))
+                .getResultList();
+
             for (FileRelationship storedRelationship : relationships) {
                 boolean match = query.getParameters().isEmpty();
 
@@ -559,11 +506,7 @@ public class FileIdentityStore extends AbstractIdentityStore<FileIdentityStoreCo
                             }
                         } else if (AttributeParameter.class.isInstance(queryParameter) && values != null) {
                             AttributeParameter attributeParameter = (AttributeParameter) queryParameter;
-
-                            Property<Serializable> property = PropertyQueries
-                                .<Serializable>createQuery(query.getRelationshipClass())
-                                .addCriteria(new NamedPropertyCriteria(attributeParameter.getName()))
-                                .getFirstResult();
+                            Property<Serializable> property = attributeProperties.get(attributeParameter.getName());
 
                             if (property != null) {
                                 Serializable value = property.getValue(storedRelationship.getEntry());
@@ -586,14 +529,9 @@ public class FileIdentityStore extends AbstractIdentityStore<FileIdentityStoreCo
                 if (match) {
                     T relationship = (T) cloneAttributedType(context, storedRelationship.getEntry());
 
-                    List<Property<IdentityType>> properties = PropertyQueries.<IdentityType>createQuery(query
-                        .getRelationshipClass())
-                        .addCriteria(new TypedPropertyCriteria(IdentityType.class, MatchOption.SUB_TYPE))
-                        .getResultList();
-
                     RelationshipReference reference = new RelationshipReference(relationship);
 
-                    for (Property<IdentityType> property : properties) {
+                    for (Property<IdentityType> property : identityTypeProperties) {
                         reference.addIdentityTypeReference(property.getName(), storedRelationship.getIdentityTypeId
                             (property.getName()));
                     }
@@ -606,6 +544,57 @@ public class FileIdentityStore extends AbstractIdentityStore<FileIdentityStoreCo
         return result;
     }
 
+    /**
+     * <p>Returns the relationships that may match the given query. When the query references an identity type, only
+     * the relationships referencing that identity type are returned.</p>
+     *
+     * @param query
+     * @return
+     */
+    private Collection<FileRelationship> getCandidateRelationships(RelationshipQuery<?> query) {
+        Class<?> typeToSearch = query.getRelationshipClass();
+        Collection<FileRelationship> referencedRelationships = null;
+
+        for (Entry<QueryParameter, Object[]> entry : query.getParameters().entrySet()) {
+            QueryParameter queryParameter = entry.getKey();
+            Object[] values = entry.getValue();
+
+            if (values == null || values.length == 0) {
+                continue;
+            }
+
+            // identity conditions require all values, relationship parameters are only indexed when single-valued
+            if (Relationship.IDENTITY.equals(queryParameter)
+                || (RelationshipQueryParameter.class.isInstance(queryParameter) && values.length == 1)) {
+                referencedRelationships = this.fileDataSource.getRelationshipIndex().get((IdentityType) values[0]);
+                break;
+            }
+        }
+
+        List<FileRelationship> relationships = new ArrayList<FileRelationship>();
+
+        if (referencedRelationships != null) {
+            for (FileRelationship relationship : referencedRelationships) {
+                if (Relationship.class.equals(typeToSearch) || relationship.getType().equals(typeToSearch.getName())) {
+                    relationships.add(relationship);
+                }
+            }
+        } else if (Relationship.class.equals(typeToSearch)) {
+            for (Map<String, FileRelationship> partitionRelationships : this.fileDataSource.getRelationships().values()) {
+                relationships.addAll(partitionRelationships.values());
+            }
+        } else {
+            Map<String, FileRelationship> typedRelationship = this.fileDataSource.getRelationships().get(
+                typeToSearch.getName());
+
+            if (typedRelationship != null) {
+                return typedRelationship.values();
+            }
+        }
+
+        return relationships;
+    }
+
     @Override
     public void setAttribute(IdentityContext context, AttributedType type, Attribute<? extends Serializable> attribute) {
         FileAttribute fileAttribute = getFileAttribute(type);
@@ -618,7 +607,7 @@ public class FileIdentityStore extends AbstractIdentityStore<FileIdentityStoreCo
         fileAttribute.getEntry().add(attribute);
 
         this.fileDataSource.getAttributes().put(type.getId(), fileAttribute);
-        this.fileDataSource.flushAttributes();
+        this.fileDataSource.flushAttribute(type.getId());
     }
 
     @Override
@@ -649,7 +638,7 @@ public class FileIdentityStore extends AbstractIdentityStore<FileIdentityStoreCo
             }
         }
 
-        this.fileDataSource.flushAttributes();
+        this.fileDataSource.flushAttribute(type.getId());
     }
 
     @Override
@@ -756,9 +745,12 @@ public class FileIdentityStore extends AbstractIdentityStore<FileIdentityStoreCo
             this.fileDataSource.getRelationships().put(type, storedRelationships);
         }
 
-        storedRelationships.put(relationship.getId(), new FileRelationship(relationship));
+        FileRelationship fileRelationship = new FileRelationship(relationship);
+
+        storedRelationships.put(relationship.getId(), fileRelationship);
+        this.fileDataSource.getRelationshipIndex().put(fileRelationship);
 
-        this.fileDataSource.flushRelationships();
+        this.fileDataSource.flushRelationship(type, relationship.getId());
     }
 
     private void storeIdentityType(IdentityContext context, IdentityType identityType) {
@@ -771,9 +763,12 @@ public class FileIdentityStore extends AbstractIdentityStore<FileIdentityStoreCo
             filePartition.getIdentityTypes().put(identityType.getClass().getName(), identityTypes);
         }
 
-        identityTypes.put(identityType.getId(), new FileIdentityType(identityType));
+        FileIdentityType fileIdentityType = new FileIdentityType(identityType);
 
-        this.fileDataSource.flushAttributedTypes(filePartition);
+        identityTypes.put(identityType.getId(), fileIdentityType);
+        filePartition.getIdentityTypeIndex().put(fileIdentityType);
+
+        this.fileDataSource.flushIdentityType(filePartition, identityType.getClass().getName(), identityType.getId());
     }
 
     private boolean matchAttribute(AttributedType attributedType, String parameterName, Object[] valuesToCompare) {
@@ -809,8 +804,10 @@ public class FileIdentityStore extends AbstractIdentityStore<FileIdentityStoreCo
         return false;
     }
 
-    private void flushCredentials(Partition partition) {
-        this.fileDataSource.flushCredentials(resolve(partition.getClass(), partition.getName()));
+    private void flushCredentials(Account account) {
+        Partition partition = account.getPartition();
+
+        this.fileDataSource.flushCredentials(resolve(partition.getClass(), partition.getName()), account.getId());
     }
 
     @Override
@@ -876,7 +873,7 @@ public class FileIdentityStore extends AbstractIdentityStore<FileIdentityStoreCo
             grantPermission(context, assignee, resource, newOperations);
         }
 
-        this.fileDataSource.flushPermissions(filePartition);
+        this.fileDataSource.flushPermissions(filePartition, assignee.getId());
 
         return true;
     }
@@ -997,15 +994,9 @@ public class FileIdentityStore extends AbstractIdentityStore<FileIdentityStoreCo
 
     private IdentityType lookupIdentityById(IdentityContext context, String id, Partition partition) {
         FilePartition filePartition = resolve(partition.getClass(), partition.getName());
-        Map<String, Map<String, FileIdentityType>> identityTypes = filePartition.getIdentityTypes();
-        Map<String, FileIdentityType> typedIdentityTypes = new HashMap<String, FileIdentityType>();
-
-        for (String type : identityTypes.keySet()) {
-            typedIdentityTypes.putAll(identityTypes.get(type));
-        }
 
         if (id != null) {
-            FileIdentityType fileAttributedType = typedIdentityTypes.get(id);
+            FileIdentityType fileAttributedType = filePartition.getIdentityTypeIndex().get(id);
 
             if (fileAttributedType != null) {
                 return cloneAttributedType(context, fileAttributedType.getEntry());
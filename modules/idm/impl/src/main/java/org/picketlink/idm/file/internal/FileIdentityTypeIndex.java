@@ -0,0 +1,185 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.idm.file.internal;
+
+import org.picketlink.common.properties.Property;
+import org.picketlink.common.properties.query.NamedPropertyCriteria;
+import org.picketlink.common.properties.query.PropertyQueries;
+import org.picketlink.idm.model.IdentityType;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>In-memory indexes for the {@link FileIdentityType} instances stored in a {@link FilePartition}.</p>
+ *
+ * <p>Identity types are indexed by identifier and by the values of the properties listed in {@link
+ * #INDEXED_PROPERTIES}. Indexes are not persisted, they are built when a partition is loaded and kept up to date
+ * whenever an identity type is stored or removed.</p>
+ */
+public class FileIdentityTypeIndex {
+
+    /**
+     * <p>The properties used to look up identity types, such as the login name of accounts or the name of roles and
+     * groups.</p>
+     */
+    static final String[] INDEXED_PROPERTIES = new String[] {"loginName", "name"};
+
+    /**
+     * <p>The indexed properties of each identity type. A {@link ClassValue} is used so identity types, and their class
+     * loaders, are not kept reachable once they are no longer used.</p>
+     */
+    private static final ClassValue<List<Property<Serializable>>> INDEXED_PROPERTIES_CACHE =
+        new ClassValue<List<Property<Serializable>>>() {
+            @Override
+            protected List<Property<Serializable>> computeValue(Class<?> type) {
+                List<Property<Serializable>> properties = new ArrayList<Property<Serializable>>();
+
+                for (String indexedProperty : INDEXED_PROPERTIES) {
+                    Property<Serializable> property = PropertyQueries.<Serializable>createQuery(type)
+                        .addCriteria(new NamedPropertyCriteria(indexedProperty))
+                        .getFirstResult();
+
+                    if (property != null && property.getName().equals(indexedProperty)) {
+                        properties.add(property);
+                    }
+                }
+
+                return Collections.unmodifiableList(properties);
+            }
+        };
+
+    private final Map<String, FileIdentityType> identityTypesById = new ConcurrentHashMap<String, FileIdentityType>();
+    private final Map<String, Map<Serializable, Set<String>>> idsByProperty =
+        new ConcurrentHashMap<String, Map<Serializable, Set<String>>>();
+
+    FileIdentityTypeIndex(Map<String, Map<String, FileIdentityType>> identityTypes) {
+        for (String indexedProperty : INDEXED_PROPERTIES) {
+            this.idsByProperty.put(indexedProperty, new ConcurrentHashMap<Serializable, Set<String>>());
+        }
+
+        for (Map<String, FileIdentityType> typedIdentityTypes : identityTypes.values()) {
+            for (FileIdentityType identityType : typedIdentityTypes.values()) {
+                put(identityType);
+            }
+        }
+    }
+
+    /**
+     * <p>Indexes the given identity type, replacing any previous entry with the same identifier.</p>
+     *
+     * @param identityType
+     */
+    synchronized void put(FileIdentityType identityType) {
+        remove(identityType.getId());
+
+        this.identityTypesById.put(identityType.getId(), identityType);
+
+        for (Property<Serializable> property : getIndexedProperties(identityType.getEntry().getClass())) {
+            Serializable value = property.getValue(identityType.getEntry());
+
+            if (value != null) {
+                Map<Serializable, Set<String>> idsByValue = this.idsByProperty.get(property.getName());
+                Set<String> ids = idsByValue.get(value);
+
+                if (ids == null) {
+                    ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                    idsByValue.put(value, ids);
+                }
+
+                ids.add(identityType.getId());
+            }
+        }
+    }
+
+    /**
+     * <p>Removes the identity type with the given identifier from the indexes.</p>
+     *
+     * @param id
+     */
+    synchronized void remove(String id) {
+        FileIdentityType identityType = this.identityTypesById.remove(id);
+
+        if (identityType == null) {
+            return;
+        }
+
+        for (Property<Serializable> property : getIndexedProperties(identityType.getEntry().getClass())) {
+            Serializable value = property.getValue(identityType.getEntry());
+
+            if (value != null) {
+                Map<Serializable, Set<String>> idsByValue = this.idsByProperty.get(property.getName());
+                Set<String> ids = idsByValue.get(value);
+
+                if (ids != null) {
+                    ids.remove(id);
+
+                    if (ids.isEmpty()) {
+                        idsByValue.remove(value);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>Returns the identity type with the given identifier, regardless of its type.</p>
+     *
+     * @param id
+     * @return
+     */
+    FileIdentityType get(String id) {
+        return this.identityTypesById.get(id);
+    }
+
+    /**
+     * <p>Returns the identifiers of all identity types where the given property is equal to the given value.</p>
+     *
+     * @param propertyName One of the {@link #INDEXED_PROPERTIES}.
+     * @param value
+     * @return
+     */
+    Set<String> getIds(String propertyName, Object value) {
+        Set<String> ids = this.idsByProperty.get(propertyName).get(value);
+
+        if (ids == null) {
+            return Collections.emptySet();
+        }
+
+        return ids;
+    }
+
+    static boolean isIndexed(String propertyName) {
+        for (String indexedProperty : INDEXED_PROPERTIES) {
+            if (indexedProperty.equals(propertyName)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static List<Property<Serializable>> getIndexedProperties(Class<? extends IdentityType> type) {
+        return INDEXED_PROPERTIES_CACHE.get(type);
+    }
+}
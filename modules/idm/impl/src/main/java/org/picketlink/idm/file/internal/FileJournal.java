@@ -0,0 +1,471 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.picketlink.idm.file.internal;
+
+import org.picketlink.idm.IdentityManagementException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+import static org.picketlink.idm.IDMInternalLog.FILE_STORE_LOGGER;
+
+/**
+ * <p>An append-only log of the changes made to a {@link FileDataSource}.</p>
+ *
+ * <p>Each record holds the new value of a single entry, identified by the name of the file it belongs to and the keys
+ * used to reach it, or no value if the entry was removed. Records are appended by a single writer thread, which syncs
+ * all the records waiting to be written at once. Once the number of records reaches the compaction threshold, the
+ * writer thread asks the data source to write a snapshot of its data files and truncates the journal.</p>
+ *
+ * <p>On startup, the journal is replayed on top of the data files. A partially written record at the end of the
+ * journal is discarded. Only one journal is open for a file, opening a journal closes the one previously opened for the
+ * same file.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public class FileJournal {
+
+    /**
+     * <p>Max number of records written and synced at once.</p>
+     */
+    private static final int MAX_BATCH_SIZE = 512;
+
+    /**
+     * <p>Record header: the length of the payload followed by its checksum.</p>
+     */
+    private static final int HEADER_LENGTH = 12;
+
+    /**
+     * <p>Queued by {@link #close()} after the last record, the writer thread stops once it is reached.</p>
+     */
+    private static final PendingRecord CLOSE = new PendingRecord(new byte[0]);
+
+    private static final ConcurrentMap<File, FileJournal> OPEN_JOURNALS = new ConcurrentHashMap<File, FileJournal>();
+
+    private final File file;
+    private final int compactionThreshold;
+    private final boolean asyncWrite;
+    private final Store store;
+    private final BlockingQueue<PendingRecord> pendingRecords = new LinkedBlockingQueue<PendingRecord>();
+
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private int recordCount;
+    private Thread writer;
+    private boolean closed;
+
+    FileJournal(File file, int compactionThreshold, boolean asyncWrite, Store store) {
+        this.file = file;
+        this.compactionThreshold = compactionThreshold;
+        this.asyncWrite = asyncWrite;
+        this.store = store;
+    }
+
+    /**
+     * <p>Applies all records from the journal to the store and starts accepting new records.</p>
+     *
+     * @return The number of records replayed.
+     */
+    int open() {
+        FileJournal previous = OPEN_JOURNALS.put(getKey(this.file), this);
+
+        if (previous != null) {
+            previous.close();
+        }
+
+        try {
+            this.randomAccessFile = new RandomAccessFile(this.file, "rw");
+            this.channel = this.randomAccessFile.getChannel();
+            this.recordCount = replay();
+        } catch (IOException e) {
+            OPEN_JOURNALS.remove(getKey(this.file), this);
+            throw new IdentityManagementException("Could not open journal [" + this.file.getPath() + "].", e);
+        }
+
+        this.writer = new Thread(new Writer(), "picketlink-file-journal-" + this.file.getParentFile().getName());
+
+        this.writer.setDaemon(true);
+        this.writer.start();
+
+        return this.recordCount;
+    }
+
+    /**
+     * <p>Closes the journal opened for the given file, if any.</p>
+     *
+     * @param file
+     */
+    static void close(File file) {
+        FileJournal journal = OPEN_JOURNALS.get(getKey(file));
+
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * <p>Stops accepting new records, waits until the pending records are written and releases the journal file.</p>
+     */
+    void close() {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+
+            this.closed = true;
+            this.pendingRecords.add(CLOSE);
+        }
+
+        OPEN_JOURNALS.remove(getKey(this.file), this);
+
+        try {
+            if (this.writer != null) {
+                this.writer.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdentityManagementException("Interrupted while closing journal [" + this.file.getPath() + "].", e);
+        } finally {
+            try {
+                if (this.randomAccessFile != null) {
+                    this.randomAccessFile.close();
+                }
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    /**
+     * <p>Appends a record with the current value of the entry identified by the given file name and keys. Unless async
+     * write is enabled, this method only returns once the record is synced to disk.</p>
+     *
+     * @param fileName
+     * @param keys
+     */
+    void append(String fileName, String... keys) {
+        PendingRecord pendingRecord;
+
+        // values are read and queued atomically, so records for the same entry are written in the order they changed
+        synchronized (this) {
+            if (this.closed) {
+                throw new IdentityManagementException("Journal [" + this.file.getPath() + "] is closed.");
+            }
+
+            try {
+                pendingRecord = new PendingRecord(encode(fileName, keys, this.store.getValue(fileName, keys)));
+            } catch (IOException e) {
+                throw new IdentityManagementException("Error flushing changes to file system.", e);
+            }
+
+            this.pendingRecords.add(pendingRecord);
+        }
+
+        if (!this.asyncWrite) {
+            pendingRecord.await();
+        }
+    }
+
+    private int replay() throws IOException {
+        long position = 0;
+        long size = this.channel.size();
+        int replayed = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+
+        while (position + HEADER_LENGTH <= size) {
+            header.clear();
+            this.channel.read(header, position);
+            header.flip();
+
+            int length = header.getInt();
+            long checksum = header.getLong();
+
+            if (length < 0 || position + HEADER_LENGTH + length > size) {
+                break;
+            }
+
+            ByteBuffer payload = ByteBuffer.allocate(length);
+
+            this.channel.read(payload, position + HEADER_LENGTH);
+
+            CRC32 crc = new CRC32();
+
+            crc.update(payload.array());
+
+            if (crc.getValue() != checksum) {
+                break;
+            }
+
+            decode(payload.array());
+
+            position = position + HEADER_LENGTH + length;
+            replayed++;
+        }
+
+        if (position < size) {
+            FILE_STORE_LOGGER.debugf("Discarding [%s] bytes from the end of journal [%s].", size - position, this.file.getPath());
+            this.channel.truncate(position);
+        }
+
+        this.channel.position(position);
+
+        return replayed;
+    }
+
+    private byte[] encode(String fileName, String[] keys, Object value) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+
+        dos.writeUTF(fileName);
+        dos.writeInt(keys.length);
+
+        for (String key : keys) {
+            dos.writeUTF(key);
+        }
+
+        dos.writeBoolean(value != null);
+
+        if (value != null) {
+            ObjectOutputStream oos = new ObjectOutputStream(dos);
+
+            oos.writeObject(value);
+            oos.flush();
+        }
+
+        dos.flush();
+
+        byte[] payload = bos.toByteArray();
+        CRC32 crc = new CRC32();
+
+        crc.update(payload);
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + payload.length);
+
+        record.putInt(payload.length);
+        record.putLong(crc.getValue());
+        record.put(payload);
+
+        return record.array();
+    }
+
+    private void decode(byte[] payload) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(payload));
+        String fileName = dis.readUTF();
+        String[] keys = new String[dis.readInt()];
+
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = dis.readUTF();
+        }
+
+        Object value = null;
+
+        if (dis.readBoolean()) {
+            try {
+                value = new ObjectInputStream(dis).readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IdentityManagementException("Could not read journal [" + this.file.getPath() + "].", e);
+            }
+        }
+
+        this.store.setValue(fileName, keys, value);
+    }
+
+    private void write(List<PendingRecord> batch) {
+        IOException failure = null;
+        long start = -1;
+
+        try {
+            start = this.channel.position();
+
+            for (PendingRecord pendingRecord : batch) {
+                ByteBuffer buffer = ByteBuffer.wrap(pendingRecord.record);
+
+                while (buffer.hasRemaining()) {
+                    this.channel.write(buffer);
+                }
+            }
+
+            this.channel.force(false);
+            this.recordCount = this.recordCount + batch.size();
+        } catch (IOException e) {
+            failure = e;
+            discard(start);
+        }
+
+        for (PendingRecord pendingRecord : batch) {
+            pendingRecord.complete(failure);
+        }
+
+        if (failure == null && this.recordCount >= this.compactionThreshold) {
+            compact();
+        }
+    }
+
+    /**
+     * <p>Removes a partially written batch, otherwise the records appended after it would be discarded on replay.</p>
+     */
+    private void discard(long position) {
+        if (position < 0) {
+            return;
+        }
+
+        try {
+            this.channel.truncate(position);
+            this.channel.position(position);
+        } catch (IOException ignore) {
+        }
+    }
+
+    /**
+     * <p>Writes a snapshot of the store and truncates the journal. Records still waiting to be written are not lost,
+     * their values were already changed in the store and they are written to the truncated journal.</p>
+     *
+     * <p>The snapshot is copied while no records are appended, so it holds at least the changes of all records written
+     * before the journal is truncated.</p>
+     */
+    private void compact() {
+        try {
+            Map<String, byte[]> snapshot;
+
+            synchronized (this) {
+                snapshot = this.store.copySnapshot();
+            }
+
+            this.store.writeSnapshot(snapshot);
+            this.channel.truncate(0);
+            this.channel.position(0);
+            this.channel.force(true);
+            this.recordCount = 0;
+        } catch (Exception e) {
+            // the journal is kept, a new compaction is attempted after the next batch
+            FILE_STORE_LOGGER.fileJournalCompactionFailed(this.file.getPath(), e);
+        }
+    }
+
+    /**
+     * <p>The data held by a {@link FileJournal}.</p>
+     */
+    interface Store {
+
+        /**
+         * <p>Returns the current value of an entry, or null if it does not exist.</p>
+         */
+        Object getValue(String fileName, String[] keys);
+
+        /**
+         * <p>Replaces the value of an entry, or removes it if the value is null.</p>
+         */
+        void setValue(String fileName, String[] keys, Object value);
+
+        /**
+         * <p>Returns the serialized content of all data files, keyed by file name.</p>
+         */
+        Map<String, byte[]> copySnapshot() throws IOException;
+
+        /**
+         * <p>Writes the data files copied by {@link #copySnapshot()}.</p>
+         */
+        void writeSnapshot(Map<String, byte[]> snapshot) throws IOException;
+    }
+
+    private static File getKey(File file) {
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException e) {
+            return file.getAbsoluteFile();
+        }
+    }
+
+    private class Writer implements Runnable {
+
+        @Override
+        public void run() {
+            List<PendingRecord> batch = new ArrayList<PendingRecord>();
+
+            while (true) {
+                try {
+                    batch.add(pendingRecords.take());
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                pendingRecords.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+                // no records are queued after the close marker
+                boolean closing = batch.remove(CLOSE);
+
+                if (!batch.isEmpty()) {
+                    write(batch);
+                }
+
+                if (closing) {
+                    return;
+                }
+
+                batch.clear();
+            }
+        }
+    }
+
+    private static class PendingRecord {
+
+        private final byte[] record;
+        private final CountDownLatch written = new CountDownLatch(1);
+        private volatile IOException failure;
+
+        PendingRecord(byte[] record) {
+            this.record = record;
+        }
+
+        void complete(IOException failure) {
+            this.failure = failure;
+            this.written.countDown();
+        }
+
+        void await() {
+            try {
+                this.written.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IdentityManagementException("Interrupted while flushing changes to file system.", e);
+            }
+
+            if (this.failure != null) {
+                throw new IdentityManagementException("Error flushing changes to file system.", this.failure);
+            }
+        }
+    }
+}
@@ -37,6 +37,7 @@ public class FilePartition extends AbstractFileAttributedType<Partition> {
     private transient String configurationName;
     private transient Map<String, Map<String, FileIdentityType>> identityTypes = new ConcurrentHashMap<String,
             Map<String,FileIdentityType>>();
+    private transient FileIdentityTypeIndex identityTypeIndex = new FileIdentityTypeIndex(this.identityTypes);
     private transient Map<String, Map<String, List<FileCredentialStorage>>> credentials = new ConcurrentHashMap<String, Map<String, List<FileCredentialStorage>>>();
     private Map<String, List<FilePermission>> permissions;
 
@@ -91,6 +92,11 @@ public class FilePartition extends AbstractFileAttributedType<Partition> {
 
     public void setIdentityTypes(Map<String, Map<String, FileIdentityType>> identityTypes) {
         this.identityTypes = identityTypes;
+        this.identityTypeIndex = new FileIdentityTypeIndex(identityTypes);
+    }
+
+    public FileIdentityTypeIndex getIdentityTypeIndex() {
+        return this.identityTypeIndex;
     }
 
     public Map<String, Map<String, List<FileCredentialStorage>>> getCredentials() {
@@ -29,6 +29,7 @@ import org.picketlink.idm.model.annotation.AttributeProperty;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -50,12 +51,16 @@ public class FileRelationship extends AbstractFileAttributedType<Relationship> {
 
     protected FileRelationship(Relationship object) {
         super(FILE_RELATIONSHIP_VERSION, object);
+        populateIdentityTypeIds();
     }
 
     @Override
     protected void doPopulateProperties(Map<String, Serializable> properties) throws Exception {
         super.doPopulateProperties(properties);
+        populateIdentityTypeIds();
+    }
 
+    private void populateIdentityTypeIds() {
         List<Property<IdentityType>> relationshipIdentityTypes = PropertyQueries
                 .<IdentityType> createQuery(getEntry().getClass())
                 .addCriteria(new TypedPropertyCriteria(IdentityType.class, MatchOption.SUB_TYPE)).getResultList();
@@ -111,4 +116,14 @@ public class FileRelationship extends AbstractFileAttributedType<Relationship> {
         return this.identityTypeIds.containsKey(RelationshipReference.formatId(identityType));
     }
 
+    /**
+     * <p>Returns the references to all identity types associated with this relationship, in the form returned by
+     * {@link RelationshipReference#formatId(IdentityType)}.</p>
+     *
+     * @return
+     */
+    public Set<String> getIdentityTypeIds() {
+        return Collections.unmodifiableSet(this.identityTypeIds.keySet());
+    }
+
 }
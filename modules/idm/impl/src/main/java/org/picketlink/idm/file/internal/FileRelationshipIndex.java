@@ -0,0 +1,111 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.idm.file.internal;
+
+import org.picketlink.idm.internal.RelationshipReference;
+import org.picketlink.idm.model.IdentityType;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>In-memory index for the {@link FileRelationship} instances, by the identity types they reference.</p>
+ *
+ * <p>The index is not persisted, it is built when relationships are loaded and kept up to date whenever a
+ * relationship is stored or removed.</p>
+ */
+public class FileRelationshipIndex {
+
+    private final Map<String, FileRelationship> relationshipsById = new ConcurrentHashMap<String, FileRelationship>();
+    private final Map<String, Map<String, FileRelationship>> relationshipsByIdentityType =
+        new ConcurrentHashMap<String, Map<String, FileRelationship>>();
+
+    FileRelationshipIndex(Map<String, Map<String, FileRelationship>> relationships) {
+        for (Map<String, FileRelationship> typedRelationships : relationships.values()) {
+            for (FileRelationship relationship : typedRelationships.values()) {
+                put(relationship);
+            }
+        }
+    }
+
+    /**
+     * <p>Indexes the given relationship, replacing any previous entry with the same identifier.</p>
+     *
+     * @param relationship
+     */
+    synchronized void put(FileRelationship relationship) {
+        remove(relationship.getId());
+
+        this.relationshipsById.put(relationship.getId(), relationship);
+
+        for (String identityTypeId : relationship.getIdentityTypeIds()) {
+            Map<String, FileRelationship> relationships = this.relationshipsByIdentityType.get(identityTypeId);
+
+            if (relationships == null) {
+                relationships = new ConcurrentHashMap<String, FileRelationship>();
+                this.relationshipsByIdentityType.put(identityTypeId, relationships);
+            }
+
+            relationships.put(relationship.getId(), relationship);
+        }
+    }
+
+    /**
+     * <p>Removes the relationship with the given identifier from the index.</p>
+     *
+     * @param id
+     */
+    synchronized void remove(String id) {
+        FileRelationship relationship = this.relationshipsById.remove(id);
+
+        if (relationship == null) {
+            return;
+        }
+
+        for (String identityTypeId : relationship.getIdentityTypeIds()) {
+            Map<String, FileRelationship> relationships = this.relationshipsByIdentityType.get(identityTypeId);
+
+            if (relationships != null) {
+                relationships.remove(id);
+
+                if (relationships.isEmpty()) {
+                    this.relationshipsByIdentityType.remove(identityTypeId);
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>Returns all relationships referencing the given identity type.</p>
+     *
+     * @param identityType
+     * @return
+     */
+    Collection<FileRelationship> get(IdentityType identityType) {
+        Map<String, FileRelationship> relationships = this.relationshipsByIdentityType
+            .get(RelationshipReference.formatId(identityType));
+
+        if (relationships == null) {
+            return Collections.emptyList();
+        }
+
+        return relationships.values();
+    }
+}
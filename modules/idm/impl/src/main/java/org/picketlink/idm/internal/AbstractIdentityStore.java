@@ -26,6 +26,7 @@ import org.picketlink.idm.model.AttributedType;
 import org.picketlink.idm.model.IdentityType;
 import org.picketlink.idm.model.Relationship;
 import org.picketlink.idm.query.IdentityQuery;
+import org.picketlink.idm.query.KeysetPaginationContext;
 import org.picketlink.idm.query.RelationshipQuery;
 import org.picketlink.idm.spi.IdentityContext;
 import org.picketlink.idm.spi.IdentityStore;
@@ -35,7 +36,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import static org.picketlink.idm.IDMLog.IDENTITY_STORE_LOGGER;
-import static org.picketlink.idm.IDMMessages.MESSAGES;
+import static org.picketlink.idm.IDMInternalMessages.MESSAGES;
 
 /**
  * @author pedroigor
@@ -177,6 +178,18 @@ public abstract class AbstractIdentityStore<C extends IdentityStoreConfiguration
         return resultCount;
     }
 
+    /**
+     * <p>Rejects queries using a {@link KeysetPaginationContext}. Stores that do not support keyset pagination should
+     * call this method before running a query, otherwise the same page would be returned forever.</p>
+     *
+     * @param identityQuery
+     */
+    protected void checkKeysetPaginationNotSupported(IdentityQuery<?> identityQuery) {
+        if (KeysetPaginationContext.class.isInstance(identityQuery.getPaginationContext())) {
+            throw MESSAGES.queryKeysetPaginationNotSupported(getClass());
+        }
+    }
+
     protected void addAttributedType(IdentityContext context, AttributedType attributedType) {
 
     }
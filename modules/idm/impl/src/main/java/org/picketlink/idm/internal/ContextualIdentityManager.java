@@ -22,6 +22,7 @@ import org.picketlink.common.properties.query.AnnotatedPropertyCriteria;
 import org.picketlink.common.properties.query.PropertyQueries;
 import org.picketlink.common.properties.query.PropertyQuery;
 import org.picketlink.idm.IdGenerator;
+import org.picketlink.idm.IdentityCache;
 import org.picketlink.idm.IdentityManagementException;
 import org.picketlink.idm.IdentityManager;
 import org.picketlink.idm.PartitionManager;
@@ -29,6 +30,9 @@ import org.picketlink.idm.PermissionManager;
 import org.picketlink.idm.RelationshipManager;
 import org.picketlink.idm.config.IdentityStoreConfiguration.IdentityOperation;
 import org.picketlink.idm.credential.Credentials;
+import org.picketlink.idm.credential.handler.CredentialValidationCache;
+import org.picketlink.idm.credential.handler.DeferredHashing;
+import org.picketlink.idm.credential.handler.PasswordHashingExecutor;
 import org.picketlink.idm.credential.storage.CredentialStorage;
 import org.picketlink.idm.event.CredentialUpdatedEvent;
 import org.picketlink.idm.event.EventBridge;
@@ -57,6 +61,9 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
 
 import static org.picketlink.idm.IDMInternalMessages.MESSAGES;
 import static org.picketlink.idm.util.IDMUtil.configureDefaultPartition;
@@ -75,14 +82,52 @@ public class ContextualIdentityManager extends AbstractIdentityContext implement
     private final StoreSelector storeSelector;
     private final RelationshipManager relationshipManager;
     private final PermissionManager permissionManager;
+    private final IdentityCache identityCache;
+    private final CredentialValidationCache credentialValidationCache;
+    private final PasswordHashingExecutor passwordHashingExecutor;
 
     public ContextualIdentityManager(Partition partition, EventBridge eventBridge, IdGenerator idGenerator,
                                      StoreSelector storeSelector, RelationshipManager relationshipManager, PermissionManager permissionManager) {
+        this(partition, eventBridge, idGenerator, storeSelector, relationshipManager, permissionManager, null);
+    }
+
+    public ContextualIdentityManager(Partition partition, EventBridge eventBridge, IdGenerator idGenerator,
+                                     StoreSelector storeSelector, RelationshipManager relationshipManager, PermissionManager permissionManager,
+                                     IdentityCache identityCache) {
+        this(partition, eventBridge, idGenerator, storeSelector, relationshipManager, permissionManager, identityCache, null);
+    }
+
+    public ContextualIdentityManager(Partition partition, EventBridge eventBridge, IdGenerator idGenerator,
+                                     StoreSelector storeSelector, RelationshipManager relationshipManager, PermissionManager permissionManager,
+                                     IdentityCache identityCache, CredentialValidationCache credentialValidationCache) {
+        this(partition, eventBridge, idGenerator, storeSelector, relationshipManager, permissionManager, identityCache,
+            credentialValidationCache, null);
+    }
+
+    public ContextualIdentityManager(Partition partition, EventBridge eventBridge, IdGenerator idGenerator,
+                                     StoreSelector storeSelector, RelationshipManager relationshipManager, PermissionManager permissionManager,
+                                     IdentityCache identityCache, CredentialValidationCache credentialValidationCache,
+                                     PasswordHashingExecutor passwordHashingExecutor) {
         super(partition, eventBridge, idGenerator);
         this.storeSelector = storeSelector;
         setParameter(IDENTITY_MANAGER_CTX_PARAMETER, this);
         this.relationshipManager = relationshipManager;
         this.permissionManager = permissionManager;
+        this.identityCache = identityCache;
+        this.credentialValidationCache = credentialValidationCache;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+
+        if (identityCache != null) {
+            setParameter(IdentityCache.IDENTITY_CACHE_CTX_PARAMETER, identityCache);
+        }
+
+        if (credentialValidationCache != null) {
+            setParameter(CredentialValidationCache.CREDENTIAL_VALIDATION_CACHE_CTX_PARAMETER, credentialValidationCache);
+        }
+
+        if (passwordHashingExecutor != null) {
+            setParameter(PasswordHashingExecutor.PASSWORD_HASHING_EXECUTOR_CTX_PARAMETER, passwordHashingExecutor);
+        }
     }
 
     @Override
@@ -98,8 +143,11 @@ public class ContextualIdentityManager extends AbstractIdentityContext implement
 
             addAttributes(identityType);
 
+            invalidateCache(identityType);
+
             getEventBridge().raiseEvent(new IdentityTypeCreatedEvent(identityType, getPartitionManager()));
         } catch (Exception e) {
+            invalidateCache(identityType);
             throw MESSAGES.attributedTypeAddFailed(identityType, e);
         }
     }
@@ -119,8 +167,11 @@ public class ContextualIdentityManager extends AbstractIdentityContext implement
             removeAttributes(identityType);
             addAttributes(identityType);
 
+            invalidateCache(identityType);
+
             getEventBridge().raiseEvent(new IdentityTypeUpdatedEvent(identityType, getPartitionManager()));
         } catch (Exception e) {
+            invalidateCache(identityType);
             throw MESSAGES.attributedTypeUpdateFailed(identityType, e);
         }
     }
@@ -151,8 +202,11 @@ public class ContextualIdentityManager extends AbstractIdentityContext implement
             storeSelector.getStoreForIdentityOperation(this, IdentityStore.class, identityType.getClass(), IdentityOperation.delete)
                     .remove(this, identityType);
 
+            invalidateCache(identityType);
+
             getEventBridge().raiseEvent(new IdentityTypeDeletedEvent(identityType, getPartitionManager()));
         } catch (Exception e) {
+            invalidateCache(identityType);
             throw MESSAGES.attributedTypeRemoveFailed(identityType, e);
         }
     }
@@ -211,6 +265,47 @@ public class ContextualIdentityManager extends AbstractIdentityContext implement
         }
     }
 
+    @Override
+    public <T extends Credentials> CompletionStage<T> validateCredentialsAsync(final T credentials) {
+        if (credentials == null) {
+            throw MESSAGES.nullArgument("Credentials");
+        }
+
+        if (this.passwordHashingExecutor == null) {
+            return IdentityManager.super.validateCredentialsAsync(credentials);
+        }
+
+        DeferredHashing deferredHashing = new DeferredHashing(this.passwordHashingExecutor);
+
+        setParameter(DeferredHashing.DEFERRED_HASHING_CTX_PARAMETER, deferredHashing);
+
+        try {
+            // the account and the stored credential are read by this thread, only the hashing runs on the executor
+            validateCredentials(credentials);
+        } catch (RuntimeException e) {
+            CompletableFuture<T> result = new CompletableFuture<T>();
+
+            result.completeExceptionally(e);
+
+            return result;
+        } finally {
+            setParameter(DeferredHashing.DEFERRED_HASHING_CTX_PARAMETER, null);
+        }
+
+        CompletionStage<Void> validation = deferredHashing.getResult();
+
+        if (validation == null) {
+            return CompletableFuture.completedFuture(credentials);
+        }
+
+        return validation.thenApply(new Function<Void, T>() {
+            @Override
+            public T apply(Void ignored) {
+                return credentials;
+            }
+        });
+    }
+
     @Override
     public void updateCredential(Account account, Object credential) {
         updateCredential(account, credential, null, null);
@@ -227,8 +322,11 @@ public class ContextualIdentityManager extends AbstractIdentityContext implement
         try {
             storeSelector.getStoreForCredentialOperation(this, credential.getClass()).updateCredential(this, account, credential, effectiveDate, expiryDate);
 
+            invalidateCredentials(account);
+
             getEventBridge().raiseEvent(new CredentialUpdatedEvent(account, credential, effectiveDate, expiryDate, getPartitionManager()));
         } catch (Exception e) {
+            invalidateCredentials(account);
             throw MESSAGES.credentialUpdateFailed(account, credential, e);
         }
     }
@@ -382,6 +480,34 @@ public class ContextualIdentityManager extends AbstractIdentityContext implement
         }
     }
 
+    /**
+     * <p>Removes any cached lookup affected by a change to the given {@link IdentityType}. This method must be called
+     * before raising any event, so listeners always see the current state of the identity.</p>
+     *
+     * @param identityType
+     */
+    private void invalidateCache(IdentityType identityType) {
+        if (this.identityCache != null) {
+            this.identityCache.invalidate(getPartition(), identityType);
+        }
+
+        if (this.credentialValidationCache != null) {
+            this.credentialValidationCache.invalidate(getPartition(), identityType);
+        }
+    }
+
+    /**
+     * <p>Removes any cached validation of the credentials of the given {@link Account}. This method must be called
+     * before raising any event, so listeners always validate the current credentials.</p>
+     *
+     * @param account
+     */
+    private void invalidateCredentials(Account account) {
+        if (this.credentialValidationCache != null) {
+            this.credentialValidationCache.invalidateCredentials(account);
+        }
+    }
+
     private PartitionManager getPartitionManager() {
         return (PartitionManager) this.storeSelector;
     }
@@ -1,8 +1,12 @@
 package org.picketlink.idm.internal;
 
 import org.picketlink.idm.IdGenerator;
+import org.picketlink.idm.PartitionManager;
 import org.picketlink.idm.PermissionManager;
 import org.picketlink.idm.event.EventBridge;
+import org.picketlink.idm.event.PermissionGrantedEvent;
+import org.picketlink.idm.event.PermissionRevokedEvent;
+import org.picketlink.idm.event.PermissionsClearedEvent;
 import org.picketlink.idm.model.IdentityType;
 import org.picketlink.idm.model.Partition;
 import org.picketlink.idm.permission.Permission;
@@ -66,6 +70,8 @@ public class ContextualPermissionManager extends AbstractIdentityContext impleme
         } catch (Exception e) {
             throw MESSAGES.permissionGrantFailed(assignee, resource, operation, e);
         }
+
+        getEventBridge().raiseEvent(new PermissionGrantedEvent(assignee, resource, operation, getPartitionManager()));
     }
 
     @Override
@@ -75,6 +81,8 @@ public class ContextualPermissionManager extends AbstractIdentityContext impleme
         } catch (Exception ex) {
             throw MESSAGES.permissionRevokeFailed(assignee, resource, operation, ex);
         }
+
+        getEventBridge().raiseEvent(new PermissionRevokedEvent(assignee, resource, operation, getPartitionManager()));
     }
 
     @Override
@@ -84,6 +92,8 @@ public class ContextualPermissionManager extends AbstractIdentityContext impleme
         } catch (Exception ex) {
             throw MESSAGES.permissionRevokeFailed(assignee, resourceclass, operation, ex);
         }
+
+        getEventBridge().raiseEvent(new PermissionRevokedEvent(assignee, resourceclass, operation, getPartitionManager()));
     }
 
     @Override
@@ -93,5 +103,11 @@ public class ContextualPermissionManager extends AbstractIdentityContext impleme
         } catch (Exception ex) {
             throw MESSAGES.permissionRevokeAllFailed(resource, ex);
         }
+
+        getEventBridge().raiseEvent(new PermissionsClearedEvent(resource, getPartitionManager()));
+    }
+
+    private PartitionManager getPartitionManager() {
+        return (PartitionManager) this.storeSelector;
     }
 }
@@ -18,122 +18,672 @@
 
 package org.picketlink.idm.internal;
 
+import org.picketlink.common.properties.Property;
+import org.picketlink.common.properties.query.AnnotatedPropertyCriteria;
+import org.picketlink.common.properties.query.NamedPropertyCriteria;
+import org.picketlink.common.properties.query.PropertyQueries;
 import org.picketlink.idm.IdentityCache;
+import org.picketlink.idm.model.Attribute;
 import org.picketlink.idm.model.IdentityType;
 import org.picketlink.idm.model.Partition;
 import org.picketlink.idm.model.basic.Agent;
 import org.picketlink.idm.model.basic.Group;
 import org.picketlink.idm.model.basic.Realm;
 import org.picketlink.idm.model.basic.Role;
+import org.picketlink.idm.model.annotation.AttributeProperty;
 import org.picketlink.idm.model.basic.User;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Collections.newSetFromMap;
+import static java.util.Collections.unmodifiableList;
+import static org.picketlink.common.reflection.Reflections.newInstance;
 
 /**
  * <p>Default {@link IdentityCache} implementation.</p>
  *
+ * <p>Entries are held in a {@link ConcurrentHashMap} and are bounded both by size and by age. When the maximum number
+ * of entries is reached the oldest entries are evicted first. Two reverse indexes, one by identifier and another by
+ * the value of the identifying property, are used to find the entries that must be invalidated when an identity is
+ * added, updated or removed. Results are only cached if nothing was invalidated while they were being loaded, see
+ * {@link #getGeneration()}.</p>
+ *
+ * <p>Only properties declared by the queried type can be used as keys, given that ad-hoc attributes can not be
+ * resolved from the {@link IdentityType} instance during invalidation.</p>
+ *
+ * <p>Identity types are copied when they are put into the cache and again on every lookup, so changes made by a caller
+ * to a returned instance are never seen by other callers. Copies include the identifier, the partition, the
+ * properties annotated with {@link AttributeProperty}, the enabled flag and the ad-hoc attributes. Types that can not
+ * be instantiated through a no-argument constructor are not cached.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ *
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
  *
  */
 public class DefaultIdentityCache implements IdentityCache {
 
-    private Map<Partition, Map<String, Agent>> agentsCache = new HashMap<Partition, Map<String, Agent>>();
-    private Map<Partition, Map<String, Role>> rolesCache = new HashMap<Partition, Map<String, Role>>();
-    private Map<Partition, Map<String, Group>> groupsCache = new HashMap<Partition, Map<String, Group>>();
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private static final String ID_PROPERTY = "id";
+    private static final String LOGIN_NAME_PROPERTY = "loginName";
+    private static final String NAME_PROPERTY = "name";
+    private static final String PATH_PROPERTY = "path";
+
+    private final int maxEntries;
+    private final long expiration;
+
+    private final ConcurrentMap<CacheKey, CacheEntry> entries = new ConcurrentHashMap<CacheKey, CacheEntry>();
+    private final ConcurrentMap<IndexKey, Set<CacheKey>> keysByValue = new ConcurrentHashMap<IndexKey, Set<CacheKey>>();
+    private final ConcurrentMap<IndexKey, Set<CacheKey>> keysByIdentifier = new ConcurrentHashMap<IndexKey, Set<CacheKey>>();
+    private final Queue<CacheEntry> insertionOrder = new ConcurrentLinkedQueue<CacheEntry>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Names of all properties used as keys so far, used to resolve the entries affected by a change to an identity.
+     */
+    private final Set<String> keyProperties = newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final ConcurrentMap<Class<?>, ConcurrentMap<String, PropertyReference>> properties =
+        new ConcurrentHashMap<Class<?>, ConcurrentMap<String, PropertyReference>>();
+    private final ConcurrentMap<Class<?>, List<Property<Object>>> attributeProperties =
+        new ConcurrentHashMap<Class<?>, List<Property<Object>>>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public DefaultIdentityCache() {
+        this(DEFAULT_MAX_ENTRIES, 0);
+    }
+
+    /**
+     * @param maxEntries The maximum number of entries held by this cache.
+     * @param expiration The time, in milliseconds, an entry is kept in this cache. If zero, entries never expire.
+     */
+    public DefaultIdentityCache(int maxEntries, long expiration) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("The maximum number of entries must be greater than zero.");
+        }
+
+        if (expiration < 0) {
+            throw new IllegalArgumentException("The expiration must not be negative.");
+        }
+
+        this.maxEntries = maxEntries;
+        this.expiration = expiration;
+    }
 
     @Override
-    public User lookupUser(Realm realm, String loginName) {
-        Agent agent = lookupAgent(realm, loginName);
+    @SuppressWarnings("unchecked")
+    public <T extends IdentityType> List<T> lookup(Partition partition, Class<T> type, String propertyName, Object value) {
+        if (partition == null || type == null || propertyName == null || value == null) {
+            return null;
+        }
 
-        if (User.class.isInstance(agent)) {
-            return (User) agent;
+        CacheKey key = new CacheKey(partition.getId(), type, propertyName, value);
+        CacheEntry entry = this.entries.get(key);
+
+        if (entry != null && entry.isExpired()) {
+            if (remove(key, entry)) {
+                this.evictionCount.incrementAndGet();
+            }
+
+            entry = null;
+        }
+
+        if (entry == null) {
+            this.missCount.incrementAndGet();
+            return null;
         }
 
-        return null;
+        this.hitCount.incrementAndGet();
+
+        List<T> result = new ArrayList<T>(entry.result.size());
+
+        for (IdentityType identityType : entry.result) {
+            result.add((T) copy(identityType));
+        }
+
+        return result;
+    }
+
+    @Override
+    public long getGeneration() {
+        return this.generation.get();
+    }
+
+    @Override
+    public <T extends IdentityType> void put(Partition partition, Class<T> type, String propertyName, Object value, List<T> result,
+                                             long generation) {
+        if (partition == null || type == null || propertyName == null || value == null || result == null
+            || this.generation.get() != generation) {
+            return;
+        }
+
+        if (getProperty(type, propertyName) == null) {
+            // only properties can be resolved from an identity during invalidation
+            return;
+        }
+
+        List<IdentityType> copies = new ArrayList<IdentityType>(result.size());
+
+        for (IdentityType identityType : result) {
+            IdentityType copy = copy(identityType);
+
+            if (copy == null) {
+                return;
+            }
+
+            copies.add(copy);
+        }
+
+        String partitionId = partition.getId();
+        CacheKey key = new CacheKey(partitionId, type, propertyName, value);
+        CacheEntry entry = new CacheEntry(key, unmodifiableList(copies), this.expiration);
+
+        this.keyProperties.add(propertyName);
+
+        index(this.keysByValue, new IndexKey(partitionId, propertyName, value), key);
+
+        for (IdentityType identityType : result) {
+            index(this.keysByIdentifier, new IndexKey(partitionId, ID_PROPERTY, identityType.getId()), key);
+        }
+
+        CacheEntry previous = this.entries.put(key, entry);
+
+        if (previous == null) {
+            this.size.incrementAndGet();
+        } else {
+            for (IdentityType identityType : previous.result) {
+                if (!entry.references(identityType.getId())) {
+                    unindex(this.keysByIdentifier, new IndexKey(partitionId, ID_PROPERTY, identityType.getId()), key);
+                }
+            }
+        }
+
+        // an invalidation may have happened while caching the result
+        if (this.generation.get() != generation) {
+            remove(key, entry);
+            return;
+        }
+
+        this.insertionOrder.offer(entry);
+
+        if (this.queued.incrementAndGet() > this.maxEntries * 2) {
+            purgeInsertionOrder();
+        }
+
+        if (this.size.get() > this.maxEntries) {
+            evict();
+        }
+    }
+
+    @Override
+    public User lookupUser(Realm realm, String loginName) {
+        return getSingleResult(lookup(realm, User.class, LOGIN_NAME_PROPERTY, loginName));
     }
 
     @Override
     public Group lookupGroup(Partition partition, String groupPath) {
-        return getGroups(partition).get(groupPath);
+        return getSingleResult(lookup(partition, Group.class, PATH_PROPERTY, groupPath));
     }
 
     @Override
     public Role lookupRole(Partition partition, String name) {
-        return getRoles(partition).get(name);
+        return getSingleResult(lookup(partition, Role.class, NAME_PROPERTY, name));
     }
 
     @Override
     public void putUser(Realm realm, User user) {
-        putAgent(realm, user);
+        put(realm, User.class, LOGIN_NAME_PROPERTY, user.getLoginName(), Collections.singletonList(user), getGeneration());
     }
 
     @Override
     public void putGroup(Partition partition, Group group) {
-        getGroups(partition).get(group.getPath());
+        put(partition, Group.class, PATH_PROPERTY, group.getPath(), Collections.singletonList(group), getGeneration());
     }
 
     @Override
     public void putRole(Partition partition, Role role) {
-        getRoles(partition).put(role.getName(), role);
+        put(partition, Role.class, NAME_PROPERTY, role.getName(), Collections.singletonList(role), getGeneration());
     }
 
     @Override
     public Agent lookupAgent(Realm realm, String loginName) {
-        return getAgents(realm).get(loginName);
+        return getSingleResult(lookup(realm, Agent.class, LOGIN_NAME_PROPERTY, loginName));
     }
 
     @Override
     public void putAgent(Realm realm, Agent agent) {
-        getAgents(realm).get(agent.getLoginName());
+        put(realm, Agent.class, LOGIN_NAME_PROPERTY, agent.getLoginName(), Collections.singletonList(agent), getGeneration());
     }
 
     @Override
     public void invalidate(Partition partition, IdentityType identityType) {
-        if (Agent.class.isInstance(identityType)) {
-            Agent agent = (Agent) identityType;
-            getAgents((Realm) partition).remove(agent.getLoginName());
-        } else if (Role.class.isInstance(identityType)) {
-            Role role = (Role) identityType;
-            getRoles(partition).remove(role.getName());
-        } else if (Group.class.isInstance(identityType)) {
-            Group group = (Group) identityType;
-            getGroups(partition).remove(group.getPath());
+        if (partition == null || identityType == null) {
+            return;
+        }
+
+        // queries in progress may have loaded the identity before it changed, the generation is changed even if nothing is cached
+        this.generation.incrementAndGet();
+
+        String partitionId = partition.getId();
+
+        if (identityType.getId() != null) {
+            invalidate(this.keysByIdentifier.remove(new IndexKey(partitionId, ID_PROPERTY, identityType.getId())));
+        }
+
+        // entries for the current values of the identity may not reference it yet, eg.: empty results or groups with the same name
+        for (String propertyName : this.keyProperties) {
+            PropertyReference property = getProperty(identityType.getClass(), propertyName);
+
+            if (property != null) {
+                Object value = property.getValue(identityType);
+
+                if (value != null) {
+                    invalidate(this.keysByValue.remove(new IndexKey(partitionId, propertyName, value)));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void invalidate(Partition partition) {
+        if (partition == null) {
+            return;
+        }
+
+        this.generation.incrementAndGet();
+
+        for (CacheKey key : this.entries.keySet()) {
+            if (key.partitionId.equals(partition.getId())) {
+                remove(key);
+            }
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        this.generation.incrementAndGet();
+
+        for (CacheKey key : this.entries.keySet()) {
+            remove(key);
+        }
+    }
+
+    @Override
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return this.evictionCount.get();
+    }
+
+    /**
+     * <p>Returns the number of entries currently held by this cache.</p>
+     *
+     * @return
+     */
+    public int size() {
+        return this.size.get();
+    }
+
+    private void evict() {
+        while (this.size.get() > this.maxEntries) {
+            CacheEntry entry = this.insertionOrder.poll();
+
+            if (entry == null) {
+                return;
+            }
+
+            this.queued.decrementAndGet();
+
+            if (remove(entry.key, entry)) {
+                this.evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * <p>Discards entries from the eviction queue that were already invalidated or replaced, so the queue does not grow
+     * indefinitely when entries are constantly invalidated without the cache ever reaching its maximum size.</p>
+     */
+    private void purgeInsertionOrder() {
+        Iterator<CacheEntry> iterator = this.insertionOrder.iterator();
+
+        while (iterator.hasNext()) {
+            CacheEntry entry = iterator.next();
+
+            if (this.entries.get(entry.key) != entry) {
+                iterator.remove();
+                this.queued.decrementAndGet();
+            }
         }
     }
 
-    private Map<String, Agent> getAgents(Realm realm) {
-        Map<String, Agent> agents = this.agentsCache.get(realm);
+    private void invalidate(Set<CacheKey> keys) {
+        if (keys != null) {
+            for (CacheKey key : keys) {
+                remove(key);
+            }
+        }
+    }
 
-        if (agents == null) {
-            agents = new HashMap<String, Agent>();
-            this.agentsCache.put(realm, agents);
+    private boolean remove(CacheKey key) {
+        CacheEntry entry = this.entries.remove(key);
+
+        if (entry != null) {
+            removed(key, entry);
+            return true;
         }
 
-        return agents;
+        return false;
+    }
+
+    private boolean remove(CacheKey key, CacheEntry entry) {
+        if (this.entries.remove(key, entry)) {
+            removed(key, entry);
+            return true;
+        }
+
+        return false;
+    }
+
+    private void removed(CacheKey key, CacheEntry entry) {
+        this.size.decrementAndGet();
+
+        unindex(this.keysByValue, new IndexKey(key.partitionId, key.propertyName, key.value), key);
+
+        for (IdentityType identityType : entry.result) {
+            unindex(this.keysByIdentifier, new IndexKey(key.partitionId, ID_PROPERTY, identityType.getId()), key);
+        }
     }
 
-    private Map<String, Role> getRoles(Partition partition) {
-        Map<String, Role> roles = this.rolesCache.get(partition);
+    private void index(ConcurrentMap<IndexKey, Set<CacheKey>> index, IndexKey indexKey, CacheKey key) {
+        Set<CacheKey> keys = index.get(indexKey);
+
+        if (keys == null) {
+            Set<CacheKey> newKeys = newSetFromMap(new ConcurrentHashMap<CacheKey, Boolean>());
 
-        if (roles == null) {
-            roles = new HashMap<String, Role>();
-            this.rolesCache.put(partition, roles);
+            keys = index.putIfAbsent(indexKey, newKeys);
+
+            if (keys == null) {
+                keys = newKeys;
+            }
         }
 
-        return roles;
+        keys.add(key);
     }
 
-    private Map<String, Group> getGroups(Partition partition) {
-        Map<String, Group> groups = this.groupsCache.get(partition);
+    private void unindex(ConcurrentMap<IndexKey, Set<CacheKey>> index, IndexKey indexKey, CacheKey key) {
+        Set<CacheKey> keys = index.get(indexKey);
+
+        if (keys != null) {
+            keys.remove(key);
 
-        if (groups == null) {
-            groups = new HashMap<String, Group>();
-            this.groupsCache.put(partition, groups);
+            if (keys.isEmpty()) {
+                index.remove(indexKey, keys);
+            }
         }
+    }
+
+    private PropertyReference getProperty(Class<?> type, String propertyName) {
+        ConcurrentMap<String, PropertyReference> typeProperties = this.properties.get(type);
+
+        if (typeProperties == null) {
+            ConcurrentMap<String, PropertyReference> newProperties = new ConcurrentHashMap<String, PropertyReference>();
+
+            typeProperties = this.properties.putIfAbsent(type, newProperties);
+
+            if (typeProperties == null) {
+                typeProperties = newProperties;
+            }
+        }
+
+        PropertyReference property = typeProperties.get(propertyName);
+
+        if (property == null) {
+            Property<Object> resolved = PropertyQueries.createQuery(type)
+                .addCriteria(new NamedPropertyCriteria(propertyName))
+                .getFirstResult();
+
+            property = new PropertyReference(resolved);
 
-        return groups;
+            typeProperties.putIfAbsent(propertyName, property);
+        }
+
+        if (property.property == null) {
+            return null;
+        }
+
+        return property;
     }
 
+    /**
+     * <p>Creates a copy of the given identity type, so callers never share an instance with this cache.</p>
+     *
+     * @param identityType
+     * @return The copy or null if the type could not be instantiated.
+     */
+    private IdentityType copy(IdentityType identityType) {
+        IdentityType copy;
+
+        try {
+            copy = newInstance(identityType.getClass());
+        } catch (Exception e) {
+            return null;
+        }
+
+        copy.setId(identityType.getId());
+        copy.setPartition(identityType.getPartition());
+        copy.setEnabled(identityType.isEnabled());
+
+        for (Property<Object> property : getAttributeProperties(identityType.getClass())) {
+            Object value = property.getValue(identityType);
+
+            if (Date.class.isInstance(value)) {
+                value = new Date(((Date) value).getTime());
+            } else if (IdentityType.class.isInstance(value)) {
+                IdentityType copiedValue = copy((IdentityType) value);
+
+                if (copiedValue == null) {
+                    return null;
+                }
+
+                value = copiedValue;
+            }
+
+            property.setValue(copy, value);
+        }
+
+        for (Attribute<? extends Serializable> attribute : identityType.getAttributes()) {
+            Attribute<Serializable> copiedAttribute = new Attribute<Serializable>(attribute.getName(), attribute.getValue(),
+                attribute.isReadOnly());
+
+            copiedAttribute.setLoaded(attribute.isLoaded());
+
+            copy.setAttribute(copiedAttribute);
+        }
+
+        return copy;
+    }
+
+    private List<Property<Object>> getAttributeProperties(Class<?> type) {
+        List<Property<Object>> typeProperties = this.attributeProperties.get(type);
+
+        if (typeProperties == null) {
+            typeProperties = PropertyQueries.createQuery(type)
+                .addCriteria(new AnnotatedPropertyCriteria(AttributeProperty.class))
+                .getWritableResultList();
+
+            this.attributeProperties.putIfAbsent(type, typeProperties);
+        }
+
+        return typeProperties;
+    }
 
-}
\ No newline at end of file
+    private <T extends IdentityType> T getSingleResult(List<T> result) {
+        if (result == null || result.size() != 1) {
+            return null;
+        }
+
+        return result.get(0);
+    }
+
+    private static class CacheKey {
+
+        private final String partitionId;
+        private final Class<?> type;
+        private final String propertyName;
+        private final Object value;
+        private final int hashCode;
+
+        CacheKey(String partitionId, Class<?> type, String propertyName, Object value) {
+            this.partitionId = partitionId;
+            this.type = type;
+            this.propertyName = propertyName;
+            this.value = value;
+
+            int result = partitionId.hashCode();
+
+            result = 31 * result + type.hashCode();
+            result = 31 * result + propertyName.hashCode();
+            result = 31 * result + value.hashCode();
+
+            this.hashCode = result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+
+            CacheKey other = (CacheKey) obj;
+
+            return this.type.equals(other.type)
+                && this.partitionId.equals(other.partitionId)
+                && this.propertyName.equals(other.propertyName)
+                && this.value.equals(other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+
+    private static class IndexKey {
+
+        private final String partitionId;
+        private final String propertyName;
+        private final Object value;
+
+        IndexKey(String partitionId, String propertyName, Object value) {
+            this.partitionId = partitionId;
+            this.propertyName = propertyName;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof IndexKey)) {
+                return false;
+            }
+
+            IndexKey other = (IndexKey) obj;
+
+            return this.partitionId.equals(other.partitionId)
+                && this.propertyName.equals(other.propertyName)
+                && this.value.equals(other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = this.partitionId.hashCode();
+
+            result = 31 * result + this.propertyName.hashCode();
+            result = 31 * result + this.value.hashCode();
+
+            return result;
+        }
+    }
+
+    private static class CacheEntry {
+
+        private final CacheKey key;
+        private final List<IdentityType> result;
+        private final long expiresAt;
+
+        CacheEntry(CacheKey key, List<IdentityType> result, long expiration) {
+            this.key = key;
+            this.result = result;
+
+            if (expiration > 0) {
+                this.expiresAt = System.currentTimeMillis() + expiration;
+            } else {
+                this.expiresAt = Long.MAX_VALUE;
+            }
+        }
+
+        boolean references(String identifier) {
+            for (IdentityType identityType : this.result) {
+                if (identityType.getId().equals(identifier)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() > this.expiresAt;
+        }
+    }
+
+    /**
+     * Wraps a resolved {@link Property}, or the absence of one, given that {@link ConcurrentHashMap} does not accept
+     * null values.
+     */
+    private static class PropertyReference {
+
+        private final Property<Object> property;
+
+        PropertyReference(Property<Object> property) {
+            this.property = property;
+        }
+
+        Object getValue(Object instance) {
+            return this.property.getValue(instance);
+        }
+    }
+}
@@ -19,6 +19,7 @@ package org.picketlink.idm.internal;
 
 import org.picketlink.idm.DefaultIdGenerator;
 import org.picketlink.idm.IdGenerator;
+import org.picketlink.idm.IdentityCache;
 import org.picketlink.idm.IdentityManagementException;
 import org.picketlink.idm.IdentityManager;
 import org.picketlink.idm.PartitionManager;
@@ -26,6 +27,7 @@ import org.picketlink.idm.PermissionManager;
 import org.picketlink.idm.RelationshipManager;
 import org.picketlink.idm.config.AbstractIdentityStoreConfiguration;
 import org.picketlink.idm.config.FileIdentityStoreConfiguration;
+import org.picketlink.idm.config.IdentityCacheConfiguration;
 import org.picketlink.idm.config.IdentityConfiguration;
 import org.picketlink.idm.config.IdentityStoreConfiguration;
 import org.picketlink.idm.config.IdentityStoreConfiguration.IdentityOperation;
@@ -34,14 +36,15 @@ import org.picketlink.idm.config.JPAIdentityStoreConfiguration;
 import org.picketlink.idm.config.LDAPIdentityStoreConfiguration;
 import org.picketlink.idm.config.OperationNotSupportedException;
 import org.picketlink.idm.config.TokenStoreConfiguration;
-import org.picketlink.idm.credential.handler.CredentialHandler;
-import org.picketlink.idm.credential.handler.annotations.SupportsCredentials;
+import org.picketlink.idm.credential.handler.CredentialValidationCache;
+import org.picketlink.idm.credential.handler.PasswordHashingExecutor;
 import org.picketlink.idm.credential.storage.CredentialStorage;
 import org.picketlink.idm.event.EventBridge;
 import org.picketlink.idm.event.PartitionCreatedEvent;
 import org.picketlink.idm.event.PartitionDeletedEvent;
 import org.picketlink.idm.event.PartitionUpdatedEvent;
 import org.picketlink.idm.file.internal.FileIdentityStore;
+import org.picketlink.idm.internal.StoreRoutingTable.StoreRoute;
 import org.picketlink.idm.internal.util.RelationshipMetadata;
 import org.picketlink.idm.jdbc.internal.JDBCIdentityStore;
 import org.picketlink.idm.jpa.internal.JPAIdentityStore;
@@ -66,6 +69,8 @@ import org.picketlink.idm.spi.PartitionStore;
 import org.picketlink.idm.spi.StoreSelector;
 import org.picketlink.idm.token.internal.TokenIdentityStore;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -115,6 +120,11 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
      * The store instances for each IdentityConfiguration, mapped by their corresponding IdentityStoreConfiguration
      */
     private final Map<IdentityConfiguration, Map<IdentityStoreConfiguration, IdentityStore<?>>> stores;
+
+    /**
+     * The memoized routes from types, operations and credentials to the stores in {@link #stores}
+     */
+    private final StoreRoutingTable storeRoutingTable;
     /**
      * The IdentityConfiguration that is responsible for managing partition CRUD operations.  It is possible for this
      * value to be null, in which case partition management will not be supported.
@@ -125,6 +135,22 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
      * value to be null, in which case attribute management will not be supported.
      */
     private final IdentityConfiguration attributeManagementConfig;
+    /**
+     * The identity caches for each IdentityConfiguration with caching enabled
+     */
+    private final Map<IdentityConfiguration, IdentityCache> identityCaches;
+    /**
+     * The credential validation caches for each IdentityConfiguration with credential validation caching enabled
+     */
+    private final Map<IdentityConfiguration, CredentialValidationCache> credentialValidationCaches;
+    /**
+     * The password hashing executors for each IdentityConfiguration with password hashing enabled
+     */
+    private final Map<IdentityConfiguration, PasswordHashingExecutor> passwordHashingExecutors;
+    /**
+     * Caches the partitions used to create identity and permission managers
+     */
+    private final PartitionCache partitionCache;
     /**
      * The event bridge allows events to be "bridged" to an event bus, such as the CDI event bus
      */
@@ -142,7 +168,7 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
     /**
      * Used for querying chained privileges
      */
-    private PrivilegeChainQuery privilegeChainQuery = new PrivilegeChainQuery();
+    private final PrivilegeChainQuery privilegeChainQuery;
 
     /**
      * Permission handler policy
@@ -173,13 +199,20 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
         try {
             this.configurations = Collections.unmodifiableCollection(configurations);
 
-            if (eventBridge != null) {
-                this.eventBridge = eventBridge;
-            } else {
-                this.eventBridge = new EventBridge() {
-                    public void raiseEvent(Object event) { /* no-op */}
-                };
-            }
+            this.privilegeChainQuery = new PrivilegeChainQuery(getPrivilegeExpiration(configurations));
+
+            final EventBridge applicationEventBridge = eventBridge;
+
+            // events are always observed by the privilege chain index, before being bridged to the application
+            this.eventBridge = new EventBridge() {
+                public void raiseEvent(Object event) {
+                    privilegeChainQuery.onEvent(event);
+
+                    if (applicationEventBridge != null) {
+                        applicationEventBridge.raiseEvent(event);
+                    }
+                }
+            };
 
             if (idGenerator != null) {
                 this.idGenerator = idGenerator;
@@ -237,6 +270,53 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
             }
 
             this.stores = Collections.unmodifiableMap(configuredStores);
+            this.storeRoutingTable = new StoreRoutingTable(this.configurations, this.stores);
+
+            Map<IdentityConfiguration, IdentityCache> configuredCaches = new HashMap<IdentityConfiguration, IdentityCache>();
+
+            for (IdentityConfiguration config : configurations) {
+                if (config.isCacheEnabled()) {
+                    IdentityCacheConfiguration cacheConfig = config.getCacheConfiguration();
+
+                    configuredCaches.put(config, new DefaultIdentityCache(cacheConfig.getMaxEntries(), cacheConfig.getExpiration()));
+                }
+            }
+
+            this.identityCaches = Collections.unmodifiableMap(configuredCaches);
+
+            Map<IdentityConfiguration, CredentialValidationCache> configuredValidationCaches =
+                new HashMap<IdentityConfiguration, CredentialValidationCache>();
+
+            for (IdentityConfiguration config : configurations) {
+                IdentityCacheConfiguration cacheConfig = config.getCacheConfiguration();
+
+                if (cacheConfig.isCredentialValidationCacheEnabled()) {
+                    configuredValidationCaches.put(config, new CredentialValidationCache(cacheConfig.getMaxEntries(),
+                        cacheConfig.getCredentialValidationExpiration(), cacheConfig.getUnknownAccountExpiration()));
+                }
+            }
+
+            this.credentialValidationCaches = Collections.unmodifiableMap(configuredValidationCaches);
+
+            Map<IdentityConfiguration, PasswordHashingExecutor> configuredHashingExecutors =
+                new HashMap<IdentityConfiguration, PasswordHashingExecutor>();
+
+            for (IdentityConfiguration config : configurations) {
+                if (config.getHashingConfiguration().isEnabled()) {
+                    configuredHashingExecutors.put(config, new PasswordHashingExecutor(config.getName(),
+                        config.getHashingConfiguration()));
+                }
+            }
+
+            this.passwordHashingExecutors = Collections.unmodifiableMap(configuredHashingExecutors);
+
+            long partitionExpiration = 0;
+
+            if (this.partitionManagementConfig != null) {
+                partitionExpiration = this.partitionManagementConfig.getCacheConfiguration().getPartitionExpiration();
+            }
+
+            this.partitionCache = new PartitionCache(partitionExpiration);
         } catch (Exception e) {
             throw MESSAGES.partitionManagerInitializationFailed(this.getClass(), e);
         }
@@ -266,7 +346,9 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
                 permissionManager = createPermissionManager(storedPartition);
             }
 
-            return new ContextualIdentityManager(storedPartition, eventBridge, idGenerator, this, createRelationshipManager(), permissionManager);
+            return new ContextualIdentityManager(storedPartition, eventBridge, idGenerator, this, createRelationshipManager(),
+                permissionManager, getIdentityCache(storedPartition), getCredentialValidationCache(storedPartition),
+                getPasswordHashingExecutor(storedPartition));
         } catch (Exception e) {
             throw MESSAGES.partitionCouldNotCreateIdentityManager(storedPartition, e);
         }
@@ -419,6 +501,8 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
                     }
                 }
 
+                this.partitionCache.invalidate(partition);
+
                 this.eventBridge.raiseEvent(new PartitionCreatedEvent(partition, this));
             } catch (Exception e) {
                 throw MESSAGES.partitionAddFailed(partition, configurationName, e);
@@ -451,6 +535,8 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
                 }
             }
 
+            this.partitionCache.invalidate(partition);
+
             this.eventBridge.raiseEvent(new PartitionUpdatedEvent(partition, this));
         } catch (Exception e) {
             throw MESSAGES.partitionUpdateFailed(partition, e);
@@ -483,8 +569,21 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
                 }
             }
 
+            IdentityCache identityCache = getIdentityCache(partition);
+            CredentialValidationCache credentialValidationCache = getCredentialValidationCache(partition);
+
             getStoreForPartitionOperation(context, partition.getClass()).remove(context, partition);
 
+            this.partitionCache.invalidate(partition);
+
+            if (identityCache != null) {
+                identityCache.invalidate(partition);
+            }
+
+            if (credentialValidationCache != null) {
+                credentialValidationCache.invalidateAll();
+            }
+
             this.eventBridge.raiseEvent(new PartitionDeletedEvent(partition, this));
         } catch (Exception e) {
             throw MESSAGES.partitionRemoveFailed(partition, e);
@@ -496,6 +595,75 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
         return this.configurations;
     }
 
+    /**
+     * <p>Returns the {@link IdentityCache} used by the configuration that governs the given {@link Partition}.</p>
+     *
+     * @param partition
+     *
+     * @return The identity cache or null if caching is not enabled for the partition's configuration.
+     */
+    public IdentityCache getIdentityCache(Partition partition) {
+        if (this.identityCaches.isEmpty()) {
+            return null;
+        }
+
+        return this.identityCaches.get(getConfigurationForPartition(partition));
+    }
+
+    /**
+     * <p>Returns the {@link CredentialValidationCache} used by the configuration that governs the given
+     * {@link Partition}.</p>
+     *
+     * @param partition
+     *
+     * @return The credential validation cache or null if it is not enabled for the partition's configuration.
+     */
+    public CredentialValidationCache getCredentialValidationCache(Partition partition) {
+        if (this.credentialValidationCaches.isEmpty()) {
+            return null;
+        }
+
+        return this.credentialValidationCaches.get(getConfigurationForPartition(partition));
+    }
+
+    /**
+     * <p>Returns the {@link PasswordHashingExecutor} used by the configuration that governs the given
+     * {@link Partition}.</p>
+     *
+     * @param partition
+     *
+     * @return The password hashing executor or null if it is not enabled for the partition's configuration.
+     */
+    public PasswordHashingExecutor getPasswordHashingExecutor(Partition partition) {
+        if (this.passwordHashingExecutors.isEmpty()) {
+            return null;
+        }
+
+        return this.passwordHashingExecutors.get(getConfigurationForPartition(partition));
+    }
+
+    /**
+     * <p>Releases the resources held by this partition manager: stores implementing {@link Closeable} are closed and
+     * the password hashing executors are shut down. The partition manager can not be used once it is closed.</p>
+     */
+    public void close() {
+        for (Map<IdentityStoreConfiguration, IdentityStore<?>> configStores : this.stores.values()) {
+            for (IdentityStore<?> store : configStores.values()) {
+                if (Closeable.class.isInstance(store)) {
+                    try {
+                        ((Closeable) store).close();
+                    } catch (IOException e) {
+                        ROOT_LOGGER.debugf(e, "Error closing identity store [%s].", store);
+                    }
+                }
+            }
+        }
+
+        for (PasswordHashingExecutor hashingExecutor : this.passwordHashingExecutors.values()) {
+            hashingExecutor.shutdown();
+        }
+    }
+
     @Override
     public <T extends IdentityStore<?>> T getStoreForIdentityOperation(IdentityContext context, Class<T> storeType,
                                                                        Class<? extends AttributedType> type, IdentityOperation operation) {
@@ -532,8 +700,6 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
 
     @Override
     public Set<IdentityStore<?>> getStoresForIdentityQuery(final IdentityContext context, final Class<? extends IdentityType> identityType) {
-        Set<IdentityStore<?>> identityStores = new HashSet<IdentityStore<?>>();
-
         IdentityConfiguration identityConfiguration = null;
 
         if (this.partitionManagementConfig != null) {
@@ -542,80 +708,56 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
             identityConfiguration = this.configurations.iterator().next();
         }
 
-        for (IdentityStoreConfiguration storeConfig : identityConfiguration.getStoreConfiguration()) {
-            if (storeConfig.supportsType(identityType, IdentityOperation.read)) {
-                identityStores.add(getIdentityStoreAndInitializeContext(context, identityConfiguration, storeConfig));
-            }
-        }
+        StoreRoute route = this.storeRoutingTable.getRoute(identityConfiguration, identityType, IdentityOperation.read);
 
-        if (identityStores.isEmpty()) {
+        if (route.isEmpty()) {
             throw MESSAGES.attributedTypeUnsupportedOperation(identityType, IdentityOperation.read, identityType, IdentityOperation.read);
         }
 
-        return identityStores;
+        for (IdentityStoreConfiguration storeConfig : route.getStoreConfigurations()) {
+            getIdentityStoreAndInitializeContext(context, identityConfiguration, storeConfig);
+        }
+
+        return route.getStores();
     }
 
     public <T extends IdentityStore<?>> T lookupStore(IdentityContext context, IdentityConfiguration configuration,
                                                       Class<? extends AttributedType> type, IdentityOperation operation) {
-        for (IdentityStoreConfiguration storeConfig : configuration.getStoreConfiguration()) {
-            if (storeConfig.supportsType(type, operation)) {
-                return getIdentityStoreAndInitializeContext(context, configuration, storeConfig);
-            }
+        StoreRoute route = this.storeRoutingTable.getRoute(configuration, type, operation);
+
+        if (route.isEmpty()) {
+            return null;
         }
 
-        return null;
+        return getIdentityStoreAndInitializeContext(context, configuration, route.getStoreConfigurations().get(0));
     }
 
     @Override
     public <T extends CredentialStore<?>> T getStoreForCredentialOperation(IdentityContext context, Class<?> credentialClass) {
-        T store = null;
-
-        IdentityConfiguration identityConfiguration = null;
+        IdentityConfiguration identityConfiguration;
 
         if (this.partitionManagementConfig != null) {
             identityConfiguration = getConfigurationForPartition(context.getPartition());
         } else {
-            for (IdentityConfiguration configuration : this.configurations) {
-                for (IdentityStoreConfiguration storeConfig : configuration.getStoreConfiguration()) {
-                    if (storeConfig.supportsCredential()) {
-                        identityConfiguration = configuration;
-                    }
-                }
-            }
+            identityConfiguration = this.storeRoutingTable.getCredentialConfiguration();
         }
 
-        if (identityConfiguration != null && identityConfiguration.supportsCredential()) {
-            for (IdentityStoreConfiguration storeConfig : identityConfiguration.getStoreConfiguration()) {
-                if (storeConfig.supportsCredential()) {
-                    for (@SuppressWarnings("rawtypes") Class<? extends CredentialHandler> handlerClass : storeConfig.getCredentialHandlers()) {
-                        if (handlerClass.isAnnotationPresent(SupportsCredentials.class)) {
-                            for (Class<?> cls : handlerClass.getAnnotation(SupportsCredentials.class).credentialClass()) {
-                                if (cls.isAssignableFrom(credentialClass)) {
-                                    IdentityStore<?> identityStore = getIdentityStoreAndInitializeContext(context, identityConfiguration, storeConfig);
-
-                                    try {
-                                        store = (T) identityStore;
-                                    } catch (ClassCastException cce) {
-                                        throw MESSAGES.storeUnexpectedType(CredentialStore.class, identityStore.getClass());
-                                    }
-
-                                    // if we found a specific handler for the credential, immediately return.
-                                    if (cls.equals(credentialClass)) {
-                                        return store;
-                                    }
-                                }
-                            }
-                        }
-                    }
+        if (identityConfiguration != null) {
+            StoreRoute route = this.storeRoutingTable.getCredentialRoute(identityConfiguration, credentialClass);
+
+            if (!route.isEmpty()) {
+                IdentityStore<?> identityStore = getIdentityStoreAndInitializeContext(context, identityConfiguration,
+                        route.getStoreConfigurations().get(0));
+
+                if (!CredentialStore.class.isInstance(identityStore)) {
+                    throw MESSAGES.storeUnexpectedType(CredentialStore.class, identityStore.getClass());
                 }
-            }
-        }
 
-        if (store == null) {
-            throw MESSAGES.credentialNoStoreForCredentials(credentialClass);
+                return (T) identityStore;
+            }
         }
 
-        return store;
+        throw MESSAGES.credentialNoStoreForCredentials(credentialClass);
     }
 
     @Override
@@ -637,21 +779,17 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
             }
 
             if (config.getRelationshipPolicy().isSelfRelationshipSupported(relationshipClass)) {
-                for (IdentityStoreConfiguration storeConfig : config.getStoreConfiguration()) {
-                    if (storeConfig.supportsType(relationshipClass, operation)) {
-                        store = getIdentityStoreAndInitializeContext(context, config, storeConfig);
-                    }
-                }
+                store = lookupRelationshipStore(context, config, relationshipClass, operation);
             }
         } else {
             // This is a multi-partition relationship - use the configuration that supports the global relationship type
             for (Partition partition : partitions) {
                 IdentityConfiguration config = getConfigurationForPartition(partition);
                 if (config.getRelationshipPolicy().isGlobalRelationshipSupported(relationshipClass)) {
-                    for (IdentityStoreConfiguration storeConfig : config.getStoreConfiguration()) {
-                        if (storeConfig.supportsType(relationshipClass, operation)) {
-                            store = getIdentityStoreAndInitializeContext(context, config, storeConfig);
-                        }
+                    IdentityStore<?> selectedStore = lookupRelationshipStore(context, config, relationshipClass, operation);
+
+                    if (selectedStore != null) {
+                        store = selectedStore;
                     }
                 }
             }
@@ -663,10 +801,10 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
             for (IdentityConfiguration cfg : configurations) {
                 if (cfg.getRelationshipPolicy().isGlobalRelationshipSupported(relationshipClass)) {
                     // found one
-                    for (IdentityStoreConfiguration storeConfig : cfg.getStoreConfiguration()) {
-                        if (storeConfig.supportsType(relationshipClass, operation)) {
-                            store = getIdentityStoreAndInitializeContext(context, cfg, storeConfig);
-                        }
+                    IdentityStore<?> selectedStore = lookupRelationshipStore(context, cfg, relationshipClass, operation);
+
+                    if (selectedStore != null) {
+                        store = selectedStore;
                     }
                 }
             }
@@ -759,29 +897,13 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
 
     @Override
     public Set<CredentialStore<?>> getStoresForCredentialStorage(final IdentityContext context, Class<? extends CredentialStorage> storageClass) {
-        Map<IdentityStoreConfiguration, IdentityStore<?>> storesConfig = this.stores.get(getConfigurationForPartition(context.getPartition()));
-
-        Set<CredentialStore<?>> credentialStores = new HashSet<CredentialStore<?>>();
-
-        if (storesConfig != null) {
-            for (IdentityStore identityStore : storesConfig.values()) {
-                if (CredentialStore.class.isInstance(identityStore) && identityStore.getConfig().supportsCredential()) {
-                    CredentialStore<?> credentialStore = (CredentialStore<?>) identityStore;
-
-                    for (Class<? extends CredentialHandler> credentialHandler : credentialStore.getConfig().getCredentialHandlers()) {
-                        SupportsCredentials supportedCredentials = credentialHandler.getAnnotation(SupportsCredentials.class);
+        IdentityConfiguration identityConfiguration = getConfigurationForPartition(context.getPartition());
 
-                        if (supportedCredentials != null) {
-                            if (supportedCredentials.credentialStorage().equals(storageClass)) {
-                                credentialStores.add(credentialStore);
-                            }
-                        }
-                    }
-                }
-            }
+        if (identityConfiguration == null || !this.stores.containsKey(identityConfiguration)) {
+            return Collections.emptySet();
         }
 
-        return credentialStores;
+        return this.storeRoutingTable.getCredentialStores(identityConfiguration, storageClass);
     }
 
     @Override
@@ -958,7 +1080,21 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
         Partition storedPartition;
 
         if (this.partitionManagementConfig != null) {
-            storedPartition = getPartition(partition.getClass(), partition.getName());
+            storedPartition = this.partitionCache.lookupById(partition.getId());
+
+            if (storedPartition == null) {
+                storedPartition = this.partitionCache.lookup(partition.getClass(), partition.getName());
+            }
+
+            if (storedPartition == null) {
+                long cacheVersion = this.partitionCache.getVersion();
+
+                storedPartition = getPartition(partition.getClass(), partition.getName());
+
+                if (storedPartition != null) {
+                    this.partitionCache.put(storedPartition, cacheVersion);
+                }
+            }
         } else {
             storedPartition = createDefaultPartition();
         }
@@ -991,6 +1127,23 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
         return (T) store;
     }
 
+    /**
+     * <p>Returns the store from the given configuration supporting the given relationship type and operation, or null
+     * if there is none. If more than one store supports it, the last one configured is selected.</p>
+     */
+    private IdentityStore<?> lookupRelationshipStore(final IdentityContext context, final IdentityConfiguration configuration,
+                                                     final Class<? extends Relationship> relationshipClass, final IdentityOperation operation) {
+        StoreRoute route = this.storeRoutingTable.getRoute(configuration, relationshipClass, operation);
+
+        if (route.isEmpty()) {
+            return null;
+        }
+
+        List<IdentityStoreConfiguration> storeConfigs = route.getStoreConfigurations();
+
+        return getIdentityStoreAndInitializeContext(context, configuration, storeConfigs.get(storeConfigs.size() - 1));
+    }
+
     private <T extends Partition> void loadAttributes(final IdentityContext context, final T partition) {
         AttributeStore<?> attributeStore = getStoreForAttributeOperation(context);
 
@@ -999,6 +1152,23 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
         }
     }
 
+    /**
+     * <p>Inherited privileges may span configurations, the shortest expiration is used.</p>
+     */
+    private long getPrivilegeExpiration(Collection<IdentityConfiguration> configurations) {
+        long expiration = 0;
+
+        for (IdentityConfiguration configuration : configurations) {
+            long privilegeExpiration = configuration.getCacheConfiguration().getPrivilegeExpiration();
+
+            if (privilegeExpiration > 0 && (expiration == 0 || privilegeExpiration < expiration)) {
+                expiration = privilegeExpiration;
+            }
+        }
+
+        return expiration;
+    }
+
     private void logConfiguration(final Collection<IdentityConfiguration> configurations) {
         for (IdentityConfiguration identityConfiguration : configurations) {
             if (ROOT_LOGGER.isDebugEnabled()) {
@@ -0,0 +1,219 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.idm.internal;
+
+import org.picketlink.idm.model.Partition;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Caches the {@link Partition} instances resolved from the partition store, by type and name and by identifier.</p>
+ *
+ * <p>The instances held by this cache are only used to create {@link org.picketlink.idm.IdentityManager} and
+ * {@link org.picketlink.idm.PermissionManager} instances. Methods like {@link org.picketlink.idm.PartitionManager#getPartition(Class, String)}
+ * always return a fresh instance, given that callers are allowed to change it before updating.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+class PartitionCache {
+
+    private final long expiration;
+    private final ConcurrentMap<String, CachedPartition> partitionsById = new ConcurrentHashMap<String, CachedPartition>();
+    private final ConcurrentMap<PartitionKey, CachedPartition> partitionsByName = new ConcurrentHashMap<PartitionKey, CachedPartition>();
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * @param expiration The time, in milliseconds, a partition is kept in this cache. If zero, partitions never expire.
+     */
+    PartitionCache(long expiration) {
+        this.expiration = expiration;
+    }
+
+    /**
+     * <p>Returns the cached partition with the given identifier, or null if it was not cached or has expired.</p>
+     *
+     * @param id
+     * @return
+     */
+    Partition lookupById(String id) {
+        if (id == null) {
+            return null;
+        }
+
+        return getPartition(this.partitionsById.get(id));
+    }
+
+    /**
+     * <p>Returns the cached partition with the given type and name, or null if it was not cached or has expired.</p>
+     *
+     * @param partitionClass
+     * @param name
+     * @return
+     */
+    Partition lookup(Class<? extends Partition> partitionClass, String name) {
+        if (name == null) {
+            return null;
+        }
+
+        return getPartition(this.partitionsByName.get(new PartitionKey(partitionClass, name)));
+    }
+
+    /**
+     * <p>Returns the current version of this cache, which changes whenever a partition is invalidated. It must be obtained
+     * before loading a partition from the store and provided when caching it.</p>
+     *
+     * @return
+     */
+    long getVersion() {
+        return this.version.get();
+    }
+
+    /**
+     * <p>Caches the given partition, unless a partition was invalidated since the given <code>version</code> was obtained.
+     * In that case the loaded partition may already be stale.</p>
+     *
+     * @param partition
+     * @param version
+     */
+    void put(Partition partition, long version) {
+        if (this.version.get() != version) {
+            return;
+        }
+
+        CachedPartition cachedPartition = new CachedPartition(partition, this.expiration);
+
+        this.partitionsByName.put(cachedPartition.key, cachedPartition);
+
+        if (partition.getId() != null) {
+            this.partitionsById.put(partition.getId(), cachedPartition);
+        }
+
+        // an invalidation may have happened while caching the partition
+        if (this.version.get() != version) {
+            remove(cachedPartition);
+        }
+    }
+
+    /**
+     * <p>Removes the given partition from the cache, considering both its identifier and its type and name.</p>
+     *
+     * @param partition
+     */
+    void invalidate(Partition partition) {
+        this.version.incrementAndGet();
+
+        if (partition.getId() != null) {
+            CachedPartition cachedPartition = this.partitionsById.remove(partition.getId());
+
+            // the partition may have been cached under a different name
+            if (cachedPartition != null) {
+                this.partitionsByName.remove(cachedPartition.key, cachedPartition);
+            }
+        }
+
+        if (partition.getName() != null) {
+            CachedPartition cachedPartition = this.partitionsByName.remove(new PartitionKey(partition.getClass(), partition.getName()));
+
+            if (cachedPartition != null && cachedPartition.partition.getId() != null) {
+                this.partitionsById.remove(cachedPartition.partition.getId(), cachedPartition);
+            }
+        }
+    }
+
+    void invalidateAll() {
+        this.version.incrementAndGet();
+        this.partitionsById.clear();
+        this.partitionsByName.clear();
+    }
+
+    private Partition getPartition(CachedPartition cachedPartition) {
+        if (cachedPartition == null) {
+            return null;
+        }
+
+        if (cachedPartition.isExpired()) {
+            remove(cachedPartition);
+            return null;
+        }
+
+        return cachedPartition.partition;
+    }
+
+    private void remove(CachedPartition cachedPartition) {
+        this.partitionsByName.remove(cachedPartition.key, cachedPartition);
+
+        if (cachedPartition.partition.getId() != null) {
+            this.partitionsById.remove(cachedPartition.partition.getId(), cachedPartition);
+        }
+    }
+
+    private static class PartitionKey {
+
+        private final Class<? extends Partition> partitionClass;
+        private final String name;
+
+        PartitionKey(Class<? extends Partition> partitionClass, String name) {
+            this.partitionClass = partitionClass;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof PartitionKey)) {
+                return false;
+            }
+
+            PartitionKey other = (PartitionKey) obj;
+
+            return this.partitionClass.equals(other.partitionClass) && this.name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.partitionClass.hashCode() + this.name.hashCode();
+        }
+    }
+
+    private static class CachedPartition {
+
+        private final Partition partition;
+        private final PartitionKey key;
+        private final long expiresAt;
+
+        CachedPartition(Partition partition, long expiration) {
+            this.partition = partition;
+            this.key = new PartitionKey(partition.getClass(), partition.getName());
+
+            if (expiration > 0) {
+                this.expiresAt = System.currentTimeMillis() + expiration;
+            } else {
+                this.expiresAt = Long.MAX_VALUE;
+            }
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() > this.expiresAt;
+        }
+    }
+}
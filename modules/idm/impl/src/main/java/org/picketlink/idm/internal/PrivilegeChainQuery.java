@@ -7,6 +7,12 @@ import org.picketlink.common.properties.query.PropertyQueries;
 import org.picketlink.common.properties.query.TypedPropertyCriteria;
 import org.picketlink.common.util.StringUtil;
 import org.picketlink.idm.RelationshipManager;
+import org.picketlink.idm.event.IdentityTypeDeletedEvent;
+import org.picketlink.idm.event.IdentityTypeUpdatedEvent;
+import org.picketlink.idm.event.PartitionDeletedEvent;
+import org.picketlink.idm.event.RelationshipCreatedEvent;
+import org.picketlink.idm.event.RelationshipDeletedEvent;
+import org.picketlink.idm.event.RelationshipUpdatedEvent;
 import org.picketlink.idm.model.IdentityType;
 import org.picketlink.idm.model.Relationship;
 import org.picketlink.idm.model.annotation.InheritsPrivileges;
@@ -14,13 +20,26 @@ import org.picketlink.idm.query.RelationshipQuery;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.picketlink.idm.IDMInternalMessages.MESSAGES;
 
 /**
- * Stores privilege chain metadata and performs chain queries to determine privilege inheritance
+ * <p>Stores privilege chain metadata and performs chain queries to determine privilege inheritance.</p>
+ *
+ * <p>Chain queries are resolved from an index holding, for each identity, the assignees it inherits privileges from.
+ * The index is built lazily from the relationships of each identity and kept up to date from the events raised when
+ * relationships are created, updated or removed and when identity types are updated or removed. Changes made by other
+ * partition managers sharing the same stores are only seen once entries expire, if an expiration was configured.</p>
+ *
+ * <p>This class is thread-safe.</p>
  *
  * @author Shane Bryzak
  */
@@ -33,6 +52,52 @@ public class PrivilegeChainQuery {
     private final Map<Class<? extends Relationship>,Map<Property<IdentityType>,Property<IdentityType>>> privilegeChains =
             new HashMap<Class<? extends Relationship>, Map<Property<IdentityType>,Property<IdentityType>>>();
 
+    /**
+     * The identity properties of each relationship class that declares privilege chains.
+     */
+    private final Map<Class<? extends Relationship>, List<Property<IdentityType>>> identityProperties =
+            new HashMap<Class<? extends Relationship>, List<Property<IdentityType>>>();
+
+    /**
+     * The property referencing the parent identity of each identity class, if any.
+     */
+    private final ConcurrentMap<Class<?>, ParentProperty> parentProperties = new ConcurrentHashMap<Class<?>, ParentProperty>();
+
+    /**
+     * The direct privilege chains of each identity, by identifier.
+     */
+    private final ConcurrentMap<String, Chain> chains = new ConcurrentHashMap<String, Chain>();
+
+    /**
+     * The identifiers of all assignees each identity inherits privileges from, by identifier.
+     */
+    private final ConcurrentMap<String, Closure> closures = new ConcurrentHashMap<String, Closure>();
+
+    /**
+     * Changed by every invalidation. Entries are only added if it did not change since they were computed.
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Held when invalidating entries and when adding them, so no invalidation happens between checking the version
+     * and adding an entry.
+     */
+    private final Object lock = new Object();
+
+    private final long expiration;
+
+    public PrivilegeChainQuery() {
+        this(0);
+    }
+
+    /**
+     * @param expiration The time, in milliseconds, the privileges of an identity are kept in the index. If zero, they
+     * are only removed when invalidated.
+     */
+    public PrivilegeChainQuery(long expiration) {
+        this.expiration = expiration;
+    }
+
     public void registerRelationshipType(Class<? extends Relationship> relationshipType) {
         if (!privilegeChains.containsKey(relationshipType)) {
             List<Property<IdentityType>> properties = PropertyQueries.<IdentityType>createQuery(relationshipType)
@@ -62,6 +127,12 @@ public class PrivilegeChainQuery {
             }
 
             privilegeChains.put(relationshipType, inheritanceMapping);
+
+            if (!inheritanceMapping.isEmpty()) {
+                identityProperties.put(relationshipType, PropertyQueries.<IdentityType>createQuery(relationshipType)
+                        .addCriteria(new TypedPropertyCriteria(IdentityType.class, TypedPropertyCriteria.MatchOption.SUB_TYPE))
+                        .getResultList());
+            }
         }
     }
 
@@ -83,55 +154,260 @@ public class PrivilegeChainQuery {
             throw MESSAGES.nullArgument("assignee");
         }
 
+        if (assignee.getId() == null) {
+            return false;
+        }
+
+        return getInheritedAssignees(relationshipManager, identity).contains(assignee.getId());
+    }
+
+    /**
+     * <p>Updates the index after a change to the identity model. Only changes that may affect privilege chains are
+     * considered.</p>
+     *
+     * @param event
+     */
+    public void onEvent(Object event) {
+        if (RelationshipCreatedEvent.class.isInstance(event)) {
+            invalidate(((RelationshipCreatedEvent) event).getRelationship());
+        } else if (RelationshipUpdatedEvent.class.isInstance(event)) {
+            // the event only holds the new identities, the previous ones may have lost privileges
+            if (this.identityProperties.containsKey(((RelationshipUpdatedEvent) event).getRelationship().getClass())) {
+                invalidateAll();
+            }
+        } else if (RelationshipDeletedEvent.class.isInstance(event)) {
+            invalidate(((RelationshipDeletedEvent) event).getRelationship());
+        } else if (IdentityTypeUpdatedEvent.class.isInstance(event)) {
+            IdentityType identityType = ((IdentityTypeUpdatedEvent) event).getIdentityType();
+
+            // the parent of the identity may have changed, and other chains may hold the previous instance
+            if (getParentProperty(identityType.getClass()) != null) {
+                invalidateAll();
+            }
+        } else if (IdentityTypeDeletedEvent.class.isInstance(event) || PartitionDeletedEvent.class.isInstance(event)) {
+            // relationships referencing removed identities are removed by the stores without raising events
+            invalidateAll();
+        }
+    }
+
+    /**
+     * <p>Removes all entries from the index.</p>
+     */
+    public void invalidateAll() {
+        synchronized (this.lock) {
+            this.version.incrementAndGet();
+            this.chains.clear();
+            this.closures.clear();
+        }
+    }
+
+    private void invalidate(Relationship relationship) {
+        List<Property<IdentityType>> properties = this.identityProperties.get(relationship.getClass());
+
+        if (properties == null) {
+            // relationship does not declare any privilege chain
+            return;
+        }
+
+        synchronized (this.lock) {
+            this.version.incrementAndGet();
+
+            for (Property<IdentityType> property : properties) {
+                IdentityType identityType = property.getValue(relationship);
+
+                if (identityType == null || identityType.getId() == null) {
+                    // we can not tell which identities were affected
+                    invalidateAll();
+                    return;
+                }
+
+                this.chains.remove(identityType.getId());
+            }
+
+            this.closures.clear();
+        }
+    }
+
+    private Set<String> getInheritedAssignees(RelationshipManager relationshipManager, IdentityType identity) {
+        String identityId = identity.getId();
+        Closure closure = null;
+
+        if (identityId != null) {
+            closure = this.closures.get(identityId);
+        }
+
+        if (closure != null && !closure.isExpired()) {
+            return closure.assignees;
+        }
+
+        long currentVersion = this.version.get();
+        Set<String> assignees = new HashSet<String>();
+        Set<String> visited = new HashSet<String>();
+        LinkedList<IdentityType> pending = new LinkedList<IdentityType>();
+
+        pending.add(identity);
+
+        while (!pending.isEmpty()) {
+            IdentityType current = pending.removeFirst();
+
+            if (current.getId() != null && !visited.add(current.getId())) {
+                continue;
+            }
+
+            Chain chain = getChain(relationshipManager, current);
+
+            assignees.addAll(chain.assignees);
+            pending.addAll(chain.next);
+        }
+
+        if (identityId != null) {
+            synchronized (this.lock) {
+                if (this.version.get() == currentVersion) {
+                    this.closures.put(identityId, new Closure(assignees, getExpirationTime()));
+                }
+            }
+        }
+
+        return assignees;
+    }
+
+    /**
+     * <p>Returns the assignees the given identity directly inherits privileges from and the identities whose chains
+     * must also be followed: the assignees themselves and the parent of the identity.</p>
+     */
+    private Chain getChain(RelationshipManager relationshipManager, IdentityType identity) {
+        String identityId = identity.getId();
+        Chain chain = null;
+
+        if (identityId != null) {
+            chain = this.chains.get(identityId);
+        }
+
+        if (chain != null && !chain.isExpired()) {
+            return chain;
+        }
+
+        long currentVersion = this.version.get();
+        Set<String> assignees = new HashSet<String>();
+        List<IdentityType> next = new ArrayList<IdentityType>();
+
         // Find all of the relationships that the identity participates in, that have one or
         // more declared privilege assignments
         RelationshipQuery query = relationshipManager.createRelationshipQuery(Relationship.class);
 
         query.setParameter(Relationship.IDENTITY, identity);
 
-        boolean hasPrivileges = false;
-
         for (Relationship relationship : new ArrayList<Relationship>(query.getResultList())) {
             Map<Property<IdentityType>, Property<IdentityType>> propertyPropertyMap = this.privilegeChains.get(relationship.getClass());
 
             if (propertyPropertyMap != null) {
-                for (Property<IdentityType> identityProperty : propertyPropertyMap.keySet()) {
-                    Property<IdentityType> assigneeProperty = propertyPropertyMap.get(identityProperty);
-
+                for (Property<IdentityType> assigneeProperty : propertyPropertyMap.values()) {
                     // only do the check if the relationship is the same type of the declaring class of the assignee property
                     if (assigneeProperty.getDeclaringClass().equals(relationship.getClass())) {
                         IdentityType relationshipAssignee = assigneeProperty.getValue(relationship);
 
-                        // if the relationship assignee is the same as the given target assignee, we have a match.
-                        if (relationshipAssignee.equals(assignee)) {
-                            hasPrivileges = true;
-                        } else if (!identity.equals(relationshipAssignee)) {
-                            // we continue the inheritance lookup if the identity is not the same as the relationship assignee
-                            hasPrivileges = inheritsPrivileges(relationshipManager, relationshipAssignee, assignee);
-                        }
+                        if (relationshipAssignee != null) {
+                            assignees.add(relationshipAssignee.getId());
 
-                        if (hasPrivileges) {
-                            return true;
+                            // we continue the inheritance lookup if the identity is not the same as the relationship assignee
+                            if (!identity.equals(relationshipAssignee)) {
+                                next.add(relationshipAssignee);
+                            }
                         }
                     }
                 }
             }
         }
 
-        // otherwise, let's check if there is a parent-child relationship for the identity, so we can check inheritance from parent
-        Property<IdentityType> parentProperty = PropertyQueries
-            .<IdentityType>createQuery(identity.getClass())
-                .addCriteria(new TypedPropertyCriteria(identity.getClass(), TypedPropertyCriteria.MatchOption.SUB_TYPE))
-                .getFirstResult();
+        // let's check if there is a parent-child relationship for the identity, so we can check inheritance from parent
+        Property<IdentityType> parentProperty = getParentProperty(identity.getClass());
 
         if (parentProperty != null) {
             IdentityType parentIdentity = parentProperty.getValue(identity);
 
             if (parentIdentity != null) {
-                return inheritsPrivileges(relationshipManager, parentIdentity, assignee);
+                next.add(parentIdentity);
+            }
+        }
+
+        chain = new Chain(assignees, next, getExpirationTime());
+
+        if (identityId != null) {
+            synchronized (this.lock) {
+                if (this.version.get() == currentVersion) {
+                    this.chains.put(identityId, chain);
+                }
             }
         }
 
-        return false;
+        return chain;
+    }
+
+    private Property<IdentityType> getParentProperty(Class<? extends IdentityType> identityClass) {
+        ParentProperty parentProperty = this.parentProperties.get(identityClass);
+
+        if (parentProperty == null) {
+            parentProperty = new ParentProperty(PropertyQueries
+                .<IdentityType>createQuery(identityClass)
+                    .addCriteria(new TypedPropertyCriteria(identityClass, TypedPropertyCriteria.MatchOption.SUB_TYPE))
+                    .getFirstResult());
+
+            this.parentProperties.putIfAbsent(identityClass, parentProperty);
+        }
+
+        return parentProperty.property;
+    }
+
+    private long getExpirationTime() {
+        if (this.expiration <= 0) {
+            return 0;
+        }
+
+        return System.currentTimeMillis() + this.expiration;
+    }
+
+    private static boolean isExpired(long expirationTime) {
+        return expirationTime > 0 && System.currentTimeMillis() > expirationTime;
+    }
+
+    private static class Chain {
+
+        private final Set<String> assignees;
+        private final List<IdentityType> next;
+        private final long expirationTime;
+
+        Chain(Set<String> assignees, List<IdentityType> next, long expirationTime) {
+            this.assignees = assignees;
+            this.next = next;
+            this.expirationTime = expirationTime;
+        }
+
+        boolean isExpired() {
+            return PrivilegeChainQuery.isExpired(this.expirationTime);
+        }
+    }
+
+    private static class Closure {
+
+        private final Set<String> assignees;
+        private final long expirationTime;
+
+        Closure(Set<String> assignees, long expirationTime) {
+            this.assignees = assignees;
+            this.expirationTime = expirationTime;
+        }
+
+        boolean isExpired() {
+            return PrivilegeChainQuery.isExpired(this.expirationTime);
+        }
+    }
+
+    private static class ParentProperty {
+
+        private final Property<IdentityType> property;
+
+        ParentProperty(Property<IdentityType> property) {
+            this.property = property;
+        }
     }
 }
@@ -0,0 +1,322 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.idm.internal;
+
+import org.picketlink.idm.config.IdentityConfiguration;
+import org.picketlink.idm.config.IdentityStoreConfiguration;
+import org.picketlink.idm.config.IdentityStoreConfiguration.IdentityOperation;
+import org.picketlink.idm.credential.handler.CredentialHandler;
+import org.picketlink.idm.credential.handler.annotations.SupportsCredentials;
+import org.picketlink.idm.credential.storage.CredentialStorage;
+import org.picketlink.idm.model.AttributedType;
+import org.picketlink.idm.spi.CredentialStore;
+import org.picketlink.idm.spi.IdentityStore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Memoizes how operations are routed to the {@link IdentityStore} instances of each {@link IdentityConfiguration}.</p>
+ *
+ * <p>Configurations are immutable once the partition manager is created, so the stores supporting a given type and
+ * operation, or a given credential, never change. Routes for the types and credentials explicitly declared by the
+ * store configurations are computed when this table is created. Any other type, such as a super type used in a
+ * query, is resolved on first use and kept for subsequent calls.</p>
+ *
+ * <p>This class only selects stores. Callers are still responsible for initializing the
+ * {@link org.picketlink.idm.spi.IdentityContext} for the selected store.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+class StoreRoutingTable {
+
+    private static final StoreRoute EMPTY_ROUTE = new StoreRoute(Collections.<IdentityStoreConfiguration>emptyList(),
+            Collections.<IdentityStore<?>>emptySet());
+
+    private final Map<IdentityConfiguration, Map<IdentityStoreConfiguration, IdentityStore<?>>> stores;
+    private final IdentityConfiguration credentialConfiguration;
+    private final ConcurrentMap<RouteKey, StoreRoute> typeRoutes = new ConcurrentHashMap<RouteKey, StoreRoute>();
+    private final ConcurrentMap<RouteKey, StoreRoute> credentialRoutes = new ConcurrentHashMap<RouteKey, StoreRoute>();
+    private final ConcurrentMap<RouteKey, Set<CredentialStore<?>>> credentialStorageRoutes =
+            new ConcurrentHashMap<RouteKey, Set<CredentialStore<?>>>();
+
+    /**
+     * @param configurations The configurations, in the order they were declared. Selections depending on the order of
+     * configurations, such as {@link #getCredentialConfiguration()}, follow this order.
+     * @param stores The stores of each configuration.
+     */
+    StoreRoutingTable(Collection<IdentityConfiguration> configurations,
+                      Map<IdentityConfiguration, Map<IdentityStoreConfiguration, IdentityStore<?>>> stores) {
+        this.stores = stores;
+
+        IdentityConfiguration credentialConfiguration = null;
+
+        for (IdentityConfiguration configuration : configurations) {
+            for (IdentityStoreConfiguration storeConfig : configuration.getStoreConfiguration()) {
+                if (storeConfig.supportsCredential()) {
+                    credentialConfiguration = configuration;
+                }
+
+                for (Class<? extends AttributedType> supportedType : storeConfig.getSupportedTypes().keySet()) {
+                    for (IdentityOperation operation : IdentityOperation.values()) {
+                        getRoute(configuration, supportedType, operation);
+                    }
+                }
+
+                for (Class<? extends CredentialHandler> handlerClass : storeConfig.getCredentialHandlers()) {
+                    SupportsCredentials supportsCredentials = handlerClass.getAnnotation(SupportsCredentials.class);
+
+                    if (supportsCredentials != null) {
+                        for (Class<?> credentialClass : supportsCredentials.credentialClass()) {
+                            getCredentialRoute(configuration, credentialClass);
+                        }
+
+                        getCredentialStores(configuration, supportsCredentials.credentialStorage());
+                    }
+                }
+            }
+        }
+
+        this.credentialConfiguration = credentialConfiguration;
+    }
+
+    /**
+     * <p>Returns the route to the stores from the given configuration supporting the given type and operation. The
+     * order of the stores is the same as the order of their configuration.</p>
+     *
+     * @param configuration
+     * @param type
+     * @param operation
+     * @return The route. If no store supports the type and operation, an empty route is returned.
+     */
+    StoreRoute getRoute(IdentityConfiguration configuration, Class<? extends AttributedType> type, IdentityOperation operation) {
+        RouteKey key = new RouteKey(configuration, type, operation);
+        StoreRoute route = this.typeRoutes.get(key);
+
+        if (route == null) {
+            List<IdentityStoreConfiguration> storeConfigs = new ArrayList<IdentityStoreConfiguration>();
+
+            for (IdentityStoreConfiguration storeConfig : configuration.getStoreConfiguration()) {
+                if (storeConfig.supportsType(type, operation)) {
+                    storeConfigs.add(storeConfig);
+                }
+            }
+
+            route = createRoute(configuration, storeConfigs);
+
+            this.typeRoutes.putIfAbsent(key, route);
+        }
+
+        return route;
+    }
+
+    /**
+     * <p>Returns the route to the store from the given configuration able to handle the given credential class. A
+     * store with a handler declaring the credential class itself takes precedence over a store with a handler
+     * declaring one of its super types.</p>
+     *
+     * @param configuration
+     * @param credentialClass
+     * @return The route. If no store supports the credential, an empty route is returned.
+     */
+    StoreRoute getCredentialRoute(IdentityConfiguration configuration, Class<?> credentialClass) {
+        RouteKey key = new RouteKey(configuration, credentialClass, null);
+        StoreRoute route = this.credentialRoutes.get(key);
+
+        if (route == null) {
+            IdentityStoreConfiguration selectedConfig = null;
+
+            if (configuration.supportsCredential()) {
+                selectedConfig = selectCredentialStoreConfiguration(configuration, credentialClass);
+            }
+
+            if (selectedConfig == null) {
+                route = EMPTY_ROUTE;
+            } else {
+                route = createRoute(configuration, Collections.singletonList(selectedConfig));
+            }
+
+            this.credentialRoutes.putIfAbsent(key, route);
+        }
+
+        return route;
+    }
+
+    /**
+     * <p>Returns the credential stores from the given configuration with a handler using the given storage class. The
+     * order of the stores is the same as the order of their configuration.</p>
+     *
+     * @param configuration
+     * @param storageClass
+     * @return An unmodifiable set. If no store uses the storage class, an empty set is returned.
+     */
+    Set<CredentialStore<?>> getCredentialStores(IdentityConfiguration configuration, Class<? extends CredentialStorage> storageClass) {
+        RouteKey key = new RouteKey(configuration, storageClass, null);
+        Set<CredentialStore<?>> credentialStores = this.credentialStorageRoutes.get(key);
+
+        if (credentialStores == null) {
+            Set<CredentialStore<?>> selectedStores = new LinkedHashSet<CredentialStore<?>>();
+            Map<IdentityStoreConfiguration, IdentityStore<?>> configStores = this.stores.get(configuration);
+
+            for (IdentityStoreConfiguration storeConfig : configuration.getStoreConfiguration()) {
+                IdentityStore<?> identityStore = configStores.get(storeConfig);
+
+                if (CredentialStore.class.isInstance(identityStore) && identityStore.getConfig().supportsCredential()) {
+                    CredentialStore<?> credentialStore = (CredentialStore<?>) identityStore;
+
+                    for (Class<? extends CredentialHandler> credentialHandler : credentialStore.getConfig().getCredentialHandlers()) {
+                        SupportsCredentials supportedCredentials = credentialHandler.getAnnotation(SupportsCredentials.class);
+
+                        if (supportedCredentials != null && supportedCredentials.credentialStorage().equals(storageClass)) {
+                            selectedStores.add(credentialStore);
+                        }
+                    }
+                }
+            }
+
+            credentialStores = Collections.unmodifiableSet(selectedStores);
+
+            this.credentialStorageRoutes.putIfAbsent(key, credentialStores);
+        }
+
+        return credentialStores;
+    }
+
+    /**
+     * <p>Returns the last configuration with a store supporting credentials. This is the configuration used for
+     * credential operations when partition management is not supported.</p>
+     *
+     * @return
+     */
+    IdentityConfiguration getCredentialConfiguration() {
+        return this.credentialConfiguration;
+    }
+
+    private IdentityStoreConfiguration selectCredentialStoreConfiguration(IdentityConfiguration configuration, Class<?> credentialClass) {
+        IdentityStoreConfiguration selectedConfig = null;
+
+        for (IdentityStoreConfiguration storeConfig : configuration.getStoreConfiguration()) {
+            if (storeConfig.supportsCredential()) {
+                for (Class<? extends CredentialHandler> handlerClass : storeConfig.getCredentialHandlers()) {
+                    if (handlerClass.isAnnotationPresent(SupportsCredentials.class)) {
+                        for (Class<?> cls : handlerClass.getAnnotation(SupportsCredentials.class).credentialClass()) {
+                            if (cls.isAssignableFrom(credentialClass)) {
+                                selectedConfig = storeConfig;
+
+                                // if we found a specific handler for the credential, immediately return.
+                                if (cls.equals(credentialClass)) {
+                                    return selectedConfig;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        return selectedConfig;
+    }
+
+    private StoreRoute createRoute(IdentityConfiguration configuration, List<IdentityStoreConfiguration> storeConfigs) {
+        if (storeConfigs.isEmpty()) {
+            return EMPTY_ROUTE;
+        }
+
+        Map<IdentityStoreConfiguration, IdentityStore<?>> configStores = this.stores.get(configuration);
+        Set<IdentityStore<?>> identityStores = new LinkedHashSet<IdentityStore<?>>();
+
+        for (IdentityStoreConfiguration storeConfig : storeConfigs) {
+            identityStores.add(configStores.get(storeConfig));
+        }
+
+        return new StoreRoute(Collections.unmodifiableList(new ArrayList<IdentityStoreConfiguration>(storeConfigs)),
+                Collections.unmodifiableSet(identityStores));
+    }
+
+    /**
+     * <p>The store configurations selected for an operation, along with their corresponding stores.</p>
+     */
+    static class StoreRoute {
+
+        private final List<IdentityStoreConfiguration> storeConfigurations;
+        private final Set<IdentityStore<?>> stores;
+
+        StoreRoute(List<IdentityStoreConfiguration> storeConfigurations, Set<IdentityStore<?>> stores) {
+            this.storeConfigurations = storeConfigurations;
+            this.stores = stores;
+        }
+
+        List<IdentityStoreConfiguration> getStoreConfigurations() {
+            return this.storeConfigurations;
+        }
+
+        Set<IdentityStore<?>> getStores() {
+            return this.stores;
+        }
+
+        boolean isEmpty() {
+            return this.storeConfigurations.isEmpty();
+        }
+    }
+
+    private static class RouteKey {
+
+        private final IdentityConfiguration configuration;
+        private final Class<?> type;
+        private final IdentityOperation operation;
+
+        RouteKey(IdentityConfiguration configuration, Class<?> type, IdentityOperation operation) {
+            this.configuration = configuration;
+            this.type = type;
+            this.operation = operation;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof RouteKey)) {
+                return false;
+            }
+
+            RouteKey other = (RouteKey) obj;
+
+            return this.configuration == other.configuration && this.type.equals(other.type)
+                    && this.operation == other.operation;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(this.configuration);
+
+            result = 31 * result + this.type.hashCode();
+            result = 31 * result + (this.operation != null ? this.operation.hashCode() : 0);
+
+            return result;
+        }
+    }
+}
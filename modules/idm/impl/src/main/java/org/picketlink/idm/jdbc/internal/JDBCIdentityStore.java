@@ -22,6 +22,7 @@ import org.picketlink.idm.credential.storage.CredentialStorage;
 import org.picketlink.idm.internal.AbstractIdentityStore;
 import org.picketlink.idm.jdbc.internal.mappers.JdbcMapper;
 import org.picketlink.idm.jdbc.internal.model.AbstractJdbcType;
+import org.picketlink.idm.jdbc.internal.model.IdentityManagedJdbcType;
 import org.picketlink.idm.jdbc.internal.model.PartitionJdbcType;
 import org.picketlink.idm.jdbc.internal.model.RelationshipJdbcType;
 import org.picketlink.idm.model.Account;
@@ -132,6 +133,8 @@ public class JDBCIdentityStore extends AbstractIdentityStore<JDBCIdentityStoreCo
 
     @Override
     public <V extends IdentityType> List<V> fetchQueryResults(IdentityContext context, IdentityQuery<V> identityQuery) {
+        checkKeysetPaginationNotSupported(identityQuery);
+
         List<V> result = new ArrayList<V>();
         AttributedType attributedType = null;
 
@@ -163,7 +166,34 @@ public class JDBCIdentityStore extends AbstractIdentityStore<JDBCIdentityStoreCo
 
     @Override
     public <V extends IdentityType> int countQueryResults(IdentityContext context, IdentityQuery<V> identityQuery) {
-        throw MESSAGES.notImplemented();
+        checkKeysetPaginationNotSupported(identityQuery);
+
+        AbstractJdbcType ajt = mapper.getInstance(identityQuery.getIdentityType());
+
+        if (!IdentityManagedJdbcType.class.isInstance(ajt)) {
+            throw MESSAGES.notImplemented();
+        }
+
+        IdentityManagedJdbcType identityManagedJdbcType = (IdentityManagedJdbcType) ajt;
+        identityManagedJdbcType.setDataSource(dataSource);
+
+        if (identityQuery.getParameter(IdentityType.ID) != null) {
+            Object[] parameter = identityQuery.getParameter(IdentityType.ID);
+
+            if (parameter.length > 0) {
+                return identityManagedJdbcType.count((String) parameter[0], identityQuery.getIdentityType());
+            }
+        } else if (identityQuery.getConditions().size() == identityQuery.getParameters().size()) {
+            // conditions other than the query parameters can only be honored by the loaded results
+            int count = identityManagedJdbcType.count(identityQuery.getParameters(), identityQuery.getIdentityType());
+
+            if (count >= 0) {
+                return count;
+            }
+        }
+
+        // no count query matches the parameters the same way they are loaded, we count the loaded results instead
+        return fetchQueryResults(context, identityQuery).size();
     }
 
     @Override
@@ -282,6 +282,50 @@ public class IdentityManagedJdbcType extends AbstractJdbcType {
         return result;
     }
 
+    /**
+     * Count the {@link AttributedType} instances with the given id
+     * @param id
+     * @param attributedType
+     * @return
+     */
+    public int count(String id, Class<? extends AttributedType> attributedType) {
+        UserStorageUtil userStorageUtil = new UserStorageUtil();
+        RoleStorageUtil roleStorageUtil = new RoleStorageUtil();
+        GroupStorageUtil groupStorageUtil = new GroupStorageUtil();
+
+        if (attributedType == User.class || attributedType == Agent.class) {
+            return userStorageUtil.countUsers(dataSource, id);
+        } else if (attributedType == Role.class) {
+            return roleStorageUtil.countRoles(dataSource, id);
+        } else if (attributedType == Group.class) {
+            return groupStorageUtil.countGroups(dataSource, id);
+        } else if (attributedType == IdentityType.class) {
+            return userStorageUtil.countUsers(dataSource, id) + roleStorageUtil.countRoles(dataSource, id)
+                    + groupStorageUtil.countGroups(dataSource, id);
+        }
+        throw IDMMessages.MESSAGES.unexpectedType(attributedType.getClass());
+    }
+
+    /**
+     * Count the {@link AttributedType} instances given various parameters
+     * @param params
+     * @param attributedType
+     * @return The count, or -1 if the parameters can not be matched by a count query
+     */
+    public int count(Map<QueryParameter, Object[]> params, Class<? extends AttributedType> attributedType) {
+        if (attributedType == User.class || attributedType == Agent.class) {
+            UserStorageUtil userStorageUtil = new UserStorageUtil();
+            return userStorageUtil.countUsers(dataSource, params);
+        } else if (attributedType == Role.class) {
+            RoleStorageUtil roleStorageUtil = new RoleStorageUtil();
+            return roleStorageUtil.countRoles(dataSource, params);
+        } else if (attributedType == Group.class) {
+            GroupStorageUtil groupStorageUtil = new GroupStorageUtil();
+            return groupStorageUtil.countGroups(dataSource, params);
+        }
+        throw IDMMessages.MESSAGES.unexpectedType(attributedType.getClass());
+    }
+
     @Override
     public void update(AttributedType attributedType) {
         UserStorageUtil userStorageUtil = new UserStorageUtil();
@@ -83,6 +83,70 @@ public abstract class AbstractStorageUtil {
         return null;
     }
 
+    /**
+     * Execute a count query with the given string parameters
+     *
+     * @param dataSource
+     * @param sql
+     * @param values
+     * @return
+     */
+    protected int count(DataSource dataSource, String sql, String... values) {
+        if (dataSource == null) {
+            throw new RuntimeException("Null datasource");
+        }
+        Connection connection = null;
+        PreparedStatement preparedStatement = null;
+        ResultSet resultSet = null;
+        try {
+            connection = dataSource.getConnection();
+            preparedStatement = connection.prepareStatement(sql);
+            for (int i = 0; i < values.length; i++) {
+                preparedStatement.setString(i + 1, values[i]);
+            }
+            resultSet = preparedStatement.executeQuery();
+            if (resultSet.next()) {
+                return resultSet.getInt(1);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            safeClose(resultSet);
+            safeClose(preparedStatement);
+            safeClose(connection);
+        }
+        return 0;
+    }
+
+    /**
+     * Count the rows of a table matching all the given parameters. Each parameter must be an {@link AttributeParameter}
+     * with a single string value and a column in the given map, the same way they are matched when loading types.
+     *
+     * @param dataSource
+     * @param table
+     * @param columns The column matched by each supported attribute name
+     * @param params
+     * @return The count, or -1 if the parameters can not be matched by a count query
+     */
+    protected int count(DataSource dataSource, String table, Map<String, String> columns, Map<QueryParameter, Object[]> params) {
+        StringBuilder sql = new StringBuilder("select count(*) from ").append(table);
+        String[] values = new String[params.size()];
+        int index = 0;
+        for (Map.Entry<QueryParameter, Object[]> entry : params.entrySet()) {
+            if (!(entry.getKey() instanceof AttributeParameter)) {
+                return -1;
+            }
+            String column = columns.get(((AttributeParameter) entry.getKey()).getName());
+            Object[] paramValues = entry.getValue();
+            if (column == null || paramValues == null || paramValues.length != 1 || !(paramValues[0] instanceof String)) {
+                return -1;
+            }
+            sql.append(index == 0 ? " where " : " and ").append(column).append(" =?");
+            values[index++] = (String) paramValues[0];
+        }
+        return count(dataSource, sql.toString(), values);
+    }
+
     protected void safeClose(Connection conn) {
         if (conn != null) {
             try {
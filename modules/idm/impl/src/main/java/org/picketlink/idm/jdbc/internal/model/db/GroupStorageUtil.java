@@ -23,6 +23,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -43,6 +44,17 @@ import org.picketlink.idm.query.QueryParameter;
  * @since October 24, 2013
  */
 public class GroupStorageUtil extends AbstractStorageUtil {
+
+    /**
+     * Columns matched by the parameters supported when loading a type
+     */
+    private static final Map<String, String> COUNT_COLUMNS = new HashMap<String, String>();
+
+    static {
+        COUNT_COLUMNS.put("name", "name");
+        COUNT_COLUMNS.put("path", "path");
+    }
+
     /**
      * Delete {@link Group}
      *
@@ -129,6 +141,28 @@ public class GroupStorageUtil extends AbstractStorageUtil {
         return null;
     }
 
+    /**
+     * Count the number of {@link Group} with an id
+     *
+     * @param dataSource
+     * @param id
+     * @return
+     */
+    public int countGroups(DataSource dataSource, String id) {
+        return count(dataSource, "select count(*) from Groups where id =?", id);
+    }
+
+    /**
+     * Count the number of {@link Group} matching all the given parameters
+     *
+     * @param dataSource
+     * @param params
+     * @return The count, or -1 if the parameters can not be matched by a count query
+     */
+    public int countGroups(DataSource dataSource, Map<QueryParameter, Object[]> params) {
+        return count(dataSource, "Groups", COUNT_COLUMNS, params);
+    }
+
     /**
      * Load a {@link Group} given parameters
      *
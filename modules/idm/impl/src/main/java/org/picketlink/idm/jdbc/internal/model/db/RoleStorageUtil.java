@@ -23,6 +23,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -42,6 +43,16 @@ import org.picketlink.idm.query.QueryParameter;
  * @since October 24, 2013
  */
 public class RoleStorageUtil extends AbstractStorageUtil {
+
+    /**
+     * Columns matched by the parameters supported when loading a type
+     */
+    private static final Map<String, String> COUNT_COLUMNS = new HashMap<String, String>();
+
+    static {
+        COUNT_COLUMNS.put("name", "name");
+    }
+
     /**
      * Delete {@link Role}
      * @param dataSource
@@ -123,6 +134,28 @@ public class RoleStorageUtil extends AbstractStorageUtil {
         return null;
     }
 
+    /**
+     * Count the number of {@link Role} with an id
+     *
+     * @param dataSource
+     * @param id
+     * @return
+     */
+    public int countRoles(DataSource dataSource, String id) {
+        return count(dataSource, "select count(*) from Role where id =?", id);
+    }
+
+    /**
+     * Count the number of {@link Role} matching all the given parameters
+     *
+     * @param dataSource
+     * @param params
+     * @return The count, or -1 if the parameters can not be matched by a count query
+     */
+    public int countRoles(DataSource dataSource, Map<QueryParameter, Object[]> params) {
+        return count(dataSource, "Role", COUNT_COLUMNS, params);
+    }
+
     /**
      * Load {@link Role} given parameters
      * @param dataSource
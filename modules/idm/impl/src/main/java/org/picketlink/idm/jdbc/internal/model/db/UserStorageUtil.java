@@ -23,6 +23,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -44,6 +45,16 @@ import org.picketlink.idm.query.QueryParameter;
  * @since October 24, 2013
  */
 public class UserStorageUtil extends AbstractStorageUtil {
+
+    /**
+     * Columns matched by the parameters supported when loading a type
+     */
+    private static final Map<String, String> COUNT_COLUMNS = new HashMap<String, String>();
+
+    static {
+        COUNT_COLUMNS.put("loginName", "loginName");
+    }
+
     /**
      * Count the number of {@link User} with an id
      *
@@ -77,6 +88,17 @@ public class UserStorageUtil extends AbstractStorageUtil {
         return 0;
     }
 
+    /**
+     * Count the number of {@link User} matching all the given parameters
+     *
+     * @param dataSource
+     * @param params
+     * @return The count, or -1 if the parameters can not be matched by a count query
+     */
+    public int countUsers(DataSource dataSource, Map<QueryParameter, Object[]> params) {
+        return count(dataSource, "User", COUNT_COLUMNS, params);
+    }
+
     /**
      * Delete {@link Agent}
      *
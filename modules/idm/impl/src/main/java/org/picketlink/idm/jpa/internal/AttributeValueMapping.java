@@ -0,0 +1,467 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.idm.jpa.internal;
+
+import org.picketlink.common.properties.Property;
+import org.picketlink.common.util.Base64;
+import org.picketlink.idm.IdentityManagementException;
+import org.picketlink.idm.jpa.annotations.AttributeBooleanValue;
+import org.picketlink.idm.jpa.annotations.AttributeClass;
+import org.picketlink.idm.jpa.annotations.AttributeDateValue;
+import org.picketlink.idm.jpa.annotations.AttributeNumberValue;
+import org.picketlink.idm.jpa.annotations.AttributeStringValue;
+import org.picketlink.idm.jpa.annotations.AttributeValue;
+import org.picketlink.idm.jpa.internal.mappers.EntityMapper;
+import org.picketlink.idm.model.Attribute;
+import org.picketlink.idm.query.Condition;
+import org.picketlink.idm.query.internal.BetweenCondition;
+import org.picketlink.idm.query.internal.EqualCondition;
+import org.picketlink.idm.query.internal.GreaterThanCondition;
+import org.picketlink.idm.query.internal.InCondition;
+import org.picketlink.idm.query.internal.LessThanCondition;
+import org.picketlink.idm.query.internal.LikeCondition;
+
+import javax.persistence.Column;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.annotation.Annotation;
+import java.util.Date;
+import java.util.Map.Entry;
+
+/**
+ * <p>Maps the values of ad-hoc attributes to the properties of an attribute entity.</p>
+ *
+ * <p>When the entity provides a property annotated with {@link AttributeStringValue}, {@link AttributeNumberValue},
+ * {@link AttributeBooleanValue} or {@link AttributeDateValue}, values of the corresponding type are stored as is,
+ * so they can be indexed and compared by the database. Any other value is serialized to the property annotated with
+ * {@link AttributeValue}, as raw bytes if the property is a <code>byte[]</code> or as a Base64 string otherwise. The
+ * class of each value is stored in the property annotated with {@link AttributeClass}, so typed values are restored
+ * without being deserialized.</p>
+ *
+ * <p>Typed properties are opt-in: mapping them on an existing entity adds columns to its table, which must be
+ * migrated. Rows stored before the migration keep their serialized value and are still loaded and matched by
+ * equality through it.</p>
+ *
+ * @see JPAIdentityStore
+ */
+class AttributeValueMapping {
+
+    /**
+     * <p>Default length of string columns, as defined by {@link Column#length()}.</p>
+     */
+    private static final int DEFAULT_STRING_LENGTH = 255;
+
+    private static final long MAX_EXACT_DOUBLE_INTEGER = 1L << 53;
+
+    private final Property classProperty;
+    private final Property valueProperty;
+    private final Property stringProperty;
+    private final Property numberProperty;
+    private final Property booleanProperty;
+    private final Property dateProperty;
+    private final int maxStringLength;
+
+    AttributeValueMapping(EntityMapper attributeMapper) {
+        this.classProperty = getProperty(attributeMapper, AttributeClass.class);
+        this.valueProperty = getProperty(attributeMapper, AttributeValue.class);
+        this.stringProperty = getProperty(attributeMapper, AttributeStringValue.class);
+        this.numberProperty = getProperty(attributeMapper, AttributeNumberValue.class);
+        this.booleanProperty = getProperty(attributeMapper, AttributeBooleanValue.class);
+        this.dateProperty = getProperty(attributeMapper, AttributeDateValue.class);
+
+        int maxStringLength = DEFAULT_STRING_LENGTH;
+
+        if (this.stringProperty != null) {
+            Column column = this.stringProperty.getAnnotatedElement().getAnnotation(Column.class);
+
+            if (column != null) {
+                maxStringLength = column.length();
+            }
+        }
+
+        this.maxStringLength = maxStringLength;
+    }
+
+    /**
+     * <p>Stores the given value in the given attribute entity.</p>
+     *
+     * @param attributeEntity
+     * @param value
+     */
+    void setValue(Object attributeEntity, Serializable value) {
+        if (this.classProperty != null && String.class.equals(this.classProperty.getJavaClass())) {
+            this.classProperty.setValue(attributeEntity, value.getClass().getName());
+        }
+
+        Property typedProperty = getTypedProperty(value);
+
+        if (typedProperty != null) {
+            typedProperty.setValue(attributeEntity, toTypedValue(typedProperty, value));
+        } else {
+            this.valueProperty.setValue(attributeEntity, encode(value));
+        }
+    }
+
+    /**
+     * <p>Restores the value stored in the given attribute entity.</p>
+     *
+     * @param attributeEntity
+     * @return
+     */
+    Serializable getValue(Object attributeEntity) {
+        Object valueClass = null;
+
+        if (this.classProperty != null) {
+            valueClass = this.classProperty.getValue(attributeEntity);
+        }
+
+        if (valueClass != null) {
+            Property typedProperty = getTypedProperty(valueClass.toString());
+
+            if (typedProperty != null) {
+                Object typedValue = typedProperty.getValue(attributeEntity);
+
+                if (typedValue != null) {
+                    return fromTypedValue(valueClass.toString(), typedValue);
+                }
+            }
+        }
+
+        return decode(this.valueProperty.getValue(attributeEntity));
+    }
+
+    /**
+     * <p>Creates a predicate matching the attribute entities whose value satisfies the given condition. Range and like
+     * conditions are only evaluated by the database when the value maps to a typed property, otherwise they are
+     * evaluated against the serialized value.</p>
+     *
+     * <p>Equal, in and like conditions also match the serialized value, so rows stored before the typed properties
+     * were mapped are still found. Range conditions on typed values only match rows holding typed values.</p>
+     *
+     * @param cb
+     * @param from
+     * @param condition
+     * @return
+     */
+    Predicate createPredicate(CriteriaBuilder cb, Path<?> from, Condition condition) {
+        if (EqualCondition.class.isInstance(condition)) {
+            return createEqualPredicate(cb, from, ((EqualCondition) condition).getValue());
+        } else if (InCondition.class.isInstance(condition)) {
+            return createInPredicate(cb, from, ((InCondition) condition).getValue());
+        } else if (LikeCondition.class.isInstance(condition)) {
+            Object value = ((LikeCondition) condition).getValue();
+
+            Predicate serializedPredicate = null;
+
+            if (String.class.equals(this.valueProperty.getJavaClass())) {
+                serializedPredicate = cb.like(from.<String>get(this.valueProperty.getName()), (String) encode((Serializable) value));
+            }
+
+            if (this.stringProperty != null) {
+                Predicate typedPredicate = cb.like(from.<String>get(this.stringProperty.getName()), value.toString());
+
+                if (serializedPredicate == null) {
+                    return typedPredicate;
+                }
+
+                return cb.or(typedPredicate, serializedPredicate);
+            }
+
+            if (serializedPredicate == null) {
+                throw new IdentityManagementException("Serialized attribute values stored as binary can only be queried by equality.");
+            }
+
+            return serializedPredicate;
+        } else if (GreaterThanCondition.class.isInstance(condition)) {
+            GreaterThanCondition greaterThanCondition = (GreaterThanCondition) condition;
+            Operand operand = getComparableOperand(greaterThanCondition.getValue());
+
+            if (greaterThanCondition.isOrEqual()) {
+                return cb.greaterThanOrEqualTo(from.<Comparable>get(operand.property.getName()), operand.value);
+            }
+
+            return cb.greaterThan(from.<Comparable>get(operand.property.getName()), operand.value);
+        } else if (LessThanCondition.class.isInstance(condition)) {
+            LessThanCondition lessThanCondition = (LessThanCondition) condition;
+            Operand operand = getComparableOperand(lessThanCondition.getValue());
+
+            if (lessThanCondition.isOrEqual()) {
+                return cb.lessThanOrEqualTo(from.<Comparable>get(operand.property.getName()), operand.value);
+            }
+
+            return cb.lessThan(from.<Comparable>get(operand.property.getName()), operand.value);
+        } else if (BetweenCondition.class.isInstance(condition)) {
+            BetweenCondition betweenCondition = (BetweenCondition) condition;
+            Operand x = getComparableOperand(betweenCondition.getX());
+            Operand y = getComparableOperand(betweenCondition.getY());
+
+            if (x.property != y.property) {
+                throw new IdentityManagementException("Values of between condition [" + condition + "] are stored in different columns.");
+            }
+
+            return cb.between(from.<Comparable>get(x.property.getName()), x.value, y.value);
+        }
+
+        throw new IdentityManagementException("Unsupported query condition [" + condition + "].");
+    }
+
+    /**
+     * <p>Creates a predicate matching the attribute entities whose value is equal to any of the given values.</p>
+     *
+     * @param cb
+     * @param from
+     * @param values
+     * @return
+     */
+    Predicate createInPredicate(CriteriaBuilder cb, Path<?> from, Object[] values) {
+        if (!isTyped()) {
+            Object[] valuesToSearch = new Object[values.length];
+
+            for (int i = 0; i < values.length; i++) {
+                valuesToSearch[i] = encode((Serializable) values[i]);
+            }
+
+            return from.get(this.valueProperty.getName()).in(valuesToSearch);
+        }
+
+        Predicate[] disjunction = new Predicate[values.length];
+
+        for (int i = 0; i < values.length; i++) {
+            disjunction[i] = createEqualPredicate(cb, from, values[i]);
+        }
+
+        return cb.or(disjunction);
+    }
+
+    private Predicate createEqualPredicate(CriteriaBuilder cb, Path<?> from, Object value) {
+        Predicate serializedPredicate = cb.equal(from.get(this.valueProperty.getName()), encode((Serializable) value));
+        Property typedProperty = getTypedProperty(value);
+
+        if (typedProperty != null) {
+            return cb.or(cb.equal(from.get(typedProperty.getName()), toTypedValue(typedProperty, value)), serializedPredicate);
+        }
+
+        return serializedPredicate;
+    }
+
+    private Operand getComparableOperand(Object value) {
+        Property typedProperty = getTypedProperty(value);
+
+        if (typedProperty != null) {
+            return new Operand(typedProperty, toTypedValue(typedProperty, value));
+        }
+
+        return new Operand(this.valueProperty, toComparable(encode((Serializable) value)));
+    }
+
+    private Comparable toComparable(Object encodedValue) {
+        if (!String.class.isInstance(encodedValue)) {
+            throw new IdentityManagementException("Serialized attribute values stored as binary can only be queried by equality.");
+        }
+
+        return (String) encodedValue;
+    }
+
+    private boolean isTyped() {
+        return this.stringProperty != null || this.numberProperty != null || this.booleanProperty != null
+            || this.dateProperty != null;
+    }
+
+    /**
+     * <p>Returns the typed property used to store the given value, or null if the value must be serialized.</p>
+     */
+    private Property getTypedProperty(Object value) {
+        if (value == null) {
+            return null;
+        }
+
+        if (String.class.equals(value.getClass())) {
+            if (((String) value).length() > this.maxStringLength) {
+                return null;
+            }
+
+            return this.stringProperty;
+        }
+
+        if (Number.class.isInstance(value)) {
+            if (isTypedNumber(value)) {
+                return this.numberProperty;
+            }
+
+            return null;
+        }
+
+        return getTypedProperty(value.getClass().getName());
+    }
+
+    /**
+     * <p>Returns the typed property that may hold values of the given class, if any. A number is only stored in the
+     * number property if the conversion to the type of the property does not lose information.</p>
+     */
+    private Property getTypedProperty(String valueClass) {
+        if (String.class.getName().equals(valueClass)) {
+            return this.stringProperty;
+        } else if (Boolean.class.getName().equals(valueClass)) {
+            return this.booleanProperty;
+        } else if (Date.class.getName().equals(valueClass)) {
+            return this.dateProperty;
+        } else if (this.numberProperty != null) {
+            boolean integral = Byte.class.getName().equals(valueClass) || Short.class.getName().equals(valueClass)
+                || Integer.class.getName().equals(valueClass);
+
+            if (Long.class.equals(this.numberProperty.getJavaClass())) {
+                if (integral || Long.class.getName().equals(valueClass)) {
+                    return this.numberProperty;
+                }
+            } else if (integral || Long.class.getName().equals(valueClass) || Float.class.getName().equals(valueClass)
+                || Double.class.getName().equals(valueClass)) {
+                return this.numberProperty;
+            }
+        }
+
+        return null;
+    }
+
+    private boolean isTypedNumber(Object value) {
+        if (this.numberProperty == null || getTypedProperty(value.getClass().getName()) == null) {
+            return false;
+        }
+
+        if (Long.class.isInstance(value) && Double.class.equals(this.numberProperty.getJavaClass())) {
+            // larger values can not be represented exactly by a double
+            long longValue = (Long) value;
+            return longValue >= -MAX_EXACT_DOUBLE_INTEGER && longValue <= MAX_EXACT_DOUBLE_INTEGER;
+        }
+
+        if (Double.class.isInstance(value)) {
+            Double doubleValue = (Double) value;
+            return !doubleValue.isNaN() && !doubleValue.isInfinite();
+        }
+
+        if (Float.class.isInstance(value)) {
+            Float floatValue = (Float) value;
+            return !floatValue.isNaN() && !floatValue.isInfinite();
+        }
+
+        return true;
+    }
+
+    private Comparable toTypedValue(Property typedProperty, Object value) {
+        if (typedProperty == this.numberProperty) {
+            Number number = (Number) value;
+
+            if (Long.class.equals(typedProperty.getJavaClass())) {
+                return number.longValue();
+            }
+
+            return number.doubleValue();
+        }
+
+        return (Comparable) value;
+    }
+
+    private Serializable fromTypedValue(String valueClass, Object typedValue) {
+        if (Date.class.getName().equals(valueClass)) {
+            // providers may return a subclass, such as java.sql.Timestamp
+            return new Date(((Date) typedValue).getTime());
+        }
+
+        if (Number.class.isInstance(typedValue)) {
+            Number number = (Number) typedValue;
+
+            if (Byte.class.getName().equals(valueClass)) {
+                return number.byteValue();
+            } else if (Short.class.getName().equals(valueClass)) {
+                return number.shortValue();
+            } else if (Integer.class.getName().equals(valueClass)) {
+                return number.intValue();
+            } else if (Long.class.getName().equals(valueClass)) {
+                return number.longValue();
+            } else if (Float.class.getName().equals(valueClass)) {
+                return number.floatValue();
+            } else if (Double.class.getName().equals(valueClass)) {
+                return number.doubleValue();
+            }
+        }
+
+        return (Serializable) typedValue;
+    }
+
+    private Object encode(Serializable value) {
+        if (!byte[].class.equals(this.valueProperty.getJavaClass())) {
+            return Base64.encodeObject(value);
+        }
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+        try {
+            ObjectOutputStream oos = new ObjectOutputStream(bos);
+
+            oos.writeObject(value);
+            oos.close();
+        } catch (IOException e) {
+            throw new IdentityManagementException("Could not serialize attribute value [" + value + "].", e);
+        }
+
+        return bos.toByteArray();
+    }
+
+    private Serializable decode(Object storedValue) {
+        if (storedValue == null) {
+            return null;
+        }
+
+        if (!byte[].class.isInstance(storedValue)) {
+            return (Serializable) Base64.decodeToObject(storedValue.toString());
+        }
+
+        try {
+            return (Serializable) new ObjectInputStream(new ByteArrayInputStream((byte[]) storedValue)).readObject();
+        } catch (Exception e) {
+            throw new IdentityManagementException("Could not deserialize attribute value.", e);
+        }
+    }
+
+    private static Property getProperty(EntityMapper attributeMapper, Class<? extends Annotation> annotation) {
+        Entry<Property, Property> property = attributeMapper.getProperty(Attribute.class, annotation);
+
+        if (property == null) {
+            return null;
+        }
+
+        return property.getValue();
+    }
+
+    private static class Operand {
+
+        private final Property property;
+        private final Comparable value;
+
+        Operand(Property property, Comparable value) {
+            this.property = property;
+            this.value = value;
+        }
+    }
+}
@@ -23,7 +23,6 @@ import org.picketlink.common.properties.query.NamedPropertyCriteria;
 import org.picketlink.common.properties.query.PropertyQueries;
 import org.picketlink.common.properties.query.TypedPropertyCriteria;
 import org.picketlink.common.properties.query.TypedPropertyCriteria.MatchOption;
-import org.picketlink.common.util.Base64;
 import org.picketlink.idm.IdentityManagementException;
 import org.picketlink.idm.config.IdentityStoreConfiguration.IdentityOperation;
 import org.picketlink.idm.config.JPAIdentityStoreConfiguration;
@@ -74,6 +73,7 @@ import org.picketlink.idm.permission.annotations.AllowedOperations;
 import org.picketlink.idm.query.AttributeParameter;
 import org.picketlink.idm.query.Condition;
 import org.picketlink.idm.query.IdentityQuery;
+import org.picketlink.idm.query.KeysetPaginationContext;
 import org.picketlink.idm.query.QueryParameter;
 import org.picketlink.idm.query.RelationshipQuery;
 import org.picketlink.idm.query.RelationshipQueryParameter;
@@ -91,6 +91,7 @@ import org.picketlink.idm.spi.PartitionStore;
 
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
+import javax.persistence.PersistenceUnitUtil;
 import javax.persistence.Query;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
@@ -109,10 +110,13 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.picketlink.common.reflection.Reflections.classForName;
 import static org.picketlink.common.reflection.Reflections.newInstance;
@@ -142,6 +146,8 @@ public class JPAIdentityStore
     public static final String INVOCATION_CTX_ENTITY_MANAGER = "CTX_ENTITY_MANAGER";
 
     private final List<EntityMapper> entityMappers = new ArrayList<EntityMapper>();
+    private final ConcurrentMap<Class<?>, AttributeValueMapping> attributeValueMappings =
+            new ConcurrentHashMap<Class<?>, AttributeValueMapping>();
 
     @Override
     public void setup(JPAIdentityStoreConfiguration config) {
@@ -390,6 +396,29 @@ public class JPAIdentityStore
         }
     }
 
+    @Override
+    public void loadAttributes(IdentityContext context, List<? extends AttributedType> attributedTypes) {
+        EntityManager entityManager = getEntityManager(context);
+        Map<Class<? extends AttributedType>, List<AttributedType>> typesByClass =
+                new LinkedHashMap<Class<? extends AttributedType>, List<AttributedType>>();
+
+        // the attribute mapper and how owners are referenced depend on the type, so we group them before querying
+        for (AttributedType attributedType : attributedTypes) {
+            List<AttributedType> types = typesByClass.get(attributedType.getClass());
+
+            if (types == null) {
+                types = new ArrayList<AttributedType>();
+                typesByClass.put(attributedType.getClass(), types);
+            }
+
+            types.add(attributedType);
+        }
+
+        for (Entry<Class<? extends AttributedType>, List<AttributedType>> entry : typesByClass.entrySet()) {
+            loadAttributes(entry.getKey(), entry.getValue(), entityManager);
+        }
+    }
+
     @Override
     public void removeAttribute(IdentityContext context, AttributedType attributedType, String attributeName) {
         EntityMapper attributeMapper = getAttributeMapper(attributedType.getClass());
@@ -426,31 +455,123 @@ public class JPAIdentityStore
 
         for (Condition condition : identityQuery.getConditions()) {
             if (IdentityType.ID.equals(condition.getParameter())) {
-                if (!EqualCondition.class.isInstance(condition)) {
-                    throw new IdentityManagementException("Only equality conditions are allowed when queryng based on the identifier.");
-                }
+                return lookupIdentityTypesById(context, type, condition);
+            }
+        }
 
-                EqualCondition equalCondition = (EqualCondition) condition;
-                Object value = equalCondition.getValue();
+        KeysetPaginationContext keysetContext = getKeysetPaginationContext(identityQuery);
 
-                if (value != null) {
-                    V identityType = (V) lookupIdentityTypeById(context, type, value.toString());
+        if (keysetContext != null && keysetContext.isLastPage()) {
+            return result;
+        }
 
-                    if (identityType != null) {
-                        result.add(identityType);
-                    }
-                }
+        EntityMapper rootMapper = getRootMapper(type);
+        EntityManager entityManager = getEntityManager(context);
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery cq = cb.createQuery(rootMapper.getEntityType());
+        Root<?> rootEntity = cq.from(rootMapper.getEntityType());
+        List<Predicate> predicates = createQueryPredicates(context, identityQuery, rootMapper, entityManager, cb, cq, rootEntity);
+        Property idProperty = rootMapper.getProperty(Identifier.class).getValue();
+
+        if (keysetContext != null && !keysetContext.isFirstPage()) {
+            predicates.add(createKeysetPredicate(cb, rootEntity, new ArrayList<Sort>(identityQuery.getSorting()), idProperty,
+                    keysetContext.getLastKey()));
+        }
 
-                return result;
+        cq.select(rootEntity);
+
+        cq.where(predicates.toArray(new Predicate[predicates.size()]));
+
+        List<Order> orders = new ArrayList<Order>();
+
+        for (Sort sort : identityQuery.getSorting()) {
+            String sortPropertyName = getSortPropertyName(sort);
+
+            if (sort.isAscending()) {
+                orders.add(cb.asc(rootEntity.get(sortPropertyName)));
+            } else {
+                orders.add(cb.desc(rootEntity.get(sortPropertyName)));
             }
         }
 
-        EntityMapper rootMapper = getRootMapper(type);
+        // the identifier is used as a tiebreaker, so the order is stable between pages
+        if (keysetContext != null) {
+            orders.add(cb.asc(rootEntity.get(idProperty.getName())));
+        }
+
+        if (!orders.isEmpty()) {
+            cq.orderBy(orders);
+        }
+
+        Query query = entityManager.createQuery(cq);
+
+        if (identityQuery.getLimit() > 0) {
+            query.setMaxResults(identityQuery.getLimit());
+
+            if (identityQuery.getOffset() > 0 && keysetContext == null) {
+                query.setFirstResult(identityQuery.getOffset());
+            }
+        }
+
+        List<?> entities = query.getResultList();
+
+        result.addAll(rootMapper.<V>createTypes(entities, entityManager));
+
+        if (keysetContext != null) {
+            identityQuery.setPaginationContext(createNextKeysetPaginationContext(identityQuery, rootMapper, idProperty,
+                    keysetContext, entities));
+        }
+
+        return result;
+    }
+
+    @Override
+    public <V extends IdentityType> int countQueryResults(IdentityContext context, IdentityQuery<V> identityQuery) {
+        for (Condition condition : identityQuery.getConditions()) {
+            if (IdentityType.ID.equals(condition.getParameter())) {
+                // the limit and the pagination context of the query do not apply to counts
+                return lookupIdentityTypesById(context, identityQuery.getIdentityType(), condition).size();
+            }
+        }
+
+        EntityMapper rootMapper = getRootMapper(identityQuery.getIdentityType());
         EntityManager entityManager = getEntityManager(context);
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
-        CriteriaQuery cq = cb.createQuery(rootMapper.getEntityType());
-        List<Predicate> predicates = new ArrayList<Predicate>();
+        CriteriaQuery<Long> cq = cb.createQuery(Long.class);
         Root<?> rootEntity = cq.from(rootMapper.getEntityType());
+        List<Predicate> predicates = createQueryPredicates(context, identityQuery, rootMapper, entityManager, cb, cq, rootEntity);
+
+        cq.select(cb.count(rootEntity));
+
+        cq.where(predicates.toArray(new Predicate[predicates.size()]));
+
+        return entityManager.createQuery(cq).getSingleResult().intValue();
+    }
+
+    private <V extends IdentityType> List<V> lookupIdentityTypesById(IdentityContext context, Class<V> type, Condition condition) {
+        if (!EqualCondition.class.isInstance(condition)) {
+            throw new IdentityManagementException("Only equality conditions are allowed when queryng based on the identifier.");
+        }
+
+        List<V> result = new ArrayList<V>();
+        Object value = ((EqualCondition) condition).getValue();
+
+        if (value != null) {
+            V identityType = (V) lookupIdentityTypeById(context, type, value.toString());
+
+            if (identityType != null) {
+                result.add(identityType);
+            }
+        }
+
+        return result;
+    }
+
+    private <V extends IdentityType> List<Predicate> createQueryPredicates(IdentityContext context, IdentityQuery<V> identityQuery,
+                                                                       EntityMapper rootMapper, EntityManager entityManager,
+                                                                       CriteriaBuilder cb, CriteriaQuery<?> cq, Root<?> rootEntity) {
+        Class<V> type = identityQuery.getIdentityType();
+        List<Predicate> predicates = new ArrayList<Predicate>();
         Partition partition = context.getPartition();
 
         for (Condition condition : identityQuery.getConditions()) {
@@ -510,56 +631,107 @@ public class JPAIdentityStore
                         }
                     }
 
-                    addCondition(entityManager, cb, predicates, condition, attributeProperty, attributeOwnerEntity, false);
+                    addCondition(entityManager, cb, predicates, condition, attributeProperty, attributeOwnerEntity);
                 } else if (getConfig().supportsAttribute()) {
                     addAttributeQueryPredicates(type, entityManager, cb, cq, rootEntity, predicates, attributeParameter, condition, null);
                 }
             }
         }
 
-        Property idProperty = rootMapper.getProperty(Identifier.class).getValue();
+        return predicates;
+    }
 
-        cq.select(rootEntity.get(idProperty.getName()));
+    private KeysetPaginationContext getKeysetPaginationContext(IdentityQuery<?> identityQuery) {
+        if (identityQuery.getLimit() > 0 && KeysetPaginationContext.class.isInstance(identityQuery.getPaginationContext())) {
+            return (KeysetPaginationContext) identityQuery.getPaginationContext();
+        }
 
-        cq.where(predicates.toArray(new Predicate[predicates.size()]));
+        return null;
+    }
 
-        if (!identityQuery.getSorting().isEmpty()) {
-            List<Order> orders = new ArrayList<Order>();
+    private String getSortPropertyName(Sort sort) {
+        QueryParameter queryParameter = sort.getParameter();
 
-            for (Sort sort : identityQuery.getSorting()) {
-                QueryParameter queryParameter = sort.getParameter();
+        if (!AttributeParameter.class.isInstance(queryParameter)) {
+            throw new IdentityManagementException("Sorting parameter is not a [" + AttributeParameter.class + "].");
+        }
 
-                if (!AttributeParameter.class.isInstance(queryParameter)) {
-                    throw new IdentityManagementException("Sorting parameter is not a [" + AttributeParameter.class + "].");
-                }
+        return ((AttributeParameter) queryParameter).getName();
+    }
 
-                AttributeParameter attributeParameter = (AttributeParameter) queryParameter;
+    /**
+     * <p>Creates a predicate that only matches the entities after the given key, considering the sort parameters
+     * followed by the identifier. For sort parameters <code>(a, b)</code> and the last key <code>(x, y, id)</code>
+     * the predicate is <code>a &gt; x or (a = x and b &gt; y) or (a = x and b = y and id &gt; lastId)</code>, where the
+     * comparison depends on the sort direction.</p>
+     */
+    private Predicate createKeysetPredicate(CriteriaBuilder cb, Root<?> rootEntity, List<Sort> sorting, Property idProperty,
+                                            Serializable[] lastKey) {
+        if (lastKey.length != sorting.size() + 1) {
+            throw new IdentityManagementException("Pagination context does not match the sort parameters of the query.");
+        }
 
-                if (sort.isAscending()) {
-                    orders.add(cb.asc(rootEntity.get(attributeParameter.getName())));
-                } else {
-                    orders.add(cb.desc(rootEntity.get(attributeParameter.getName())));
-                }
+        List<Predicate> disjunction = new ArrayList<Predicate>();
+        List<Predicate> previousKeysEqual = new ArrayList<Predicate>();
+
+        for (int i = 0; i <= sorting.size(); i++) {
+            Path<Comparable> path;
+            boolean ascending;
+
+            if (i < sorting.size()) {
+                path = rootEntity.get(getSortPropertyName(sorting.get(i)));
+                ascending = sorting.get(i).isAscending();
+            } else {
+                path = rootEntity.get(idProperty.getName());
+                ascending = true;
             }
 
-            cq.orderBy(orders);
+            Comparable value = (Comparable) lastKey[i];
+            List<Predicate> conjunction = new ArrayList<Predicate>(previousKeysEqual);
+
+            if (ascending) {
+                conjunction.add(cb.greaterThan(path, value));
+            } else {
+                conjunction.add(cb.lessThan(path, value));
+            }
+
+            disjunction.add(cb.and(conjunction.toArray(new Predicate[conjunction.size()])));
+            previousKeysEqual.add(cb.equal(path, value));
         }
 
-        Query query = entityManager.createQuery(cq);
+        return cb.or(disjunction.toArray(new Predicate[disjunction.size()]));
+    }
 
-        if (identityQuery.getLimit() > 0) {
-            query.setMaxResults(identityQuery.getLimit());
+    private KeysetPaginationContext createNextKeysetPaginationContext(IdentityQuery<?> identityQuery, EntityMapper rootMapper,
+                                                                      Property idProperty, KeysetPaginationContext keysetContext,
+                                                                      List<?> entities) {
+        boolean lastPage = entities.size() < identityQuery.getLimit();
 
-            if (identityQuery.getOffset() > 0) {
-                query.setFirstResult(identityQuery.getOffset());
-            }
+        if (entities.isEmpty()) {
+            return new KeysetPaginationContext(keysetContext.getLastKey(), lastPage);
         }
 
-        for (Object entity : query.getResultList()) {
-            result.add(rootMapper.<V>createType(entityManager.find(rootMapper.getEntityType(), entity), entityManager));
+        Object lastEntity = entities.get(entities.size() - 1);
+        List<Sort> sorting = new ArrayList<Sort>(identityQuery.getSorting());
+        Serializable[] lastKey = new Serializable[sorting.size() + 1];
+
+        for (int i = 0; i < sorting.size(); i++) {
+            String propertyName = getSortPropertyName(sorting.get(i));
+            Property<Object> sortProperty = PropertyQueries.createQuery(rootMapper.getEntityType())
+                    .addCriteria(new NamedPropertyCriteria(propertyName))
+                    .getFirstResult();
+            Object value = sortProperty.getValue(lastEntity);
+
+            if (!Comparable.class.isInstance(value) || !Serializable.class.isInstance(value)) {
+                throw new IdentityManagementException("Sorting parameter [" + propertyName + "] can not be used for keyset pagination. Value [" + value + "] is null or not comparable.");
+            }
+
+            lastKey[i] = (Serializable) value;
         }
 
-        return result;
+        lastKey[sorting.size()] = (Serializable) idProperty.getValue(lastEntity);
+
+        return new KeysetPaginationContext(lastKey, lastPage);
     }
 
     private void addCondition(EntityManager entityManager,
@@ -567,16 +739,11 @@ public class JPAIdentityStore
         List<Predicate> predicates,
         Condition condition,
         Property attributeProperty,
-        Root<?> attributeOwnerEntity,
-        boolean convertValueToBase64) {
+        Root<?> attributeOwnerEntity) {
         if (EqualCondition.class.isInstance(condition)) {
             EqualCondition equalCondition = (EqualCondition) condition;
             Object parameterValue = equalCondition.getValue();
 
-            if (convertValueToBase64) {
-                parameterValue = Base64.encodeObject((Serializable) parameterValue);
-            }
-
             if (isMappedType(attributeProperty.getJavaClass())) {
                 AttributedType ownerType = (AttributedType) parameterValue;
 
@@ -590,19 +757,11 @@ public class JPAIdentityStore
             LikeCondition likeCondition = (LikeCondition) condition;
             String parameterValue = (String) likeCondition.getValue();
 
-            if (convertValueToBase64) {
-                parameterValue = Base64.encodeObject((Serializable) parameterValue);
-            }
-
             predicates.add(cb.like(attributeOwnerEntity.<String>get(attributeProperty.getName()), parameterValue));
         } else if (GreaterThanCondition.class.isInstance(condition)) {
             GreaterThanCondition greaterThanCondition = (GreaterThanCondition) condition;
             Comparable parameterValue = (Comparable) greaterThanCondition.getValue();
 
-            if (convertValueToBase64) {
-                parameterValue = Base64.encodeObject((Serializable) parameterValue);
-            }
-
             if (greaterThanCondition.isOrEqual()) {
                 predicates.add(cb
                     .greaterThanOrEqualTo(attributeOwnerEntity.<Comparable>get(attributeProperty.getName()), parameterValue));
@@ -614,10 +773,6 @@ public class JPAIdentityStore
             LessThanCondition lessThanCondition = (LessThanCondition) condition;
             Comparable parameterValue = (Comparable) lessThanCondition.getValue();
 
-            if (convertValueToBase64) {
-                parameterValue = Base64.encodeObject((Serializable) parameterValue);
-            }
-
             if (lessThanCondition.isOrEqual()) {
                 predicates.add(cb
                     .lessThanOrEqualTo(attributeOwnerEntity
@@ -631,25 +786,11 @@ public class JPAIdentityStore
             Comparable x = betweenCondition.getX();
             Comparable y = betweenCondition.getY();
 
-            if (convertValueToBase64) {
-                x = Base64.encodeObject((Serializable) x);
-                y = Base64.encodeObject((Serializable) y);
-            }
-
             predicates.add(cb.between(attributeOwnerEntity.<Comparable>get(attributeProperty.getName()), x, y));
         } else if (InCondition.class.isInstance(condition)) {
             InCondition inCondition = (InCondition) condition;
-            Object[] valuesToSearch = new String[inCondition.getValue().length];
-
-            for (int i = 0; i < inCondition.getValue().length; i++) {
-                if (convertValueToBase64) {
-                    valuesToSearch[i] = Base64.encodeObject((Serializable) inCondition.getValue()[i]);
-                } else {
-                    valuesToSearch[i] = inCondition.getValue()[i];
-                }
-            }
 
-            predicates.add(attributeOwnerEntity.get(attributeProperty.getName()).in(valuesToSearch));
+            predicates.add(attributeOwnerEntity.get(attributeProperty.getName()).in(inCondition.getValue()));
         } else {
             throw new IdentityManagementException("Unsupported query condition [" + condition + "].");
         }
@@ -814,7 +955,7 @@ public class JPAIdentityStore
         EntityMapper attributeMapper = getAttributeMapper(attributedType.getClass());
 
         Property attributeNameProperty = attributeMapper.getProperty(Attribute.class, AttributeName.class).getValue();
-        Property attributeValueProperty = attributeMapper.getProperty(Attribute.class, AttributeValue.class).getValue();
+        AttributeValueMapping attributeValueMapping = getAttributeValueMapping(attributeMapper);
         Property ownerProperty = attributeMapper.getProperty(Attribute.class, OwnerReference.class).getValue();
 
         EntityManager entityManager = getEntityManager(context);
@@ -823,7 +964,7 @@ public class JPAIdentityStore
             Object attributeEntity = attributeMapper.createEntity();
 
             attributeNameProperty.setValue(attributeEntity, attribute.getName());
-            attributeValueProperty.setValue(attributeEntity, Base64.encodeObject(attributeValue));
+            attributeValueMapping.setValue(attributeEntity, attributeValue);
 
             if (getConfig().supportsType(attributedType.getClass(), IdentityOperation.create)
                     && !String.class.equals(ownerProperty.getJavaClass())) {
@@ -910,6 +1051,109 @@ public class JPAIdentityStore
         return entity;
     }
 
+    /**
+     * <p>Returns the owner entities of the given types, in the same order and with null for types without an owner. All
+     * types must be of the same class. Owners are resolved with one query per batch of {@link EntityMapper#BATCH_SIZE}
+     * types instead of one lookup per type.</p>
+     *
+     * @param attributedTypes
+     * @param ownerProperty
+     * @param entityManager
+     * @return
+     */
+    public List<Object> getOwnerEntities(final List<? extends AttributedType> attributedTypes, final Property ownerProperty,
+                                         final EntityManager entityManager) {
+        List<Object> ownerEntities = new ArrayList<Object>(attributedTypes.size());
+
+        if (attributedTypes.isEmpty()) {
+            return ownerEntities;
+        }
+
+        Class<? extends AttributedType> attributedType = attributedTypes.get(0).getClass();
+        EntityMapper attributedTypeMapper = getRootMapper(attributedType);
+        PersistenceUnitUtil persistenceUnitUtil = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+
+        if (ownerProperty.getJavaClass().isAssignableFrom(attributedTypeMapper.getEntityType())) {
+            Property idProperty = attributedTypeMapper.getProperty(Identifier.class).getValue();
+            List<Object> identifiers = new ArrayList<Object>(attributedTypes.size());
+
+            for (AttributedType type : attributedTypes) {
+                identifiers.add(type.getId());
+            }
+
+            Map<Object, Object> entitiesById = findEntitiesByOwner(attributedTypeMapper.getEntityType(), idProperty,
+                    null, identifiers, entityManager);
+
+            for (AttributedType type : attributedTypes) {
+                ownerEntities.add(entitiesById.get(type.getId()));
+            }
+
+            return ownerEntities;
+        }
+
+        EntityMapper ownerMapper = getMapperForEntity(ownerProperty.getJavaClass());
+        Entry<Property, Property> ownerReference = ownerMapper.getProperty(attributedType, OwnerReference.class);
+
+        if (!ownerMapper.getEntityType().isAnnotationPresent(IdentityManaged.class) || ownerReference == null) {
+            return new ArrayList<Object>(Collections.nCopies(attributedTypes.size(), null));
+        }
+
+        // the owner is associated with another entity, which is resolved first
+        List<Object> parentEntities = getOwnerEntities(attributedTypes, ownerReference.getValue(), entityManager);
+        List<Object> existingParentEntities = new ArrayList<Object>(parentEntities);
+
+        existingParentEntities.removeAll(Collections.singleton(null));
+
+        Map<Object, Object> entitiesByParent = findEntitiesByOwner(ownerMapper.getEntityType(), ownerReference.getValue(),
+                ownerReference.getValue(), existingParentEntities, entityManager);
+
+        for (Object parentEntity : parentEntities) {
+            Object entity = null;
+
+            if (parentEntity != null) {
+                entity = entitiesByParent.get(persistenceUnitUtil.getIdentifier(parentEntity));
+            }
+
+            ownerEntities.add(entity);
+        }
+
+        return ownerEntities;
+    }
+
+    /**
+     * <p>Selects the entities whose <code>property</code> is one of the given values, keyed by the identifier of their
+     * owner. The owner is the entity referenced by <code>ownerProperty</code> or the entity itself if it is null. Only
+     * the first entity of each owner is kept.</p>
+     */
+    private Map<Object, Object> findEntitiesByOwner(Class<?> entityType, Property property, Property ownerProperty,
+                                                    List<Object> values, EntityManager entityManager) {
+        Map<Object, Object> entitiesByOwner = new HashMap<Object, Object>();
+        PersistenceUnitUtil persistenceUnitUtil = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+        String hql = "from " + entityType.getName() + " o where o." + property.getName() + " in (:owners)";
+
+        for (int i = 0; i < values.size(); i = i + EntityMapper.BATCH_SIZE) {
+            Query query = entityManager.createQuery(hql);
+
+            query.setParameter("owners", values.subList(i, Math.min(i + EntityMapper.BATCH_SIZE, values.size())));
+
+            for (Object entity : query.getResultList()) {
+                Object owner = entity;
+
+                if (ownerProperty != null) {
+                    owner = ownerProperty.getValue(entity);
+                }
+
+                Object ownerId = persistenceUnitUtil.getIdentifier(owner);
+
+                if (!entitiesByOwner.containsKey(ownerId)) {
+                    entitiesByOwner.put(ownerId, entity);
+                }
+            }
+        }
+
+        return entitiesByOwner;
+    }
+
     /**
      * <p>Returns all {@link EntityMapper} instances used to map the given {@link AttributedType}. Only mappers for
      * {@link IdentityManaged} annotated entity classes are considered, what means that this method can only be
@@ -1291,42 +1535,131 @@ public class JPAIdentityStore
 
         cq.where(predicates.toArray(new Predicate[predicates.size()]));
 
-        Property attributeValueProperty = attributeMapper.getProperty(Attribute.class, AttributeValue.class).getValue();
+        AttributeValueMapping attributeValueMapping = getAttributeValueMapping(attributeMapper);
         Map<String, Attribute<Serializable>> attributes = new HashMap<String, Attribute<Serializable>>();
 
         for (Object attributeEntity : entityManager.createQuery(cq).getResultList()) {
-            String storedName = attributeNameProperty.getValue(attributeEntity).toString();
-            Serializable storedValue = (Serializable) Base64.decodeToObject(attributeValueProperty.getValue(attributeEntity).toString());
+            addAttribute(attributes, attributeEntity, attributeNameProperty, attributeValueMapping);
+        }
 
-            Attribute<Serializable> attribute = attributes.get(storedName);
+        return attributes;
+    }
 
-            if (attribute == null) {
-                attribute = new Attribute<Serializable>(storedName, storedValue);
-            } else {
-                // if it is a multi-valued attribute
-                if (attribute != null) {
-                    Serializable[] values = null;
+    private void loadAttributes(Class<? extends AttributedType> attributedType, List<AttributedType> attributedTypes,
+                                EntityManager entityManager) {
+        EntityMapper attributeMapper = getAttributeMapper(attributedType);
+        Property attributeNameProperty = attributeMapper.getProperty(Attribute.class, AttributeName.class).getValue();
+        AttributeValueMapping attributeValueMapping = getAttributeValueMapping(attributeMapper);
+        Property ownerProperty = attributeMapper.getProperty(Attribute.class, OwnerReference.class).getValue();
+        boolean referencedByEntity = getConfig().supportsType(attributedType, IdentityOperation.create)
+                && !String.class.equals(ownerProperty.getJavaClass());
+        PersistenceUnitUtil persistenceUnitUtil = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
 
-                    if (attribute.getValue().getClass().isArray()) {
-                        values = (Serializable[]) attribute.getValue();
-                    } else {
-                        values = (Serializable[]) Array.newInstance(attribute.getValue().getClass(), 1);
-                        values[0] = attribute.getValue();
-                    }
+        // owners are referenced by entity or by the type identifier, in both cases we need to map them back to their types
+        Map<Object, List<AttributedType>> typesByOwner = new HashMap<Object, List<AttributedType>>();
+        List<Object> owners = new ArrayList<Object>();
 
-                    Serializable[] newValues = Arrays.copyOf(values, values.length + 1);
+        List<Object> ownerEntities = null;
 
-                    newValues[newValues.length - 1] = storedValue;
+        if (referencedByEntity) {
+            ownerEntities = getOwnerEntities(attributedTypes, ownerProperty, entityManager);
+        }
 
-                    attribute.setValue(newValues);
+        for (int i = 0; i < attributedTypes.size(); i++) {
+            AttributedType type = attributedTypes.get(i);
+            Object owner = type.getId();
+            Object ownerKey = owner;
 
+            if (referencedByEntity) {
+                owner = ownerEntities.get(i);
+
+                if (owner == null) {
+                    continue;
                 }
+
+                ownerKey = persistenceUnitUtil.getIdentifier(owner);
+            }
+
+            List<AttributedType> ownerTypes = typesByOwner.get(ownerKey);
+
+            if (ownerTypes == null) {
+                ownerTypes = new ArrayList<AttributedType>();
+                typesByOwner.put(ownerKey, ownerTypes);
+                owners.add(owner);
             }
 
-            attributes.put(attribute.getName(), attribute);
+            ownerTypes.add(type);
         }
 
-        return attributes;
+        Map<Object, Map<String, Attribute<Serializable>>> attributesByOwner =
+                new HashMap<Object, Map<String, Attribute<Serializable>>>();
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+
+        for (int i = 0; i < owners.size(); i = i + EntityMapper.BATCH_SIZE) {
+            CriteriaQuery<?> cq = cb.createQuery(attributeMapper.getEntityType());
+            Root<?> from = cq.from(attributeMapper.getEntityType());
+
+            cq.where(from.get(ownerProperty.getName()).in(owners.subList(i, Math.min(i + EntityMapper.BATCH_SIZE, owners.size()))));
+
+            for (Object attributeEntity : entityManager.createQuery(cq).getResultList()) {
+                Object owner = ownerProperty.getValue(attributeEntity);
+
+                if (referencedByEntity) {
+                    owner = persistenceUnitUtil.getIdentifier(owner);
+                }
+
+                Map<String, Attribute<Serializable>> attributes = attributesByOwner.get(owner);
+
+                if (attributes == null) {
+                    attributes = new HashMap<String, Attribute<Serializable>>();
+                    attributesByOwner.put(owner, attributes);
+                }
+
+                addAttribute(attributes, attributeEntity, attributeNameProperty, attributeValueMapping);
+            }
+        }
+
+        for (Entry<Object, Map<String, Attribute<Serializable>>> entry : attributesByOwner.entrySet()) {
+            List<AttributedType> ownerTypes = typesByOwner.get(entry.getKey());
+
+            if (ownerTypes != null) {
+                for (AttributedType type : ownerTypes) {
+                    for (Attribute<Serializable> attribute : entry.getValue().values()) {
+                        type.setAttribute(attribute);
+                    }
+                }
+            }
+        }
+    }
+
+    private void addAttribute(Map<String, Attribute<Serializable>> attributes, Object attributeEntity,
+                              Property attributeNameProperty, AttributeValueMapping attributeValueMapping) {
+        String storedName = attributeNameProperty.getValue(attributeEntity).toString();
+        Serializable storedValue = attributeValueMapping.getValue(attributeEntity);
+
+        Attribute<Serializable> attribute = attributes.get(storedName);
+
+        if (attribute == null) {
+            attribute = new Attribute<Serializable>(storedName, storedValue);
+        } else {
+            // if it is a multi-valued attribute
+            Serializable[] values = null;
+
+            if (attribute.getValue().getClass().isArray()) {
+                values = (Serializable[]) attribute.getValue();
+            } else {
+                values = (Serializable[]) Array.newInstance(attribute.getValue().getClass(), 1);
+                values[0] = attribute.getValue();
+            }
+
+            Serializable[] newValues = Arrays.copyOf(values, values.length + 1);
+
+            newValues[newValues.length - 1] = storedValue;
+
+            attribute.setValue(newValues);
+        }
+
+        attributes.put(attribute.getName(), attribute);
     }
 
     private void addAttributeQueryPredicates(Class<? extends AttributedType> attributedType,
@@ -1338,12 +1671,15 @@ public class JPAIdentityStore
         final AttributeParameter attributeParameter,
         final Condition condition,
         final Object[] parameterValues) {
-        int valuesLength = 1;
+        // owners must have all the values being searched, unless the condition matches a range of values
+        int valuesLength = -1;
 
         if (condition != null) {
             if (InCondition.class.isInstance(condition)) {
                 InCondition inCondition = (InCondition) condition;
                 valuesLength = inCondition.getValue().length;
+            } else if (EqualCondition.class.isInstance(condition)) {
+                valuesLength = 1;
             }
         } else {
             valuesLength = parameterValues.length;
@@ -1370,26 +1706,34 @@ public class JPAIdentityStore
 
         conjunction.add(cb.equal(fromAttributeType.get(attributeNameProperty.getName()), attributeParameter.getName()));
 
-        Property attributeValueProperty = attributeMapper.getProperty(Attribute.class, AttributeValue.class).getValue();
+        AttributeValueMapping attributeValueMapping = getAttributeValueMapping(attributeMapper);
 
         if (condition == null) {
-            Object[] valuesToSearch = new String[parameterValues.length];
-
-            for (int i = 0; i < parameterValues.length; i++) {
-                valuesToSearch[i] = Base64.encodeObject((Serializable) parameterValues[i]);
-            }
-
-            conjunction.add(fromAttributeType.get(attributeValueProperty.getName()).in((Object[]) valuesToSearch));
+            conjunction.add(attributeValueMapping.createInPredicate(cb, fromAttributeType, parameterValues));
         } else {
-            addCondition(entityManager, cb, conjunction, condition, attributeValueProperty, fromAttributeType, true);
+            conjunction.add(attributeValueMapping.createPredicate(cb, fromAttributeType, condition));
         }
 
         subQueryOwnerAttributesByValue.where(conjunction.toArray(new Predicate[conjunction.size()]));
-        subQueryOwnerAttributesByValue.groupBy(selection).having(cb.equal(cb.count(selection), valuesLength));
+
+        if (valuesLength > 0) {
+            subQueryOwnerAttributesByValue.groupBy(selection).having(cb.equal(cb.count(selection), valuesLength));
+        }
 
         predicates.add(cb.in(from.get(ownerIdentifierPropertyName)).value(subQueryOwnerAttributesByValue));
     }
 
+    private AttributeValueMapping getAttributeValueMapping(EntityMapper attributeMapper) {
+        AttributeValueMapping attributeValueMapping = this.attributeValueMappings.get(attributeMapper.getEntityType());
+
+        if (attributeValueMapping == null) {
+            attributeValueMapping = new AttributeValueMapping(attributeMapper);
+            this.attributeValueMappings.putIfAbsent(attributeMapper.getEntityType(), attributeValueMapping);
+        }
+
+        return attributeValueMapping;
+    }
+
     private EntityMapper getAttributeMapper(Class<? extends AttributedType> attributedType) {
         List<EntityMapper> attributeMappers = getAttributeMappers();
 
@@ -18,12 +18,19 @@
 package org.picketlink.idm.jpa.internal.mappers;
 
 import org.picketlink.common.properties.Property;
+import org.picketlink.idm.jpa.annotations.AttributeBooleanValue;
 import org.picketlink.idm.jpa.annotations.AttributeClass;
+import org.picketlink.idm.jpa.annotations.AttributeDateValue;
 import org.picketlink.idm.jpa.annotations.AttributeName;
+import org.picketlink.idm.jpa.annotations.AttributeNumberValue;
+import org.picketlink.idm.jpa.annotations.AttributeStringValue;
 import org.picketlink.idm.jpa.annotations.AttributeValue;
 import org.picketlink.idm.model.Attribute;
 
+import java.lang.annotation.Annotation;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 
 import static org.picketlink.idm.IDMInternalMessages.MESSAGES;
@@ -62,6 +69,11 @@ public class AttributeTypeMapper extends AbstractModelMapper {
 
         entityMapping.addProperty(getNamedProperty("value", Attribute.class), valueProperty);
 
+        addTypedValueProperty(entityMapping, entityType, AttributeStringValue.class, String.class);
+        addTypedValueProperty(entityMapping, entityType, AttributeNumberValue.class, Long.class, Double.class);
+        addTypedValueProperty(entityMapping, entityType, AttributeBooleanValue.class, Boolean.class);
+        addTypedValueProperty(entityMapping, entityType, AttributeDateValue.class, Date.class);
+
         entityMapping.addOwnerProperty(entityType);
 
         mappings.add(entityMapping);
@@ -69,4 +81,18 @@ public class AttributeTypeMapper extends AbstractModelMapper {
         return mappings;
     }
 
+    private void addTypedValueProperty(EntityMapping entityMapping, Class<?> entityType,
+                                       Class<? extends Annotation> annotation, Class<?>... supportedTypes) {
+        Property property = getAnnotatedProperty(annotation, entityType);
+
+        if (property != null) {
+            if (!Arrays.asList(supportedTypes).contains(property.getJavaClass())) {
+                throw MESSAGES.configJpaStoreInvalidMappingAnnotationType(annotation, entityType,
+                    Arrays.toString(supportedTypes));
+            }
+
+            entityMapping.addMappedProperty(property);
+        }
+    }
+
 }
\ No newline at end of file
@@ -33,12 +33,16 @@ import org.picketlink.idm.model.Partition;
 import org.picketlink.idm.model.Relationship;
 
 import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
 import javax.persistence.Query;
 import java.lang.annotation.Annotation;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static java.util.Map.Entry;
 import static org.picketlink.common.reflection.Reflections.newInstance;
@@ -53,6 +57,11 @@ import static org.picketlink.idm.IDMMessages.MESSAGES;
  */
 public class EntityMapper {
 
+    /**
+     * <p>The maximum number of owners used in a single query when loading associated entities in bulk.</p>
+     */
+    public static final int BATCH_SIZE = 500;
+
     private final List<EntityMapping> entityMappings;
     private final Class<?> entityType;
     private final JPAIdentityStore store;
@@ -151,6 +160,38 @@ public class EntityMapper {
     }
 
     public <P extends AttributedType> P createType(Object entityInstance, EntityManager entityManager) {
+        return createType(entityInstance, entityManager, true);
+    }
+
+    /**
+     * <p>Creates the types for all the given entity instances. Different than calling {@link #createType(Object,
+     * javax.persistence.EntityManager)} for each instance, the associated entities for all types are loaded using a
+     * single query per mapper, instead of a query per mapper and type.</p>
+     *
+     * @param entityInstances
+     * @param entityManager
+     * @param <P>
+     * @return
+     */
+    public <P extends AttributedType> List<P> createTypes(List<?> entityInstances, EntityManager entityManager) {
+        List<P> attributedTypes = new ArrayList<P>(entityInstances.size());
+
+        for (Object entityInstance : entityInstances) {
+            P attributedType = createType(entityInstance, entityManager, false);
+
+            if (attributedType != null) {
+                attributedTypes.add(attributedType);
+            }
+        }
+
+        if (isRoot()) {
+            populateAssociatedEntities(attributedTypes, entityManager);
+        }
+
+        return attributedTypes;
+    }
+
+    private <P extends AttributedType> P createType(Object entityInstance, EntityManager entityManager, boolean loadAssociatedEntities) {
         P attributedType = null;
 
         if (entityInstance != null) {
@@ -196,7 +237,7 @@ public class EntityMapper {
                     property.setValue(attributedType, propertyValue);
                 }
 
-                if (isRoot()) {
+                if (isRoot() && loadAssociatedEntities) {
                     for (EntityMapper finalMapper : this.store.getMapperFor(attributedType.getClass())) {
                         if (!finalMapper.isRoot()) {
                             for (Object child : getAssociatedEntities(attributedType, finalMapper, entityManager)) {
@@ -312,6 +353,104 @@ public class EntityMapper {
         return childQuery.getResultList();
     }
 
+    /**
+     * <p>Returns the entities associated with the given owner entities, grouped by the identifier of their owner as
+     * returned by {@link javax.persistence.PersistenceUnitUtil#getIdentifier(Object)}.</p>
+     *
+     * @param ownerEntities
+     * @param entityMapper
+     * @param ownerProperty
+     * @param entityManager
+     * @return
+     */
+    private Map<Object, List<Object>> getAssociatedEntities(List<Object> ownerEntities, EntityMapper entityMapper,
+                                                          Property ownerProperty, EntityManager entityManager) {
+        Map<Object, List<Object>> associatedEntities = new HashMap<Object, List<Object>>();
+        PersistenceUnitUtil persistenceUnitUtil = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+        String hql = "from " + entityMapper.getEntityType().getName() + " o where o." + ownerProperty.getName() + " in (:owners)";
+
+        for (int i = 0; i < ownerEntities.size(); i = i + BATCH_SIZE) {
+            Query childQuery = entityManager.createQuery(hql);
+
+            childQuery.setParameter("owners", ownerEntities.subList(i, Math.min(i + BATCH_SIZE, ownerEntities.size())));
+
+            for (Object child : childQuery.getResultList()) {
+                Object ownerIdentifier = persistenceUnitUtil.getIdentifier(ownerProperty.getValue(child));
+                List<Object> children = associatedEntities.get(ownerIdentifier);
+
+                if (children == null) {
+                    children = new ArrayList<Object>();
+                    associatedEntities.put(ownerIdentifier, children);
+                }
+
+                children.add(child);
+            }
+        }
+
+        return associatedEntities;
+    }
+
+    private <P extends AttributedType> void populateAssociatedEntities(List<P> attributedTypes, EntityManager entityManager) {
+        Map<Class<?>, List<P>> typesByClass = new LinkedHashMap<Class<?>, List<P>>();
+
+        for (P attributedType : attributedTypes) {
+            List<P> types = typesByClass.get(attributedType.getClass());
+
+            if (types == null) {
+                types = new ArrayList<P>();
+                typesByClass.put(attributedType.getClass(), types);
+            }
+
+            types.add(attributedType);
+        }
+
+        PersistenceUnitUtil persistenceUnitUtil = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+
+        for (Entry<Class<?>, List<P>> entry : typesByClass.entrySet()) {
+            Class<? extends AttributedType> typeClass = (Class<? extends AttributedType>) entry.getKey();
+            List<P> types = entry.getValue();
+
+            for (EntityMapper finalMapper : this.store.getMapperFor(typeClass)) {
+                if (finalMapper.isRoot() || !finalMapper.getEntityType().isAnnotationPresent(IdentityManaged.class)) {
+                    continue;
+                }
+
+                Entry<Property, Property> ownerProperty = finalMapper.getProperty(typeClass, OwnerReference.class);
+
+                if (ownerProperty == null) {
+                    continue;
+                }
+
+                List<Object> ownerEntities = this.store.getOwnerEntities(types, ownerProperty.getValue(), entityManager);
+
+                List<Object> existingOwnerEntities = new ArrayList<Object>(ownerEntities);
+
+                existingOwnerEntities.removeAll(Collections.singleton(null));
+
+                if (existingOwnerEntities.isEmpty()) {
+                    continue;
+                }
+
+                Map<Object, List<Object>> associatedEntities = getAssociatedEntities(existingOwnerEntities, finalMapper,
+                        ownerProperty.getValue(), entityManager);
+
+                for (int i = 0; i < types.size(); i++) {
+                    Object ownerEntity = ownerEntities.get(i);
+
+                    if (ownerEntity != null) {
+                        List<Object> children = associatedEntities.get(persistenceUnitUtil.getIdentifier(ownerEntity));
+
+                        if (children != null) {
+                            for (Object child : children) {
+                                finalMapper.populate(types.get(i), child, entityManager);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
     public Object createEntity() {
         try {
             return newInstance(getEntityType(), getEntityType().getName());
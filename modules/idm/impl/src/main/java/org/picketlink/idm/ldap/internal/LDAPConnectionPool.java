@@ -0,0 +1,379 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.idm.ldap.internal;
+
+import org.picketlink.common.constants.LDAPConstants;
+import org.picketlink.idm.config.LDAPConnectionPoolConfiguration;
+
+import javax.naming.InterruptedNamingException;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.ldap.LdapContext;
+import java.util.Iterator;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.picketlink.idm.IDMInternalLog.LDAP_STORE_LOGGER;
+
+/**
+ * <p>A bounded pool of {@link LdapContext} instances, each one holding a connection to the LDAP server.</p>
+ *
+ * <p>Idle connections are reused in LIFO order, so the least used connections stay idle and are closed once they
+ * exceed the configured idle timeout. Idle connections are checked for eviction whenever a connection is borrowed.</p>
+ *
+ * <p>When pooling is disabled, a new connection is created for every borrow and closed when released.</p>
+ *
+ * <p>Once closed, the pool does not lend connections anymore and closes the connections released to it.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public class LDAPConnectionPool {
+
+    private final String name;
+    private final ConnectionFactory connectionFactory;
+    private final boolean enabled;
+    private final int maxSize;
+    private final long maxWait;
+    private final long idleTimeout;
+    private final boolean validateOnBorrow;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<IdleConnection> idleConnections = new LinkedBlockingDeque<IdleConnection>();
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong borrowedCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong validationFailureCount = new AtomicLong();
+    private final AtomicLong waitTimeoutCount = new AtomicLong();
+
+    private volatile boolean closed;
+
+    LDAPConnectionPool(String name, LDAPConnectionPoolConfiguration configuration, int maxSize,
+                       ConnectionFactory connectionFactory) {
+        this.name = name;
+        this.connectionFactory = connectionFactory;
+        this.enabled = configuration.isEnabled();
+        this.maxSize = maxSize;
+        this.maxWait = configuration.getMaxWait();
+        this.idleTimeout = configuration.getIdleTimeout();
+        this.validateOnBorrow = configuration.isValidateOnBorrow();
+
+        if (this.enabled) {
+            this.permits = new Semaphore(maxSize, true);
+        } else {
+            this.permits = null;
+        }
+    }
+
+    /**
+     * <p>Returns an idle connection or creates a new one. If the pool is exhausted, waits until a connection is
+     * released or the max-wait timeout expires.</p>
+     *
+     * <p>Borrowed connections must always be given back using {@link #release(LdapContext)} or
+     * {@link #invalidate(LdapContext)}.</p>
+     *
+     * @return
+     * @throws NamingException If the connection could not be created or no connection was available in time.
+     */
+    LdapContext borrow() throws NamingException {
+        if (this.closed) {
+            throw new ServiceUnavailableException("LDAP connection pool [" + this.name + "] is closed.");
+        }
+
+        if (!this.enabled) {
+            LdapContext context = createConnection();
+
+            this.borrowedCount.incrementAndGet();
+            this.activeCount.incrementAndGet();
+
+            return context;
+        }
+
+        acquirePermit();
+
+        boolean borrowed = false;
+
+        try {
+            LdapContext context = pollIdleConnection();
+
+            if (context == null) {
+                context = createConnection();
+            }
+
+            this.borrowedCount.incrementAndGet();
+            this.activeCount.incrementAndGet();
+            borrowed = true;
+
+            return context;
+        } finally {
+            if (!borrowed) {
+                this.permits.release();
+            }
+        }
+    }
+
+    /**
+     * <p>Gives back a connection to the pool, so it can be reused.</p>
+     *
+     * @param context
+     */
+    void release(LdapContext context) {
+        if (!this.enabled) {
+            this.activeCount.decrementAndGet();
+            close(context);
+            return;
+        }
+
+        try {
+            // request controls are kept by the context and must not leak to the next operation
+            context.setRequestControls(null);
+        } catch (NamingException ne) {
+            invalidate(context);
+            return;
+        }
+
+        this.idleConnections.offerFirst(new IdleConnection(context));
+        this.activeCount.decrementAndGet();
+        this.permits.release();
+
+        if (this.closed) {
+            // the pool was closed while the connection was borrowed
+            closeIdleConnections();
+        }
+    }
+
+    /**
+     * <p>Closes all idle connections and stops lending connections. Borrowed connections are closed when they are
+     * given back.</p>
+     */
+    void close() {
+        this.closed = true;
+
+        closeIdleConnections();
+    }
+
+    /**
+     * <p>Closes a borrowed connection that is no longer usable, for instance after a communication error.</p>
+     *
+     * @param context
+     */
+    void invalidate(LdapContext context) {
+        this.activeCount.decrementAndGet();
+
+        close(context);
+
+        if (this.enabled) {
+            this.permits.release();
+        }
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * <p>The number of connections currently borrowed.</p>
+     *
+     * @return
+     */
+    public int getActiveCount() {
+        return this.activeCount.get();
+    }
+
+    /**
+     * <p>The number of connections currently idle in the pool.</p>
+     *
+     * @return
+     */
+    public int getIdleCount() {
+        return this.idleConnections.size();
+    }
+
+    /**
+     * <p>The total number of connections created by this pool.</p>
+     *
+     * @return
+     */
+    public long getCreatedCount() {
+        return this.createdCount.get();
+    }
+
+    /**
+     * <p>The total number of times a connection was borrowed from this pool.</p>
+     *
+     * @return
+     */
+    public long getBorrowedCount() {
+        return this.borrowedCount.get();
+    }
+
+    /**
+     * <p>The total number of idle connections closed because they exceeded the idle timeout.</p>
+     *
+     * @return
+     */
+    public long getEvictedCount() {
+        return this.evictedCount.get();
+    }
+
+    /**
+     * <p>The total number of idle connections closed because they failed validation.</p>
+     *
+     * @return
+     */
+    public long getValidationFailureCount() {
+        return this.validationFailureCount.get();
+    }
+
+    /**
+     * <p>The total number of times a caller gave up waiting for a connection.</p>
+     *
+     * @return
+     */
+    public long getWaitTimeoutCount() {
+        return this.waitTimeoutCount.get();
+    }
+
+    private void acquirePermit() throws NamingException {
+        try {
+            if (this.maxWait > 0) {
+                if (!this.permits.tryAcquire(this.maxWait, TimeUnit.MILLISECONDS)) {
+                    this.waitTimeoutCount.incrementAndGet();
+                    throw new ServiceUnavailableException("Timeout waiting for a connection from LDAP connection pool ["
+                            + this.name + "].");
+                }
+            } else {
+                this.permits.acquire();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedNamingException("Interrupted while waiting for a connection from LDAP connection pool ["
+                    + this.name + "].");
+        }
+    }
+
+    private LdapContext pollIdleConnection() {
+        evictIdleConnections();
+
+        IdleConnection idleConnection;
+
+        while ((idleConnection = this.idleConnections.pollFirst()) != null) {
+            if (!this.validateOnBorrow || isValid(idleConnection.context)) {
+                return idleConnection.context;
+            }
+
+            this.validationFailureCount.incrementAndGet();
+            close(idleConnection.context);
+        }
+
+        return null;
+    }
+
+    private void closeIdleConnections() {
+        IdleConnection idleConnection;
+
+        while ((idleConnection = this.idleConnections.pollFirst()) != null) {
+            close(idleConnection.context);
+        }
+    }
+
+    private void evictIdleConnections() {
+        if (this.idleTimeout <= 0) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Iterator<IdleConnection> iterator = this.idleConnections.descendingIterator();
+
+        while (iterator.hasNext()) {
+            IdleConnection idleConnection = iterator.next();
+
+            if (now - idleConnection.idleSince <= this.idleTimeout) {
+                // connections are ordered from the most to the least recently used
+                break;
+            }
+
+            // only the thread that removes the connection closes it
+            if (this.idleConnections.removeFirstOccurrence(idleConnection)) {
+                this.evictedCount.incrementAndGet();
+                close(idleConnection.context);
+            }
+        }
+    }
+
+    private boolean isValid(LdapContext context) {
+        try {
+            context.getAttributes("", new String[] {LDAPConstants.OBJECT_CLASS});
+            return true;
+        } catch (NamingException ne) {
+            if (LDAP_STORE_LOGGER.isDebugEnabled()) {
+                LDAP_STORE_LOGGER.debugf(ne, "Discarding invalid connection from LDAP connection pool [%s].", this.name);
+            }
+
+            return false;
+        }
+    }
+
+    private LdapContext createConnection() throws NamingException {
+        LdapContext context = this.connectionFactory.create();
+
+        this.createdCount.incrementAndGet();
+
+        return context;
+    }
+
+    private void close(LdapContext context) {
+        try {
+            context.close();
+        } catch (NamingException ne) {
+            if (LDAP_STORE_LOGGER.isDebugEnabled()) {
+                LDAP_STORE_LOGGER.debugf(ne, "Could not close connection from LDAP connection pool [%s].", this.name);
+            }
+        }
+    }
+
+    interface ConnectionFactory {
+        LdapContext create() throws NamingException;
+    }
+
+    private static class IdleConnection {
+
+        private final LdapContext context;
+        private final long idleSince;
+
+        IdleConnection(LdapContext context) {
+            this.context = context;
+            this.idleSince = System.currentTimeMillis();
+        }
+    }
+}
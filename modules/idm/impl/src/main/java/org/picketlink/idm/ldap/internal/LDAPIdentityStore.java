@@ -48,6 +48,7 @@ import org.picketlink.idm.query.internal.LikeCondition;
 import org.picketlink.idm.spi.CredentialStore;
 import org.picketlink.idm.spi.IdentityContext;
 
+import javax.naming.InvalidNameException;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
@@ -55,12 +56,19 @@ import javax.naming.directory.Attributes;
 import javax.naming.directory.BasicAttribute;
 import javax.naming.directory.BasicAttributes;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapName;
+import java.io.Closeable;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 import static java.util.Map.Entry;
 import static org.picketlink.common.constants.LDAPConstants.COMMA;
@@ -87,11 +95,16 @@ import static org.picketlink.idm.ldap.internal.LDAPUtil.parseDate;
  */
 @CredentialHandlers({LDAPPlainTextPasswordCredentialHandler.class})
 public class LDAPIdentityStore extends AbstractIdentityStore<LDAPIdentityStoreConfiguration>
-        implements CredentialStore<LDAPIdentityStoreConfiguration> {
+        implements CredentialStore<LDAPIdentityStoreConfiguration>, Closeable {
 
     public static final String EMPTY_ATTRIBUTE_VALUE = " ";
     public static final String ENTRY_DN_ATTRIBUTE_NAME = "org.picketlink.idm.ldap.entry.dn";
 
+    /**
+     * <p>The maximum number of values in a single OR filter, when searching multiple entries at once.</p>
+     */
+    private static final int SEARCH_BATCH_SIZE = 100;
+
     private LDAPOperationManager operationManager;
 
     @Override
@@ -109,6 +122,14 @@ public class LDAPIdentityStore extends AbstractIdentityStore<LDAPIdentityStoreCo
         }
     }
 
+    /**
+     * <p>Closes the pooled LDAP connections.</p>
+     */
+    @Override
+    public void close() {
+        this.operationManager.close();
+    }
+
     @Override
     public void addAttributedType(IdentityContext context, AttributedType attributedType) {
         if (Relationship.class.isInstance(attributedType)) {
@@ -189,6 +210,8 @@ public class LDAPIdentityStore extends AbstractIdentityStore<LDAPIdentityStoreCo
                 throw new IdentityManagementException("LDAP Identity Store does not support sorted queries.");
             }
 
+            checkKeysetPaginationNotSupported(identityQuery);
+
             for (Condition condition : identityQuery.getConditions()) {
                 if (identityQuery.getConditions().size() == 1 && IdentityType.PARTITION.equals(condition.getParameter())) {
                     // we don't query the ldap tree using only the partition as a parameter due to the cost of doing so.
@@ -202,7 +225,10 @@ public class LDAPIdentityStore extends AbstractIdentityStore<LDAPIdentityStoreCo
                             .lookupById(getConfig().getBaseDN(), equalCondition.getValue().toString(), null);
 
                         if (search != null) {
-                            results.add((V) populateAttributedType(search, null));
+                            List<AttributedType> attributedTypes = populateAttributedTypes(Collections.singletonList(search),
+                                new HashMap<LdapName, SearchResult>());
+
+                            results.add((V) attributedTypes.get(0));
                         }
                     }
 
@@ -222,8 +248,8 @@ public class LDAPIdentityStore extends AbstractIdentityStore<LDAPIdentityStoreCo
                     search = this.operationManager.search(getBaseDN(ldapEntryConfig), filter.toString(), ldapEntryConfig);
                 }
 
-                for (SearchResult result : search) {
-                    results.add((V) populateAttributedType(result, null));
+                for (AttributedType attributedType : populateAttributedTypes(search, new HashMap<LdapName, SearchResult>())) {
+                    results.add((V) attributedType);
                 }
 
             }
@@ -269,6 +295,29 @@ public class LDAPIdentityStore extends AbstractIdentityStore<LDAPIdentityStoreCo
         filter.append("(&").append(getObjectClassesFilter(relatedTypeConfig));
 
         List<String> entriesToFilter = new ArrayList<String>();
+        List<AttributedType> parameterValues = new ArrayList<AttributedType>();
+
+        for (QueryParameter queryParameter : parameters.keySet()) {
+            if (RelationshipQueryParameter.class.isInstance(queryParameter) || Relationship.IDENTITY.equals(queryParameter)) {
+                for (Object value : parameters.get(queryParameter)) {
+                    AttributedType attributedType = (AttributedType) value;
+
+                    if (!getConfig().supportsType(attributedType.getClass(), IdentityStoreConfiguration.IdentityOperation.read)) {
+                        return results;
+                    }
+
+                    parameterValues.add(attributedType);
+                }
+            }
+        }
+
+        Map<String, SearchResult> parameterEntries;
+
+        try {
+            parameterEntries = lookupEntries(parameterValues);
+        } catch (Exception e) {
+            throw MESSAGES.queryRelationshipFailed(query, e);
+        }
 
         for (QueryParameter queryParameter : parameters.keySet()) {
             Object[] values = parameters.get(queryParameter);
@@ -291,12 +340,8 @@ public class LDAPIdentityStore extends AbstractIdentityStore<LDAPIdentityStoreCo
             for (Object value : values) {
                 AttributedType attributedType = (AttributedType) value;
 
-                if (!getConfig().supportsType(attributedType.getClass(), IdentityStoreConfiguration.IdentityOperation.read)) {
-                    return results;
-                }
-
                 String bindingDN = null;
-                SearchResult result = this.operationManager.lookupById(getBaseDN(attributedType), attributedType.getId(), getMappingConfig(attributedType.getClass()));
+                SearchResult result = parameterEntries.get(attributedType.getId());
 
                 if (result != null) {
                     bindingDN = result.getNameInNamespace();
@@ -338,14 +383,20 @@ public class LDAPIdentityStore extends AbstractIdentityStore<LDAPIdentityStoreCo
                 }
 
                 List<SearchResult> search = this.operationManager.search(baseDN, filter.toString(), relatedTypeConfig);
+                Map<LdapName, SearchResult> parentEntries = new HashMap<LdapName, SearchResult>();
+                List<AttributedType> ownerTypes = populateAttributedTypes(search, parentEntries);
+                List<AttributedType> pendingOwners = new ArrayList<AttributedType>();
+                List<String> pendingProperties = new ArrayList<String>();
+                List<String> pendingMembers = new ArrayList<String>();
+
+                for (int i = 0; i < search.size(); i++) {
+                    SearchResult entry = search.get(i);
 
-                for (SearchResult entry : search) {
                     if (LDAP_STORE_LOGGER.isTraceEnabled()) {
                         LDAP_STORE_LOGGER.tracef("Found entry [%s] for relationship ", entry.getNameInNamespace(), relationshipClass);
                     }
 
                     Attributes ownerAttributes = entry.getAttributes();
-                    AttributedType ownerType = populateAttributedType(entry, null);
 
                     for (Entry<String, String> memberAttribute : mappingConfig.getMappedProperties().entrySet()) {
                         String attributeName = memberAttribute.getValue();
@@ -367,47 +418,68 @@ public class LDAPIdentityStore extends AbstractIdentityStore<LDAPIdentityStoreCo
                                 }
 
                                 if (!isNullOrEmpty(attributeValue.trim())) {
-                                    Property<AttributedType> associatedProperty = PropertyQueries
-                                        .<AttributedType>createQuery(relationshipClass)
-                                        .addCriteria(new NamedPropertyCriteria(memberAttribute.getKey()))
-                                        .getSingleResult();
+                                    pendingOwners.add(ownerTypes.get(i));
+                                    pendingProperties.add(memberAttribute.getKey());
+                                    pendingMembers.add(attributeValue);
+                                }
+                            }
+                        }
+                    }
+                }
+
+                Map<LdapName, SearchResult> memberEntries = searchMemberEntries(pendingMembers);
+                List<SearchResult> members = new ArrayList<SearchResult>();
+
+                for (String attributeValue : pendingMembers) {
+                    SearchResult member = memberEntries.get(new LdapName(attributeValue));
 
-                                    String memberBaseDN = attributeValue.substring(attributeValue.indexOf(",") + 1);
-                                    String dn = attributeValue.substring(0, attributeValue.indexOf(","));
+                    if (member == null) {
+                        throw new IdentityManagementException("Associated entry does not exists [" + attributeValue + "].");
+                    }
+
+                    members.add(member);
+                }
 
-                                    List<SearchResult> result = this.operationManager.search(memberBaseDN, dn, null);
+                List<AttributedType> memberTypes = populateAttributedTypes(members, parentEntries);
+                Map<String, Property<AttributedType>> associatedProperties = new HashMap<String, Property<AttributedType>>();
+                Property<AttributedType> property = null;
 
-                                    if (result.isEmpty()) {
-                                        throw new IdentityManagementException("Associated entry does not exists [" + attributeValue + "].");
-                                    }
+                if (!pendingMembers.isEmpty()) {
+                    property = PropertyQueries
+                        .<AttributedType>createQuery(relationshipClass)
+                        .addCriteria(new TypedPropertyCriteria(mappingConfig.getRelatedAttributedType()))
+                        .getSingleResult();
+                }
 
-                                    Property<AttributedType> property = PropertyQueries
-                                        .<AttributedType>createQuery(relationshipClass)
-                                        .addCriteria(new TypedPropertyCriteria(mappingConfig.getRelatedAttributedType()))
-                                        .getSingleResult();
+                for (int i = 0; i < pendingMembers.size(); i++) {
+                    AttributedType ownerType = pendingOwners.get(i);
+                    Property<AttributedType> associatedProperty = associatedProperties.get(pendingProperties.get(i));
 
-                                    if (property.getJavaClass().isAssignableFrom(ownerType.getClass())) {
-                                        V relationship = newInstance(relationshipClass);
+                    if (associatedProperty == null) {
+                        associatedProperty = PropertyQueries
+                            .<AttributedType>createQuery(relationshipClass)
+                            .addCriteria(new NamedPropertyCriteria(pendingProperties.get(i)))
+                            .getSingleResult();
 
-                                        property.setValue(relationship, ownerType);
+                        associatedProperties.put(pendingProperties.get(i), associatedProperty);
+                    }
 
-                                        SearchResult member = result.get(0);
+                    if (property.getJavaClass().isAssignableFrom(ownerType.getClass())) {
+                        V relationship = newInstance(relationshipClass);
 
-                                        AttributedType relType = populateAttributedType(member, null);
+                        property.setValue(relationship, ownerType);
 
-                                        if (associatedProperty.getJavaClass().isAssignableFrom(relType.getClass())) {
-                                            associatedProperty.setValue(relationship, relType);
+                        AttributedType relType = memberTypes.get(i);
 
-                                            if (LDAP_STORE_LOGGER.isTraceEnabled()) {
-                                                LDAP_STORE_LOGGER
-                                                    .tracef("Relationship [%s] created from attribute [%s] with attributeValue [%s]", relationshipClass, attributeName, attributeValue);
-                                            }
+                        if (associatedProperty.getJavaClass().isAssignableFrom(relType.getClass())) {
+                            associatedProperty.setValue(relationship, relType);
 
-                                            results.add(relationship);
-                                        }
-                                    }
-                                }
+                            if (LDAP_STORE_LOGGER.isTraceEnabled()) {
+                                LDAP_STORE_LOGGER
+                                    .tracef("Relationship [%s] created from attribute [%s] with attributeValue [%s]", relationshipClass, pendingProperties.get(i), pendingMembers.get(i));
                             }
+
+                            results.add(relationship);
                         }
                     }
                 }
@@ -419,6 +491,110 @@ public class LDAPIdentityStore extends AbstractIdentityStore<LDAPIdentityStoreCo
         return results;
     }
 
+    /**
+     * <p>Looks up the entries for the given types, using a single search for all types stored under the same base DN.</p>
+     *
+     * @param attributedTypes
+     * @return The entries found, by identifier.
+     * @throws NamingException
+     */
+    private Map<String, SearchResult> lookupEntries(List<AttributedType> attributedTypes) throws NamingException {
+        Map<String, SearchResult> entries = new HashMap<String, SearchResult>();
+        Map<String, List<AttributedType>> typesByBaseDN = new LinkedHashMap<String, List<AttributedType>>();
+
+        for (AttributedType attributedType : attributedTypes) {
+            String baseDN = getBaseDN(attributedType);
+            List<AttributedType> types = typesByBaseDN.get(baseDN);
+
+            if (types == null) {
+                types = new ArrayList<AttributedType>();
+                typesByBaseDN.put(baseDN, types);
+            }
+
+            types.add(attributedType);
+        }
+
+        for (Entry<String, List<AttributedType>> baseDNEntry : typesByBaseDN.entrySet()) {
+            String baseDN = baseDNEntry.getKey();
+            List<AttributedType> types = baseDNEntry.getValue();
+
+            for (int i = 0; i < types.size(); i += SEARCH_BATCH_SIZE) {
+                StringBuilder filter = new StringBuilder("(|");
+                int filterCount = 0;
+
+                for (AttributedType attributedType : types.subList(i, Math.min(i + SEARCH_BATCH_SIZE, types.size()))) {
+                    String idFilter = this.operationManager.getFilterById(baseDN, attributedType.getId());
+
+                    // the identifier could not be resolved, there is no entry for it
+                    if (idFilter != null) {
+                        filter.append(idFilter);
+                        filterCount++;
+                    }
+                }
+
+                if (filterCount == 0) {
+                    continue;
+                }
+
+                filter.append(")");
+
+                for (SearchResult result : this.operationManager.search(baseDN, filter.toString(), null)) {
+                    Attribute identifier = result.getAttributes().get(getConfig().getUniqueIdentifierAttributeName());
+
+                    if (identifier != null) {
+                        entries.put(this.operationManager.decodeEntryUUID(identifier.get()), result);
+                    }
+                }
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * <p>Searches the entries with the given DNs, using a single search for all entries stored under the same base DN.</p>
+     *
+     * @param memberDNs
+     * @return The entries found, by DN.
+     * @throws NamingException
+     */
+    private Map<LdapName, SearchResult> searchMemberEntries(List<String> memberDNs) throws NamingException {
+        Map<LdapName, SearchResult> entries = new HashMap<LdapName, SearchResult>();
+        Map<String, Set<String>> filtersByBaseDN = new LinkedHashMap<String, Set<String>>();
+
+        for (String memberDN : memberDNs) {
+            String memberBaseDN = memberDN.substring(memberDN.indexOf(",") + 1);
+            Set<String> filters = filtersByBaseDN.get(memberBaseDN);
+
+            if (filters == null) {
+                filters = new LinkedHashSet<String>();
+                filtersByBaseDN.put(memberBaseDN, filters);
+            }
+
+            filters.add(memberDN.substring(0, memberDN.indexOf(",")));
+        }
+
+        for (Entry<String, Set<String>> baseDNEntry : filtersByBaseDN.entrySet()) {
+            List<String> filters = new ArrayList<String>(baseDNEntry.getValue());
+
+            for (int i = 0; i < filters.size(); i += SEARCH_BATCH_SIZE) {
+                StringBuilder filter = new StringBuilder("(|");
+
+                for (String rdn : filters.subList(i, Math.min(i + SEARCH_BATCH_SIZE, filters.size()))) {
+                    filter.append("(").append(rdn).append(")");
+                }
+
+                filter.append(")");
+
+                for (SearchResult result : this.operationManager.search(baseDNEntry.getKey(), filter.toString(), null)) {
+                    entries.put(new LdapName(result.getNameInNamespace()), result);
+                }
+            }
+        }
+
+        return entries;
+    }
+
     @Override
     public void storeCredential(IdentityContext context, Account account, CredentialStorage storage) {
         //no-op. operation no supported by this store
@@ -675,19 +851,200 @@ public class LDAPIdentityStore extends AbstractIdentityStore<LDAPIdentityStoreCo
         }
     }
 
-    private AttributedType populateAttributedType(SearchResult searchResult, AttributedType attributedType) {
-        return populateAttributedType(searchResult, attributedType, 0);
+    /**
+     * <p>Creates and populates the {@link AttributedType} instances for the given entries, including their parents.</p>
+     *
+     * <p>Parents are resolved level by level. For each level, a single search is performed to find the parents of all
+     * entries of that level. Resolved parents are kept in the given map, so they are not searched again while processing
+     * the same query.</p>
+     *
+     * @param searchResults
+     * @param parentEntries The parent entries already resolved, by member DN. Entries without parent are mapped to null.
+     * @return
+     */
+    private List<AttributedType> populateAttributedTypes(List<SearchResult> searchResults, Map<LdapName, SearchResult> parentEntries) {
+        List<AttributedType> attributedTypes = new ArrayList<AttributedType>();
+
+        for (SearchResult searchResult : searchResults) {
+            attributedTypes.add(populateAttributedType(searchResult, 0));
+        }
+
+        List<SearchResult> entries = searchResults;
+        List<AttributedType> entryTypes = attributedTypes;
+        int hierarchyDepthCount = 0;
+
+        try {
+            while (!entries.isEmpty()) {
+                hierarchyDepthCount++;
+
+                fetchParentEntries(entries, entryTypes, hierarchyDepthCount, parentEntries);
+
+                List<SearchResult> parents = new ArrayList<SearchResult>();
+                List<AttributedType> parentTypes = new ArrayList<AttributedType>();
+
+                for (int i = 0; i < entries.size(); i++) {
+                    SearchResult entry = entries.get(i);
+                    AttributedType attributedType = entryTypes.get(i);
+                    LDAPMappingConfiguration mappingConfig = getMappingConfig(attributedType.getClass());
+
+                    if (mappingConfig.getParentMembershipAttributeName() == null
+                        || hierarchyDepthCount > mappingConfig.getHierarchySearchDepth()) {
+                        continue;
+                    }
+
+                    String entryDN = entry.getNameInNamespace();
+                    SearchResult parent = parentEntries.get(getMemberDN(entry, attributedType));
+
+                    if (parent == null) {
+                        if (LDAP_STORE_LOGGER.isTraceEnabled()) {
+                            LDAP_STORE_LOGGER.tracef("No parent entry found for DN [%s].", entryDN);
+                        }
+
+                        continue;
+                    }
+
+                    Property<AttributedType> parentProperty = PropertyQueries
+                            .<AttributedType>createQuery(attributedType.getClass())
+                            .addCriteria(new TypedPropertyCriteria(attributedType.getClass())).getFirstResult();
+
+                    if (parentProperty != null) {
+                        String parentDN = parent.getNameInNamespace();
+                        String parentBaseDN = parentDN.substring(parentDN.indexOf(",") + 1);
+                        Class<? extends AttributedType> baseDNType = getConfig().getSupportedTypeByBaseDN(parentBaseDN, getEntryObjectClasses(entry.getAttributes()));
+
+                        if (parentProperty.getJavaClass().isAssignableFrom(baseDNType)) {
+                            if (LDAP_STORE_LOGGER.isTraceEnabled()) {
+                                LDAP_STORE_LOGGER.tracef("Found parent [%s] for entry for DN [%s].", parentDN, entryDN);
+                            }
+
+                            AttributedType parentType = populateAttributedType(parent, hierarchyDepthCount);
+
+                            parentProperty.setValue(attributedType, parentType);
+
+                            if (parentType != null) {
+                                parents.add(parent);
+                                parentTypes.add(parentType);
+                            }
+                        }
+                    }
+                }
+
+                entries = parents;
+                entryTypes = parentTypes;
+            }
+        } catch (Exception e) {
+            throw new IdentityManagementException("Could not resolve parent entries.", e);
+        }
+
+        return attributedTypes;
     }
 
-    private AttributedType populateAttributedType(SearchResult searchResult, AttributedType attributedType, int hierarchyDepthCount) {
+    /**
+     * <p>Searches the parents of the given entries that were not resolved yet. Entries are grouped by mapping, and a
+     * single search is performed for each group using an OR filter with the DN of all members.</p>
+     */
+    private void fetchParentEntries(List<SearchResult> entries, List<AttributedType> entryTypes, int hierarchyDepthCount,
+                                    Map<LdapName, SearchResult> parentEntries) throws NamingException {
+        Map<LDAPMappingConfiguration, Map<LdapName, String>> membersByMapping = new LinkedHashMap<LDAPMappingConfiguration, Map<LdapName, String>>();
+
+        for (int i = 0; i < entries.size(); i++) {
+            AttributedType attributedType = entryTypes.get(i);
+            LDAPMappingConfiguration mappingConfig = getMappingConfig(attributedType.getClass());
+
+            if (mappingConfig.getParentMembershipAttributeName() == null
+                || hierarchyDepthCount > mappingConfig.getHierarchySearchDepth()) {
+                continue;
+            }
+
+            LdapName memberDN = getMemberDN(entries.get(i), attributedType);
+
+            if (!parentEntries.containsKey(memberDN)) {
+                Map<LdapName, String> members = membersByMapping.get(mappingConfig);
+
+                if (members == null) {
+                    members = new LinkedHashMap<LdapName, String>();
+                    membersByMapping.put(mappingConfig, members);
+                }
+
+                members.put(memberDN, memberDN.toString());
+            }
+        }
+
+        for (Entry<LDAPMappingConfiguration, Map<LdapName, String>> mappingEntry : membersByMapping.entrySet()) {
+            LDAPMappingConfiguration mappingConfig = mappingEntry.getKey();
+            String membershipAttributeName = mappingConfig.getParentMembershipAttributeName();
+            List<LdapName> memberDNs = new ArrayList<LdapName>(mappingEntry.getValue().keySet());
+
+            for (int i = 0; i < memberDNs.size(); i += SEARCH_BATCH_SIZE) {
+                List<LdapName> batch = memberDNs.subList(i, Math.min(i + SEARCH_BATCH_SIZE, memberDNs.size()));
+                StringBuilder filter = new StringBuilder("(&");
+
+                filter.append(getObjectClassesFilter(mappingConfig)).append("(|");
+
+                for (LdapName memberDN : batch) {
+                    filter
+                        .append("(")
+                            .append(membershipAttributeName)
+                            .append(EQUAL)
+                            .append(mappingEntry.getValue().get(memberDN))
+                        .append(")");
+                }
+
+                filter.append("))");
+
+                if (LDAP_STORE_LOGGER.isTraceEnabled()) {
+                    LDAP_STORE_LOGGER.tracef("Searching parent entries using filter [%s].", filter.toString());
+                }
+
+                List<SearchResult> search = this.operationManager.search(getConfig().getBaseDN(), filter.toString(), mappingConfig);
+
+                for (SearchResult parent : search) {
+                    Attribute members = parent.getAttributes().get(membershipAttributeName);
+
+                    if (members != null) {
+                        NamingEnumeration<?> values = members.getAll();
+
+                        while (values.hasMore()) {
+                            Object value = values.next();
+
+                            if (value == null || isNullOrEmpty(value.toString().trim())) {
+                                continue;
+                            }
+
+                            LdapName memberDN = new LdapName(value.toString());
+
+                            if (batch.contains(memberDN) && !parentEntries.containsKey(memberDN)) {
+                                parentEntries.put(memberDN, parent);
+                            }
+                        }
+                    }
+                }
+
+                for (LdapName memberDN : batch) {
+                    if (!parentEntries.containsKey(memberDN)) {
+                        parentEntries.put(memberDN, null);
+                    }
+                }
+            }
+        }
+    }
+
+    private LdapName getMemberDN(SearchResult entry, AttributedType attributedType) throws InvalidNameException {
+        String entryDN = entry.getNameInNamespace();
+        String entryBaseDN = entryDN.substring(entryDN.indexOf(COMMA) + 1);
+
+        return new LdapName(getBindingDN(attributedType, false) + COMMA + entryBaseDN);
+    }
+
+    private AttributedType populateAttributedType(SearchResult searchResult, int hierarchyDepthCount) {
+        AttributedType attributedType = null;
+
         try {
             String entryDN = searchResult.getNameInNamespace();
             String entryBaseDN = entryDN.substring(entryDN.indexOf(COMMA) + 1);
             Attributes attributes = searchResult.getAttributes();
 
-            if (attributedType == null) {
-                attributedType = newInstance(getConfig().getSupportedTypeByBaseDN(entryBaseDN, getEntryObjectClasses(attributes)));
-            }
+            attributedType = newInstance(getConfig().getSupportedTypeByBaseDN(entryBaseDN, getEntryObjectClasses(attributes)));
 
             attributedType.setAttribute(new org.picketlink.idm.model.Attribute<String>(ENTRY_DN_ATTRIBUTE_NAME, entryDN));
 
@@ -754,60 +1111,6 @@ public class LDAPIdentityStore extends AbstractIdentityStore<LDAPIdentityStoreCo
 
                 identityType.setCreatedDate(parseDate(createdTimestamp));
             }
-
-            LDAPMappingConfiguration entryConfig = getMappingConfig(attributedType.getClass());
-
-            if (mappingConfig.getParentMembershipAttributeName() != null) {
-                StringBuilder filter = new StringBuilder("(&");
-
-                filter
-                    .append("(")
-                        .append(getObjectClassesFilter(entryConfig))
-                    .append(")")
-                    .append("(")
-                        .append(mappingConfig.getParentMembershipAttributeName())
-                        .append(EQUAL).append("")
-                        .append(getBindingDN(attributedType, false))
-                        .append(COMMA)
-                    .append(entryBaseDN)
-                    .append(")");
-
-                filter.append(")");
-
-                if (LDAP_STORE_LOGGER.isTraceEnabled()) {
-                    LDAP_STORE_LOGGER.tracef("Searching parent entry for DN [%s] using filter [%s].", entryDN, filter.toString());
-                }
-
-                List<SearchResult> search = this.operationManager.search(getConfig().getBaseDN(), filter.toString(), entryConfig);
-
-                if (!search.isEmpty()) {
-                    SearchResult next = search.get(0);
-
-                    Property<AttributedType> parentProperty = PropertyQueries
-                            .<AttributedType>createQuery(attributedType.getClass())
-                            .addCriteria(new TypedPropertyCriteria(attributedType.getClass())).getFirstResult();
-
-                    if (parentProperty != null) {
-                        String parentDN = next.getNameInNamespace();
-                        String parentBaseDN = parentDN.substring(parentDN.indexOf(",") + 1);
-                        Class<? extends AttributedType> baseDNType = getConfig().getSupportedTypeByBaseDN(parentBaseDN, getEntryObjectClasses(attributes));
-
-                        if (parentProperty.getJavaClass().isAssignableFrom(baseDNType)) {
-                            if (LDAP_STORE_LOGGER.isTraceEnabled()) {
-                                LDAP_STORE_LOGGER.tracef("Found parent [%s] for entry for DN [%s].", parentDN, entryDN);
-                            }
-
-                            int hierarchyDepthCount1 = ++hierarchyDepthCount;
-
-                            parentProperty.setValue(attributedType, populateAttributedType(next, null, hierarchyDepthCount1));
-                        }
-                    }
-                } else {
-                    if (LDAP_STORE_LOGGER.isTraceEnabled()) {
-                        LDAP_STORE_LOGGER.tracef("No parent entry found for DN [%s] using filter [%s].", entryDN, filter.toString());
-                    }
-                }
-            }
         } catch (Exception e) {
             throw new IdentityManagementException("Could not populate attribute type " + attributedType + ".", e);
         }
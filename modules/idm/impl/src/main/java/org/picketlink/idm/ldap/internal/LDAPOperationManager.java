@@ -22,14 +22,15 @@ import org.picketlink.common.constants.LDAPConstants;
 import org.picketlink.common.util.LDAPUtil;
 import org.picketlink.idm.IDMLog;
 import org.picketlink.idm.IdentityManagementException;
+import org.picketlink.idm.config.LDAPConnectionPoolConfiguration;
 import org.picketlink.idm.config.LDAPIdentityStoreConfiguration;
 import org.picketlink.idm.config.LDAPMappingConfiguration;
 import org.picketlink.idm.model.IdentityType;
 import org.picketlink.idm.query.IdentityQuery;
 
 import javax.naming.Binding;
+import javax.naming.CommunicationException;
 import javax.naming.Context;
-import javax.naming.InitialContext;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
@@ -56,6 +57,7 @@ import static javax.naming.directory.SearchControls.SUBTREE_SCOPE;
 import static org.picketlink.common.constants.LDAPConstants.CREATE_TIMESTAMP;
 import static org.picketlink.common.constants.LDAPConstants.EQUAL;
 import static org.picketlink.common.util.LDAPUtil.convertObjectGUIToByteString;
+import static org.picketlink.common.util.LDAPUtil.encodeObjectGUID;
 import static org.picketlink.idm.IDMInternalLog.LDAP_STORE_LOGGER;
 import static org.picketlink.idm.IDMInternalMessages.MESSAGES;
 
@@ -69,10 +71,62 @@ public class LDAPOperationManager {
 
     private final LDAPIdentityStoreConfiguration config;
     private final Map<String, Object> connectionProperties;
+    private final LDAPConnectionPool connectionPool;
+    private final LDAPConnectionPool authenticationConnectionPool;
 
     public LDAPOperationManager(LDAPIdentityStoreConfiguration config) throws NamingException {
         this.config = config;
         this.connectionProperties = Collections.unmodifiableMap(createConnectionProperties());
+
+        LDAPConnectionPoolConfiguration poolConfiguration = config.getConnectionPoolConfiguration();
+
+        this.connectionPool = new LDAPConnectionPool("admin", poolConfiguration, poolConfiguration.getMaxSize(),
+                new LDAPConnectionPool.ConnectionFactory() {
+                    @Override
+                    public LdapContext create() throws NamingException {
+                        return createLdapContext();
+                    }
+                });
+        this.authenticationConnectionPool = new LDAPConnectionPool("authentication", poolConfiguration,
+                poolConfiguration.getAuthenticationMaxSize(), new LDAPConnectionPool.ConnectionFactory() {
+                    @Override
+                    public LdapContext create() throws NamingException {
+                        Hashtable<Object, Object> env = new Hashtable<Object, Object>(connectionProperties);
+
+                        // Never use the JNDI connection pool to prevent password caching
+                        env.put("com.sun.jndi.ldap.connect.pool", "false");
+
+                        return new InitialLdapContext(env, null);
+                    }
+                });
+    }
+
+    /**
+     * <p>Returns the pool of connections bound to the configured bind DN, used by all operations except
+     * authentication.</p>
+     *
+     * @return
+     */
+    public LDAPConnectionPool getConnectionPool() {
+        return this.connectionPool;
+    }
+
+    /**
+     * <p>Returns the pool of connections used to authenticate users.</p>
+     *
+     * @return
+     */
+    public LDAPConnectionPool getAuthenticationConnectionPool() {
+        return this.authenticationConnectionPool;
+    }
+
+    /**
+     * <p>Closes the idle connections of both pools. Connections still in use are closed once they are released. No
+     * operation can be performed after this method is called.</p>
+     */
+    public void close() {
+        this.connectionPool.close();
+        this.authenticationConnectionPool.close();
     }
 
     /**
@@ -165,7 +219,7 @@ public class LDAPOperationManager {
 
             cons.setReturningAttributes(returningAttributes.toArray(new String[returningAttributes.size()]));
 
-            execute(new LdapOperation<SearchResult>() {
+            executeUpdate(new LdapOperation<SearchResult>() {
                 @Override
                 public SearchResult execute(LdapContext context) throws NamingException {
                     NamingEnumeration<SearchResult> result = context.search(baseDN, filter, cons);
@@ -200,13 +254,13 @@ public class LDAPOperationManager {
     }
 
     public List<SearchResult> search(final String baseDN, final String filter, LDAPMappingConfiguration mappingConfiguration) throws NamingException {
-        final List<SearchResult> result = new ArrayList<SearchResult>();
         final SearchControls cons = getSearchControls(mappingConfiguration);
 
         try {
             return execute(new LdapOperation<List<SearchResult>>() {
                 @Override
                 public List<SearchResult> execute(LdapContext context) throws NamingException {
+                    List<SearchResult> result = new ArrayList<SearchResult>();
                     NamingEnumeration<SearchResult> search = context.search(baseDN, filter, cons);
 
                     while (search.hasMoreElements()) {
@@ -225,13 +279,14 @@ public class LDAPOperationManager {
     }
 
     public <V extends IdentityType> List<SearchResult> searchPaginated(final String baseDN, final String filter, LDAPMappingConfiguration mappingConfiguration, final IdentityQuery<V> identityQuery) throws NamingException {
-        final List<SearchResult> result = new ArrayList<SearchResult>();
         final SearchControls cons = getSearchControls(mappingConfiguration);
 
         try {
             return execute(new LdapOperation<List<SearchResult>>() {
                 @Override
                 public List<SearchResult> execute(LdapContext context) throws NamingException {
+                    List<SearchResult> result = new ArrayList<SearchResult>();
+
                     try {
                         byte[] cookie = (byte[])identityQuery.getPaginationContext();
                         PagedResultsControl pagedControls = new PagedResultsControl(identityQuery.getLimit(), cookie, Control.CRITICAL);
@@ -285,22 +340,29 @@ public class LDAPOperationManager {
         String filter = null;
 
         if (this.config.isActiveDirectory()) {
-            final String strObjectGUID = "<GUID=" + id + ">";
+            byte[] objectGUID;
 
             try {
-                Attributes attributes = execute(new LdapOperation<Attributes>() {
-                    @Override
-                    public Attributes execute(LdapContext context) throws NamingException {
-                        return context.getAttributes(strObjectGUID);
-                    }
-                });
+                // identifiers are decoded from the objectGUID, so there is no need to ask the server for its raw value
+                objectGUID = encodeObjectGUID(id);
+            } catch (IllegalArgumentException iae) {
+                final String strObjectGUID = "<GUID=" + id + ">";
 
-                byte[] objectGUID = (byte[]) attributes.get(LDAPConstants.OBJECT_GUID).get();
+                try {
+                    Attributes attributes = execute(new LdapOperation<Attributes>() {
+                        @Override
+                        public Attributes execute(LdapContext context) throws NamingException {
+                            return context.getAttributes(strObjectGUID);
+                        }
+                    });
 
-                filter = "(&(objectClass=*)(" + getUniqueIdentifierAttributeName() + EQUAL + convertObjectGUIToByteString(objectGUID) + "))";
-            } catch (NamingException ne) {
-                return filter;
+                    objectGUID = (byte[]) attributes.get(LDAPConstants.OBJECT_GUID).get();
+                } catch (NamingException ne) {
+                    return filter;
+                }
             }
+
+            filter = "(&(objectClass=*)(" + getUniqueIdentifierAttributeName() + EQUAL + convertObjectGUIToByteString(objectGUID) + "))";
         }
 
         if (filter == null) {
@@ -387,40 +449,72 @@ public class LDAPOperationManager {
      * Performs a simple authentication using the ginve DN and password to bind to the authentication context.
      * </p>
      *
+     * <p>Connections from the authentication pool are re-bound with the given credentials. Once the bind completes,
+     * the credentials are replaced by the ones from the configuration, so they are not kept by the pool.</p>
+     *
      * @param dn
      * @param password
      *
      * @return
      */
     public boolean authenticate(String dn, String password) {
-        InitialContext authCtx = null;
+        return authenticate(dn, password, true);
+    }
+
+    private boolean authenticate(String dn, String password, boolean retry) {
+        LdapContext authCtx = null;
 
         try {
-            Hashtable<String, Object> env = new Hashtable<String, Object>(this.connectionProperties);
+            authCtx = this.authenticationConnectionPool.borrow();
+
+            authCtx.addToEnvironment(Context.SECURITY_PRINCIPAL, dn);
+            authCtx.addToEnvironment(Context.SECURITY_CREDENTIALS, password);
+
+            authCtx.reconnect(null);
 
-            env.put(Context.SECURITY_PRINCIPAL, dn);
-            env.put(Context.SECURITY_CREDENTIALS, password);
+            resetAuthenticationEnvironment(authCtx);
+        } catch (CommunicationException ce) {
+            if (authCtx != null) {
+                this.authenticationConnectionPool.invalidate(authCtx);
+            }
 
-            // Never use connection pool to prevent password caching
-            env.put("com.sun.jndi.ldap.connect.pool", "false");
+            // the pooled connection may have been closed by the server, binding again has no side effects
+            if (retry && this.authenticationConnectionPool.isEnabled()) {
+                return authenticate(dn, password, false);
+            }
 
-            authCtx = new InitialLdapContext(env, null);
+            if (LDAP_STORE_LOGGER.isDebugEnabled()) {
+                LDAP_STORE_LOGGER.debugf(ce, "Authentication failed for DN [%s]", dn);
+            }
 
-            return true;
+            return false;
         } catch (Exception e) {
             if (LDAP_STORE_LOGGER.isDebugEnabled()) {
                 LDAP_STORE_LOGGER.debugf(e, "Authentication failed for DN [%s]", dn);
             }
 
-            return false;
-        } finally {
+            // the state of a connection is undefined after a failed bind, it can not be reused
             if (authCtx != null) {
-                try {
-                    authCtx.close();
-                } catch (NamingException e) {
-
-                }
+                this.authenticationConnectionPool.invalidate(authCtx);
             }
+
+            return false;
+        }
+
+        this.authenticationConnectionPool.release(authCtx);
+
+        return true;
+    }
+
+    private void resetAuthenticationEnvironment(LdapContext context) throws NamingException {
+        Object bindDN = this.connectionProperties.get(Context.SECURITY_PRINCIPAL);
+
+        if (bindDN != null) {
+            context.addToEnvironment(Context.SECURITY_PRINCIPAL, bindDN);
+            context.addToEnvironment(Context.SECURITY_CREDENTIALS, this.connectionProperties.get(Context.SECURITY_CREDENTIALS));
+        } else {
+            context.removeFromEnvironment(Context.SECURITY_PRINCIPAL);
+            context.removeFromEnvironment(Context.SECURITY_CREDENTIALS);
         }
     }
 
@@ -444,7 +538,7 @@ public class LDAPOperationManager {
                 LDAP_STORE_LOGGER.debugf("]");
             }
 
-            execute(new LdapOperation<Void>() {
+            executeUpdate(new LdapOperation<Void>() {
                 @Override
                 public Void execute(LdapContext context) throws NamingException {
                     context.modifyAttributes(dn, mods);
@@ -473,7 +567,7 @@ public class LDAPOperationManager {
                 LDAP_STORE_LOGGER.debugf("]");
             }
 
-            execute(new LdapOperation<Void>() {
+            executeUpdate(new LdapOperation<Void>() {
                 @Override
                 public Void execute(LdapContext context) throws NamingException {
                     DirContext subcontext = context.createSubcontext(name, attributes);
@@ -601,24 +695,58 @@ public class LDAPOperationManager {
         return env;
     }
 
+    /**
+     * <p>Executes an operation that only reads from the directory. If the pooled connection fails with a
+     * {@link CommunicationException}, the operation is retried once using a new connection.</p>
+     */
     private <R> R execute(LdapOperation<R> operation) throws NamingException {
-        LdapContext context = null;
+        try {
+            return execute(operation, true);
+        } catch (NamingException ne) {
+            IDMLog.IDENTITY_STORE_LOGGER.error("Could not create Ldap context.", ne);
+            throw ne;
+        }
+    }
 
+    /**
+     * <p>Executes an operation that changes the directory. Such operations are never retried, the change may have
+     * been applied by the server before the connection failed.</p>
+     */
+    private <R> R executeUpdate(LdapOperation<R> operation) throws NamingException {
         try {
-            context = createLdapContext();
-            return operation.execute(context);
+            return execute(operation, false);
         } catch (NamingException ne) {
             IDMLog.IDENTITY_STORE_LOGGER.error("Could not create Ldap context.", ne);
             throw ne;
-        } finally {
-            if (context != null) {
-                try {
-                    context.close();
-                } catch (NamingException ne) {
-                    IDMLog.IDENTITY_STORE_LOGGER.error("Could not close Ldap context.", ne);
-                }
+        }
+    }
+
+    private <R> R execute(LdapOperation<R> operation, boolean retry) throws NamingException {
+        LdapContext context = this.connectionPool.borrow();
+        R result;
+
+        try {
+            result = operation.execute(context);
+        } catch (CommunicationException ce) {
+            this.connectionPool.invalidate(context);
+
+            // the pooled connection may have been closed by the server, the operation is retried once using a new one
+            if (retry && this.connectionPool.isEnabled()) {
+                return execute(operation, false);
             }
+
+            throw ce;
+        } catch (NamingException ne) {
+            this.connectionPool.release(context);
+            throw ne;
+        } catch (RuntimeException re) {
+            this.connectionPool.invalidate(context);
+            throw re;
         }
+
+        this.connectionPool.release(context);
+
+        return result;
     }
 
     private interface LdapOperation<R> {
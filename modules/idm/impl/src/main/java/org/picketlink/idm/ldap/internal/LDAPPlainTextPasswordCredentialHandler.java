@@ -67,6 +67,16 @@ public class LDAPPlainTextPasswordCredentialHandler<S, V, U> extends AbstractCre
         return getAccount(context, credentials.getUsername());
     }
 
+    @Override
+    protected String getLoginName(UsernamePasswordCredentials credentials) {
+        return credentials.getUsername();
+    }
+
+    @Override
+    protected byte[] getSecret(UsernamePasswordCredentials credentials) {
+        return toSecret(credentials.getPassword());
+    }
+
     @Override
     protected CredentialStorage getCredentialStorage(IdentityContext context, Account account, UsernamePasswordCredentials credentials, LDAPIdentityStore store) {
         return null; // dummy storage, this handler does not store passwords using a credential storage.
@@ -18,8 +18,11 @@
 
 package org.picketlink.idm.query.internal;
 
+import org.picketlink.idm.IdentityCache;
 import org.picketlink.idm.PartitionManager;
 import org.picketlink.idm.model.IdentityType;
+import org.picketlink.idm.model.Partition;
+import org.picketlink.idm.query.AttributeParameter;
 import org.picketlink.idm.query.Condition;
 import org.picketlink.idm.query.IdentityQuery;
 import org.picketlink.idm.query.IdentityQueryBuilder;
@@ -53,6 +56,8 @@ import static org.picketlink.idm.util.IDMUtil.configureDefaultPartition;
  */
 public class DefaultIdentityQuery<T extends IdentityType> implements IdentityQuery<T> {
 
+    private static final String PARTITION_PROPERTY = ((AttributeParameter) IdentityType.PARTITION).getName();
+
     private final Map<QueryParameter, Object[]> parameters = new LinkedHashMap<QueryParameter, Object[]>();
     private final IdentityContext context;
     private final Class<T> identityType;
@@ -179,6 +184,25 @@ public class DefaultIdentityQuery<T extends IdentityType> implements IdentityQue
             }
         }
 
+        IdentityCache identityCache = this.context.getParameter(IdentityCache.IDENTITY_CACHE_CTX_PARAMETER);
+        EqualCondition cacheKey = null;
+        long cacheGeneration = 0;
+
+        if (identityCache != null) {
+            cacheKey = getCacheKey();
+
+            if (cacheKey != null) {
+                cacheGeneration = identityCache.getGeneration();
+
+                List<T> cachedResult = identityCache.lookup(this.context.getPartition(), this.identityType,
+                    getCacheKeyName(cacheKey), cacheKey.getValue());
+
+                if (cachedResult != null) {
+                    return new ArrayList<T>(cachedResult);
+                }
+            }
+        }
+
         List<T> result = new ArrayList<T>();
 
         try {
@@ -186,20 +210,27 @@ public class DefaultIdentityQuery<T extends IdentityType> implements IdentityQue
             AttributeStore<?> attributeStore = this.storeSelector.getStoreForAttributeOperation(context);
 
             for (IdentityStore<?> store : identityStores) {
-                for (T identityType : store.fetchQueryResults(this.context, this)) {
-                    configureDefaultPartition(identityType, store, getPartitionManager());
+                List<T> storeResult = store.fetchQueryResults(this.context, this);
 
-                    if (attributeStore != null) {
-                        attributeStore.loadAttributes(this.context, identityType);
-                    }
+                for (T identityType : storeResult) {
+                    configureDefaultPartition(identityType, store, getPartitionManager());
+                }
 
-                    result.add(identityType);
+                if (attributeStore != null && !storeResult.isEmpty()) {
+                    attributeStore.loadAttributes(this.context, storeResult);
                 }
+
+                result.addAll(storeResult);
             }
         } catch (Exception e) {
             throw MESSAGES.queryIdentityTypeFailed(this, e);
         }
 
+        if (cacheKey != null) {
+            identityCache.put(this.context.getPartition(), this.identityType, getCacheKeyName(cacheKey), cacheKey.getValue(), result,
+                cacheGeneration);
+        }
+
         return result;
     }
 
@@ -251,6 +282,50 @@ public class DefaultIdentityQuery<T extends IdentityType> implements IdentityQue
         return unmodifiableSet(this.conditions);
     }
 
+    /**
+     * <p>Returns the condition that identifies the results of this query when it can be resolved from a
+     * {@link IdentityCache}. That is only possible when the query consists of a single equality condition on a
+     * property, optionally restricted to the current partition, and does not define any sorting or pagination.</p>
+     *
+     * @return The condition whose parameter and value should be used as the cache key or null if the query is not
+     * cacheable.
+     */
+    private EqualCondition getCacheKey() {
+        Partition partition = this.context.getPartition();
+
+        if (partition == null || partition.getId() == null || this.offset > 0 || this.limit > 0
+            || this.paginationContext != null || !this.ordering.isEmpty()) {
+            return null;
+        }
+
+        EqualCondition cacheKey = null;
+
+        for (Condition condition : this.conditions) {
+            if (!EqualCondition.class.isInstance(condition) || !AttributeParameter.class.isInstance(condition.getParameter())) {
+                return null;
+            }
+
+            EqualCondition equalCondition = (EqualCondition) condition;
+            Object value = equalCondition.getValue();
+
+            if (PARTITION_PROPERTY.equals(getCacheKeyName(equalCondition))) {
+                if (!Partition.class.isInstance(value) || !partition.getId().equals(((Partition) value).getId())) {
+                    return null;
+                }
+            } else if (cacheKey == null && String.class.isInstance(value)) {
+                cacheKey = equalCondition;
+            } else {
+                return null;
+            }
+        }
+
+        return cacheKey;
+    }
+
+    private String getCacheKeyName(EqualCondition condition) {
+        return ((AttributeParameter) condition.getParameter()).getName();
+    }
+
     private PartitionManager getPartitionManager() {
         return (PartitionManager) this.storeSelector;
     }
@@ -102,6 +102,8 @@ public class TokenIdentityStore extends AbstractIdentityStore<TokenStoreConfigur
 
     @Override
     public <V extends IdentityType> List<V> fetchQueryResults(IdentityContext context, IdentityQuery<V> query) {
+        checkKeysetPaginationNotSupported(query);
+
         List<V> identityTypes = new ArrayList<V>();
         Class<V> identityTypeType = query.getIdentityType();
         IdentityStereotype stereotype = identityTypeType.getAnnotation(IdentityStereotype.class);
@@ -22,10 +22,14 @@ import org.junit.Before;
 import org.junit.runner.RunWith;
 import org.picketlink.idm.IdentityManager;
 import org.picketlink.idm.PartitionManager;
+import org.picketlink.idm.config.IdentityConfiguration;
+import org.picketlink.idm.config.IdentityConfigurationBuilder;
+import org.picketlink.idm.internal.DefaultPartitionManager;
 import org.picketlink.idm.model.Partition;
 import org.picketlink.idm.model.basic.Agent;
 import org.picketlink.idm.model.basic.BasicModel;
 import org.picketlink.idm.model.basic.Group;
+import org.picketlink.idm.model.basic.Realm;
 import org.picketlink.idm.model.basic.Role;
 import org.picketlink.idm.model.basic.User;
 import org.picketlink.test.idm.testers.IdentityConfigurationTester;
@@ -84,6 +88,35 @@ public abstract class AbstractPartitionManagerTestCase {
         return getPartitionManager().createIdentityManager();
     }
 
+    /**
+     * <p>Returns a builder initialized with the configurations used by the current tester. Test cases can use it to
+     * change some settings, such as caching, and create their own {@link PartitionManager} for the same stores with
+     * {@link #createPartitionManager(IdentityConfigurationBuilder)}.</p>
+     *
+     * @return
+     */
+    protected IdentityConfigurationBuilder createConfigurationBuilder() {
+        return new IdentityConfigurationBuilder(new ArrayList<IdentityConfiguration>(getPartitionManager().getConfigurations()));
+    }
+
+    /**
+     * <p>Creates a {@link PartitionManager} from the given builder, adding the default {@link Realm} if the stores
+     * support partitions and it does not exist yet.</p>
+     *
+     * @param builder
+     *
+     * @return
+     */
+    protected DefaultPartitionManager createPartitionManager(IdentityConfigurationBuilder builder) {
+        DefaultPartitionManager partitionManager = new DefaultPartitionManager(builder.buildAll());
+
+        if (partitionManager.getPartition(Realm.class, Realm.DEFAULT_REALM) == null) {
+            partitionManager.add(new Realm(Realm.DEFAULT_REALM));
+        }
+
+        return partitionManager;
+    }
+
     protected User createUser(String userName) {
         User user = BasicModel.getUser(getIdentityManager(), userName);
 
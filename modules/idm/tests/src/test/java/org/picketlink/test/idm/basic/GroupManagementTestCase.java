@@ -28,6 +28,7 @@ import org.picketlink.idm.model.basic.GroupMembership;
 import org.picketlink.idm.model.basic.Realm;
 import org.picketlink.idm.model.basic.Role;
 import org.picketlink.idm.model.basic.User;
+import org.picketlink.idm.query.IdentityQuery;
 import org.picketlink.idm.query.RelationshipQuery;
 import org.picketlink.test.idm.Configuration;
 import org.picketlink.test.idm.testers.FileStoreConfigurationTester;
@@ -39,6 +40,8 @@ import org.picketlink.test.idm.testers.LDAPUserGroupJPARoleConfigurationTester;
 import org.picketlink.test.idm.testers.SingleConfigLDAPJPAStoreConfigurationTester;
 
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNull;
@@ -140,6 +143,36 @@ public class GroupManagementTestCase extends AbstractIdentityTypeTestCase<Group>
         assertEquals(storedGroupD.getParentGroup().getParentGroup().getParentGroup().getId(), groupA.getId());
     }
 
+    @Test
+    @Configuration (exclude = SingleConfigLDAPJPAStoreConfigurationTester.class)
+    public void testQueryGroupsWithSharedParents() {
+        Group groupA = createGroup("QA Group", null);
+        Group groupB = createGroupWithParent("groupB", groupA);
+        Group groupC = createGroupWithParent("groupC", groupA);
+        Group groupD = createGroupWithParent("groupD", groupB);
+        Group groupE = createGroupWithParent("groupE", groupB);
+
+        IdentityQuery<Group> query = getIdentityManager().createIdentityQuery(Group.class);
+
+        Map<String, Group> storedGroups = new HashMap<String, Group>();
+
+        for (Group group : query.getResultList()) {
+            storedGroups.put(group.getId(), group);
+        }
+
+        assertNull(storedGroups.get(groupA.getId()).getParentGroup());
+        assertEquals(groupA.getId(), storedGroups.get(groupB.getId()).getParentGroup().getId());
+        assertEquals(groupA.getId(), storedGroups.get(groupC.getId()).getParentGroup().getId());
+
+        for (Group group : new Group[] {groupD, groupE}) {
+            Group storedGroup = storedGroups.get(group.getId());
+
+            assertEquals(group.getPath(), storedGroup.getPath());
+            assertEquals(groupB.getId(), storedGroup.getParentGroup().getId());
+            assertEquals(groupA.getId(), storedGroup.getParentGroup().getParentGroup().getId());
+        }
+    }
+
     @Test
     @Configuration (exclude = {LDAPUserGroupJPARoleConfigurationTester.class, SingleConfigLDAPJPAStoreConfigurationTester.class})
     public void testDefaultHierarchyDepthConfiguration() {
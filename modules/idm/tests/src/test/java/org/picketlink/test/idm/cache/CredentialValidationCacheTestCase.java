@@ -0,0 +1,492 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.idm.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.picketlink.idm.IdentityManager;
+import org.picketlink.idm.config.IdentityConfigurationBuilder;
+import org.picketlink.idm.config.IdentityStoreConfigurationBuilder;
+import org.picketlink.idm.config.NamedIdentityConfigurationBuilder;
+import org.picketlink.idm.config.SecurityConfigurationException;
+import org.picketlink.idm.credential.Credentials;
+import org.picketlink.idm.credential.Password;
+import org.picketlink.idm.credential.TOTPCredential;
+import org.picketlink.idm.credential.TOTPCredentials;
+import org.picketlink.idm.credential.UsernamePasswordCredentials;
+import org.picketlink.idm.credential.handler.CredentialHandler;
+import org.picketlink.idm.credential.handler.CredentialValidationCache;
+import org.picketlink.idm.credential.handler.PasswordCredentialHandler;
+import org.picketlink.idm.credential.handler.annotations.SupportsCredentials;
+import org.picketlink.idm.credential.storage.CredentialStorage;
+import org.picketlink.idm.credential.storage.EncodedPasswordStorage;
+import org.picketlink.idm.credential.util.TimeBasedOTP;
+import org.picketlink.idm.internal.DefaultPartitionManager;
+import org.picketlink.idm.model.Account;
+import org.picketlink.idm.model.basic.Realm;
+import org.picketlink.idm.model.basic.User;
+import org.picketlink.idm.spi.CredentialStore;
+import org.picketlink.idm.spi.IdentityContext;
+import org.picketlink.test.idm.AbstractPartitionManagerTestCase;
+import org.picketlink.test.idm.Configuration;
+import org.picketlink.test.idm.testers.FileStoreConfigurationTester;
+import org.picketlink.test.idm.testers.IdentityConfigurationTester;
+import org.picketlink.test.idm.testers.JPAStoreConfigurationTester;
+import org.picketlink.test.idm.testers.LDAPStoreConfigurationTester;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Test case for the {@link CredentialValidationCache} support.</p>
+ */
+@Configuration(include = {FileStoreConfigurationTester.class, JPAStoreConfigurationTester.class,
+        LDAPStoreConfigurationTester.class})
+public class CredentialValidationCacheTestCase extends AbstractPartitionManagerTestCase {
+
+    private DefaultPartitionManager partitionManager;
+    private CredentialValidationCache validationCache;
+
+    public CredentialValidationCacheTestCase(IdentityConfigurationTester visitor) {
+        super(visitor);
+    }
+
+    @Before
+    @Override
+    public void onBefore() {
+        super.onBefore();
+        this.partitionManager = createCachingPartitionManager(null);
+        this.validationCache = this.partitionManager.getCredentialValidationCache(getDefaultRealm());
+
+        assertNotNull(this.validationCache);
+    }
+
+    @After
+    @Override
+    public void onAfter() {
+        this.partitionManager.close();
+        super.onAfter();
+    }
+
+    @Test
+    public void testValidationResolvedFromCache() {
+        IdentityManager identityManager = this.partitionManager.createIdentityManager();
+        User john = new User("john");
+
+        identityManager.add(john);
+        identityManager.updateCredential(john, new Password("secret"));
+
+        assertEquals(Credentials.Status.VALID, validate(identityManager, "john", "secret").getStatus());
+
+        long hitCount = this.validationCache.getValidationHitCount();
+        UsernamePasswordCredentials credentials = validate(this.partitionManager.createIdentityManager(), "john", "secret");
+
+        assertEquals(Credentials.Status.VALID, credentials.getStatus());
+        assertNotNull(credentials.getValidatedAccount());
+        assertEquals(john.getId(), credentials.getValidatedAccount().getId());
+        assertEquals(hitCount + 1, this.validationCache.getValidationHitCount());
+
+        assertEquals(Credentials.Status.INVALID, validate(identityManager, "john", "bad_secret").getStatus());
+        assertEquals(hitCount + 1, this.validationCache.getValidationHitCount());
+    }
+
+    @Test
+    public void testCredentialUpdateInvalidatesCachedValidation() {
+        IdentityManager identityManager = this.partitionManager.createIdentityManager();
+        User john = new User("john");
+
+        identityManager.add(john);
+        identityManager.updateCredential(john, new Password("secret"));
+
+        assertEquals(Credentials.Status.VALID, validate(identityManager, "john", "secret").getStatus());
+
+        identityManager.updateCredential(john, new Password("new_secret"));
+
+        assertEquals(Credentials.Status.INVALID, validate(identityManager, "john", "secret").getStatus());
+        assertEquals(Credentials.Status.VALID, validate(identityManager, "john", "new_secret").getStatus());
+    }
+
+    @Test
+    @Configuration(exclude = LDAPStoreConfigurationTester.class)
+    public void testDisabledAccountNotResolvedFromCache() {
+        IdentityManager identityManager = this.partitionManager.createIdentityManager();
+        User john = new User("john");
+
+        identityManager.add(john);
+        identityManager.updateCredential(john, new Password("secret"));
+
+        assertEquals(Credentials.Status.VALID, validate(identityManager, "john", "secret").getStatus());
+
+        john.setEnabled(false);
+
+        identityManager.update(john);
+
+        assertEquals(Credentials.Status.ACCOUNT_DISABLED, validate(identityManager, "john", "secret").getStatus());
+    }
+
+    @Test
+    @Configuration(include = FileStoreConfigurationTester.class)
+    public void testValidationExpiresWithCredential() {
+        TestClock clock = new TestClock();
+        CredentialValidationCache validationCache = new CredentialValidationCache(10, 60000, 60000, clock);
+        User john = new User("john");
+
+        john.setId("1");
+
+        validationCache.putValid(john, UsernamePasswordCredentials.class, "secret".getBytes(),
+            new Date(clock.millis() + 1000), validationCache.getGeneration(john));
+
+        assertTrue(validationCache.isValid(john, UsernamePasswordCredentials.class, "secret".getBytes()));
+
+        clock.advance(1001);
+
+        assertFalse(validationCache.isValid(john, UsernamePasswordCredentials.class, "secret".getBytes()));
+    }
+
+    @Test
+    public void testUnknownAccountResolvedFromCache() {
+        IdentityManager identityManager = this.partitionManager.createIdentityManager();
+
+        assertEquals(Credentials.Status.INVALID, validate(identityManager, "mary", "secret").getStatus());
+
+        long hitCount = this.validationCache.getUnknownAccountHitCount();
+
+        assertEquals(Credentials.Status.INVALID, validate(identityManager, "mary", "secret").getStatus());
+        assertEquals(hitCount + 1, this.validationCache.getUnknownAccountHitCount());
+
+        User mary = new User("mary");
+
+        identityManager.add(mary);
+        identityManager.updateCredential(mary, new Password("secret"));
+
+        assertEquals(Credentials.Status.VALID, validate(identityManager, "mary", "secret").getStatus());
+    }
+
+    @Test
+    @Configuration(exclude = LDAPStoreConfigurationTester.class)
+    public void testLoginNameUpdateInvalidatesUnknownAccount() {
+        IdentityManager identityManager = this.partitionManager.createIdentityManager();
+        User john = new User("john");
+
+        identityManager.add(john);
+        identityManager.updateCredential(john, new Password("secret"));
+
+        assertEquals(Credentials.Status.INVALID, validate(identityManager, "johnny", "secret").getStatus());
+
+        john.setLoginName("johnny");
+
+        identityManager.update(john);
+
+        assertEquals(Credentials.Status.VALID, validate(identityManager, "johnny", "secret").getStatus());
+    }
+
+    @Test
+    @Configuration(exclude = LDAPStoreConfigurationTester.class)
+    public void testOneTimePasswordNotResolvedFromCache() throws Exception {
+        IdentityManager identityManager = this.partitionManager.createIdentityManager();
+        User john = new User("john");
+
+        identityManager.add(john);
+        identityManager.updateCredential(john, new TOTPCredential("secret", "totp_secret"));
+
+        TimeBasedOTP totp = new TimeBasedOTP();
+        TOTPCredentials credentials = new TOTPCredentials();
+
+        credentials.setUsername("john");
+        credentials.setPassword(new Password("secret"));
+        credentials.setToken(totp.generate("totp_secret"));
+
+        identityManager.validateCredentials(credentials);
+
+        assertEquals(Credentials.Status.VALID, credentials.getStatus());
+
+        credentials = new TOTPCredentials();
+
+        credentials.setUsername("john");
+        credentials.setPassword(new Password("secret"));
+        credentials.setToken(totp.generate("bad_secret"));
+
+        identityManager.validateCredentials(credentials);
+
+        assertEquals(Credentials.Status.INVALID, credentials.getStatus());
+        assertNull(credentials.getValidatedAccount());
+    }
+
+    @Test
+    @Configuration(include = FileStoreConfigurationTester.class)
+    public void testExpiration() {
+        TestClock clock = new TestClock();
+        CredentialValidationCache validationCache = new CredentialValidationCache(10, 500, 500, clock);
+        Realm realm = getDefaultRealm();
+        User john = new User("john");
+
+        john.setId("1");
+
+        validationCache.putValid(john, UsernamePasswordCredentials.class, "secret".getBytes(), null,
+            validationCache.getGeneration(john));
+        validationCache.putUnknownAccount(realm, "mary", validationCache.getUnknownAccountGeneration());
+
+        assertTrue(validationCache.isValid(john, UsernamePasswordCredentials.class, "secret".getBytes()));
+        assertFalse(validationCache.isValid(john, UsernamePasswordCredentials.class, "bad_secret".getBytes()));
+        assertFalse(validationCache.isValid(john, TOTPCredentials.class, "secret".getBytes()));
+
+        assertTrue(validationCache.isUnknownAccount(realm, "mary"));
+
+        clock.advance(501);
+
+        assertFalse(validationCache.isValid(john, UsernamePasswordCredentials.class, "secret".getBytes()));
+        assertFalse(validationCache.isUnknownAccount(realm, "mary"));
+    }
+
+    @Test
+    @Configuration(include = FileStoreConfigurationTester.class)
+    public void testInvalidatedValidationNotCached() {
+        CredentialValidationCache validationCache = new CredentialValidationCache(10, 60000, 60000);
+        User john = new User("john");
+
+        john.setId("1");
+
+        long generation = validationCache.getGeneration(john);
+
+        // the credential is updated after it was read and before the validation is cached
+        validationCache.invalidateCredentials(john);
+        validationCache.putValid(john, UsernamePasswordCredentials.class, "secret".getBytes(), null, generation);
+
+        assertFalse(validationCache.isValid(john, UsernamePasswordCredentials.class, "secret".getBytes()));
+
+        validationCache.putValid(john, UsernamePasswordCredentials.class, "secret".getBytes(), null,
+            validationCache.getGeneration(john));
+
+        assertTrue(validationCache.isValid(john, UsernamePasswordCredentials.class, "secret".getBytes()));
+    }
+
+    @Test
+    @Configuration(include = FileStoreConfigurationTester.class)
+    public void testInvalidatedUnknownAccountNotCached() {
+        CredentialValidationCache validationCache = new CredentialValidationCache(10, 60000, 60000);
+        Realm realm = getDefaultRealm();
+        User mary = new User("mary");
+
+        mary.setId("1");
+
+        long generation = validationCache.getUnknownAccountGeneration();
+
+        // the account is created after it was looked up and before the lookup is cached
+        validationCache.invalidate(realm, mary);
+        validationCache.putUnknownAccount(realm, "mary", generation);
+
+        assertFalse(validationCache.isUnknownAccount(realm, "mary"));
+    }
+
+    @Test
+    @Configuration(exclude = LDAPStoreConfigurationTester.class)
+    public void testCredentialUpdatedDuringValidation() {
+        this.partitionManager.close();
+        this.partitionManager = createCachingPartitionManager(InterleavingPasswordCredentialHandler.class);
+
+        final IdentityManager identityManager = this.partitionManager.createIdentityManager();
+        final User john = new User("john");
+
+        identityManager.add(john);
+        identityManager.updateCredential(john, new Password("secret"));
+
+        InterleavingPasswordCredentialHandler.afterStoreRead = new Runnable() {
+            @Override
+            public void run() {
+                identityManager.updateCredential(john, new Password("new_secret"));
+            }
+        };
+
+        // validated against the credential read before the update
+        assertEquals(Credentials.Status.VALID, validate(identityManager, new InterleavingCredentials("john", "secret")).getStatus());
+
+        assertEquals(Credentials.Status.INVALID, validate(identityManager, new InterleavingCredentials("john", "secret")).getStatus());
+        assertEquals(Credentials.Status.VALID, validate(identityManager, new InterleavingCredentials("john", "new_secret")).getStatus());
+    }
+
+    @Test
+    @Configuration(exclude = LDAPStoreConfigurationTester.class)
+    public void testAccountCreatedDuringLookup() {
+        this.partitionManager.close();
+        this.partitionManager = createCachingPartitionManager(InterleavingPasswordCredentialHandler.class);
+
+        final IdentityManager identityManager = this.partitionManager.createIdentityManager();
+
+        InterleavingPasswordCredentialHandler.afterStoreRead = new Runnable() {
+            @Override
+            public void run() {
+                User mary = new User("mary");
+
+                identityManager.add(mary);
+                identityManager.updateCredential(mary, new Password("secret"));
+            }
+        };
+
+        // the account did not exist when it was looked up
+        assertEquals(Credentials.Status.INVALID, validate(identityManager, new InterleavingCredentials("mary", "secret")).getStatus());
+
+        assertEquals(Credentials.Status.VALID, validate(identityManager, new InterleavingCredentials("mary", "secret")).getStatus());
+    }
+
+    @Test (expected = SecurityConfigurationException.class)
+    @Configuration(include = FileStoreConfigurationTester.class)
+    public void failInvalidExpiration() {
+        IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
+
+        builder
+            .named("default")
+                .cache()
+                    .credentialValidationExpiration(-1, TimeUnit.MINUTES)
+                .stores()
+                    .file()
+                        .supportAllFeatures();
+
+        builder.build();
+    }
+
+    private UsernamePasswordCredentials validate(IdentityManager identityManager, String loginName, String password) {
+        return validate(identityManager, new UsernamePasswordCredentials(loginName, new Password(password)));
+    }
+
+    private <C extends UsernamePasswordCredentials> C validate(IdentityManager identityManager, C credentials) {
+        identityManager.validateCredentials(credentials);
+
+        return credentials;
+    }
+
+    private DefaultPartitionManager createCachingPartitionManager(Class<? extends CredentialHandler> credentialHandler) {
+        IdentityConfigurationBuilder builder = createConfigurationBuilder();
+
+        for (NamedIdentityConfigurationBuilder configurationBuilder : builder.getNamedIdentityConfigurationBuilders()) {
+            configurationBuilder
+                .cache()
+                    .credentialValidationExpiration(1, TimeUnit.MINUTES)
+                    .unknownAccountExpiration(1, TimeUnit.MINUTES);
+
+            if (credentialHandler != null) {
+                for (IdentityStoreConfigurationBuilder<?, ?> storeBuilder : configurationBuilder.stores().getIdentityStoresConfigurationBuilder()) {
+                    storeBuilder.addCredentialHandler(credentialHandler);
+                }
+            }
+        }
+
+        return createPartitionManager(builder);
+    }
+
+    private Realm getDefaultRealm() {
+        return this.partitionManager.getPartition(Realm.class, Realm.DEFAULT_REALM);
+    }
+
+    /**
+     * <p>Credentials only validated by the {@link InterleavingPasswordCredentialHandler}, so it is selected whatever the
+     * other credential handlers of the store are.</p>
+     */
+    public static class InterleavingCredentials extends UsernamePasswordCredentials {
+
+        InterleavingCredentials(String loginName, String password) {
+            super(loginName, new Password(password));
+        }
+    }
+
+    /**
+     * <p>A {@link PasswordCredentialHandler} running a task right after reading the account or its stored credential,
+     * so changes can be made while a validation is in progress.</p>
+     */
+    @SupportsCredentials(
+        credentialClass = InterleavingCredentials.class,
+        credentialStorage = EncodedPasswordStorage.class)
+    public static class InterleavingPasswordCredentialHandler
+        extends PasswordCredentialHandler<CredentialStore<?>, UsernamePasswordCredentials, Password> {
+
+        static Runnable afterStoreRead;
+
+        @Override
+        protected Account getAccount(IdentityContext context, UsernamePasswordCredentials credentials) {
+            Account account = super.getAccount(context, credentials);
+
+            if (account == null) {
+                runAfterStoreRead();
+            }
+
+            return account;
+        }
+
+        @Override
+        protected CredentialStorage getCredentialStorage(IdentityContext context, Account account,
+            UsernamePasswordCredentials credentials, CredentialStore<?> store) {
+            CredentialStorage storage = super.getCredentialStorage(context, account, credentials, store);
+
+            runAfterStoreRead();
+
+            return storage;
+        }
+
+        private void runAfterStoreRead() {
+            Runnable task = afterStoreRead;
+
+            afterStoreRead = null;
+
+            if (task != null) {
+                task.run();
+            }
+        }
+    }
+
+    /**
+     * <p>A {@link Clock} only moving when advanced by the test.</p>
+     */
+    private static class TestClock extends Clock {
+
+        private long millis = System.currentTimeMillis();
+
+        void advance(long millis) {
+            this.millis = this.millis + millis;
+        }
+
+        @Override
+        public long millis() {
+            return this.millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(this.millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
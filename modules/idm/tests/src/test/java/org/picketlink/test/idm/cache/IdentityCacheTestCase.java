@@ -0,0 +1,368 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.idm.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.picketlink.idm.IdentityCache;
+import org.picketlink.idm.IdentityManager;
+import org.picketlink.idm.config.IdentityConfigurationBuilder;
+import org.picketlink.idm.config.NamedIdentityConfigurationBuilder;
+import org.picketlink.idm.config.SecurityConfigurationException;
+import org.picketlink.idm.credential.Credentials;
+import org.picketlink.idm.credential.Password;
+import org.picketlink.idm.credential.UsernamePasswordCredentials;
+import org.picketlink.idm.internal.DefaultIdentityCache;
+import org.picketlink.idm.internal.DefaultPartitionManager;
+import org.picketlink.idm.model.Attribute;
+import org.picketlink.idm.model.basic.BasicModel;
+import org.picketlink.idm.model.basic.Realm;
+import org.picketlink.idm.model.basic.Role;
+import org.picketlink.idm.model.basic.User;
+import org.picketlink.test.idm.AbstractPartitionManagerTestCase;
+import org.picketlink.test.idm.Configuration;
+import org.picketlink.test.idm.testers.FileStoreConfigurationTester;
+import org.picketlink.test.idm.testers.IdentityConfigurationTester;
+import org.picketlink.test.idm.testers.JPAStoreConfigurationTester;
+import org.picketlink.test.idm.testers.LDAPStoreConfigurationTester;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Test case for the {@link IdentityCache} support.</p>
+ */
+@Configuration(include = {FileStoreConfigurationTester.class, JPAStoreConfigurationTester.class,
+        LDAPStoreConfigurationTester.class})
+public class IdentityCacheTestCase extends AbstractPartitionManagerTestCase {
+
+    private DefaultPartitionManager partitionManager;
+    private IdentityCache identityCache;
+
+    public IdentityCacheTestCase(IdentityConfigurationTester visitor) {
+        super(visitor);
+    }
+
+    @Before
+    @Override
+    public void onBefore() {
+        super.onBefore();
+        this.partitionManager = createCachingPartitionManager(100);
+        this.identityCache = this.partitionManager.getIdentityCache(getDefaultRealm());
+
+        assertNotNull(this.identityCache);
+    }
+
+    @After
+    @Override
+    public void onAfter() {
+        this.partitionManager.close();
+        super.onAfter();
+    }
+
+    @Test
+    public void testLookupsResolvedFromCache() {
+        IdentityManager identityManager = this.partitionManager.createIdentityManager();
+        User john = new User("john");
+
+        identityManager.add(john);
+
+        assertNotNull(BasicModel.getUser(identityManager, "john"));
+
+        long hitCount = this.identityCache.getHitCount();
+
+        User cachedUser = BasicModel.getUser(this.partitionManager.createIdentityManager(), "john");
+
+        assertNotNull(cachedUser);
+        assertEquals(john.getId(), cachedUser.getId());
+        assertEquals(hitCount + 1, this.identityCache.getHitCount());
+
+        assertNotNull(identityManager.lookupIdentityById(User.class, john.getId()));
+        assertNotNull(identityManager.lookupIdentityById(User.class, john.getId()));
+        assertEquals(hitCount + 2, this.identityCache.getHitCount());
+    }
+
+    @Test
+    public void testChangesToReturnedInstancesNotShared() {
+        IdentityManager identityManager = this.partitionManager.createIdentityManager();
+        User john = new User("john");
+
+        john.setEmail("john@picketlink.org");
+
+        identityManager.add(john);
+
+        User cachedUser = BasicModel.getUser(identityManager, "john");
+
+        assertNotNull(cachedUser);
+
+        long hitCount = this.identityCache.getHitCount();
+
+        cachedUser.setEnabled(false);
+        cachedUser.setEmail("changed@picketlink.org");
+        cachedUser.setAttribute(new Attribute<String>("someAttribute", "someValue"));
+
+        User anotherCachedUser = BasicModel.getUser(this.partitionManager.createIdentityManager(), "john");
+
+        assertEquals(hitCount + 1, this.identityCache.getHitCount());
+        assertNotSame(cachedUser, anotherCachedUser);
+        assertTrue(anotherCachedUser.isEnabled());
+        assertEquals("john@picketlink.org", anotherCachedUser.getEmail());
+        assertNull(anotherCachedUser.getAttribute("someAttribute"));
+
+        User userById = identityManager.lookupIdentityById(User.class, john.getId());
+
+        userById.setEnabled(false);
+
+        assertTrue(identityManager.lookupIdentityById(User.class, john.getId()).isEnabled());
+    }
+
+    @Test
+    @Configuration(exclude = LDAPStoreConfigurationTester.class)
+    public void testUpdateInvalidatesCachedLookups() {
+        IdentityManager identityManager = this.partitionManager.createIdentityManager();
+        User john = new User("john");
+
+        identityManager.add(john);
+
+        User storedUser = BasicModel.getUser(identityManager, "john");
+
+        storedUser.setLoginName("johnny");
+        storedUser.setEmail("johnny@picketlink.org");
+
+        identityManager.update(storedUser);
+
+        assertNull(BasicModel.getUser(identityManager, "john"));
+
+        User updatedUser = BasicModel.getUser(identityManager, "johnny");
+
+        assertNotNull(updatedUser);
+        assertEquals("johnny@picketlink.org", updatedUser.getEmail());
+        assertEquals("johnny@picketlink.org", identityManager.lookupIdentityById(User.class, john.getId()).getEmail());
+    }
+
+    @Test
+    public void testRemoveInvalidatesCachedLookups() {
+        IdentityManager identityManager = this.partitionManager.createIdentityManager();
+        Role role = new Role("admin");
+
+        identityManager.add(role);
+
+        assertNotNull(BasicModel.getRole(identityManager, "admin"));
+
+        identityManager.remove(role);
+
+        assertNull(BasicModel.getRole(identityManager, "admin"));
+        assertNull(identityManager.lookupIdentityById(Role.class, role.getId()));
+    }
+
+    @Test
+    public void testAddInvalidatesEmptyResults() {
+        IdentityManager identityManager = this.partitionManager.createIdentityManager();
+
+        assertNull(BasicModel.getRole(identityManager, "manager"));
+        assertNull(BasicModel.getRole(identityManager, "manager"));
+
+        identityManager.add(new Role("manager"));
+
+        assertNotNull(BasicModel.getRole(identityManager, "manager"));
+    }
+
+    @Test
+    @Configuration(exclude = LDAPStoreConfigurationTester.class)
+    public void testCredentialValidationUsesCache() {
+        IdentityManager identityManager = this.partitionManager.createIdentityManager();
+        User john = new User("john");
+
+        identityManager.add(john);
+
+        Password password = new Password("secret");
+
+        identityManager.updateCredential(john, password);
+
+        UsernamePasswordCredentials credentials = new UsernamePasswordCredentials("john", password);
+
+        identityManager.validateCredentials(credentials);
+
+        assertEquals(Credentials.Status.VALID, credentials.getStatus());
+
+        long hitCount = this.identityCache.getHitCount();
+
+        credentials = new UsernamePasswordCredentials("john", password);
+
+        identityManager.validateCredentials(credentials);
+
+        assertEquals(Credentials.Status.VALID, credentials.getStatus());
+        assertTrue(this.identityCache.getHitCount() > hitCount);
+
+        john.setEnabled(false);
+
+        identityManager.update(john);
+
+        credentials = new UsernamePasswordCredentials("john", password);
+
+        identityManager.validateCredentials(credentials);
+
+        assertEquals(Credentials.Status.ACCOUNT_DISABLED, credentials.getStatus());
+    }
+
+    @Test
+    public void testMaxEntries() {
+        this.partitionManager.close();
+        this.partitionManager = createCachingPartitionManager(2);
+        this.identityCache = this.partitionManager.getIdentityCache(getDefaultRealm());
+
+        IdentityManager identityManager = this.partitionManager.createIdentityManager();
+
+        identityManager.add(new User("john"));
+        identityManager.add(new User("mary"));
+        identityManager.add(new User("bill"));
+
+        long evictionCount = this.identityCache.getEvictionCount();
+
+        assertNotNull(BasicModel.getUser(identityManager, "john"));
+        assertNotNull(BasicModel.getUser(identityManager, "mary"));
+        assertNotNull(BasicModel.getUser(identityManager, "bill"));
+
+        assertTrue(this.identityCache.getEvictionCount() > evictionCount);
+        assertTrue(((DefaultIdentityCache) this.identityCache).size() <= 2);
+    }
+
+    @Test
+    @Configuration(include = FileStoreConfigurationTester.class)
+    public void testExpiration() throws Exception {
+        DefaultIdentityCache identityCache = new DefaultIdentityCache(10, 1);
+        Realm realm = getDefaultRealm();
+        User john = new User("john");
+
+        john.setId("1");
+
+        identityCache.putUser(realm, john);
+
+        Thread.sleep(10);
+
+        assertNull(identityCache.lookupUser(realm, "john"));
+        assertEquals(1, identityCache.getEvictionCount());
+        assertEquals(1, identityCache.getMissCount());
+        assertEquals(0, identityCache.size());
+    }
+
+    @Test
+    @Configuration(include = FileStoreConfigurationTester.class)
+    public void testEmptyResultCached() {
+        DefaultIdentityCache identityCache = new DefaultIdentityCache();
+        Realm realm = getDefaultRealm();
+
+        identityCache.put(realm, User.class, "loginName", "john", Collections.<User>emptyList(),
+            identityCache.getGeneration());
+
+        List<User> result = identityCache.lookup(realm, User.class, "loginName", "john");
+
+        assertNotNull(result);
+        assertTrue(result.isEmpty());
+
+        User john = new User("john");
+
+        john.setId("1");
+
+        identityCache.invalidate(realm, john);
+
+        assertNull(identityCache.lookup(realm, User.class, "loginName", "john"));
+    }
+
+    @Test
+    @Configuration(include = FileStoreConfigurationTester.class)
+    public void testResultNotCachedIfInvalidatedWhileLoading() {
+        DefaultIdentityCache identityCache = new DefaultIdentityCache();
+        Realm realm = getDefaultRealm();
+        User john = new User("john");
+
+        john.setId("1");
+
+        // a query for john starts and finds nothing, then john is added before the query caches its result
+        long generation = identityCache.getGeneration();
+
+        identityCache.invalidate(realm, john);
+        identityCache.put(realm, User.class, "loginName", "john", Collections.<User>emptyList(), generation);
+
+        assertNull(identityCache.lookup(realm, User.class, "loginName", "john"));
+        assertEquals(0, identityCache.size());
+
+        // a query loads john, then john is disabled before the query caches its result
+        generation = identityCache.getGeneration();
+
+        User disabledJohn = new User("john");
+
+        disabledJohn.setId("1");
+        disabledJohn.setEnabled(false);
+
+        identityCache.invalidate(realm, disabledJohn);
+        identityCache.put(realm, User.class, "loginName", "john", Collections.singletonList(john), generation);
+
+        assertNull(identityCache.lookupUser(realm, "john"));
+
+        identityCache.put(realm, User.class, "loginName", "john", Collections.singletonList(disabledJohn),
+            identityCache.getGeneration());
+
+        User cachedUser = identityCache.lookupUser(realm, "john");
+
+        assertNotNull(cachedUser);
+        assertFalse(cachedUser.isEnabled());
+    }
+
+    @Test (expected = SecurityConfigurationException.class)
+    @Configuration(include = FileStoreConfigurationTester.class)
+    public void failInvalidMaxEntries() {
+        IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
+
+        builder
+            .named("default")
+                .cache()
+                    .maxEntries(0)
+                .stores()
+                    .file()
+                        .supportAllFeatures();
+
+        builder.build();
+    }
+
+    private DefaultPartitionManager createCachingPartitionManager(int maxEntries) {
+        IdentityConfigurationBuilder builder = createConfigurationBuilder();
+
+        for (NamedIdentityConfigurationBuilder configurationBuilder : builder.getNamedIdentityConfigurationBuilders()) {
+            configurationBuilder
+                .cache()
+                    .maxEntries(maxEntries)
+                    .expiration(1, TimeUnit.MINUTES);
+        }
+
+        return createPartitionManager(builder);
+    }
+
+    private Realm getDefaultRealm() {
+        return this.partitionManager.getPartition(Realm.class, Realm.DEFAULT_REALM);
+    }
+}
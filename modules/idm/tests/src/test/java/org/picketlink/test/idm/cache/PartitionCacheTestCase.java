@@ -0,0 +1,141 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.idm.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.picketlink.idm.IdentityManagementException;
+import org.picketlink.idm.IdentityManager;
+import org.picketlink.idm.PartitionManager;
+import org.picketlink.idm.config.IdentityConfigurationBuilder;
+import org.picketlink.idm.config.SecurityConfigurationException;
+import org.picketlink.idm.internal.DefaultPartitionManager;
+import org.picketlink.idm.model.Attribute;
+import org.picketlink.idm.model.basic.Realm;
+import org.picketlink.idm.model.basic.User;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * <p>Test case for the caching of partitions resolved by the {@link PartitionManager}.</p>
+ */
+public class PartitionCacheTestCase {
+
+    private PartitionManager partitionManager;
+
+    @Before
+    public void onBefore() {
+        IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
+
+        builder
+            .named("default")
+                .cache()
+                    .partitionExpiration(1, TimeUnit.MINUTES)
+                .stores()
+                    .file()
+                        .preserveState(false)
+                        .supportAllFeatures();
+
+        this.partitionManager = new DefaultPartitionManager(builder.buildAll());
+    }
+
+    @Test
+    public void testRemovedPartitionIsNotResolved() {
+        Realm realm = new Realm("Cached Realm");
+
+        this.partitionManager.add(realm);
+        this.partitionManager.createIdentityManager(realm);
+        this.partitionManager.remove(realm);
+
+        try {
+            this.partitionManager.createIdentityManager(realm);
+            fail("Partition was removed.");
+        } catch (IdentityManagementException ignore) {
+        }
+    }
+
+    @Test
+    public void testPartitionAddedWithSameName() {
+        Realm realm = new Realm("Cached Realm");
+
+        this.partitionManager.add(realm);
+
+        IdentityManager identityManager = this.partitionManager.createIdentityManager(new Realm("Cached Realm"));
+        User john = new User("john");
+
+        identityManager.add(john);
+
+        assertEquals(realm.getId(), john.getPartition().getId());
+
+        this.partitionManager.remove(realm);
+
+        Realm newRealm = new Realm("Cached Realm");
+
+        this.partitionManager.add(newRealm);
+
+        identityManager = this.partitionManager.createIdentityManager(new Realm("Cached Realm"));
+
+        User mary = new User("mary");
+
+        identityManager.add(mary);
+
+        assertEquals(newRealm.getId(), mary.getPartition().getId());
+    }
+
+    @Test
+    public void testUpdatedPartitionIsResolvedAgain() {
+        Realm realm = new Realm("Cached Realm");
+
+        this.partitionManager.add(realm);
+
+        IdentityManager identityManager = this.partitionManager.createIdentityManager(realm);
+
+        identityManager.add(new User("john"));
+
+        Realm storedRealm = this.partitionManager.getPartition(Realm.class, "Cached Realm");
+
+        storedRealm.setAttribute(new Attribute<Serializable>("enforceSSL", true));
+
+        this.partitionManager.update(storedRealm);
+
+        User mary = new User("mary");
+
+        this.partitionManager.createIdentityManager(realm).add(mary);
+
+        assertEquals(true, mary.getPartition().getAttribute("enforceSSL").getValue());
+    }
+
+    @Test (expected = SecurityConfigurationException.class)
+    public void failInvalidPartitionExpiration() {
+        IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
+
+        builder
+            .named("default")
+                .cache()
+                    .partitionExpiration(-1, TimeUnit.MINUTES)
+                .stores()
+                    .file()
+                        .supportAllFeatures();
+
+        builder.build();
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.idm.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.picketlink.idm.IdentityManager;
+import org.picketlink.idm.PartitionManager;
+import org.picketlink.idm.PermissionManager;
+import org.picketlink.idm.config.IdentityConfigurationBuilder;
+import org.picketlink.idm.config.SecurityConfigurationException;
+import org.picketlink.idm.event.EventBridge;
+import org.picketlink.idm.internal.DefaultPartitionManager;
+import org.picketlink.idm.model.basic.Realm;
+import org.picketlink.idm.model.basic.Role;
+import org.picketlink.idm.model.basic.User;
+import org.picketlink.idm.permission.acl.spi.PersistentPermissionVoter;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.picketlink.idm.model.basic.BasicModel.grantRole;
+import static org.picketlink.idm.model.basic.BasicModel.revokeRole;
+import static org.picketlink.idm.permission.spi.PermissionVoter.VotingResult.ALLOW;
+import static org.picketlink.idm.permission.spi.PermissionVoter.VotingResult.NOT_APPLICABLE;
+
+/**
+ * <p>Test case for the permission decisions cached by the {@link PersistentPermissionVoter}.</p>
+ */
+public class PermissionDecisionCacheTestCase {
+
+    private DefaultPartitionManager partitionManager;
+    private PersistentPermissionVoter voter;
+    private boolean forwardEvents = true;
+
+    @Before
+    public void onBefore() {
+        IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
+
+        builder
+            .named("default")
+                .cache()
+                    .permissionDecisionExpiration(1, TimeUnit.MINUTES)
+                .stores()
+                    .file()
+                        .preserveState(false)
+                        .supportAllFeatures();
+
+        this.partitionManager = new DefaultPartitionManager(builder.buildAll(), new EventBridge() {
+            @Override
+            public void raiseEvent(Object event) {
+                if (forwardEvents && voter != null) {
+                    voter.onEvent(event);
+                }
+            }
+        }, null);
+
+        if (this.partitionManager.getPartition(Realm.class, Realm.DEFAULT_REALM) == null) {
+            this.partitionManager.add(new Realm(Realm.DEFAULT_REALM));
+        }
+
+        this.voter = new PersistentPermissionVoter(this.partitionManager);
+    }
+
+    @Test
+    public void testDecisionsResolvedFromCache() {
+        User john = createUser("john");
+        PermissionManager permissionManager = this.partitionManager.createPermissionManager();
+
+        permissionManager.grantPermission(john, "fileA.txt", "read");
+
+        assertEquals(ALLOW, this.voter.hasPermission(john, "fileA.txt", "read"));
+
+        this.forwardEvents = false;
+
+        permissionManager.revokePermission(john, "fileA.txt", "read");
+
+        // the voter was not notified, the cached decision is still used
+        assertEquals(ALLOW, this.voter.hasPermission(john, "fileA.txt", "read"));
+
+        this.voter.invalidateAll();
+
+        assertEquals(NOT_APPLICABLE, this.voter.hasPermission(john, "fileA.txt", "read"));
+    }
+
+    @Test
+    public void testPermissionChangesInvalidateDecisions() {
+        User john = createUser("john");
+        PermissionManager permissionManager = this.partitionManager.createPermissionManager();
+
+        assertEquals(NOT_APPLICABLE, this.voter.hasPermission(john, "fileA.txt", "read"));
+
+        permissionManager.grantPermission(john, "fileA.txt", "read");
+        permissionManager.grantPermission(john, "fileA.txt", "write");
+
+        assertEquals(ALLOW, this.voter.hasPermission(john, "fileA.txt", "read"));
+        assertEquals(ALLOW, this.voter.hasPermission(john, "fileA.txt", "write"));
+
+        permissionManager.revokePermission(john, "fileA.txt", "read");
+
+        assertEquals(NOT_APPLICABLE, this.voter.hasPermission(john, "fileA.txt", "read"));
+        assertEquals(ALLOW, this.voter.hasPermission(john, "fileA.txt", "write"));
+
+        permissionManager.clearPermissions("fileA.txt");
+
+        assertEquals(NOT_APPLICABLE, this.voter.hasPermission(john, "fileA.txt", "write"));
+    }
+
+    @Test
+    public void testRelationshipChangesInvalidateDecisions() {
+        User john = createUser("john");
+        Role admin = new Role("admin");
+
+        this.partitionManager.createIdentityManager().add(admin);
+        this.partitionManager.createPermissionManager().grantPermission(admin, "fileA.txt", "read");
+
+        assertEquals(NOT_APPLICABLE, this.voter.hasPermission(john, "fileA.txt", "read"));
+
+        grantRole(this.partitionManager.createRelationshipManager(), john, admin);
+
+        assertEquals(ALLOW, this.voter.hasPermission(john, "fileA.txt", "read"));
+
+        revokeRole(this.partitionManager.createRelationshipManager(), john, admin);
+
+        assertEquals(NOT_APPLICABLE, this.voter.hasPermission(john, "fileA.txt", "read"));
+    }
+
+    @Test
+    public void testPermissionGrantedDuringDecision() {
+        final User john = createUser("john");
+        final PermissionManager permissionManager = this.partitionManager.createPermissionManager();
+        final AtomicBoolean granted = new AtomicBoolean();
+
+        // grants the permission after the voter has read the permissions, but before it caches the decision
+        PartitionManager interleavingPartitionManager = createProxy(PartitionManager.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                final Object result = method.invoke(partitionManager, args);
+
+                if (PermissionManager.class.equals(method.getReturnType())) {
+                    return createProxy(PermissionManager.class, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            Object permissions = method.invoke(result, args);
+
+                            if ("listPermissions".equals(method.getName()) && granted.compareAndSet(false, true)) {
+                                permissionManager.grantPermission(john, "fileA.txt", "read");
+                            }
+
+                            return permissions;
+                        }
+                    });
+                }
+
+                return result;
+            }
+        });
+
+        this.voter = new PersistentPermissionVoter(interleavingPartitionManager);
+
+        assertEquals(NOT_APPLICABLE, this.voter.hasPermission(john, "fileA.txt", "read"));
+
+        // the decision computed before the grant was not cached
+        assertEquals(ALLOW, this.voter.hasPermission(john, "fileA.txt", "read"));
+    }
+
+    @Test (expected = SecurityConfigurationException.class)
+    public void failInvalidPermissionDecisionExpiration() {
+        IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
+
+        builder
+            .named("default")
+                .cache()
+                    .permissionDecisionExpiration(-1, TimeUnit.SECONDS)
+                .stores()
+                    .file()
+                        .supportAllFeatures();
+
+        builder.build();
+    }
+
+    private static <T> T createProxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+
+    private User createUser(String loginName) {
+        IdentityManager identityManager = this.partitionManager.createIdentityManager();
+        User user = new User(loginName);
+
+        identityManager.add(user);
+
+        return user;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.idm.config;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.picketlink.idm.config.IdentityConfiguration;
+import org.picketlink.idm.config.IdentityConfigurationBuilder;
+import org.picketlink.idm.credential.UsernamePasswordCredentials;
+import org.picketlink.idm.internal.AbstractIdentityContext;
+import org.picketlink.idm.internal.DefaultPartitionManager;
+import org.picketlink.idm.model.basic.User;
+import org.picketlink.idm.spi.CredentialStore;
+import org.picketlink.idm.spi.IdentityContext;
+
+import java.util.List;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * <p>Test case for the routing of operations to the stores of multiple configurations.</p>
+ */
+public class StoreRoutingTestCase {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testCredentialsRoutedToLastConfigurationWithoutPartitionManagement() throws Exception {
+        for (String[] names : new String[][] {{"first", "second"}, {"second", "first"}}) {
+            List<IdentityConfiguration> configurations = createConfigurations(names);
+            DefaultPartitionManager partitionManager = new DefaultPartitionManager(configurations);
+
+            try {
+                CredentialStore<?> store = partitionManager.getStoreForCredentialOperation(createIdentityContext(),
+                    UsernamePasswordCredentials.class);
+
+                assertNotNull(store);
+                assertSame(configurations.get(1).getStoreConfiguration().get(0), store.getConfig());
+            } finally {
+                partitionManager.close();
+            }
+        }
+    }
+
+    private List<IdentityConfiguration> createConfigurations(String... names) throws Exception {
+        IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
+
+        for (String name : names) {
+            builder
+                .named(name)
+                    .stores()
+                        .file()
+                            .workingDirectory(this.temporaryFolder.newFolder().getPath())
+                            .supportType(User.class)
+                            .supportCredentials(true);
+        }
+
+        return builder.buildAll();
+    }
+
+    private IdentityContext createIdentityContext() {
+        return new AbstractIdentityContext(null, null, null) {
+        };
+    }
+}
@@ -18,28 +18,42 @@
 
 package org.picketlink.test.idm.credential;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.naming.CommunicationException;
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.picketlink.idm.IdentityManagementException;
 import org.picketlink.idm.IdentityManager;
 import org.picketlink.idm.PartitionManager;
 import org.picketlink.idm.config.IdentityConfigurationBuilder;
+import org.picketlink.idm.config.LDAPIdentityStoreConfiguration;
 import org.picketlink.idm.credential.Credentials;
 import org.picketlink.idm.credential.Password;
 import org.picketlink.idm.credential.UsernamePasswordCredentials;
 import org.picketlink.idm.internal.DefaultPartitionManager;
+import org.picketlink.idm.ldap.internal.LDAPConnectionPool;
+import org.picketlink.idm.ldap.internal.LDAPOperationManager;
 import org.picketlink.idm.model.basic.Agent;
 import org.picketlink.idm.model.basic.User;
 import org.picketlink.test.idm.util.LDAPEmbeddedServer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.picketlink.common.constants.LDAPConstants.CN;
 import static org.picketlink.common.constants.LDAPConstants.CREATE_TIMESTAMP;
 import static org.picketlink.common.constants.LDAPConstants.EMAIL;
+import static org.picketlink.common.constants.LDAPConstants.OBJECT_CLASS;
 import static org.picketlink.common.constants.LDAPConstants.SN;
 import static org.picketlink.common.constants.LDAPConstants.UID;
 
@@ -112,7 +126,169 @@ public class ConcurrentLDAPAuthenticationTest {
         assertTrue(userValidated.get());
     }
 
+    @Test
+    public void testAuthenticationConnectionsAreReused() throws Exception {
+        IdentityManager identityManager = partitionManager.createIdentityManager();
+
+        User user = new User("user");
+        identityManager.add(user);
+
+        identityManager.updateCredential(user, new Password("password".toCharArray()));
+
+        LDAPOperationManager operationManager = new LDAPOperationManager(getLDAPConfiguration());
+        String userDN = UID + "=user," + embeddedServer.getUserDnSuffix();
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(operationManager.authenticate(userDN, "password"));
+        }
+
+        LDAPConnectionPool authenticationPool = operationManager.getAuthenticationConnectionPool();
+
+        assertEquals(1, authenticationPool.getCreatedCount());
+        assertEquals(5, authenticationPool.getBorrowedCount());
+        assertEquals(0, authenticationPool.getActiveCount());
+        assertEquals(1, authenticationPool.getIdleCount());
+
+        // connections are discarded after a failed bind
+        assertFalse(operationManager.authenticate(userDN, "invalid"));
+        assertEquals(0, authenticationPool.getActiveCount());
+        assertEquals(0, authenticationPool.getIdleCount());
+
+        assertTrue(operationManager.authenticate(userDN, "password"));
+        assertEquals(2, authenticationPool.getCreatedCount());
+
+        // the pooled connection must not keep the credentials from the last authentication
+        assertEquals(1, operationManager.search(embeddedServer.getUserDnSuffix(), "(" + UID + "=user)", null).size());
+        assertEquals(0, operationManager.getConnectionPool().getActiveCount());
+    }
+
+    @Test
+    public void testConnectionsAreNotPooledWhenDisabled() throws Exception {
+        IdentityConfigurationBuilder builder = createConfigurationBuilder();
+
+        builder.named(SIMPLE_LDAP_STORE_CONFIG).stores().ldap().connectionPooling(false);
+
+        LDAPOperationManager operationManager = new LDAPOperationManager(
+                (LDAPIdentityStoreConfiguration) builder.build().getStoreConfiguration().get(0));
+
+        for (int i = 0; i < 3; i++) {
+            operationManager.search(embeddedServer.getUserDnSuffix(), "(" + UID + "=*)", null);
+        }
+
+        LDAPConnectionPool connectionPool = operationManager.getConnectionPool();
+
+        assertEquals(3, connectionPool.getCreatedCount());
+        assertEquals(0, connectionPool.getIdleCount());
+    }
+
+    @Test
+    public void testIdleConnectionsAreEvicted() throws Exception {
+        IdentityConfigurationBuilder builder = createConfigurationBuilder();
+
+        builder.named(SIMPLE_LDAP_STORE_CONFIG).stores().ldap()
+            .connectionPoolIdleTimeout(100, TimeUnit.MILLISECONDS)
+            .connectionPoolValidation(true);
+
+        LDAPOperationManager operationManager = new LDAPOperationManager(
+                (LDAPIdentityStoreConfiguration) builder.build().getStoreConfiguration().get(0));
+
+        operationManager.search(embeddedServer.getUserDnSuffix(), "(" + UID + "=*)", null);
+        operationManager.search(embeddedServer.getUserDnSuffix(), "(" + UID + "=*)", null);
+
+        LDAPConnectionPool connectionPool = operationManager.getConnectionPool();
+
+        assertEquals(1, connectionPool.getCreatedCount());
+
+        Thread.sleep(500);
+
+        operationManager.search(embeddedServer.getUserDnSuffix(), "(" + UID + "=*)", null);
+
+        assertEquals(2, connectionPool.getCreatedCount());
+        assertEquals(1, connectionPool.getEvictedCount());
+        assertEquals(0, connectionPool.getValidationFailureCount());
+    }
+
+    @Test
+    public void testOnlyReadsAreRetriedAfterCommunicationFailure() throws Exception {
+        LDAPOperationManager operationManager = new LDAPOperationManager(getLDAPConfiguration());
+        LDAPConnectionPool connectionPool = operationManager.getConnectionPool();
+
+        operationManager.search(embeddedServer.getUserDnSuffix(), "(" + UID + "=*)", null);
+
+        // the pooled connection is dropped by the server
+        restartServer();
+
+        assertFalse(operationManager.search(embeddedServer.getBaseDn(), "(" + OBJECT_CLASS + "=*)", null).isEmpty());
+        assertEquals(2, connectionPool.getCreatedCount());
+
+        restartServer();
+
+        try {
+            operationManager.createSubContext(UID + "=retried," + embeddedServer.getUserDnSuffix(), createUserAttributes("retried"));
+            fail();
+        } catch (IdentityManagementException expected) {
+            assertTrue(CommunicationException.class.isInstance(expected.getCause()));
+        }
+
+        assertEquals(2, connectionPool.getCreatedCount());
+        assertEquals(0, connectionPool.getActiveCount());
+        assertTrue(operationManager.search(embeddedServer.getUserDnSuffix(), "(" + UID + "=retried)", null).isEmpty());
+    }
+
+    @Test
+    public void testCloseConnectionPools() throws Exception {
+        LDAPOperationManager operationManager = new LDAPOperationManager(getLDAPConfiguration());
+        LDAPConnectionPool connectionPool = operationManager.getConnectionPool();
+
+        operationManager.search(embeddedServer.getUserDnSuffix(), "(" + UID + "=*)", null);
+
+        assertEquals(1, connectionPool.getIdleCount());
+
+        operationManager.close();
+
+        assertTrue(connectionPool.isClosed());
+        assertTrue(operationManager.getAuthenticationConnectionPool().isClosed());
+        assertEquals(0, connectionPool.getIdleCount());
+
+        try {
+            operationManager.search(embeddedServer.getUserDnSuffix(), "(" + UID + "=*)", null);
+            fail();
+        } catch (NamingException expected) {
+        }
+
+        assertFalse(operationManager.authenticate(UID + "=user," + embeddedServer.getUserDnSuffix(), "password"));
+        assertEquals(0, connectionPool.getActiveCount());
+    }
+
+    private void restartServer() throws Exception {
+        this.embeddedServer.tearDown();
+        this.embeddedServer.setup();
+        this.embeddedServer.importLDIF("ldap/users.ldif");
+    }
+
+    private Attributes createUserAttributes(String uid) {
+        Attributes attributes = new BasicAttributes(true);
+        BasicAttribute objectClass = new BasicAttribute(OBJECT_CLASS);
+
+        objectClass.add("inetOrgPerson");
+        objectClass.add("organizationalPerson");
+        attributes.put(objectClass);
+        attributes.put(UID, uid);
+        attributes.put(CN, uid);
+        attributes.put(SN, uid);
+
+        return attributes;
+    }
+
+    private LDAPIdentityStoreConfiguration getLDAPConfiguration() {
+        return (LDAPIdentityStoreConfiguration) createConfigurationBuilder().build().getStoreConfiguration().get(0);
+    }
+
     private PartitionManager getPartitionManager() {
+        return new DefaultPartitionManager(createConfigurationBuilder().buildAll());
+    }
+
+    private IdentityConfigurationBuilder createConfigurationBuilder() {
         IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
 
         builder
@@ -138,6 +314,6 @@ public class ConcurrentLDAPAuthenticationTest {
                             .attribute("email", EMAIL)
                             .readOnlyAttribute("createdDate", CREATE_TIMESTAMP);
 
-        return new DefaultPartitionManager(builder.buildAll());
+        return builder;
     }
 }
@@ -0,0 +1,387 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.idm.credential;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.picketlink.idm.IdentityManagementException;
+import org.picketlink.idm.IdentityManager;
+import org.picketlink.idm.PartitionManager;
+import org.picketlink.idm.config.IdentityConfigurationBuilder;
+import org.picketlink.idm.credential.Credentials.Status;
+import org.picketlink.idm.credential.Password;
+import org.picketlink.idm.credential.UsernamePasswordCredentials;
+import org.picketlink.idm.credential.encoder.BCryptPasswordEncoder;
+import org.picketlink.idm.credential.encoder.PBKDF2PasswordEncoder;
+import org.picketlink.idm.credential.encoder.PasswordEncoder;
+import org.picketlink.idm.credential.encoder.PasswordEncoderCalibrator;
+import org.picketlink.idm.credential.encoder.PasswordHashMetadata;
+import org.picketlink.idm.credential.encoder.SHAPasswordEncoder;
+import org.picketlink.idm.credential.handler.PasswordCredentialHandler;
+import org.picketlink.idm.credential.handler.annotations.SupportsCredentials;
+import org.picketlink.idm.credential.storage.EncodedPasswordStorage;
+import org.picketlink.idm.internal.DefaultPartitionManager;
+import org.picketlink.idm.model.basic.Realm;
+import org.picketlink.idm.model.basic.User;
+import org.picketlink.idm.spi.CredentialStore;
+import org.picketlink.idm.spi.IdentityContext;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.picketlink.idm.credential.handler.PasswordCredentialHandler.LEGACY_PASSWORD_ENCODERS;
+import static org.picketlink.idm.credential.handler.PasswordCredentialHandler.PASSWORD_ENCODER;
+import static org.picketlink.idm.credential.handler.PasswordCredentialHandler.REHASH_ON_LOGIN;
+import static org.picketlink.idm.credential.handler.PasswordCredentialHandler.STORE_HASH_METADATA;
+
+/**
+ * <p>Test case for the password hash metadata and the upgrade of password hashes on login.</p>
+ */
+public class PasswordHashUpgradeTestCase {
+
+    @Rule
+    public TemporaryFolder workingDirectory = new TemporaryFolder();
+
+    @Test
+    public void testNoMetadataByDefault() {
+        IdentityManager identityManager = createIdentityManager(false, new BCryptPasswordEncoder(4), null, false, false);
+        User john = createUser(identityManager, "john", "secret");
+
+        EncodedPasswordStorage hash = identityManager.retrieveCurrentCredential(john, EncodedPasswordStorage.class);
+
+        assertNull(hash.getHashMetadata());
+        assertFalse(hash.getEncodedHash().startsWith("{PL:"));
+        assertEquals(Status.VALID, validate(identityManager, "john", "secret"));
+    }
+
+    @Test
+    public void testMetadataStoredWithHash() {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(4);
+        IdentityManager identityManager = createIdentityManager(false, encoder, null, false, true);
+        User john = createUser(identityManager, "john", "secret");
+
+        EncodedPasswordStorage hash = identityManager.retrieveCurrentCredential(john, EncodedPasswordStorage.class);
+
+        assertEquals(encoder.getMetadata(), hash.getHashMetadata());
+        assertEquals(new PasswordHashMetadata(BCryptPasswordEncoder.ALGORITHM, 4, 16, 0), hash.getHashMetadata());
+        assertEquals(Status.VALID, validate(identityManager, "john", "secret"));
+        assertEquals(Status.INVALID, validate(identityManager, "john", "bad_secret"));
+    }
+
+    @Test
+    public void testParseMetadata() {
+        PasswordHashMetadata metadata = new PasswordHashMetadata(PBKDF2PasswordEncoder.ALGO, 1000, 4, 128);
+        String storedHash = metadata.addHeader("hash");
+
+        assertEquals(metadata, PasswordHashMetadata.parse(storedHash));
+        assertEquals("hash", PasswordHashMetadata.removeHeader(storedHash));
+        assertNull(PasswordHashMetadata.parse("hash"));
+        assertEquals("hash", PasswordHashMetadata.removeHeader("hash"));
+    }
+
+    @Test
+    public void testRehashOnCostChange() {
+        IdentityManager identityManager = createIdentityManager(false, new BCryptPasswordEncoder(4), null, true, true);
+        User john = createUser(identityManager, "john", "secret");
+
+        BCryptPasswordEncoder newEncoder = new BCryptPasswordEncoder(5);
+
+        identityManager = createIdentityManager(true, newEncoder, null, true, true);
+
+        assertEquals(4, identityManager.retrieveCurrentCredential(john, EncodedPasswordStorage.class).getHashMetadata().getCost());
+
+        // failed logins do not change the hash
+        assertEquals(Status.INVALID, validate(identityManager, "john", "bad_secret"));
+        assertEquals(4, identityManager.retrieveCurrentCredential(john, EncodedPasswordStorage.class).getHashMetadata().getCost());
+
+        assertEquals(Status.VALID, validate(identityManager, "john", "secret"));
+
+        EncodedPasswordStorage hash = identityManager.retrieveCurrentCredential(john, EncodedPasswordStorage.class);
+
+        assertEquals(newEncoder.getMetadata(), hash.getHashMetadata());
+
+        // the previous hash is kept
+        assertEquals(2, identityManager.retrieveCredentials(john, EncodedPasswordStorage.class).size());
+        assertEquals(Status.VALID, validate(identityManager, "john", "secret"));
+        assertEquals(Status.INVALID, validate(identityManager, "john", "bad_secret"));
+    }
+
+    @Test
+    public void testNoRehashWhenDisabled() {
+        IdentityManager identityManager = createIdentityManager(false, new BCryptPasswordEncoder(4), null, false, true);
+        User john = createUser(identityManager, "john", "secret");
+
+        identityManager = createIdentityManager(true, new BCryptPasswordEncoder(5), null, false, true);
+
+        assertEquals(Status.VALID, validate(identityManager, "john", "secret"));
+        assertEquals(4, identityManager.retrieveCurrentCredential(john, EncodedPasswordStorage.class).getHashMetadata().getCost());
+    }
+
+    @Test
+    public void testRehashFailureKeepsPassword() {
+        IdentityManager identityManager = createIdentityManager(false, new BCryptPasswordEncoder(4), null, false, true);
+        User john = createUser(identityManager, "john", "secret");
+        IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
+
+        builder
+            .named("default")
+                .stores()
+                    .file()
+                        .workingDirectory(this.workingDirectory.getRoot().getPath())
+                        .preserveState(true)
+                        .addCredentialHandler(FailingStorePasswordCredentialHandler.class)
+                        .setCredentialHandlerProperty(PASSWORD_ENCODER, new BCryptPasswordEncoder(5))
+                        .setCredentialHandlerProperty(REHASH_ON_LOGIN, true)
+                        .setCredentialHandlerProperty(STORE_HASH_METADATA, true)
+                        .supportAllFeatures();
+
+        identityManager = new DefaultPartitionManager(builder.buildAll()).createIdentityManager();
+        FailingStorePasswordCredentialHandler.STORE_ATTEMPTS.set(0);
+
+        assertEquals(Status.VALID, validate(identityManager, "john", "secret"));
+        assertEquals(1, FailingStorePasswordCredentialHandler.STORE_ATTEMPTS.get());
+        assertEquals(1, identityManager.retrieveCredentials(john, EncodedPasswordStorage.class).size());
+        assertEquals(4, identityManager.retrieveCurrentCredential(john, EncodedPasswordStorage.class).getHashMetadata().getCost());
+        assertEquals(Status.VALID, validate(identityManager, "john", "secret"));
+    }
+
+    @Test
+    public void testMigrateFromLegacyEncoder() {
+        SHAPasswordEncoder legacyEncoder = new SHAPasswordEncoder(256);
+        IdentityManager identityManager = createIdentityManager(false, legacyEncoder, null, false, true);
+        User john = createUser(identityManager, "john", "secret");
+
+        PBKDF2PasswordEncoder newEncoder = new PBKDF2PasswordEncoder("salt".getBytes(), 1000, 128);
+
+        // without the legacy encoder, the hash can not be verified
+        identityManager = createIdentityManager(true, newEncoder, null, true, true);
+
+        assertEquals(Status.INVALID, validate(identityManager, "john", "secret"));
+
+        identityManager = createIdentityManager(true, newEncoder, new PasswordEncoder[] {legacyEncoder}, true, true);
+
+        assertEquals(Status.VALID, validate(identityManager, "john", "secret"));
+        assertEquals(newEncoder.getMetadata(),
+            identityManager.retrieveCurrentCredential(john, EncodedPasswordStorage.class).getHashMetadata());
+
+        // the legacy encoder is no longer needed
+        identityManager = createIdentityManager(true, newEncoder, null, true, true);
+
+        assertEquals(Status.VALID, validate(identityManager, "john", "secret"));
+    }
+
+    @Test
+    public void testHashWithoutMetadata() {
+        // hashes stored before metadata was recorded do not have a header
+        IdentityManager identityManager = createIdentityManager(false, new NoMetadataPasswordEncoder(), null, false, true);
+        User john = createUser(identityManager, "john", "secret");
+
+        assertNull(identityManager.retrieveCurrentCredential(john, EncodedPasswordStorage.class).getHashMetadata());
+
+        PBKDF2PasswordEncoder encoder = new PBKDF2PasswordEncoder("salt".getBytes(), 1000, 128);
+
+        identityManager = createIdentityManager(true, encoder, null, false, true);
+
+        assertEquals(Status.VALID, validate(identityManager, "john", "secret"));
+        assertNull(identityManager.retrieveCurrentCredential(john, EncodedPasswordStorage.class).getHashMetadata());
+
+        identityManager = createIdentityManager(true, encoder, null, true, true);
+
+        assertEquals(Status.VALID, validate(identityManager, "john", "secret"));
+        assertEquals(encoder.getMetadata(),
+            identityManager.retrieveCurrentCredential(john, EncodedPasswordStorage.class).getHashMetadata());
+    }
+
+    @Test (expected = IdentityManagementException.class)
+    public void failInvalidLegacyEncoder() {
+        IdentityManager identityManager = createIdentityManager(false, new SHAPasswordEncoder(512), new Object[] {"invalid"}, false, false);
+
+        createUser(identityManager, "john", "secret");
+    }
+
+    @Test
+    public void testCalibrator() {
+        PasswordEncoderCalibrator calibrator = new PasswordEncoderCalibrator(5, TimeUnit.MILLISECONDS, 3);
+
+        int logRounds = calibrator.calibrateBCryptLogRounds();
+
+        assertTrue(logRounds >= PasswordEncoderCalibrator.MIN_BCRYPT_LOG_ROUNDS);
+        assertTrue(logRounds <= PasswordEncoderCalibrator.MAX_BCRYPT_LOG_ROUNDS);
+        assertTrue(calibrator.calibratePBKDF2Iterations("salt".getBytes(), 128) >= PasswordEncoderCalibrator.MIN_PBKDF2_ITERATIONS);
+
+        PBKDF2PasswordEncoder encoder = calibrator.createPBKDF2PasswordEncoder("salt".getBytes(), 128);
+
+        assertNotNull(encoder);
+        assertTrue(encoder.verify("secret", encoder.encode("secret")));
+        assertFalse(encoder.verify("bad_secret", encoder.encode("secret")));
+    }
+
+    @Test
+    public void testCalibratorDoesNotExceedSmallTarget() {
+        long targetVerifyTime = TimeUnit.MILLISECONDS.toNanos(1);
+        SlowingDownCalibrator calibrator = new SlowingDownCalibrator(targetVerifyTime);
+
+        int iterations = calibrator.calibratePBKDF2Iterations("salt".getBytes(), 128);
+
+        assertTrue(iterations >= PasswordEncoderCalibrator.MIN_PBKDF2_ITERATIONS);
+        assertTrue((long) iterations * calibrator.measurements.get() <= targetVerifyTime);
+
+        calibrator = new SlowingDownCalibrator(1);
+
+        assertEquals(PasswordEncoderCalibrator.MIN_PBKDF2_ITERATIONS, calibrator.calibratePBKDF2Iterations("salt".getBytes(), 128));
+    }
+
+    private User createUser(IdentityManager identityManager, String loginName, String password) {
+        User user = new User(loginName);
+
+        identityManager.add(user);
+        identityManager.updateCredential(user, new Password(password));
+
+        return user;
+    }
+
+    private Status validate(IdentityManager identityManager, String loginName, String password) {
+        UsernamePasswordCredentials credentials = new UsernamePasswordCredentials(loginName, new Password(password));
+
+        identityManager.validateCredentials(credentials);
+
+        return credentials.getStatus();
+    }
+
+    /**
+     * <p>Creates an identity manager for a file store using the given encoders. The state of the store is preserved
+     * from the previous call if <code>preserveState</code> is true.</p>
+     */
+    private IdentityManager createIdentityManager(boolean preserveState, PasswordEncoder passwordEncoder,
+        Object legacyEncoders, boolean rehashOnLogin, boolean storeHashMetadata) {
+        IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
+
+        builder
+            .named("default")
+                .stores()
+                    .file()
+                        .workingDirectory(this.workingDirectory.getRoot().getPath())
+                        .preserveState(preserveState)
+                        .setCredentialHandlerProperty(PASSWORD_ENCODER, passwordEncoder)
+                        .setCredentialHandlerProperty(LEGACY_PASSWORD_ENCODERS, legacyEncoders)
+                        .setCredentialHandlerProperty(REHASH_ON_LOGIN, rehashOnLogin)
+                        .setCredentialHandlerProperty(STORE_HASH_METADATA, storeHashMetadata)
+                        .supportAllFeatures();
+
+        PartitionManager partitionManager = new DefaultPartitionManager(builder.buildAll());
+
+        if (partitionManager.getPartition(Realm.class, Realm.DEFAULT_REALM) == null) {
+            partitionManager.add(new Realm(Realm.DEFAULT_REALM));
+        }
+
+        return partitionManager.createIdentityManager();
+    }
+
+    /**
+     * <p>Simulates a host slowing down during calibration: each measurement takes one more nanosecond per iteration
+     * than the previous one, so the last refined count is measured above the target time.</p>
+     */
+    private static class SlowingDownCalibrator extends PasswordEncoderCalibrator {
+
+        private final AtomicInteger measurements = new AtomicInteger();
+
+        SlowingDownCalibrator(long targetVerifyTime) {
+            super(targetVerifyTime, TimeUnit.NANOSECONDS, 1);
+        }
+
+        @Override
+        protected long measure(PasswordEncoder encoder) {
+            return (long) ((PBKDF2PasswordEncoder) encoder).getIterationCount() * this.measurements.incrementAndGet();
+        }
+    }
+
+    /**
+     * <p>A {@link PasswordEncoder} that does not provide metadata, as the ones used before metadata was recorded.</p>
+     */
+    private static class NoMetadataPasswordEncoder implements PasswordEncoder {
+
+        private final PasswordEncoder delegate = new PBKDF2PasswordEncoder("salt".getBytes(), 1000, 128);
+
+        @Override
+        public String encode(String rawPassword) {
+            return this.delegate.encode(rawPassword);
+        }
+
+        @Override
+        public boolean verify(String rawPassword, String encodedPassword) {
+            return this.delegate.verify(rawPassword, encodedPassword);
+        }
+    }
+
+    /**
+     * <p>A {@link PasswordCredentialHandler} validating credentials against a store that fails to store new
+     * credentials.</p>
+     */
+    @SupportsCredentials(
+        credentialClass = {UsernamePasswordCredentials.class, Password.class},
+        credentialStorage = EncodedPasswordStorage.class)
+    public static class FailingStorePasswordCredentialHandler
+        extends PasswordCredentialHandler<CredentialStore<?>, UsernamePasswordCredentials, Password> {
+
+        static final AtomicInteger STORE_ATTEMPTS = new AtomicInteger();
+
+        @Override
+        public void validate(IdentityContext context, UsernamePasswordCredentials credentials, CredentialStore<?> store) {
+            super.validate(context, credentials, createFailingStore(store));
+        }
+
+        private CredentialStore<?> createFailingStore(final CredentialStore<?> store) {
+            Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+
+            for (Class<?> type = store.getClass(); type != null; type = type.getSuperclass()) {
+                interfaces.addAll(Arrays.asList(type.getInterfaces()));
+            }
+
+            return (CredentialStore<?>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                interfaces.toArray(new Class<?>[interfaces.size()]), new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if ("storeCredential".equals(method.getName())) {
+                            STORE_ATTEMPTS.incrementAndGet();
+                            throw new IdentityManagementException("Could not store credential.");
+                        }
+
+                        try {
+                            return method.invoke(store, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                });
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.idm.credential;
+
+import org.junit.After;
+import org.junit.Test;
+import org.picketlink.idm.IdentityManagementException;
+import org.picketlink.idm.IdentityManager;
+import org.picketlink.idm.config.IdentityConfigurationBuilder;
+import org.picketlink.idm.config.IdentityStoreConfigurationBuilder;
+import org.picketlink.idm.config.NamedIdentityConfigurationBuilder;
+import org.picketlink.idm.config.PasswordHashingConfiguration;
+import org.picketlink.idm.config.SecurityConfigurationException;
+import org.picketlink.idm.credential.Credentials.Status;
+import org.picketlink.idm.credential.Password;
+import org.picketlink.idm.credential.UsernamePasswordCredentials;
+import org.picketlink.idm.credential.encoder.PBKDF2PasswordEncoder;
+import org.picketlink.idm.credential.handler.PasswordHashingExecutor;
+import org.picketlink.idm.internal.DefaultPartitionManager;
+import org.picketlink.idm.model.basic.Realm;
+import org.picketlink.idm.model.basic.User;
+import org.picketlink.test.idm.AbstractPartitionManagerTestCase;
+import org.picketlink.test.idm.Configuration;
+import org.picketlink.test.idm.testers.FileStoreConfigurationTester;
+import org.picketlink.test.idm.testers.IdentityConfigurationTester;
+import org.picketlink.test.idm.testers.JPAStoreConfigurationTester;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.picketlink.idm.credential.handler.PasswordCredentialHandler.PASSWORD_ENCODER;
+
+/**
+ * <p>Test case for the {@link PasswordHashingExecutor} support.</p>
+ */
+@Configuration(include = {FileStoreConfigurationTester.class, JPAStoreConfigurationTester.class})
+public class PasswordHashingExecutorTestCase extends AbstractPartitionManagerTestCase {
+
+    private DefaultPartitionManager partitionManager;
+
+    public PasswordHashingExecutorTestCase(IdentityConfigurationTester visitor) {
+        super(visitor);
+    }
+
+    @After
+    @Override
+    public void onAfter() {
+        if (this.partitionManager != null) {
+            this.partitionManager.close();
+        }
+
+        super.onAfter();
+    }
+
+    @Test
+    public void testPasswordsHashedByExecutor() {
+        DefaultPartitionManager partitionManager = createHashingPartitionManager(true);
+        PasswordHashingExecutor hashingExecutor = partitionManager.getPasswordHashingExecutor(getDefaultRealm(partitionManager));
+
+        assertNotNull(hashingExecutor);
+        assertEquals(2, hashingExecutor.getParallelism());
+
+        IdentityManager identityManager = partitionManager.createIdentityManager();
+        User john = new User("john");
+
+        identityManager.add(john);
+        identityManager.updateCredential(john, new Password("secret"));
+
+        assertEquals(1, hashingExecutor.getHashCount());
+
+        UsernamePasswordCredentials credentials = new UsernamePasswordCredentials("john", new Password("secret"));
+
+        identityManager.validateCredentials(credentials);
+
+        assertEquals(Status.VALID, credentials.getStatus());
+        assertEquals(2, hashingExecutor.getHashCount());
+        assertTrue(hashingExecutor.getTotalHashTime(TimeUnit.NANOSECONDS) > 0);
+        assertTrue(hashingExecutor.getMaxHashTime(TimeUnit.NANOSECONDS) > 0);
+
+        credentials = new UsernamePasswordCredentials("john", new Password("bad_secret"));
+
+        identityManager.validateCredentials(credentials);
+
+        assertEquals(Status.INVALID, credentials.getStatus());
+        assertEquals(3, hashingExecutor.getHashCount());
+    }
+
+    @Test
+    public void testAsyncValidation() throws Exception {
+        DefaultPartitionManager partitionManager = createHashingPartitionManager(true);
+        PasswordHashingExecutor hashingExecutor = partitionManager.getPasswordHashingExecutor(getDefaultRealm(partitionManager));
+        IdentityManager identityManager = partitionManager.createIdentityManager();
+        User john = new User("john");
+
+        identityManager.add(john);
+        identityManager.updateCredential(john, new Password("secret"));
+
+        UsernamePasswordCredentials credentials = identityManager.validateCredentialsAsync(
+            new UsernamePasswordCredentials("john", new Password("secret"))).toCompletableFuture().get();
+
+        assertEquals(Status.VALID, credentials.getStatus());
+        assertEquals(john.getId(), credentials.getValidatedAccount().getId());
+        assertEquals(2, hashingExecutor.getHashCount());
+
+        credentials = identityManager.validateCredentialsAsync(
+            new UsernamePasswordCredentials("john", new Password("bad_secret"))).toCompletableFuture().get();
+
+        assertEquals(Status.INVALID, credentials.getStatus());
+    }
+
+    @Test
+    public void testAsyncValidationReadsStoreOnCallingThread() throws Exception {
+        DefaultPartitionManager partitionManager = createHashingPartitionManager(true);
+        PasswordHashingExecutor hashingExecutor = partitionManager.getPasswordHashingExecutor(getDefaultRealm(partitionManager));
+        IdentityManager identityManager = partitionManager.createIdentityManager();
+        User john = new User("john");
+
+        identityManager.add(john);
+        identityManager.updateCredential(john, new Password("secret"));
+
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+
+        hashingExecutor.submit(new BlockingTask(started, release));
+        hashingExecutor.submit(new BlockingTask(started, release));
+
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        CompletableFuture<UsernamePasswordCredentials> validation = identityManager.validateCredentialsAsync(
+            new UsernamePasswordCredentials("john", new Password("secret"))).toCompletableFuture();
+
+        // the account and the stored credential were already read, only the hashing is waiting for a thread
+        identityManager.remove(john);
+
+        assertFalse(validation.isDone());
+
+        release.countDown();
+
+        UsernamePasswordCredentials credentials = validation.get();
+
+        assertEquals(Status.VALID, credentials.getStatus());
+        assertEquals(john.getId(), credentials.getValidatedAccount().getId());
+    }
+
+    @Test
+    public void testAsyncValidationWithoutExecutor() throws Exception {
+        DefaultPartitionManager partitionManager = createHashingPartitionManager(false);
+
+        assertNull(partitionManager.getPasswordHashingExecutor(getDefaultRealm(partitionManager)));
+
+        IdentityManager identityManager = partitionManager.createIdentityManager();
+        User john = new User("john");
+
+        identityManager.add(john);
+        identityManager.updateCredential(john, new Password("secret"));
+
+        UsernamePasswordCredentials credentials = identityManager.validateCredentialsAsync(
+            new UsernamePasswordCredentials("john", new Password("secret"))).toCompletableFuture().get();
+
+        assertEquals(Status.VALID, credentials.getStatus());
+    }
+
+    @Test
+    @Configuration(include = FileStoreConfigurationTester.class)
+    public void testRejectWhenSaturated() throws Exception {
+        PasswordHashingExecutor hashingExecutor = new PasswordHashingExecutor("test", createConfiguration(1, 0, 0));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try {
+            hashingExecutor.submit(new BlockingTask(started, release));
+
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            try {
+                hashingExecutor.execute(new BlockingTask(new CountDownLatch(1), new CountDownLatch(0)));
+                fail();
+            } catch (IdentityManagementException expected) {
+            }
+
+            try {
+                hashingExecutor.submit(new BlockingTask(new CountDownLatch(1), new CountDownLatch(0))).toCompletableFuture().get();
+                fail();
+            } catch (ExecutionException expected) {
+                assertTrue(IdentityManagementException.class.isInstance(expected.getCause()));
+            }
+
+            assertEquals(2, hashingExecutor.getRejectedCount());
+        } finally {
+            release.countDown();
+            hashingExecutor.shutdown();
+        }
+    }
+
+    @Test
+    @Configuration(include = FileStoreConfigurationTester.class)
+    public void testMaxWait() throws Exception {
+        PasswordHashingExecutor hashingExecutor = new PasswordHashingExecutor("test", createConfiguration(1, 10, 100));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try {
+            hashingExecutor.submit(new BlockingTask(started, release));
+
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            try {
+                hashingExecutor.execute(new BlockingTask(new CountDownLatch(1), new CountDownLatch(0)));
+                fail();
+            } catch (IdentityManagementException expected) {
+            }
+
+            assertEquals(1, hashingExecutor.getTimeoutCount());
+            assertEquals(0, hashingExecutor.getRejectedCount());
+        } finally {
+            release.countDown();
+            hashingExecutor.shutdown();
+        }
+    }
+
+    @Test (expected = SecurityConfigurationException.class)
+    @Configuration(include = FileStoreConfigurationTester.class)
+    public void failInvalidParallelism() {
+        createConfiguration(0, 10, 0);
+    }
+
+    private PasswordHashingConfiguration createConfiguration(int parallelism, int queueSize, long maxWait) {
+        IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
+
+        builder
+            .named("default")
+                .hashing()
+                    .parallelism(parallelism)
+                    .queueSize(queueSize)
+                    .maxWait(maxWait, TimeUnit.MILLISECONDS)
+                .stores()
+                    .file()
+                        .supportAllFeatures();
+
+        return builder.build().getHashingConfiguration();
+    }
+
+    private DefaultPartitionManager createHashingPartitionManager(boolean hashingEnabled) {
+        IdentityConfigurationBuilder builder = createConfigurationBuilder();
+
+        for (NamedIdentityConfigurationBuilder configurationBuilder : builder.getNamedIdentityConfigurationBuilders()) {
+            if (hashingEnabled) {
+                configurationBuilder
+                    .hashing()
+                        .parallelism(2);
+            }
+
+            for (IdentityStoreConfigurationBuilder<?, ?> storeBuilder : configurationBuilder.stores().getIdentityStoresConfigurationBuilder()) {
+                storeBuilder.setCredentialHandlerProperty(PASSWORD_ENCODER, new PBKDF2PasswordEncoder("salt".getBytes(), 1000, 128));
+            }
+        }
+
+        this.partitionManager = createPartitionManager(builder);
+
+        return this.partitionManager;
+    }
+
+    private Realm getDefaultRealm(DefaultPartitionManager partitionManager) {
+        return partitionManager.getPartition(Realm.class, Realm.DEFAULT_REALM);
+    }
+
+    private static class BlockingTask implements Callable<Object> {
+
+        private final CountDownLatch started;
+        private final CountDownLatch release;
+
+        BlockingTask(CountDownLatch started, CountDownLatch release) {
+            this.started = started;
+            this.release = release;
+        }
+
+        @Override
+        public Object call() throws Exception {
+            this.started.countDown();
+            this.release.await();
+            return null;
+        }
+    }
+}
@@ -20,6 +20,7 @@ package org.picketlink.test.idm.query;
 
 import org.junit.Test;
 import org.picketlink.idm.IdentityManager;
+import org.picketlink.idm.internal.DefaultPartitionManager;
 import org.picketlink.idm.model.Account;
 import org.picketlink.idm.model.Attribute;
 import org.picketlink.idm.model.AttributedType;
@@ -34,6 +35,8 @@ import org.picketlink.idm.model.basic.Role;
 import org.picketlink.idm.model.basic.Tier;
 import org.picketlink.idm.query.IdentityQuery;
 import org.picketlink.idm.query.IdentityQueryBuilder;
+import org.picketlink.idm.spi.AttributeStore;
+import org.picketlink.idm.spi.IdentityContext;
 import org.picketlink.test.idm.AbstractPartitionManagerTestCase;
 import org.picketlink.test.idm.Configuration;
 import org.picketlink.test.idm.testers.IdentityConfigurationTester;
@@ -42,10 +45,15 @@ import org.picketlink.test.idm.testers.LDAPUserGroupJPARoleConfigurationTester;
 import org.picketlink.test.idm.testers.MultipleIdentityConfigurationTester;
 import org.picketlink.test.idm.testers.SingleConfigLDAPJPAStoreConfigurationTester;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
@@ -616,6 +624,79 @@ public abstract class AbstractIdentityQueryTestCase<T extends IdentityType> exte
         assertTrue(contains(result, identityType.getId()));
     }
 
+    @Test
+    @Configuration(exclude = {LDAPStoreConfigurationTester.class, SingleConfigLDAPJPAStoreConfigurationTester.class, LDAPUserGroupJPARoleConfigurationTester.class})
+    public void testAttributesLoadedForAllResults() throws Exception {
+        T someType = createIdentityType("someType", null);
+        T someAnotherType = createIdentityType("someAnotherType", null);
+        T someTypeWithoutAttributes = createIdentityType("someTypeWithoutAttributes", null);
+
+        IdentityManager identityManager = getIdentityManager();
+
+        someType.setAttribute(new Attribute<String>("someAttribute", "someAttributeValue"));
+        someType.setAttribute(new Attribute<String[]>("someMultiValuedAttribute", new String[]{"someAttributeValue1",
+                "someAttributeValue2"}));
+        someAnotherType.setAttribute(new Attribute<Integer>("someAttribute", 10));
+
+        identityManager.update(someType);
+        identityManager.update(someAnotherType);
+
+        IdentityQuery<T> query = identityManager.createIdentityQuery((Class<T>) someType.getClass());
+
+        List<T> result = query.getResultList();
+
+        assertTrue(contains(result, someType.getId()));
+        assertTrue(contains(result, someAnotherType.getId()));
+        assertTrue(contains(result, someTypeWithoutAttributes.getId()));
+
+        DefaultPartitionManager partitionManager = (DefaultPartitionManager) getPartitionManager();
+        IdentityContext context = (IdentityContext) identityManager;
+        AttributeStore<?> attributeStore = partitionManager.getStoreForAttributeOperation(context);
+
+        // the query loads attributes for all results at once, loading them for each type individually must give the same
+        for (T batchLoaded : result) {
+            T individuallyLoaded = createInstance("individuallyLoaded");
+
+            individuallyLoaded.setId(batchLoaded.getId());
+            individuallyLoaded.setPartition(batchLoaded.getPartition());
+
+            attributeStore.loadAttributes(context, individuallyLoaded);
+
+            assertEquals(individuallyLoaded.getAttributes().size(), batchLoaded.getAttributes().size());
+
+            for (Attribute<? extends Serializable> attribute : individuallyLoaded.getAttributes()) {
+                Attribute<? extends Serializable> batchAttribute = batchLoaded.getAttribute(attribute.getName());
+
+                assertNotNull(batchAttribute);
+                assertEquals(getAttributeValues(attribute), getAttributeValues(batchAttribute));
+            }
+        }
+
+        assertEquals(0, getResult(result, someTypeWithoutAttributes).getAttributes().size());
+        assertEquals(2, getResult(result, someType).getAttributes().size());
+        assertEquals(10, getResult(result, someAnotherType).getAttribute("someAttribute").getValue());
+    }
+
+    private Set<Object> getAttributeValues(Attribute<? extends Serializable> attribute) {
+        Serializable value = attribute.getValue();
+
+        if (value.getClass().isArray()) {
+            return new HashSet<Object>(Arrays.asList((Object[]) value));
+        }
+
+        return Collections.<Object>singleton(value);
+    }
+
+    private T getResult(List<T> result, T identityType) {
+        for (T resultType : result) {
+            if (resultType.getId().equals(identityType.getId())) {
+                return resultType;
+            }
+        }
+
+        return null;
+    }
+
     @Test
     @Configuration(exclude = {LDAPStoreConfigurationTester.class, SingleConfigLDAPJPAStoreConfigurationTester.class, LDAPUserGroupJPARoleConfigurationTester.class})
     public void testFindByMultiValuedAttributes() throws Exception {
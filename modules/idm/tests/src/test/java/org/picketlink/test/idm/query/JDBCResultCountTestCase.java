@@ -0,0 +1,194 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.idm.query;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.picketlink.idm.config.IdentityConfigurationBuilder;
+import org.picketlink.idm.config.JDBCIdentityStoreConfiguration;
+import org.picketlink.idm.jdbc.internal.JDBCIdentityStore;
+import org.picketlink.idm.model.IdentityType;
+import org.picketlink.idm.model.basic.Group;
+import org.picketlink.idm.model.basic.Realm;
+import org.picketlink.idm.model.basic.Role;
+import org.picketlink.idm.model.basic.User;
+import org.picketlink.idm.query.IdentityQuery;
+import org.picketlink.idm.query.internal.DefaultIdentityQuery;
+import org.picketlink.idm.query.internal.DefaultQueryBuilder;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <p>Test case for the result count of identity queries using the {@link JDBCIdentityStore}.</p>
+ */
+public class JDBCResultCountTestCase {
+
+    private JdbcDataSource dataSource;
+    private Connection connection;
+    private JDBCIdentityStore identityStore;
+
+    @Before
+    public void onBefore() throws Exception {
+        this.dataSource = new JdbcDataSource();
+        this.dataSource.setURL("jdbc:h2:mem:picketlink-idm-jdbc-count");
+        this.dataSource.setUser("sa");
+        this.dataSource.setPassword("");
+
+        // keeps the in-memory database open during the test
+        this.connection = this.dataSource.getConnection();
+
+        this.connection.createStatement().executeUpdate("create table User(id varchar,firstName varchar,lastName varchar," +
+            "email varchar,loginName varchar,enabled varchar,createdDate timestamp,expirationDate timestamp,partitionID varchar)");
+        this.connection.createStatement().executeUpdate("create table Role(id varchar,name varchar," +
+            "enabled varchar,createdDate timestamp,expirationDate timestamp,partitionID varchar)");
+        this.connection.createStatement().executeUpdate("create table Groups(id varchar,name varchar," +
+            "enabled varchar,createdDate timestamp,expirationDate timestamp,parentGroup varchar," +
+            "path varchar,partitionID varchar)");
+        this.connection.createStatement().executeUpdate("create table Partition(id varchar,name varchar," +
+            "typeName varchar,configurationName varchar)");
+        this.connection.createStatement().executeUpdate("create table Attributes(owner varchar,name varchar," +
+            "value varchar,attributeType varchar)");
+        this.connection.createStatement().executeUpdate("create table Relationship(id varchar,relBegin varchar," +
+            "relEnd varchar,type varchar,enabled varchar)");
+
+        IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
+
+        builder
+            .named("default")
+                .stores()
+                    .jdbc()
+                        .setDataSource(this.dataSource)
+                        .supportAllFeatures();
+
+        this.identityStore = new JDBCIdentityStore();
+        this.identityStore.setup((JDBCIdentityStoreConfiguration) builder.build().getStoreConfiguration().get(0));
+
+        this.connection.createStatement().executeUpdate("insert into Partition(id,name,typeName,configurationName) " +
+            "values('partition-id','default','" + Realm.class.getName() + "','default')");
+
+        insert("insert into User(id,loginName,enabled,partitionID) values(?,?,'y',?)", "john-id", "john", "partition-id");
+        insert("insert into User(id,loginName,enabled,partitionID) values(?,?,'y',?)", "mary-id", "mary", "partition-id");
+        insert("insert into Role(id,name,enabled,partitionID) values(?,?,'y',?)", "admin-id", "admin", "partition-id");
+        insert("insert into Groups(id,name,path,enabled,partitionID) values(?,?,?,'y',?)", "sales-id", "sales", "/sales",
+            "partition-id");
+    }
+
+    @After
+    public void onAfter() throws Exception {
+        this.connection.close();
+    }
+
+    @Test
+    public void testCountByParameter() {
+        IdentityQuery<User> query = createIdentityQuery(User.class);
+
+        query.setParameter(User.LOGIN_NAME, "john");
+
+        assertEquals(1, count(query));
+        assertEquals(fetch(query), count(query));
+
+        query = createIdentityQuery(User.class);
+
+        query.setParameter(User.LOGIN_NAME, "nobody");
+
+        assertEquals(0, count(query));
+
+        IdentityQuery<Role> roleQuery = createIdentityQuery(Role.class);
+
+        roleQuery.setParameter(Role.NAME, "admin");
+
+        assertEquals(1, count(roleQuery));
+        assertEquals(fetch(roleQuery), count(roleQuery));
+    }
+
+    @Test
+    public void testCountMatchesAllParameters() {
+        IdentityQuery<Group> query = createIdentityQuery(Group.class);
+
+        query.setParameter(Group.NAME, "sales");
+        query.setParameter(Group.PATH, "/sales");
+
+        assertEquals(1, count(query));
+
+        query = createIdentityQuery(Group.class);
+
+        query.setParameter(Group.NAME, "sales");
+        query.setParameter(Group.PATH, "/marketing");
+
+        assertEquals(0, count(query));
+    }
+
+    @Test
+    public void testCountById() {
+        IdentityQuery<User> query = createIdentityQuery(User.class);
+
+        query.setParameter(IdentityType.ID, "john-id");
+
+        assertEquals(1, count(query));
+
+        query = createIdentityQuery(User.class);
+
+        query.setParameter(IdentityType.ID, "unknown");
+
+        assertEquals(0, count(query));
+    }
+
+    @Test
+    public void testCountAll() {
+        assertEquals(2, count(createIdentityQuery(User.class)));
+    }
+
+    @Test
+    public void testCountMatchesLoadedResults() {
+        IdentityQuery<User> query = createIdentityQuery(User.class);
+
+        // only the first value is used when loading, a count query can not match it
+        query.setParameter(User.LOGIN_NAME, "john", "mary");
+
+        assertEquals(1, fetch(query));
+        assertEquals(1, count(query));
+    }
+
+    private <T extends IdentityType> IdentityQuery<T> createIdentityQuery(Class<T> identityType) {
+        return new DefaultIdentityQuery<T>(new DefaultQueryBuilder(null, null), null, identityType, null);
+    }
+
+    private int count(IdentityQuery<?> query) {
+        return this.identityStore.countQueryResults(null, query);
+    }
+
+    private int fetch(IdentityQuery<?> query) {
+        return this.identityStore.fetchQueryResults(null, query).size();
+    }
+
+    private void insert(String sql, String... values) throws Exception {
+        PreparedStatement statement = this.connection.prepareStatement(sql);
+
+        for (int i = 0; i < values.length; i++) {
+            statement.setString(i + 1, values[i]);
+        }
+
+        statement.executeUpdate();
+        statement.close();
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.idm.query;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.picketlink.common.util.Base64;
+import org.picketlink.idm.IdentityManager;
+import org.picketlink.idm.config.IdentityConfigurationBuilder;
+import org.picketlink.idm.internal.DefaultPartitionManager;
+import org.picketlink.idm.jpa.model.sample.simple.AccountTypeEntity;
+import org.picketlink.idm.jpa.model.sample.simple.AttributedTypeEntity;
+import org.picketlink.idm.jpa.model.sample.simple.IdentityTypeEntity;
+import org.picketlink.idm.jpa.model.sample.simple.PartitionTypeEntity;
+import org.picketlink.idm.model.Attribute;
+import org.picketlink.idm.model.AttributedType;
+import org.picketlink.idm.model.basic.Realm;
+import org.picketlink.idm.model.basic.User;
+import org.picketlink.idm.query.IdentityQueryBuilder;
+import org.picketlink.test.idm.util.JPAContextInitializer;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.Serializable;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.picketlink.test.idm.util.PersistenceUtil.createEntityManagerFactory;
+
+/**
+ * <p>Test case for queries on ad-hoc attributes stored by an attribute entity that maps the typed value
+ * properties.</p>
+ */
+public class TypedAttributeQueryTestCase {
+
+    private EntityManagerFactory emf;
+    private EntityManager entityManager;
+    private IdentityManager identityManager;
+
+    @Before
+    public void onBefore() {
+        this.emf = createEntityManagerFactory("jpa-typed-attributes-tests-pu");
+        this.entityManager = this.emf.createEntityManager();
+        this.entityManager.getTransaction().begin();
+
+        IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
+
+        builder
+            .named("default")
+                .stores()
+                    .jpa()
+                        .mappedEntity(
+                            PartitionTypeEntity.class,
+                            IdentityTypeEntity.class,
+                            AccountTypeEntity.class,
+                            TypedAttributeTypeEntity.class
+                        )
+                        .addContextInitializer(new JPAContextInitializer(null) {
+                            @Override
+                            public EntityManager getEntityManager() {
+                                return entityManager;
+                            }
+                        })
+                        .supportType(User.class)
+                        .supportAttributes(true);
+
+        DefaultPartitionManager partitionManager = new DefaultPartitionManager(builder.buildAll());
+
+        if (partitionManager.getPartition(Realm.class, Realm.DEFAULT_REALM) == null) {
+            partitionManager.add(new Realm(Realm.DEFAULT_REALM));
+        }
+
+        this.identityManager = partitionManager.createIdentityManager();
+    }
+
+    @After
+    public void onAfter() {
+        this.entityManager.getTransaction().commit();
+        this.entityManager.close();
+        this.emf.close();
+    }
+
+    @Test
+    public void testTypedAttributeConditions() {
+        User john = createUser("john");
+        User mary = createUser("mary");
+        Date now = new Date();
+        Date yesterday = new Date(now.getTime() - TimeUnit.DAYS.toMillis(1));
+
+        john.setAttribute(new Attribute<Integer>("loginAttempts", 9));
+        john.setAttribute(new Attribute<String>("nickName", "johnny"));
+        john.setAttribute(new Attribute<Boolean>("locked", true));
+        john.setAttribute(new Attribute<Date>("lastLogin", yesterday));
+        john.setAttribute(new Attribute<Long>("counter", Long.MAX_VALUE));
+
+        this.identityManager.update(john);
+
+        mary.setAttribute(new Attribute<Integer>("loginAttempts", 10));
+        mary.setAttribute(new Attribute<String>("nickName", "mimi"));
+        mary.setAttribute(new Attribute<Boolean>("locked", false));
+        mary.setAttribute(new Attribute<Date>("lastLogin", now));
+        mary.setAttribute(new Attribute<Integer[]>("scores", new Integer[] {7, 8}));
+
+        this.identityManager.update(mary);
+
+        IdentityQueryBuilder builder = this.identityManager.getQueryBuilder();
+
+        List<User> result = builder.createIdentityQuery(User.class)
+            .where(builder.greaterThan(AttributedType.QUERY_ATTRIBUTE.byName("loginAttempts"), 9)).getResultList();
+
+        assertEquals(1, result.size());
+        assertEquals(mary.getId(), result.get(0).getId());
+
+        result = builder.createIdentityQuery(User.class)
+            .where(builder.like(AttributedType.QUERY_ATTRIBUTE.byName("nickName"), "joh%")).getResultList();
+
+        assertEquals(1, result.size());
+        assertEquals(john.getId(), result.get(0).getId());
+
+        result = builder.createIdentityQuery(User.class)
+            .where(builder.equal(AttributedType.QUERY_ATTRIBUTE.byName("locked"), false)).getResultList();
+
+        assertEquals(1, result.size());
+        assertEquals(mary.getId(), result.get(0).getId());
+
+        result = builder.createIdentityQuery(User.class)
+            .where(builder.lessThan(AttributedType.QUERY_ATTRIBUTE.byName("lastLogin"), new Date(now.getTime() - 1000)))
+            .getResultList();
+
+        assertEquals(1, result.size());
+        assertEquals(john.getId(), result.get(0).getId());
+
+        result = builder.createIdentityQuery(User.class)
+            .where(builder.between(AttributedType.QUERY_ATTRIBUTE.byName("scores"), 1, 9)).getResultList();
+
+        assertEquals(1, result.size());
+        assertEquals(mary.getId(), result.get(0).getId());
+
+        result = builder.createIdentityQuery(User.class)
+            .where(builder.equal(AttributedType.QUERY_ATTRIBUTE.byName("counter"), Long.MAX_VALUE)).getResultList();
+
+        assertEquals(1, result.size());
+
+        User storedJohn = this.identityManager.lookupIdentityById(User.class, john.getId());
+
+        assertEquals(9, storedJohn.getAttribute("loginAttempts").getValue());
+        assertEquals("johnny", storedJohn.getAttribute("nickName").getValue());
+        assertEquals(true, storedJohn.getAttribute("locked").getValue());
+        assertEquals(yesterday, storedJohn.getAttribute("lastLogin").getValue());
+        assertEquals(Long.MAX_VALUE, storedJohn.getAttribute("counter").getValue());
+    }
+
+    @Test
+    public void testSerializedAttributeConditions() {
+        User john = createUser("john");
+        User mary = createUser("mary");
+
+        // rows stored before the typed properties were mapped only hold the serialized value
+        addSerializedAttribute(john, "nickName", "johnny");
+        addSerializedAttribute(john, "loginAttempts", 9);
+        addSerializedAttribute(john, "tags", "admin");
+        addSerializedAttribute(john, "tags", "ops");
+
+        mary.setAttribute(new Attribute<String>("nickName", "mimi"));
+
+        this.identityManager.update(mary);
+
+        IdentityQueryBuilder builder = this.identityManager.getQueryBuilder();
+
+        List<User> result = builder.createIdentityQuery(User.class)
+            .where(builder.equal(AttributedType.QUERY_ATTRIBUTE.byName("nickName"), "johnny")).getResultList();
+
+        assertEquals(1, result.size());
+        assertEquals(john.getId(), result.get(0).getId());
+
+        result = builder.createIdentityQuery(User.class)
+            .where(builder.in(AttributedType.QUERY_ATTRIBUTE.byName("tags"), "admin", "ops")).getResultList();
+
+        assertEquals(1, result.size());
+        assertEquals(john.getId(), result.get(0).getId());
+
+        result = builder.createIdentityQuery(User.class)
+            .where(builder.like(AttributedType.QUERY_ATTRIBUTE.byName("nickName"), "johnny")).getResultList();
+
+        assertEquals(1, result.size());
+        assertEquals(john.getId(), result.get(0).getId());
+
+        result = builder.createIdentityQuery(User.class)
+            .where(builder.equal(AttributedType.QUERY_ATTRIBUTE.byName("loginAttempts"), 9)).getResultList();
+
+        assertEquals(1, result.size());
+        assertEquals(john.getId(), result.get(0).getId());
+
+        User storedJohn = this.identityManager.lookupIdentityById(User.class, john.getId());
+
+        assertEquals("johnny", storedJohn.getAttribute("nickName").getValue());
+        assertEquals(9, storedJohn.getAttribute("loginAttempts").getValue());
+    }
+
+    private void addSerializedAttribute(User owner, String name, Serializable value) {
+        TypedAttributeTypeEntity attributeEntity = new TypedAttributeTypeEntity();
+
+        attributeEntity.setOwner(this.entityManager.find(AttributedTypeEntity.class, owner.getId()));
+        attributeEntity.setName(name);
+        attributeEntity.setValue(Base64.encodeObject(value));
+
+        this.entityManager.persist(attributeEntity);
+        this.entityManager.flush();
+    }
+
+    private User createUser(String loginName) {
+        User user = new User(loginName);
+
+        this.identityManager.add(user);
+
+        return user;
+    }
+}
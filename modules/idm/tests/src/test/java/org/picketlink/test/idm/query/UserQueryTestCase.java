@@ -19,6 +19,7 @@
 package org.picketlink.test.idm.query;
 
 import org.junit.Test;
+import org.picketlink.idm.IdentityManagementException;
 import org.picketlink.idm.IdentityManager;
 import org.picketlink.idm.ldap.internal.LDAPIdentityStore;
 import org.picketlink.idm.model.Attribute;
@@ -27,6 +28,7 @@ import org.picketlink.idm.model.Partition;
 import org.picketlink.idm.model.basic.User;
 import org.picketlink.idm.query.IdentityQuery;
 import org.picketlink.idm.query.IdentityQueryBuilder;
+import org.picketlink.idm.query.KeysetPaginationContext;
 import org.picketlink.test.idm.Configuration;
 import org.picketlink.test.idm.testers.FileStoreConfigurationTester;
 import org.picketlink.test.idm.testers.IdentityConfigurationTester;
@@ -35,11 +37,16 @@ import org.picketlink.test.idm.testers.LDAPStoreConfigurationTester;
 import org.picketlink.test.idm.testers.LDAPUserGroupJPARoleConfigurationTester;
 import org.picketlink.test.idm.testers.SingleConfigLDAPJPAStoreConfigurationTester;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 import static org.junit.Assert.assertNotNull;
 
 /**
@@ -276,6 +283,92 @@ public class UserQueryTestCase extends AgentQueryTestCase<User> {
         assertEquals(users.get(0).getLoginName(), "mary2");
     }
 
+    @Test
+    @Configuration(include = JPAStoreConfigurationTester.class)
+    public void testKeysetPagination() throws Exception {
+        createPopulatedUser("john", "John", "Anthony");
+        createPopulatedUser("mary", "Mary", "Kelly");
+        createPopulatedUser("demo", "Demo", "Demo");
+        createPopulatedUser("mary2", "Mary", "Anthony");
+        createPopulatedUser("john2", "John", "Kelly");
+
+        IdentityQueryBuilder queryBuilder = getIdentityManager().getQueryBuilder();
+        IdentityQuery<User> userQuery = queryBuilder.createIdentityQuery(User.class);
+
+        userQuery.sortBy(queryBuilder.asc(User.FIRST_NAME));
+        userQuery.setLimit(2);
+        userQuery.setPaginationContext(KeysetPaginationContext.firstPage());
+
+        List<String> firstNames = new ArrayList<String>();
+        Set<String> loginNames = new HashSet<String>();
+        int pages = 0;
+
+        while (!((KeysetPaginationContext) userQuery.getPaginationContext()).isLastPage()) {
+            for (User user : userQuery.getResultList()) {
+                firstNames.add(user.getFirstName());
+                assertTrue(loginNames.add(user.getLoginName()));
+            }
+
+            pages++;
+        }
+
+        assertEquals(3, pages);
+        assertEquals(5, loginNames.size());
+        assertEquals(Arrays.asList("Demo", "John", "John", "Mary", "Mary"), firstNames);
+        assertTrue(userQuery.getResultList().isEmpty());
+    }
+
+    @Test
+    @Configuration(exclude = JPAStoreConfigurationTester.class)
+    public void testKeysetPaginationNotSupported() throws Exception {
+        createPopulatedUser("john", "John", "Anthony");
+
+        IdentityQuery<User> userQuery = getIdentityManager().createIdentityQuery(User.class);
+
+        userQuery.setLimit(1);
+        userQuery.setPaginationContext(KeysetPaginationContext.firstPage());
+
+        try {
+            userQuery.getResultList();
+            fail();
+        } catch (IdentityManagementException ignore) {
+        }
+    }
+
+    @Test
+    @Configuration(include = {JPAStoreConfigurationTester.class, FileStoreConfigurationTester.class})
+    public void testFindByLoginNameAfterUpdateAndRemove() throws Exception {
+        IdentityManager identityManager = getIdentityManager();
+        User user = createIdentityType("someUser", null);
+
+        user.setLoginName("someRenamedUser");
+
+        identityManager.update(user);
+
+        IdentityQuery<User> query = identityManager.createIdentityQuery(User.class);
+
+        query.setParameter(User.LOGIN_NAME, "someUser");
+
+        assertTrue(query.getResultList().isEmpty());
+
+        query = identityManager.createIdentityQuery(User.class);
+
+        query.setParameter(User.LOGIN_NAME, "someRenamedUser");
+
+        List<User> result = query.getResultList();
+
+        assertEquals(1, result.size());
+        assertEquals(user.getId(), result.get(0).getId());
+
+        identityManager.remove(user);
+
+        query = identityManager.createIdentityQuery(User.class);
+
+        query.setParameter(User.LOGIN_NAME, "someRenamedUser");
+
+        assertTrue(query.getResultList().isEmpty());
+    }
+
     @Test
     @Configuration(include = LDAPStoreConfigurationTester.class)
     public void testLDAPEntryDNAsAttribute() throws Exception {
@@ -32,6 +32,7 @@ import org.picketlink.test.idm.testers.IdentityConfigurationTester;
 import org.picketlink.test.idm.testers.JPAPermissionStoreConfigurationTester;
 import org.picketlink.test.idm.testers.LDAPStoreConfigurationTester;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -102,4 +103,66 @@ public class InheritsPrivilegeTestCase extends AbstractPartitionManagerTestCase
         assertTrue(relationshipManager.inheritsPrivileges(pmGroup, operator));
     }
 
+    @Test
+    public void testInheritedPrivilegesFollowRelationshipChanges() throws Exception {
+        Role operator = createRole("Operator");
+        Group itGroup = createGroup("IT");
+        Group employees = createGroupWithParent("Employees", itGroup);
+        User john = createUser("john");
+
+        RelationshipManager relationshipManager = getPartitionManager().createRelationshipManager();
+
+        assertFalse(relationshipManager.inheritsPrivileges(john, operator));
+
+        GroupMembership membership = new GroupMembership(john, employees);
+
+        relationshipManager.add(membership);
+
+        assertFalse(relationshipManager.inheritsPrivileges(john, operator));
+
+        Grant grant = new Grant(itGroup, operator);
+
+        relationshipManager.add(grant);
+
+        assertTrue(relationshipManager.inheritsPrivileges(john, operator));
+        assertTrue(relationshipManager.inheritsPrivileges(employees, operator));
+
+        relationshipManager.remove(grant);
+
+        assertFalse(relationshipManager.inheritsPrivileges(john, operator));
+        assertFalse(relationshipManager.inheritsPrivileges(employees, operator));
+
+        relationshipManager.add(new Grant(itGroup, operator));
+
+        assertTrue(relationshipManager.inheritsPrivileges(john, operator));
+
+        relationshipManager.remove(membership);
+
+        assertFalse(relationshipManager.inheritsPrivileges(john, operator));
+        assertTrue(relationshipManager.inheritsPrivileges(employees, operator));
+    }
+
+    @Test
+    @Configuration(exclude = {JPAPermissionStoreConfigurationTester.class, LDAPStoreConfigurationTester.class})
+    public void testInheritedPrivilegesFollowRelationshipUpdates() throws Exception {
+        Role operator = createRole("Operator");
+        User john = createUser("john");
+        User mary = createUser("mary");
+
+        RelationshipManager relationshipManager = getPartitionManager().createRelationshipManager();
+        Grant grant = new Grant(john, operator);
+
+        relationshipManager.add(grant);
+
+        assertTrue(relationshipManager.inheritsPrivileges(john, operator));
+        assertFalse(relationshipManager.inheritsPrivileges(mary, operator));
+
+        grant.setAssignee(mary);
+
+        relationshipManager.update(grant);
+
+        assertFalse(relationshipManager.inheritsPrivileges(john, operator));
+        assertTrue(relationshipManager.inheritsPrivileges(mary, operator));
+    }
+
 }
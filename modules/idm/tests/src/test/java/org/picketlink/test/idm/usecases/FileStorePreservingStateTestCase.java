@@ -1,21 +1,31 @@
 package org.picketlink.test.idm.usecases;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.picketlink.idm.IdentityManager;
 import org.picketlink.idm.PartitionManager;
 import org.picketlink.idm.config.IdentityConfigurationBuilder;
+import org.picketlink.idm.credential.Credentials;
+import org.picketlink.idm.credential.Password;
+import org.picketlink.idm.credential.UsernamePasswordCredentials;
 import org.picketlink.idm.internal.DefaultPartitionManager;
 import org.picketlink.idm.model.Attribute;
+import org.picketlink.idm.model.basic.BasicModel;
 import org.picketlink.idm.model.basic.Grant;
 import org.picketlink.idm.model.basic.Realm;
 import org.picketlink.idm.model.basic.Role;
 import org.picketlink.idm.model.basic.User;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Created with IntelliJ IDEA. User: pedroigor Date: 8/6/13 Time: 7:32 PM To change this template use File | Settings |
@@ -27,6 +37,9 @@ public class FileStorePreservingStateTestCase {
     public static final String REALM_B = "Realm B";
     public static final String REALM_C = "Realm C";
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
     public void testPreserveState() {
         IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
@@ -179,4 +192,103 @@ public class FileStorePreservingStateTestCase {
         assertFalse(result.isEmpty());
     }
 
+    @Test
+    public void testJournalReplayAndCompaction() throws Exception {
+        String workingDir = this.temporaryFolder.newFolder("journal").getPath();
+        DefaultPartitionManager partitionManager = createJournalPartitionManager(workingDir, false, 10000);
+
+        Realm realm = new Realm(REALM_A);
+
+        partitionManager.add(realm);
+
+        IdentityManager identityManager = partitionManager.createIdentityManager(realm);
+        User john = new User("john");
+        User mary = new User("mary");
+        Role admin = new Role("admin");
+
+        identityManager.add(john);
+        identityManager.add(mary);
+        identityManager.add(admin);
+        identityManager.updateCredential(john, new Password("secret".toCharArray()));
+
+        john.setAttribute(new Attribute<Serializable>("someAttribute", "1"));
+        identityManager.update(john);
+
+        partitionManager.createRelationshipManager().add(new Grant(john, admin));
+
+        identityManager.remove(mary);
+
+        // changes are replayed from the journal, the journal still open for the directory is closed first
+        partitionManager = createJournalPartitionManager(workingDir, true, 1);
+
+        assertStoredState(partitionManager);
+
+        // the journal is compacted once the change below is written
+        realm = partitionManager.getPartition(Realm.class, REALM_A);
+        partitionManager.createIdentityManager(realm).add(new Role("manager"));
+
+        // closing waits until the pending records are written and the journal is compacted
+        partitionManager.close();
+
+        assertEquals(0, new File(workingDir, "pl-idm-journal.log").length());
+
+        IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
+
+        builder
+            .named("file-store-journal")
+                .stores()
+                    .file()
+                        .preserveState(true)
+                        .workingDirectory(workingDir)
+                        .supportAllFeatures();
+
+        // changes are read from the snapshot
+        partitionManager = new DefaultPartitionManager(builder.buildAll());
+
+        assertStoredState(partitionManager);
+
+        realm = partitionManager.getPartition(Realm.class, REALM_A);
+
+        assertNotNull(BasicModel.getRole(partitionManager.createIdentityManager(realm), "manager"));
+
+        partitionManager.close();
+    }
+
+    private DefaultPartitionManager createJournalPartitionManager(String workingDir, boolean preserveState, int compactionThreshold) {
+        IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
+
+        builder
+            .named("file-store-journal")
+                .stores()
+                    .file()
+                        .preserveState(preserveState)
+                        .journal(true)
+                        .journalCompactionThreshold(compactionThreshold)
+                        .workingDirectory(workingDir)
+                        .supportAllFeatures();
+
+        return new DefaultPartitionManager(builder.buildAll());
+    }
+
+    private void assertStoredState(PartitionManager partitionManager) {
+        Realm realm = partitionManager.getPartition(Realm.class, REALM_A);
+
+        assertNotNull(realm);
+
+        IdentityManager identityManager = partitionManager.createIdentityManager(realm);
+        User john = BasicModel.getUser(identityManager, "john");
+        Role admin = BasicModel.getRole(identityManager, "admin");
+
+        assertNotNull(john);
+        assertNotNull(admin);
+        assertNull(BasicModel.getUser(identityManager, "mary"));
+        assertEquals("1", john.getAttribute("someAttribute").getValue());
+        assertTrue(BasicModel.hasRole(partitionManager.createRelationshipManager(), john, admin));
+
+        UsernamePasswordCredentials credentials = new UsernamePasswordCredentials("john", new Password("secret".toCharArray()));
+
+        identityManager.validateCredentials(credentials);
+
+        assertEquals(Credentials.Status.VALID, credentials.getStatus());
+    }
 }